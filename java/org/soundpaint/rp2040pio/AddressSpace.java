@@ -39,6 +39,27 @@ public abstract class AddressSpace
 
   private static AccessMethod[] ACCESS_METHODS = AccessMethod.values();
 
+  /**
+   * Maximum number of values that a single call of method
+   * sampleAddresses() may return, i.e. the number of cycles
+   * multiplied by the number of addresses.  Bounds the memory that a
+   * single request may allocate.
+   */
+  public static final int MAX_SAMPLES = 0x100000;
+
+  protected static void checkSampleCount(final int[] addresses,
+                                         final int cycles)
+  {
+    if (cycles < 0) {
+      throw new IllegalArgumentException("cycles < 0: " + cycles);
+    }
+    final long samples = (long)cycles * addresses.length;
+    if (samples > MAX_SAMPLES) {
+      throw new IllegalArgumentException("number of samples exceeds " +
+                                         MAX_SAMPLES + ": " + samples);
+    }
+  }
+
   protected static void checkAddressAligned(final int address)
   {
     if ((address & 0x3) != 0x0) {
@@ -67,6 +88,57 @@ public abstract class AddressSpace
 
   public abstract int readAddress(final int address) throws IOException;
 
+  /**
+   * Reads the values of all of the specified addresses at once, such
+   * that the emulation does not advance between the individual reads.
+   * Hence, the result reflects a consistent snapshot of the emulator
+   * state at a clock phase boundary.
+   * @return The values read, in the order of the specified addresses.
+   */
+  public abstract int[] readAddresses(final int[] addresses)
+    throws IOException;
+
+  /**
+   * Runs the emulation for the specified number of cycles and reads
+   * the values of all of the specified addresses once per cycle,
+   * right after the rising clock edge.  This way, a client can
+   * capture the trace of many cycles with a single call rather than
+   * triggering clock phases and reading addresses cycle by cycle.
+   * In single step mode, the clock phases are triggered
+   * automatically.  The number of cycles multiplied by the number of
+   * addresses must not exceed MAX_SAMPLES.
+   * @return The sampled values as matrix in row-major order, i.e. the
+   * value of address #i in cycle #c is found at index
+   * &lt;code&gt;c * addresses.length + i&lt;/code&gt;.
+   */
+  public abstract int[] sampleAddresses(final int[] addresses,
+                                        final int cycles)
+    throws IOException;
+
+  /**
+   * Waits until the value of at least one of the specified addresses
+   * differs from the corresponding specified value, or until the
+   * specified timeout has elapsed.  The check is performed by the
+   * emulator upon each clock phase change, such that a client that
+   * displays register values can sleep until there is actually
+   * something new to display, rather than polling all of its
+   * registers.
+   * @param values The values of the addresses as last seen by the
+   * client, in the order of the specified addresses.
+   * @param millisTimeout The maximum time to wait, or 0 for no
+   * timeout.
+   * @return The current values, read as a consistent snapshot like
+   * method readAddresses() does, in the order of the specified
+   * addresses.  The caller determines which addresses have changed
+   * by comparing them with the specified values.  If nothing changed
+   * until the timeout elapsed, the result equals the specified
+   * values.
+   */
+  public abstract int[] waitAddressesChanged(final int[] addresses,
+                                             final int[] values,
+                                             final long millisTimeout)
+    throws IOException;
+
   public abstract void writeAddressMasked(final int address, final int bits,
                                           final int mask, final boolean xor)
     throws IOException;
@@ -77,6 +149,71 @@ public abstract class AddressSpace
                                   final long millisTimeout)
     throws IOException;
 
+  /**
+   * Performs the specified masked writes in the specified order, as
+   * if method writeAddressMasked() was called for each of them.
+   * Implementations may transfer all of the writes at once, such
+   * that a client pays for a single round trip rather than one per
+   * write.  Note that, unlike with method readAddresses(), the
+   * emulation may advance between the individual writes.
+   */
+  public void writeAddressesMasked(final int[] addresses, final int[] bits,
+                                   final int[] masks, final boolean[] xors)
+    throws IOException
+  {
+    checkWrites(addresses, bits, masks, xors);
+    for (int index = 0; index < addresses.length; index++) {
+      writeAddressMasked(addresses[index], bits[index], masks[index],
+                         xors[index]);
+    }
+  }
+
+  /**
+   * Performs the specified masked writes in the specified order, as
+   * a single transaction: All of the writes are applied between the
+   * same two clock phases, such that the emulation never observes
+   * them half-applied.  Implementations transfer all of the writes
+   * at once.  Writes that control the master clock or reset the
+   * emulator can not be part of a transaction.  All addresses are
+   * checked up front: if any of the writes addresses an unsupported
+   * register or one that can not be part of a transaction, none of
+   * the writes is applied.  Applied writes are not rolled back,
+   * though: if a write fails while being applied, e.g. due to an
+   * internal error of the emulator, the writes before it remain
+   * applied.
+   */
+  public abstract void writeAddressesAtomically(final int[] addresses,
+                                                final int[] bits,
+                                                final int[] masks,
+                                                final boolean[] xors)
+    throws IOException;
+
+  protected static void checkWrites(final int[] addresses, final int[] bits,
+                                    final int[] masks, final boolean[] xors)
+  {
+    if (addresses == null) {
+      throw new NullPointerException("addresses");
+    }
+    if (bits == null) {
+      throw new NullPointerException("bits");
+    }
+    if (masks == null) {
+      throw new NullPointerException("masks");
+    }
+    if (xors == null) {
+      throw new NullPointerException("xors");
+    }
+    if ((bits.length != addresses.length) ||
+        (masks.length != addresses.length) ||
+        (xors.length != addresses.length)) {
+      throw new IllegalArgumentException("array lengths differ: " +
+                                         addresses.length + ", " +
+                                         bits.length + ", " +
+                                         masks.length + ", " +
+                                         xors.length);
+    }
+  }
+
   public void writeAddress(final int address, final int value)
     throws IOException
   {
@@ -0,0 +1,152 @@
+/*
+ * @(#)AddressSpaceBenchmark.java 1.00 21/07/28
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Micro benchmark for register access via LocalAddressSpace.
+ * Repeatedly reads a mix of registers that observers typically poll
+ * (PIO and emulator PIO registers of all SMs, GPIO status, emulator
+ * wall clock), and reports the average time per read access.
+ *
+ * Usage: java org.soundpaint.rp2040pio.AddressSpaceBenchmark [ROUNDS]
+ */
+public class AddressSpaceBenchmark
+{
+  private static final int DEFAULT_ROUNDS = 20;
+  private static final int READS_PER_ROUND = 2000000;
+
+  private final PrintStream console;
+  private final LocalAddressSpace memory;
+  private final int[] addresses;
+
+  private AddressSpaceBenchmark()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  private AddressSpaceBenchmark(final PrintStream console,
+                                final Emulator emulator)
+  {
+    this.console = console;
+    memory = new LocalAddressSpace(emulator);
+    addresses = createAddresses();
+  }
+
+  private static int[] createAddresses()
+  {
+    final List<Integer> addresses = new ArrayList<Integer>();
+    for (int pioNum = 0; pioNum < Constants.PIO_NUM; pioNum++) {
+      addresses.add(PIORegisters.getAddress(pioNum, PIORegisters.Regs.FSTAT));
+      addresses.add(PIORegisters.getAddress(pioNum, PIORegisters.Regs.FLEVEL));
+      addresses.add(PIORegisters.getAddress(pioNum, PIORegisters.Regs.INTR));
+      for (int smNum = 0; smNum < Constants.SM_COUNT; smNum++) {
+        addresses.add(PIORegisters.
+                      getSMAddress(pioNum, smNum,
+                                   PIORegisters.Regs.SM0_EXECCTRL));
+        addresses.add(PIOEmuRegisters.
+                      getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_PC));
+        addresses.add(PIOEmuRegisters.
+                      getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_REGX));
+        addresses.add(PIOEmuRegisters.
+                      getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_DELAY));
+        addresses.add(PIOEmuRegisters.
+                      getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_CLK_ENABLE));
+      }
+      addresses.add(PIOEmuRegisters.
+                    getAddress(pioNum, PIOEmuRegisters.Regs.GPIO_PINS));
+    }
+    for (int gpioNum = 0; gpioNum < 4; gpioNum++) {
+      addresses.add(GPIOIOBank0Registers.
+                    getAddress(GPIOIOBank0Registers.Regs.GPIO0_STATUS) +
+                    8 * gpioNum);
+    }
+    addresses.add(PicoEmuRegisters.
+                  getAddress(PicoEmuRegisters.Regs.WALLCLOCK_LSB));
+    return addresses.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private int readAll(final int count) throws IOException
+  {
+    int checksum = 0;
+    int index = 0;
+    for (int i = 0; i < count; i++) {
+      checksum ^= memory.readAddress(addresses[index]);
+      if (++index == addresses.length) index = 0;
+    }
+    return checksum;
+  }
+
+  private void run(final int rounds) throws IOException
+  {
+    console.printf("reading %d distinct register addresses%n",
+                   addresses.length);
+    int checksum = 0;
+    console.printf("warming up%n");
+    for (int round = 0; round < 5; round++) {
+      checksum ^= readAll(READS_PER_ROUND);
+    }
+    double best = Double.MAX_VALUE;
+    double total = 0.0;
+    for (int round = 0; round < rounds; round++) {
+      final long start = System.nanoTime();
+      checksum ^= readAll(READS_PER_ROUND);
+      final long stop = System.nanoTime();
+      final double nanosPerRead = (double)(stop - start) / READS_PER_ROUND;
+      best = Math.min(best, nanosPerRead);
+      total += nanosPerRead;
+    }
+    console.printf("readAddress(): %.1f ns/op average, %.1f ns/op best " +
+                   "(%d rounds of %d reads, checksum %08x)%n",
+                   total / rounds, best, rounds, READS_PER_ROUND, checksum);
+  }
+
+  public static void main(final String argv[]) throws IOException
+  {
+    final int rounds =
+      argv.length > 0 ? Integer.parseInt(argv[0]) : DEFAULT_ROUNDS;
+    final Emulator emulator = new Emulator(System.out);
+    try {
+      new AddressSpaceBenchmark(System.out, emulator).run(rounds);
+    } finally {
+      emulator.terminate();
+    }
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
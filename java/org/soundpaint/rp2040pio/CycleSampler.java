@@ -0,0 +1,166 @@
+/*
+ * @(#)CycleSampler.java 1.00 21/07/30
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio;
+
+import java.io.IOException;
+
+/**
+ * Samples a fixed set of addresses on each rising edge of the master
+ * clock for a given number of consecutive cycles.  Since sampling
+ * takes place within the emulation thread right after all PIOs have
+ * processed the edge, each row of samples reflects the same state
+ * that a client would see after triggering clock phase 0 in single
+ * step mode, but without any client round trip per cycle.
+ *
+ * In single step mode, the sampler drives the clock phases itself.
+ * In target frequency mode, it just waits for the emulation to
+ * advance.
+ */
+class CycleSampler implements Clock.TransitionListener
+{
+  private static final long AWAIT_TIMEOUT_MILLIS = 100;
+
+  private final MasterClock masterClock;
+  private final AddressSpace memory;
+  private final int[] addresses;
+  private final int cycles;
+  private final int[] samples;
+  private volatile int sampledCycles;
+  private IOException readError;
+
+  private CycleSampler()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  public CycleSampler(final MasterClock masterClock,
+                      final AddressSpace memory,
+                      final int[] addresses, final int cycles)
+  {
+    if (masterClock == null) {
+      throw new NullPointerException("masterClock");
+    }
+    if (memory == null) {
+      throw new NullPointerException("memory");
+    }
+    if (addresses == null) {
+      throw new NullPointerException("addresses");
+    }
+    AddressSpace.checkSampleCount(addresses, cycles);
+    this.masterClock = masterClock;
+    this.memory = memory;
+    this.addresses = addresses;
+    this.cycles = cycles;
+    samples = new int[cycles * addresses.length];
+    sampledCycles = 0;
+    readError = null;
+  }
+
+  @Override
+  public void risingEdge(final long wallClock)
+  {
+    final int cycle = sampledCycles;
+    if (cycle >= cycles) return;
+    final int offset = cycle * addresses.length;
+    try {
+      for (int index = 0; index < addresses.length; index++) {
+        samples[offset + index] = memory.readAddress(addresses[index]);
+      }
+    } catch (final IOException e) {
+      if (readError == null) readError = e;
+    }
+    sampledCycles = cycle + 1;
+  }
+
+  @Override
+  public void fallingEdge(final long wallClock)
+  {
+    // nothing to do
+  }
+
+  private void advance() throws InterruptedException
+  {
+    Clock.Phase phase = masterClock.getPhase();
+    if (masterClock.getMode() == MasterClock.Mode.SINGLE_STEP) {
+      if (phase == Clock.Phase.PHASE_1_STABLE) {
+        masterClock.triggerPhase0();
+        phase = Clock.Phase.PHASE_0_IN_PROGRESS;
+      } else if (phase == Clock.Phase.PHASE_0_STABLE) {
+        masterClock.triggerPhase1();
+        phase = Clock.Phase.PHASE_1_IN_PROGRESS;
+      }
+    }
+    // Wait for leaving the phase as observed (or as just triggered)
+    // rather than re-reading it, since the emulation thread may
+    // already have completed it in the meantime.
+    masterClock.awaitPhaseChange(phase, AWAIT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * In single step mode, completes the cycle of the last sample,
+   * such that the emulation stops at the end of a cycle, just as
+   * after a sequence of explicit phase 0 and phase 1 triggers.
+   */
+  private void completeCycle() throws InterruptedException
+  {
+    while ((masterClock.getMode() == MasterClock.Mode.SINGLE_STEP) &&
+           (masterClock.getPhase() != Clock.Phase.PHASE_1_STABLE)) {
+      advance();
+    }
+  }
+
+  /**
+   * Runs the emulation until the configured number of cycles has
+   * been sampled.
+   * @return The samples as matrix in row-major order, i.e. the value
+   * of address #i in cycle #c is found at index
+   * &lt;code&gt;c * addresses.length + i&lt;/code&gt;.
+   */
+  public int[] sample() throws IOException
+  {
+    masterClock.addTransitionListener(this);
+    try {
+      while (sampledCycles < cycles) {
+        advance();
+      }
+      completeCycle();
+    } catch (final InterruptedException e) {
+      throw new IOException("sampling interrupted");
+    } finally {
+      masterClock.removeTransitionListener(this);
+    }
+    if (readError != null) {
+      throw readError;
+    }
+    return samples;
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
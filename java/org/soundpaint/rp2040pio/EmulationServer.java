@@ -51,10 +51,22 @@ public class EmulationServer
                                    Constants.
                                    REGISTER_SERVER_DEFAULT_PORT_NUMBER,
                                    "use PORT as server port number");
+  private static final CmdOptions.StringOptionDeclaration optVcdFile =
+    CmdOptions.createStringOption("PATH", false, 'd', "vcd-file", null,
+                                  "record value change dump (VCD) to PATH");
+  private static final CmdOptions.IntegerOptionDeclaration optVcdPins =
+    CmdOptions.createIntegerOption("MASK", false, null, "vcd-pins",
+                                   0xffffffff,
+                                   "bit mask of GPIO pins to record");
+  private static final CmdOptions.IntegerOptionDeclaration optVcdSms =
+    CmdOptions.createIntegerOption("MASK", false, null, "vcd-sms", 0xff,
+                                   "bit mask of SMs to record (bits 0…3: " +
+                                   "PIO0, bits 4…7: PIO1)");
   private static final List<CmdOptions.OptionDeclaration<?>>
     optionDeclarations =
     Arrays.asList(new CmdOptions.OptionDeclaration<?>[]
-                  { optVersion, optHelp, optSilent, optVerbose, optPort });
+                  { optVersion, optHelp, optSilent, optVerbose, optPort,
+                    optVcdFile, optVcdPins, optVcdSms });
 
   private final PrintStream console;
   private final CmdOptions options;
@@ -111,6 +123,11 @@ public class EmulationServer
       throw new CmdOptions.
         ParseException("either 'silent' or 'verbose' can be activated");
     }
+    final int vcdSms = options.getValue(optVcdSms);
+    if ((vcdSms & ~0xff) != 0x0) {
+      throw new CmdOptions.
+        ParseException("SMs MASK must be in the range 0x00…0xff");
+    }
   }
 
   private void printAbout()
@@ -125,6 +142,23 @@ public class EmulationServer
   {
     try {
       final Emulator emulator = new Emulator(console);
+      final String vcdFile = options.getValue(optVcdFile);
+      if (vcdFile != null) {
+        emulator.getVCDRecorder().start(vcdFile,
+                                        options.getValue(optVcdPins),
+                                        options.getValue(optVcdSms));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+              try {
+                emulator.getVCDRecorder().stop();
+              } catch (final IOException e) {
+                console.println("failed writing VCD file: " +
+                                e.getMessage());
+              }
+        }));
+        if (options.getValue(optSilent) != CmdOptions.Flag.ON) {
+          console.println("recording value change dump to " + vcdFile);
+        }
+      }
       final LocalAddressSpace memory = new LocalAddressSpace(emulator);
       final int port = options.getValue(optPort);
       final RemoteAddressSpaceServer server =
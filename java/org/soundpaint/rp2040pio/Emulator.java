@@ -24,6 +24,11 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 
 /**
@@ -31,11 +36,23 @@ import java.io.PrintStream;
  */
 public class Emulator
 {
+  /**
+   * Magic number ("RP2S") and format version that prefix serialized
+   * emulator state.
+   */
+  private static final int STATE_MAGIC = 0x52503253;
+  private static final int STATE_VERSION = 1;
+
+  public static final int SNAPSHOT_SLOTS = 32;
+
   private final PrintStream console;
   private final MasterClock masterClock;
   private final GPIO gpio;
   private final PIO pio0;
   private final PIO pio1;
+  private final VCDRecorder vcdRecorder;
+  private final TestBench testBench;
+  private final byte[][] snapshots;
 
   private Emulator()
   {
@@ -52,6 +69,26 @@ public class Emulator
     gpio = new GPIO(console, masterClock);
     pio0 = gpio.getPIO0();
     pio1 = gpio.getPIO1();
+    vcdRecorder = new VCDRecorder(masterClock, gpio);
+    testBench = new TestBench(masterClock, gpio);
+    snapshots = new byte[SNAPSHOT_SLOTS][];
+  }
+
+  /**
+   * Creates an emulator that starts from the specified state, as
+   * previously returned by saveState() of any emulator.  Since the
+   * state is never modified, many emulators can be created from the
+   * same state, e.g. for running variants of a test from a common
+   * pre-configured checkpoint.
+   */
+  public Emulator(final PrintStream console, final byte[] state)
+    throws IOException
+  {
+    this(console);
+    if (!restoreState(state)) {
+      // a new emulator always starts in single step mode
+      throw new InternalError("master clock not in single step mode");
+    }
   }
 
   public PrintStream getConsole()
@@ -79,16 +116,168 @@ public class Emulator
     return pio1;
   }
 
+  public VCDRecorder getVCDRecorder()
+  {
+    return vcdRecorder;
+  }
+
+  public TestBench getTestBench()
+  {
+    return testBench;
+  }
+
   public void reset()
   {
     masterClock.reset();
     gpio.reset();
     pio0.reset();
     pio1.reset();
+    testBench.reset();
+  }
+
+  /**
+   * Serializes the complete emulation state, i.e. master clock, GPIO
+   * terminals, and for both PIOs their instruction memory, pins, IRQ
+   * register set and state machines including FIFOs and PLLs.  The
+   * state is taken at a stable clock phase.  Neither the test bench
+   * nor VCD recording are part of the state.
+   */
+  public byte[] saveState() throws IOException
+  {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(STATE_MAGIC);
+    out.writeInt(STATE_VERSION);
+    synchronized(masterClock.getPhaseLock()) {
+      masterClock.saveState(out);
+      gpio.saveState(out);
+      pio0.saveState(out);
+      pio1.saveState(out);
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Replaces the complete emulation state by the specified state, as
+   * previously returned by saveState().  Since the emulation thread
+   * must be halted during restore, the master clock must be in single
+   * step mode.  The master clock mode is restored as well, such that,
+   * if the state has been saved while running at target frequency,
+   * the emulation will continue to run thereafter.
+   *
+   * @return False, if the master clock is not in single step mode,
+   * such that the state has not been restored.
+   */
+  public boolean restoreState(final byte[] state) throws IOException
+  {
+    if (state == null) {
+      throw new NullPointerException("state");
+    }
+    final DataInputStream in =
+      new DataInputStream(new ByteArrayInputStream(state));
+    if (in.readInt() != STATE_MAGIC) {
+      throw new IOException("not an emulator state");
+    }
+    final int version = in.readInt();
+    if (version != STATE_VERSION) {
+      throw new IOException("unsupported emulator state version: " +
+                            version);
+    }
+    return masterClock.accessHalted(() -> {
+        masterClock.restoreState(in);
+        gpio.restoreState(in);
+        pio0.restoreState(in);
+        pio1.restoreState(in);
+      });
+  }
+
+  /**
+   * Creates a new, independent emulator with its own emulation thread
+   * that starts from the current state of this emulator.  Test bench,
+   * VCD recording and snapshot slots are not inherited.  The new
+   * emulator must be terminated when no longer needed.
+   */
+  public Emulator fork() throws IOException
+  {
+    return new Emulator(console, saveState());
+  }
+
+  private void checkSnapshotSlot(final int slot)
+  {
+    if ((slot < 0) || (slot >= SNAPSHOT_SLOTS)) {
+      throw new IllegalArgumentException("snapshot slot out of range: " +
+                                         slot);
+    }
+  }
+
+  /**
+   * Saves the current emulation state into the specified snapshot
+   * slot, replacing any snapshot previously saved there.  Snapshots
+   * survive an emulator reset, such that a pre-configured state can
+   * be restored over and over again.
+   */
+  public void saveSnapshot(final int slot)
+  {
+    checkSnapshotSlot(slot);
+    try {
+      final byte[] state = saveState();
+      synchronized(snapshots) {
+        snapshots[slot] = state;
+      }
+    } catch (final IOException e) {
+      console.println("failed saving snapshot: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Restores the emulation state from the specified snapshot slot.
+   * Prints a warning, if the slot is empty or if the master clock is
+   * not in single step mode.
+   */
+  public void restoreSnapshot(final int slot)
+  {
+    checkSnapshotSlot(slot);
+    final byte[] state;
+    synchronized(snapshots) {
+      state = snapshots[slot];
+    }
+    if (state == null) {
+      console.println("warning: no snapshot in slot " + slot);
+      return;
+    }
+    try {
+      if (!restoreState(state)) {
+        console.println("warning: snapshot restore requires " +
+                        "single step mode");
+      }
+    } catch (final IOException e) {
+      console.println("failed restoring snapshot: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns a bit mask with bit n set if and only if snapshot slot n
+   * holds a snapshot.
+   */
+  public int getSnapshotSlots()
+  {
+    int slots = 0x0;
+    synchronized(snapshots) {
+      for (int slot = 0; slot < SNAPSHOT_SLOTS; slot++) {
+        if (snapshots[slot] != null) slots |= 0x1 << slot;
+      }
+    }
+    return slots;
   }
 
   public void terminate()
   {
+    try {
+      vcdRecorder.stop();
+    } catch (final IOException e) {
+      console.println("failed writing VCD file: " + e.getMessage());
+    }
     masterClock.terminate();
   }
 }
@@ -24,17 +24,37 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * A pair of an RX FIFO and a TX FIFO, each having a capacity of DEPTH
  * words of 32 bits.  One of the FIFOs' capacity can be reconfigured
  * to be joined with the capacity of the other FIFO, thus resulting in
  * 8 words of capacity for that FIFO and leaving no capacity left for
  * the other FIFO.
+ *
+ * Each modification of the FIFO's state, i.e. of its memory, read
+ * and write pointers, join mode or debug flags, increments a
+ * modification sequence number, such that observers can cheaply
+ * check whether they need to re-read the FIFO's state at all.
  */
 public class FIFO implements Constants
 {
   private static int JOINED_FIFO_DEPTH = FIFO_DEPTH + FIFO_DEPTH;
 
+  @FunctionalInterface
+  public static interface PushListener
+  {
+    /**
+     * Called from within the emulation thread while holding the lock
+     * on the FIFO, whenever a value has been successfully pushed into
+     * the RX FIFO.
+     */
+    void pushed(final int value);
+  }
+
   private static enum Mode
   {
     JoinNone(false, false, FIFO_DEPTH, FIFO_DEPTH),
@@ -97,6 +117,8 @@ public class FIFO implements Constants
   private boolean regFDEBUG_TXOVER; // one of bits 19:16 of FDEBUG
   private boolean regFDEBUG_RXUNDER; // one of bits 11:8 of FDEBUG
   private boolean regFDEBUG_RXSTALL; // one of bits 3:0 of FDEBUG
+  private int seq;
+  private PushListener rxPushListener;
 
   public FIFO(final int smNum, final IRQ irq)
   {
@@ -107,6 +129,8 @@ public class FIFO implements Constants
     this.smNum = smNum;
     this.irq = irq;
     memory = new int[JOINED_FIFO_DEPTH];
+    seq = 0;
+    rxPushListener = null;
     reset();
   }
 
@@ -133,9 +157,63 @@ public class FIFO implements Constants
     rxFull = joinTX;
     irq.setRxNEmpty(smNum, !fstatRxEmpty());
     irq.setTxNFull(smNum, !fstatTxFull());
+    seq++;
     notifyAll();
   }
 
+  public synchronized void saveState(final DataOutput out) throws IOException
+  {
+    for (final int value : memory) {
+      out.writeInt(value);
+    }
+    out.writeByte(mode.ordinal());
+    out.writeInt(txReadPtr);
+    out.writeInt(txWritePtr);
+    out.writeBoolean(txFull);
+    out.writeInt(rxReadPtr);
+    out.writeInt(rxWritePtr);
+    out.writeBoolean(rxFull);
+    out.writeBoolean(regFDEBUG_TXSTALL);
+    out.writeBoolean(regFDEBUG_TXOVER);
+    out.writeBoolean(regFDEBUG_RXUNDER);
+    out.writeBoolean(regFDEBUG_RXSTALL);
+  }
+
+  /**
+   * Reads back what has been written by saveState().  The FIFO
+   * status flags of the IRQ register set are not updated, since they
+   * are restored along with the IRQ register set.
+   */
+  public synchronized void restoreState(final DataInput in) throws IOException
+  {
+    for (int index = 0; index < memory.length; index++) {
+      memory[index] = in.readInt();
+    }
+    mode = Mode.values()[in.readByte()];
+    txReadPtr = in.readInt();
+    txWritePtr = in.readInt();
+    txFull = in.readBoolean();
+    rxReadPtr = in.readInt();
+    rxWritePtr = in.readInt();
+    rxFull = in.readBoolean();
+    regFDEBUG_TXSTALL = in.readBoolean();
+    regFDEBUG_TXOVER = in.readBoolean();
+    regFDEBUG_RXUNDER = in.readBoolean();
+    regFDEBUG_RXSTALL = in.readBoolean();
+    seq++;
+    notifyAll();
+  }
+
+  /**
+   * Returns the FIFO's modification sequence number, which is
+   * incremented (modulo 2^32) upon each modification of the FIFO's
+   * state.
+   */
+  public synchronized int getSeq()
+  {
+    return seq;
+  }
+
   public synchronized void setJoinRX(final boolean join)
   {
     if (mode.isJoinRX() == join) return;
@@ -152,6 +230,16 @@ public class FIFO implements Constants
     return mode.getRXSize();
   }
 
+  /**
+   * Sets the listener that is informed about each value that is
+   * successfully pushed into the RX FIFO, or removes the listener, if
+   * &lt;code&gt;null&lt;/code&gt;.
+   */
+  public synchronized void setRXPushListener(final PushListener listener)
+  {
+    rxPushListener = listener;
+  }
+
   public synchronized int getRXReadPointer()
   {
     return rxReadPtr;
@@ -186,10 +274,15 @@ public class FIFO implements Constants
       memory[rxWritePtr] = value;
       rxWritePtr = mode.incPtrRX(rxWritePtr);
       rxFull = rxWritePtr == rxReadPtr;
+      seq++;
       modified = true;
+      if (rxPushListener != null) {
+        rxPushListener.pushed(value);
+      }
     } else {
-      if (stallIfFull) {
+      if (stallIfFull && !regFDEBUG_RXSTALL) {
         regFDEBUG_RXSTALL = true;
+        seq++;
       }
       modified = false;
     }
@@ -205,8 +298,12 @@ public class FIFO implements Constants
       value = memory[rxReadPtr];
       rxReadPtr = mode.incPtrRX(rxReadPtr);
       rxFull = false;
+      seq++;
     } else {
-      regFDEBUG_RXUNDER = true;
+      if (!regFDEBUG_RXUNDER) {
+        regFDEBUG_RXUNDER = true;
+        seq++;
+      }
       value = 0;
     }
     irq.setRxNEmpty(smNum, !fstatRxEmpty());
@@ -219,9 +316,11 @@ public class FIFO implements Constants
     return regFDEBUG_RXUNDER;
   }
 
-  public void clearRXUnder()
+  public synchronized void clearRXUnder()
   {
+    if (!regFDEBUG_RXUNDER) return;
     regFDEBUG_RXUNDER = false;
+    seq++;
   }
 
   public boolean isRXStall()
@@ -229,9 +328,11 @@ public class FIFO implements Constants
     return regFDEBUG_RXSTALL;
   }
 
-  public void clearRXStall()
+  public synchronized void clearRXStall()
   {
+    if (!regFDEBUG_RXSTALL) return;
     regFDEBUG_RXSTALL = false;
+    seq++;
   }
 
   public synchronized void setJoinTX(final boolean join)
@@ -276,10 +377,12 @@ public class FIFO implements Constants
       value = memory[txReadPtr];
       txReadPtr = mode.incPtrTX(txReadPtr);
       txFull = false;
+      seq++;
     } else {
       value = 0;
-      if (stallIfEmpty) {
+      if (stallIfEmpty && !regFDEBUG_TXSTALL) {
         regFDEBUG_TXSTALL = true;
+        seq++;
       }
     }
     irq.setTxNFull(smNum, !fstatTxFull());
@@ -300,6 +403,7 @@ public class FIFO implements Constants
       }
       regFDEBUG_TXOVER = true;
     }
+    seq++;
     irq.setTxNFull(smNum, !fstatTxFull());
     notifyAll();
   }
@@ -309,9 +413,11 @@ public class FIFO implements Constants
     return regFDEBUG_TXOVER;
   }
 
-  public void clearTXOver()
+  public synchronized void clearTXOver()
   {
+    if (!regFDEBUG_TXOVER) return;
     regFDEBUG_TXOVER = false;
+    seq++;
   }
 
   public boolean isTXStall()
@@ -319,9 +425,11 @@ public class FIFO implements Constants
     return regFDEBUG_TXSTALL;
   }
 
-  public void clearTXStall()
+  public synchronized void clearTXStall()
   {
+    if (!regFDEBUG_TXSTALL) return;
     regFDEBUG_TXSTALL = false;
+    seq++;
   }
 
   public int getMemValue(final int address)
@@ -330,10 +438,11 @@ public class FIFO implements Constants
     return memory[address];
   }
 
-  public void setMemValue(final int address, final int value)
+  public synchronized void setMemValue(final int address, final int value)
   {
     Constants.checkFIFOAddr(address, "address");
     memory[address] = value;
+    seq++;
   }
 }
 
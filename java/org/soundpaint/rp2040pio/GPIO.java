@@ -24,8 +24,12 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * General-Purpose Set of 32 Peripheral I/O Terminals
@@ -158,6 +162,11 @@ public class GPIO implements Constants
     }
   }
 
+  /**
+   * Serializes register accesses of clients that address GPIO
+   * configuration or pad state.
+   */
+  private final Object registersLock;
   private final PrintStream console;
   private final PIO pio0;
   private final PIO pio1;
@@ -178,6 +187,7 @@ public class GPIO implements Constants
     if (masterClock == null) {
       throw new NullPointerException("masterClock");
     }
+    registersLock = new Object();
     this.console = console;
     pio0 = new PIO(0, console, masterClock, this);
     pio1 = new PIO(1, console, masterClock, this);
@@ -195,6 +205,28 @@ public class GPIO implements Constants
     }
   }
 
+  /**
+   * Writes the configuration and external input of all terminals.
+   * The state of the PIOs is not included.
+   */
+  public synchronized void saveState(final DataOutput out) throws IOException
+  {
+    for (int port = 0; port < terminals.length; port++) {
+      out.writeInt(getCTRL(port));
+    }
+    out.writeInt(getGPIO_PADIN());
+    out.writeInt(regINPUT_SYNC_BYPASS);
+  }
+
+  public synchronized void restoreState(final DataInput in) throws IOException
+  {
+    for (int port = 0; port < terminals.length; port++) {
+      setCTRL(port, in.readInt(), 0xffffffff, false);
+    }
+    setGPIO_PADIN(in.readInt(), 0xffffffff, false);
+    regINPUT_SYNC_BYPASS = in.readInt();
+  }
+
   public PIO getPIO0() { return pio0; }
 
   public PIO getPIO1() { return pio1; }
@@ -283,6 +315,31 @@ public class GPIO implements Constants
       (terminal.function.getValue() << IO_BANK0_GPIO0_CTRL_FUNCSEL_LSB);
   }
 
+  /**
+   * Returns the monitor that serializes register accesses of clients
+   * that address GPIO configuration or pad state.
+   */
+  Object getRegistersLock()
+  {
+    return registersLock;
+  }
+
+  /**
+   * Applies the specified getter to this GPIO while holding the
+   * monitor that serializes register accesses, such that clients
+   * outside of the register layer get a consistent view of its
+   * state.
+   */
+  public int readLocked(final ToIntFunction<GPIO> getter)
+  {
+    if (getter == null) {
+      throw new NullPointerException("getter");
+    }
+    synchronized(registersLock) {
+      return getter.applyAsInt(this);
+    }
+  }
+
   public int getSTATUS(final int gpio)
   {
     Constants.checkGpioPin(gpio, "GPIO port");
@@ -347,7 +404,7 @@ public class GPIO implements Constants
                                                  oeBeforeOverride);
   }
 
-  private Bit getInFromPad(final int gpio)
+  public Bit getInFromPad(final int gpio)
   {
     Constants.checkGpioPin(gpio, "GPIO port");
     final Bit outBeforeOverride = getOutFromPeripheral(gpio);
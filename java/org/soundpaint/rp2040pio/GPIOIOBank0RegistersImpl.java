@@ -24,6 +24,8 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.util.function.IntSupplier;
+
 /**
  * Facade to the internal GPIO IO Bank 0 subsystem.  The layout of
  * registers follows the list of registers in Sect. 2.19.6 of the
@@ -53,15 +55,14 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
       throw new NullPointerException("gpio");
     }
     this.gpio = gpio;
+    installAccessors();
   }
 
   public GPIO getGPIO() { return gpio; }
 
   @Override
-  public void writeRegister(final int regNum, final int value,
-                            final int mask, final boolean xor)
+  protected Writer createWriter(final int regNum)
   {
-    checkRegNum(regNum);
     final Regs register = REGS[regNum];
     switch (register) {
     case GPIO0_STATUS:
@@ -94,7 +95,7 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
     case GPIO27_STATUS:
     case GPIO28_STATUS:
     case GPIO29_STATUS:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case GPIO0_CTRL:
     case GPIO1_CTRL:
     case GPIO2_CTRL:
@@ -125,15 +126,14 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
     case GPIO27_CTRL:
     case GPIO28_CTRL:
     case GPIO29_CTRL:
-      gpio.setCTRL((regNum - Regs.GPIO0_CTRL.ordinal()) / GPIO_DATA_SIZE,
-                   value, mask, xor);
-      break;
+      return (value, mask, xor) ->
+        gpio.setCTRL((regNum - Regs.GPIO0_CTRL.ordinal()) / GPIO_DATA_SIZE,
+                     value, mask, xor);
     case INTR0:
     case INTR1:
     case INTR2:
     case INTR3:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     case PROC0_INTE0:
     case PROC0_INTE1:
     case PROC0_INTE2:
@@ -142,8 +142,7 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
     case PROC1_INTE1:
     case PROC1_INTE2:
     case PROC1_INTE3:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     case PROC0_INTF0:
     case PROC0_INTF1:
     case PROC0_INTF2:
@@ -152,8 +151,7 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
     case PROC1_INTF1:
     case PROC1_INTF2:
     case PROC1_INTF3:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     case PROC0_INTS0:
     case PROC0_INTS1:
     case PROC0_INTS2:
@@ -162,35 +160,36 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
     case PROC1_INTS1:
     case PROC1_INTS2:
     case PROC1_INTS3:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     case DORMANT_WAKE_INTE0:
     case DORMANT_WAKE_INTE1:
     case DORMANT_WAKE_INTE2:
     case DORMANT_WAKE_INTE3:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     case DORMANT_WAKE_INTF0:
     case DORMANT_WAKE_INTF1:
     case DORMANT_WAKE_INTF2:
     case DORMANT_WAKE_INTF3:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     case DORMANT_WAKE_INTS0:
     case DORMANT_WAKE_INTS1:
     case DORMANT_WAKE_INTS2:
     case DORMANT_WAKE_INTS3:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     default:
       throw new InternalError("unexpected case fall-through");
     }
   }
 
   @Override
-  public synchronized int readRegister(final int regNum)
+  protected Object createLock(final int regNum)
+  {
+    return gpio.getRegistersLock();
+  }
+
+  @Override
+  protected IntSupplier createReader(final int regNum)
   {
-    checkRegNum(regNum);
     final Regs register = REGS[regNum];
     switch (register) {
     case GPIO0_STATUS:
@@ -223,7 +222,7 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
     case GPIO27_STATUS:
     case GPIO28_STATUS:
     case GPIO29_STATUS:
-      return
+      return () ->
         gpio.getSTATUS((regNum - Regs.GPIO0_STATUS.ordinal()) / GPIO_DATA_SIZE);
     case GPIO0_CTRL:
     case GPIO1_CTRL:
@@ -255,13 +254,13 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
     case GPIO27_CTRL:
     case GPIO28_CTRL:
     case GPIO29_CTRL:
-      return
+      return () ->
         gpio.getCTRL((regNum - Regs.GPIO0_CTRL.ordinal()) / GPIO_DATA_SIZE);
     case INTR0:
     case INTR1:
     case INTR2:
     case INTR3:
-      return 0; // TODO
+      return () -> 0; // TODO
     case PROC0_INTE0:
     case PROC0_INTE1:
     case PROC0_INTE2:
@@ -270,7 +269,7 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
     case PROC1_INTE1:
     case PROC1_INTE2:
     case PROC1_INTE3:
-      return 0; // TODO
+      return () -> 0; // TODO
     case PROC0_INTF0:
     case PROC0_INTF1:
     case PROC0_INTF2:
@@ -279,7 +278,7 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
     case PROC1_INTF1:
     case PROC1_INTF2:
     case PROC1_INTF3:
-      return 0; // TODO
+      return () -> 0; // TODO
     case PROC0_INTS0:
     case PROC0_INTS1:
     case PROC0_INTS2:
@@ -288,22 +287,22 @@ public class GPIOIOBank0RegistersImpl extends GPIOIOBank0Registers
     case PROC1_INTS1:
     case PROC1_INTS2:
     case PROC1_INTS3:
-      return 0; // TODO
+      return () -> 0; // TODO
     case DORMANT_WAKE_INTE0:
     case DORMANT_WAKE_INTE1:
     case DORMANT_WAKE_INTE2:
     case DORMANT_WAKE_INTE3:
-      return 0; // TODO
+      return () -> 0; // TODO
     case DORMANT_WAKE_INTF0:
     case DORMANT_WAKE_INTF1:
     case DORMANT_WAKE_INTF2:
     case DORMANT_WAKE_INTF3:
-      return 0; // TODO
+      return () -> 0; // TODO
     case DORMANT_WAKE_INTS0:
     case DORMANT_WAKE_INTS1:
     case DORMANT_WAKE_INTS2:
     case DORMANT_WAKE_INTS3:
-      return 0; // TODO
+      return () -> 0; // TODO
     default:
       throw new InternalError("unexpected case fall-through");
     }
@@ -24,6 +24,8 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.util.function.IntSupplier;
+
 /**
  * Facade to the internal GPIO Pads Bank 0 subsystem.  The layout of
  * registers follows the list of registers in Sect. 2.19.6 of the
@@ -47,20 +49,18 @@ public class GPIOPadsBank0RegistersImpl extends GPIOPadsBank0Registers
       throw new NullPointerException("gpio");
     }
     this.gpio = gpio;
+    installAccessors();
   }
 
   public GPIO getGPIO() { return gpio; }
 
   @Override
-  public void writeRegister(final int regNum, final int value,
-                            final int mask, final boolean xor)
+  protected Writer createWriter(final int regNum)
   {
-    checkRegNum(regNum);
     final Regs register = REGS[regNum];
     switch (register) {
     case VOLTAGE_SELECT:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     case GPIO0:
     case GPIO1:
     case GPIO2:
@@ -91,27 +91,29 @@ public class GPIOPadsBank0RegistersImpl extends GPIOPadsBank0Registers
     case GPIO27:
     case GPIO28:
     case GPIO29:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     case SWCLK:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     case SWD:
-      // TODO
-      break;
+      return (value, mask, xor) -> {}; // TODO
     default:
       throw new InternalError("unexpected case fall-through");
     }
   }
 
   @Override
-  public synchronized int readRegister(final int regNum)
+  protected Object createLock(final int regNum)
+  {
+    return gpio.getRegistersLock();
+  }
+
+  @Override
+  protected IntSupplier createReader(final int regNum)
   {
-    checkRegNum(regNum);
     final Regs register = REGS[regNum];
     switch (register) {
     case VOLTAGE_SELECT:
-      return 0; // TODO
+      return () -> 0; // TODO
     case GPIO0:
     case GPIO1:
     case GPIO2:
@@ -142,11 +144,11 @@ public class GPIOPadsBank0RegistersImpl extends GPIOPadsBank0Registers
     case GPIO27:
     case GPIO28:
     case GPIO29:
-      return 0; // TODO
+      return () -> 0; // TODO
     case SWCLK:
-      return 0; // TODO
+      return () -> 0; // TODO
     case SWD:
-      return 0; // TODO
+      return () -> 0; // TODO
     default:
       throw new InternalError("unexpected case fall-through");
     }
@@ -24,6 +24,7 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileInputStream;
@@ -34,13 +35,29 @@ import java.io.LineNumberReader;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 public class IOUtils
 {
+  /**
+   * Name of the index file that the build process creates in each
+   * resource directory that is to be listed, containing the names of
+   * all files of that directory, one name per line.
+   */
+  public static final String INDEX_FILE_NAME = "INDEX";
+
+  /**
+   * Listings of resource directories that are packaged in a jar file.
+   */
+  private static final Map<String, List<String>> listings =
+    new HashMap<String, List<String>>();
+
   /**
    * @param resourcePath absolute Path within root package, i.e. with
    * leading "/".
@@ -48,18 +65,19 @@ public class IOUtils
   public static InputStream getStreamForResourcePath(final String resourcePath)
     throws IOException
   {
-    final InputStream fromFile;
-    try {
-      fromFile = new FileInputStream(resourcePath);
-    } catch (final FileNotFoundException e) {
-      final InputStream fromResource =
-        Constants.class.getResourceAsStream(resourcePath);
-      if (fromResource == null) {
-        throw new IOException("resource not found: " + resourcePath);
+    if (new File(resourcePath).isFile()) {
+      try {
+        return new FileInputStream(resourcePath);
+      } catch (final FileNotFoundException e) {
+        // fall back to class path resource
       }
-      return fromResource;
     }
-    return fromFile;
+    final InputStream fromResource =
+      Constants.class.getResourceAsStream(resourcePath);
+    if (fromResource == null) {
+      throw new IOException("resource not found: " + resourcePath);
+    }
+    return fromResource;
   }
 
   public static LineNumberReader
@@ -71,15 +89,93 @@ public class IOUtils
   }
 
   /**
+   * Reads all remaining lines from the specified reader and closes
+   * it.
+   */
+  public static List<String> readLines(final BufferedReader in)
+    throws IOException
+  {
+    final List<String> lines = new ArrayList<String>();
+    try {
+      while (true) {
+        final String line = in.readLine();
+        if (line == null) break;
+        lines.add(line);
+      }
+    } finally {
+      in.close();
+    }
+    return lines;
+  }
+
+  /**
+   * Returns the jar file or class path directory that this class has
+   * been loaded from.
+   */
+  private static File getCodeSource()
+  {
+    return
+      new File(IOUtils.class.getProtectionDomain().
+               getCodeSource().getLocation().getPath());
+  }
+
+  /**
+   * Returns the names of all files in the specified resource
+   * directory.  If the directory contains an index file, the names
+   * are taken from that file rather than scanning the jar file or
+   * file system.  If the resources are packaged in a jar file, which
+   * does not change while running, the names are determined only
+   * once and then remembered for subsequent calls.  Otherwise, the
+   * file system is consulted upon each call, such that files that
+   * have been added in the meantime are found.
+   *
    * @param resourcePath Path relative to root package, i.e. without
    * leading "/".
    */
   public static List<String> list(final String resourcePath) throws IOException
   {
+    final boolean cacheable = getCodeSource().isFile();
+    if (cacheable) {
+      synchronized(listings) {
+        final List<String> listing = listings.get(resourcePath);
+        if (listing != null) return listing;
+      }
+    }
+    final List<String> indexedPaths = listIndex(resourcePath);
+    final List<String> paths =
+      indexedPaths != null ? indexedPaths : scan(resourcePath);
+    final List<String> listing = Collections.unmodifiableList(paths);
+    if (cacheable) {
+      synchronized(listings) {
+        listings.put(resourcePath, listing);
+      }
+    }
+    return listing;
+  }
+
+  private static List<String> listIndex(final String resourcePath)
+    throws IOException
+  {
+    final InputStream in =
+      IOUtils.class.getResourceAsStream("/" + resourcePath + "/" +
+                                        INDEX_FILE_NAME);
+    if (in == null) return null;
     final List<String> paths = new ArrayList<String>();
-    final File resourceFile =
-      new File(IOUtils.class.getProtectionDomain().
-               getCodeSource().getLocation().getPath());
+    for (final String line :
+           readLines(new BufferedReader(new InputStreamReader(in)))) {
+      final String path = line.trim();
+      if (!path.isEmpty()) {
+        paths.add(path);
+      }
+    }
+    return paths;
+  }
+
+  private static List<String> scan(final String resourcePath)
+    throws IOException
+  {
+    final List<String> paths = new ArrayList<String>();
+    final File resourceFile = getCodeSource();
     if (resourceFile.isFile()) {
       final JarFile jarFile = new JarFile(resourceFile);
       final Enumeration<JarEntry> entries = jarFile.entries();
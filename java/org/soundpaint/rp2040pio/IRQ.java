@@ -24,8 +24,18 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * IRQ Register Set
+ *
+ * The values of INTR, IRQ0_INTS and IRQ1_INTS are not computed upon
+ * read access, but kept up to date whenever any of their sources
+ * changes.  Rising edges of the two outgoing IRQ lines IRQ0 and IRQ1
+ * (i.e. IRQ0_INTS or IRQ1_INTS, respectively, becoming non-zero) are
+ * counted.
  */
 public class IRQ implements Constants
 {
@@ -34,14 +44,19 @@ public class IRQ implements Constants
   private int regIRQ0_INTF; // bits 0…11 of IRQ0_INTF
   private int regIRQ1_INTE; // bits 0…11 of IRQ1_INTE
   private int regIRQ1_INTF; // bits 0…11 of IRQ1_INTF
-  private int fifoStatus;
+  private volatile int fifoStatus; // bits 0…7 of INTR
+  private int intr; // bits 0…11 of INTR
+  private int ints0; // bits 0…11 of IRQ0_INTS
+  private int ints1; // bits 0…11 of IRQ1_INTS
+  private int irq0RisingEdges;
+  private int irq1RisingEdges;
 
   public IRQ()
   {
     reset();
   }
 
-  public void reset()
+  public synchronized void reset()
   {
     regIRQ = 0;
     regIRQ0_INTE = 0;
@@ -49,36 +64,115 @@ public class IRQ implements Constants
     regIRQ1_INTE = 0;
     regIRQ1_INTF = 0;
     fifoStatus = 0;
+    irq0RisingEdges = 0;
+    irq1RisingEdges = 0;
+    updateINTR();
   }
 
-  public void setTxNFull(final int smNum, final boolean nFull)
+  public synchronized void saveState(final DataOutput out) throws IOException
+  {
+    out.writeInt(regIRQ);
+    out.writeInt(regIRQ0_INTE);
+    out.writeInt(regIRQ0_INTF);
+    out.writeInt(regIRQ1_INTE);
+    out.writeInt(regIRQ1_INTF);
+    out.writeInt(fifoStatus);
+    out.writeInt(irq0RisingEdges);
+    out.writeInt(irq1RisingEdges);
+  }
+
+  /**
+   * Reads back what has been written by saveState().  The rising
+   * edge counters are restored to their saved values, regardless of
+   * any line level change caused by the restore.
+   */
+  public synchronized void restoreState(final DataInput in) throws IOException
+  {
+    regIRQ = in.readInt();
+    regIRQ0_INTE = in.readInt();
+    regIRQ0_INTF = in.readInt();
+    regIRQ1_INTE = in.readInt();
+    regIRQ1_INTF = in.readInt();
+    fifoStatus = in.readInt();
+    final int irq0RisingEdges = in.readInt();
+    final int irq1RisingEdges = in.readInt();
+    updateINTR();
+    this.irq0RisingEdges = irq0RisingEdges;
+    this.irq1RisingEdges = irq1RisingEdges;
+  }
+
+  private void updateINTS()
   {
-    Constants.checkSmNum(smNum);
-    if (nFull) {
-      fifoStatus |= 0x10 << smNum;
-    } else {
-      fifoStatus &= ~(0x10 << smNum);
+    final int oldINTS0 = ints0;
+    final int oldINTS1 = ints1;
+    ints0 = (intr & regIRQ0_INTE) | regIRQ0_INTF;
+    ints1 = (intr & regIRQ1_INTE) | regIRQ1_INTF;
+    if ((oldINTS0 == 0) && (ints0 != 0)) irq0RisingEdges++;
+    if ((oldINTS1 == 0) && (ints1 != 0)) irq1RisingEdges++;
+  }
+
+  private void updateINTR()
+  {
+    intr = ((regIRQ & 0xf) << 8) | fifoStatus;
+    updateINTS();
+  }
+
+  /**
+   * Sets or clears the specified FIFO status bit.  Called by the
+   * FIFOs upon each FIFO access, such that the common case of an
+   * unchanged status bit is checked without taking the monitor.
+   */
+  private void setFifoStatusBit(final int bit, final boolean value)
+  {
+    if (((fifoStatus & bit) != 0) == value) return;
+    synchronized(this) {
+      final int fifoStatus =
+        value ? this.fifoStatus | bit : this.fifoStatus & ~bit;
+      if (fifoStatus != this.fifoStatus) {
+        this.fifoStatus = fifoStatus;
+        updateINTR();
+      }
     }
   }
 
-  public void setRxNEmpty(final int smNum, final boolean nEmpty)
+  private void setRegIRQ(final int regIRQ)
   {
-    Constants.checkSmNum(smNum);
-    if (nEmpty) {
-      fifoStatus |= 0x1 << smNum;
-    } else {
-      fifoStatus &= ~(0x1 << smNum);
+    final int oldRegIRQ = this.regIRQ;
+    this.regIRQ = regIRQ;
+    if (((regIRQ ^ oldRegIRQ) & 0xf) != 0) {
+      // only SM IRQ flags 0…3 are visible in INTR
+      updateINTR();
     }
   }
 
-  public void writeRegIRQ(final int value)
+  /**
+   * @param smNum The number of the SM that this flag refers to.  For
+   * performance reasons, it is not checked, but silently truncated
+   * to the range 0…3.
+   */
+  public void setTxNFull(final int smNum, final boolean nFull)
+  {
+    setFifoStatusBit(0x10 << (smNum & 0x3), nFull);
+  }
+
+  /**
+   * @param smNum The number of the SM that this flag refers to.  For
+   * performance reasons, it is not checked, but silently truncated
+   * to the range 0…3.
+   */
+  public void setRxNEmpty(final int smNum, final boolean nEmpty)
   {
-    regIRQ &= (~value) & 0xff; // ignore reserved bits 31:8
+    setFifoStatusBit(0x1 << (smNum & 0x3), nEmpty);
   }
 
-  public void writeRegIRQ_FORCE(final int value)
+  public synchronized void writeRegIRQ(final int value)
   {
-    regIRQ |= value & 0xff; // ignore reserved bits 31:8
+    setRegIRQ(regIRQ & (~value) & 0xff); // ignore reserved bits 31:8
+  }
+
+  public synchronized void writeRegIRQ_FORCE(final int value)
+  {
+    setRegIRQ(regIRQ | (value & 0xff)); // ignore reserved bits 31:8
   }
 
   public Bit get(final int index)
@@ -92,7 +186,7 @@ public class IRQ implements Constants
     return ((regIRQ >> index) & 0x1) == 0x0 ? Bit.LOW : Bit.HIGH;
   }
 
-  public void clear(final int index)
+  public synchronized void clear(final int index)
   {
     if (index < 0) {
       throw new IllegalArgumentException("IRQ index < 0: " + index);
@@ -100,10 +194,10 @@ public class IRQ implements Constants
     if (index > 7) {
       throw new IllegalArgumentException("IRQ index > 7: " + index);
     }
-    regIRQ &= ~(0x1 << index);
+    setRegIRQ(regIRQ & ~(0x1 << index));
   }
 
-  public void set(final int index)
+  public synchronized void set(final int index)
   {
     if (index < 0) {
       throw new IllegalArgumentException("IRQ index < 0: " + index);
@@ -111,7 +205,7 @@ public class IRQ implements Constants
     if (index > 7) {
       throw new IllegalArgumentException("IRQ index > 7: " + index);
     }
-    regIRQ |= 0x1 << index;
+    setRegIRQ(regIRQ | (0x1 << index));
   }
 
   public int getIRQ()
@@ -124,7 +218,8 @@ public class IRQ implements Constants
     return regIRQ0_INTE;
   }
 
-  public void setIRQ0_INTE(final int value, final int mask, final boolean xor)
+  public synchronized void setIRQ0_INTE(final int value, final int mask,
+                                        final boolean xor)
   {
     setIRQ0_INTE(Constants.hwSetBits(regIRQ0_INTE, value, mask, xor));
   }
@@ -132,6 +227,7 @@ public class IRQ implements Constants
   private void setIRQ0_INTE(final int value)
   {
     regIRQ0_INTE = value & 0xfff; // ignore reserved bits 31:12
+    updateINTS();
   }
 
   public int getIRQ1_INTE()
@@ -139,7 +235,8 @@ public class IRQ implements Constants
     return regIRQ1_INTE;
   }
 
-  public void setIRQ1_INTE(final int value, final int mask, final boolean xor)
+  public synchronized void setIRQ1_INTE(final int value, final int mask,
+                                        final boolean xor)
   {
     setIRQ1_INTE(Constants.hwSetBits(regIRQ1_INTE, value, mask, xor));
   }
@@ -147,6 +244,7 @@ public class IRQ implements Constants
   private void setIRQ1_INTE(final int value)
   {
     regIRQ1_INTE = value & 0xfff; // ignore reserved bits 31:12
+    updateINTS();
   }
 
   public int getIRQ0_INTF()
@@ -154,7 +252,8 @@ public class IRQ implements Constants
     return regIRQ0_INTF;
   }
 
-  public void setIRQ0_INTF(final int value, final int mask, final boolean xor)
+  public synchronized void setIRQ0_INTF(final int value, final int mask,
+                                        final boolean xor)
   {
     setIRQ0_INTF(Constants.hwSetBits(regIRQ0_INTF, value, mask, xor));
   }
@@ -162,6 +261,7 @@ public class IRQ implements Constants
   private void setIRQ0_INTF(final int value)
   {
     regIRQ0_INTF = value & 0xfff; // ignore reserved bits 31:12
+    updateINTS();
   }
 
   public int getIRQ1_INTF()
@@ -169,7 +269,8 @@ public class IRQ implements Constants
     return regIRQ1_INTF;
   }
 
-  public void setIRQ1_INTF(final int value, final int mask, final boolean xor)
+  public synchronized void setIRQ1_INTF(final int value, final int mask,
+                                        final boolean xor)
   {
     setIRQ1_INTF(Constants.hwSetBits(regIRQ1_INTF, value, mask, xor));
   }
@@ -177,21 +278,37 @@ public class IRQ implements Constants
   private void setIRQ1_INTF(final int value)
   {
     regIRQ1_INTF = value & 0xfff; // ignore reserved bits 31:12
+    updateINTS();
+  }
+
+  public synchronized int readINTR()
+  {
+    return intr;
   }
 
-  public int readINTR()
+  public synchronized int readIRQ0_INTS()
   {
-    return ((regIRQ & 0x7) << 8) | fifoStatus;
+    return ints0;
   }
 
-  public int readIRQ0_INTS()
+  public synchronized int readIRQ1_INTS()
   {
-    return (readINTR() & regIRQ0_INTE) | regIRQ0_INTF;
+    return ints1;
   }
 
-  public int readIRQ1_INTS()
+  /**
+   * Returns the levels of both IRQ lines in bits 0 (IRQ0) and 1
+   * (IRQ1), and the number of rising edges (modulo 256) that
+   * occurred on line IRQ0 and IRQ1 in bits 8…15 and 16…23,
+   * respectively.
+   */
+  public synchronized int getIRQLines()
   {
-    return (readINTR() & regIRQ1_INTE) | regIRQ1_INTF;
+    return
+      ((irq1RisingEdges & 0xff) << 16) |
+      ((irq0RisingEdges & 0xff) << 8) |
+      (ints1 != 0 ? 0x2 : 0x0) |
+      (ints0 != 0 ? 0x1 : 0x0);
   }
 }
 
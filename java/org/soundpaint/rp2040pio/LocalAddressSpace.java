@@ -25,8 +25,8 @@
 package org.soundpaint.rp2040pio;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
 
 public class LocalAddressSpace extends AddressSpace
 {
@@ -39,38 +39,75 @@ public class LocalAddressSpace extends AddressSpace
   private final PIORegistersImpl pio1Registers;
   private final PIOEmuRegistersImpl pio1EmuRegisters;
 
-  /*
-   * TODO: Really should replace this simple-minded list approach with
-   * either a responsibility chain or a composite design pattern, as
-   * soon as the number of registers interfaces grows.
+  /**
+   * Direct-indexed two-level table for resolving an address to the
+   * register set that provides it.  Since the base address of each
+   * register set is aligned to 0x4000, the first level is indexed by
+   * address bits 24…31, and the second level by address bits 14…23.
+   * Second level tables are created only for those first level
+   * entries that actually hold register sets.
    */
-  private final List<RegisterSet> registerSetList;
+  private final RegisterSet[][] registerSetTable;
+
+  // Note that neither read nor write access is synchronized on the
+  // address space as a whole.  Instead, each register set serializes
+  // accesses per register, with the locks striped per PIO, per state
+  // machine and for the GPIO bank, see RegisterSet#createLock().
 
   public LocalAddressSpace(final Emulator emulator)
   {
     this.emulator = emulator;
 
-    registerSetList = new ArrayList<RegisterSet>();
+    registerSetTable = new RegisterSet[0x100][];
     picoEmuRegisters = new PicoEmuRegistersImpl(emulator);
-    registerSetList.add(picoEmuRegisters);
+    addRegisterSet(picoEmuRegisters);
 
     final GPIO gpio = emulator.getGPIO();
     gpioIOBank0Registers = new GPIOIOBank0RegistersImpl(gpio);
-    registerSetList.add(gpioIOBank0Registers);
+    addRegisterSet(gpioIOBank0Registers);
     gpioPadsBank0Registers = new GPIOPadsBank0RegistersImpl(gpio);
-    registerSetList.add(gpioPadsBank0Registers);
+    addRegisterSet(gpioPadsBank0Registers);
 
     final PIO pio0 = emulator.getPIO0();
     pio0Registers = new PIORegistersImpl(pio0);
-    registerSetList.add(pio0Registers);
+    addRegisterSet(pio0Registers);
     pio0EmuRegisters = new PIOEmuRegistersImpl(pio0);
-    registerSetList.add(pio0EmuRegisters);
+    addRegisterSet(pio0EmuRegisters);
 
     final PIO pio1 = emulator.getPIO1();
     pio1Registers = new PIORegistersImpl(pio1);
-    registerSetList.add(pio1Registers);
+    addRegisterSet(pio1Registers);
     pio1EmuRegisters = new PIOEmuRegistersImpl(pio1);
-    registerSetList.add(pio1EmuRegisters);
+    addRegisterSet(pio1EmuRegisters);
+  }
+
+  private void addRegisterSet(final RegisterSet registers)
+  {
+    final int baseAddress = registers.getBaseAddress();
+    final int pageIndex = baseAddress >>> 24;
+    if (registerSetTable[pageIndex] == null) {
+      registerSetTable[pageIndex] = new RegisterSet[0x400];
+    }
+    final RegisterSet[] page = registerSetTable[pageIndex];
+    final int slotIndex = (baseAddress >>> 14) & 0x3ff;
+    if (page[slotIndex] != null) {
+      final String message =
+        String.format("register sets %s and %s overlap at 0x%08x",
+                      page[slotIndex].getId(), registers.getId(),
+                      baseAddress);
+      throw new InternalError(message);
+    }
+    page[slotIndex] = registers;
+  }
+
+  /**
+   * Returns the emulator that this address space provides access to.
+   * Clients in the same JVM may use it for accessing the emulator's
+   * components directly, without resolving register addresses.
+   */
+  public Emulator getEmulator()
+  {
+    return emulator;
   }
 
   @Override
@@ -119,13 +156,16 @@ public class LocalAddressSpace extends AddressSpace
   private RegisterSet getProvidingRegisters(final int address)
     throws IOException
   {
-    for (final RegisterSet registers : registerSetList) {
-      final int regNum = address2register(registers, address);
-      if (regNum < registers.getSize()) {
-        return registers;
-      }
+    final RegisterSet[] page = registerSetTable[address >>> 24];
+    if (page == null) {
+      return null;
+    }
+    final RegisterSet registers = page[(address >>> 14) & 0x3ff];
+    if (registers == null) {
+      return null;
     }
-    return null;
+    final int regNum = address2register(registers, address);
+    return regNum < registers.getSize() ? registers : null;
   }
 
   @Override
@@ -161,9 +201,21 @@ public class LocalAddressSpace extends AddressSpace
     throw new IOException(message);
   }
 
-  @Override
-  public synchronized void writeAddressMasked(final int address, final int bits,
-                                              final int mask, final boolean xor)
+  /**
+   * Wakes up threads that wait for register values, since a write
+   * may change registers without the clock advancing, e.g. in single
+   * step mode.
+   */
+  private void notifyRegisterWaiters()
+  {
+    final Object registerWaitLock =
+      emulator.getMasterClock().getRegisterWaitLock();
+    synchronized(registerWaitLock) {
+      registerWaitLock.notifyAll();
+    }
+  }
+
+  private RegisterSet getWritableRegisters(final int address)
     throws IOException
   {
     if ((address & 0x3000) != 0x0000) {
@@ -173,26 +225,82 @@ public class LocalAddressSpace extends AddressSpace
       throw new IOException(message);
     }
     final RegisterSet registers = getProvidingRegisters(address);
-    if (registers != null) {
-      final int regNum = address2register(registers, address);
-      try {
-        registers.writeRegister(regNum, bits, mask, xor);
-      } catch (final Throwable t) {
-        final String message = t.getMessage();
-        emulator.getConsole().
-          printf("warning: internal error occurred: %s%n", message);
-        t.printStackTrace(emulator.getConsole());
+    if (registers == null) {
+      final String message =
+        String.format("write on unsupported address: %08x", address);
+      throw new IOException(message);
+    }
+    return registers;
+  }
+
+  private void writeRegister(final RegisterSet registers, final int address,
+                             final int bits, final int mask,
+                             final boolean xor)
+    throws IOException
+  {
+    final int regNum = address2register(registers, address);
+    try {
+      registers.writeRegister(regNum, bits, mask, xor);
+    } catch (final Throwable t) {
+      final String message = t.getMessage();
+      emulator.getConsole().
+        printf("warning: internal error occurred: %s%n", message);
+      t.printStackTrace(emulator.getConsole());
+      throw new IOException(message);
+    }
+  }
+
+  @Override
+  public void writeAddressMasked(final int address, final int bits,
+                                 final int mask, final boolean xor)
+    throws IOException
+  {
+    writeRegister(getWritableRegisters(address), address, bits, mask, xor);
+    notifyRegisterWaiters();
+  }
+
+  /**
+   * All addresses are resolved and checked before any write is
+   * applied.  The writes are then applied while holding the master
+   * clock's phase lock.  Register waiters are notified even if some
+   * write fails, since the writes before it remain applied.
+   */
+  @Override
+  public void writeAddressesAtomically(final int[] addresses,
+                                       final int[] bits,
+                                       final int[] masks,
+                                       final boolean[] xors)
+    throws IOException
+  {
+    checkWrites(addresses, bits, masks, xors);
+    final RegisterSet[] registerSets = new RegisterSet[addresses.length];
+    for (int index = 0; index < addresses.length; index++) {
+      final int address = addresses[index];
+      final RegisterSet registers = getWritableRegisters(address);
+      if ((registers == picoEmuRegisters) &&
+          !picoEmuRegisters.
+          isAtomicallyWritable(address2register(registers, address))) {
+        final String message =
+          String.format("address not allowed in transaction: %08x",
+                        address);
         throw new IOException(message);
       }
-      return;
+      registerSets[index] = registers;
+    }
+    try {
+      synchronized(emulator.getMasterClock().getPhaseLock()) {
+        for (int index = 0; index < addresses.length; index++) {
+          writeRegister(registerSets[index], addresses[index], bits[index],
+                        masks[index], xors[index]);
+        }
+      }
+    } finally {
+      notifyRegisterWaiters();
     }
-    final String message =
-      String.format("write on unsupported address: %08x", address);
-    throw new IOException(message);
   }
 
   @Override
-  public synchronized int readAddress(final int address) throws IOException
+  public int readAddress(final int address) throws IOException
   {
     final RegisterSet registers = getProvidingRegisters(address);
     if (registers != null) {
@@ -212,6 +320,34 @@ public class LocalAddressSpace extends AddressSpace
     throw new IOException(message);
   }
 
+  @Override
+  public int[] readAddresses(final int[] addresses) throws IOException
+  {
+    if (addresses == null) {
+      throw new NullPointerException("addresses");
+    }
+    final int[] values = new int[addresses.length];
+    synchronized(emulator.getMasterClock().getPhaseLock()) {
+      for (int index = 0; index < addresses.length; index++) {
+        values[index] = readAddress(addresses[index]);
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public int[] sampleAddresses(final int[] addresses, final int cycles)
+    throws IOException
+  {
+    if (addresses == null) {
+      throw new NullPointerException("addresses");
+    }
+    checkSampleCount(addresses, cycles);
+    return
+      new CycleSampler(emulator.getMasterClock(), this, addresses, cycles).
+      sample();
+  }
+
   private static boolean timedOut(final long startWallClock,
                                   final long stopWallClock,
                                   final long wallClock)
@@ -222,6 +358,74 @@ public class LocalAddressSpace extends AddressSpace
       (wallClock < startWallClock) && (wallClock >= stopWallClock);
   }
 
+  /**
+   * Waits for the next notification of a clock phase change or
+   * register write.  Must be called while holding the register wait
+   * lock, after having checked the awaited condition.
+   * @return False, if the timeout has already elapsed.
+   */
+  private static boolean awaitRegisterChange(final Object registerWaitLock,
+                                             final long startTime,
+                                             final long stopTime,
+                                             final long millisTimeout)
+    throws InterruptedIOException
+  {
+    try {
+      if (millisTimeout != 0) {
+        final long time = System.currentTimeMillis();
+        if (timedOut(startTime, stopTime, time)) return false;
+        registerWaitLock.wait(stopTime - time);
+      } else {
+        registerWaitLock.wait();
+      }
+      return true;
+    } catch (final InterruptedException e) {
+      // keep interrupt status for the caller's own checks
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("wait interrupted");
+    }
+  }
+
+  @Override
+  public int[] waitAddressesChanged(final int[] addresses,
+                                    final int[] values,
+                                    final long millisTimeout)
+    throws IOException
+  {
+    if (addresses == null) {
+      throw new NullPointerException("addresses");
+    }
+    if (values == null) {
+      throw new NullPointerException("values");
+    }
+    if (values.length != addresses.length) {
+      throw new IllegalArgumentException("values.length != " +
+                                         "addresses.length: " +
+                                         values.length + " != " +
+                                         addresses.length);
+    }
+    if (millisTimeout < 0) {
+      throw new IllegalArgumentException("millisTimeout < 0: " + millisTimeout);
+    }
+    final Object registerWaitLock =
+      emulator.getMasterClock().getRegisterWaitLock();
+    final long startTime = System.currentTimeMillis();
+    final long stopTime = startTime + millisTimeout;
+    int[] receivedValues;
+    // compare and wait atomically w.r.t. notifications, such that a
+    // change right after reading is not missed
+    synchronized(registerWaitLock) {
+      while (Arrays.equals(receivedValues = readAddresses(addresses),
+                           values)) {
+        if (!awaitRegisterChange(registerWaitLock, startTime, stopTime,
+                                 millisTimeout)) {
+          break;
+        }
+      }
+    }
+    return receivedValues;
+  }
+
   @Override
   public int waitAddress(final int address, final int expectedValue,
                          final int mask,
@@ -235,24 +439,23 @@ public class LocalAddressSpace extends AddressSpace
       throw new IllegalArgumentException("millisTimeout < 0: " + millisTimeout);
     }
     final MasterClock masterClock = emulator.getMasterClock();
+    final Object registerWaitLock = masterClock.getRegisterWaitLock();
     final long startWallClock = masterClock.getWallClock();
     final long stopWallClock = startWallClock + cyclesTimeout;
     final long startTime = System.currentTimeMillis();
     final long stopTime = startTime + millisTimeout;
     int receivedValue;
-    while (((receivedValue = readAddress(address) & mask) != expectedValue)) {
-      final long wallClock = masterClock.getWallClock();
-      if (timedOut(startWallClock, stopWallClock, wallClock)) break;
-      try {
-        if (millisTimeout != 0) {
-          final long time = System.currentTimeMillis();
-          if (timedOut(startTime, stopTime, time)) break;
-          masterClock.awaitPhaseChange(stopTime - time);
-        } else {
-          masterClock.awaitPhaseChange();
+    // compare and wait atomically w.r.t. notifications, such that a
+    // change right after reading is not missed
+    synchronized(registerWaitLock) {
+      while (((receivedValue = readAddress(address) & mask) !=
+              expectedValue)) {
+        final long wallClock = masterClock.getWallClock();
+        if (timedOut(startWallClock, stopWallClock, wallClock)) break;
+        if (!awaitRegisterChange(registerWaitLock, startTime, stopTime,
+                                 millisTimeout)) {
+          break;
         }
-      } catch (final InterruptedException e) {
-        // ignore here, since check in while condition
       }
     }
     return receivedValue;
@@ -24,6 +24,10 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -47,6 +51,14 @@ public class MasterClock implements Clock, Constants
 
   private static final Mode[] MODES = Mode.values();
 
+  private static final Phase[] PHASES = Phase.values();
+
+  @FunctionalInterface
+  public static interface HaltedAccess
+  {
+    void access() throws IOException;
+  }
+
   private class DrivingGear extends Thread
   {
     public DrivingGear()
@@ -54,16 +66,32 @@ public class MasterClock implements Clock, Constants
       super("Emulation Thread");
     }
 
+    /**
+     * Waits for being notified, while announcing to accessHalted()
+     * that this thread is parked between two clock phases.  Must be
+     * called while holding this thread's monitor.
+     */
+    private void park()
+    {
+      parked = true;
+      notifyAll();
+      try {
+        wait();
+      } catch (final InterruptedException e) {
+        // ignore here, since caller checks in while condition
+      }
+      parked = false;
+    }
+
     private void runSingleStep()
     {
       synchronized(this) {
+        // check before waiting, since terminate() may have been
+        // called before this thread has entered the lock
+        if (terminate) return;
         while ((mode == Mode.SINGLE_STEP) &&
                (phase == Phase.PHASE_1_STABLE)) {
-          try {
-            wait();
-          } catch (final InterruptedException e) {
-            // ignore here, since check in while condition
-          }
+          park();
           if (terminate) return;
         }
         if (phase == Phase.PHASE_0_IN_PROGRESS) {
@@ -72,11 +100,7 @@ public class MasterClock implements Clock, Constants
         }
         while ((mode == Mode.SINGLE_STEP) &&
                (phase == Phase.PHASE_0_STABLE)) {
-          try {
-            wait();
-          } catch (final InterruptedException e) {
-            // ignore here, since check in while condition
-          }
+          park();
           if (terminate) return;
         }
         if (phase == Phase.PHASE_1_IN_PROGRESS) {
@@ -124,17 +148,30 @@ public class MasterClock implements Clock, Constants
    */
   private final Object registerWaitLock;
 
+  /**
+   * Held by the emulation thread while processing a clock edge, such
+   * that clients that acquire this lock see the emulator in a stable
+   * phase.
+   */
+  private final Object phaseLock;
+
   private final DrivingGear drivingGear;
   private final List<TransitionListener> listeners;
   private long frequency;
   private double milliSecondsPerCycle;
   private Mode mode;
   private Phase phase;
-  private long wallClock;
+  private volatile long wallClock; // read by clients without lock
   private long refWallClock;
   private long refRealTime;
   private boolean terminate;
 
+  /**
+   * True while the emulation thread waits between two clock phases
+   * in single step mode.  Guarded by the driving gear's monitor.
+   */
+  private boolean parked;
+
   private MasterClock()
   {
     throw new UnsupportedOperationException("unsupported empty constructor");
@@ -148,6 +185,7 @@ public class MasterClock implements Clock, Constants
     this.console = console;
     accountingLock = new Object();
     registerWaitLock = new Object();
+    phaseLock = new Object();
     drivingGear = new DrivingGear();
     listeners = new ArrayList<TransitionListener>();
     reset();
@@ -172,7 +210,7 @@ public class MasterClock implements Clock, Constants
   {
     synchronized(drivingGear) {
       terminate = true;
-      drivingGear.notify();
+      drivingGear.notifyAll();
     }
   }
 
@@ -228,11 +266,22 @@ public class MasterClock implements Clock, Constants
     return registerWaitLock;
   }
 
+  /**
+   * Returns a lock that, while being held, prevents the emulation
+   * from advancing into the next clock phase.  Clients should hold
+   * this lock only for a short time, since the emulation thread
+   * blocks while it is held.
+   */
+  public Object getPhaseLock()
+  {
+    return phaseLock;
+  }
+
   public void setMASTERCLK_FREQ(final int frequency)
   {
     synchronized(drivingGear) {
       setFrequency(frequency);
-      drivingGear.notify();
+      drivingGear.notifyAll();
     }
   }
 
@@ -245,7 +294,7 @@ public class MasterClock implements Clock, Constants
   {
     synchronized(drivingGear) {
       this.mode = mode;
-      drivingGear.notify();
+      drivingGear.notifyAll();
       resetRef();
     }
   }
@@ -262,16 +311,97 @@ public class MasterClock implements Clock, Constants
     return mode.ordinal();
   }
 
+  /**
+   * Performs the specified access while the emulation thread is
+   * parked between two clock phases, such that the access may freely
+   * modify the state of the emulator.  The emulation thread parks
+   * only in single step mode.  Right after switching to single step
+   * mode, it may still be processing a cycle, such that this method
+   * first waits for the emulation thread to park.
+   *
+   * @return False, if the master clock is not in single step mode,
+   * such that the access has not been performed.
+   */
+  public boolean accessHalted(final HaltedAccess access) throws IOException
+  {
+    if (access == null) {
+      throw new NullPointerException("access");
+    }
+    synchronized(drivingGear) {
+      while (!parked) {
+        if ((mode != Mode.SINGLE_STEP) || terminate) return false;
+        try {
+          drivingGear.wait();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("interrupted while waiting " +
+                                           "for emulation to halt");
+        }
+      }
+      if (mode != Mode.SINGLE_STEP) return false;
+      synchronized(phaseLock) {
+        access.access();
+      }
+      drivingGear.notifyAll();
+    }
+    return true;
+  }
+
+  /**
+   * Writes frequency, mode, phase and wall clock.  Should be called
+   * while holding the phase lock.  A phase that is about to start is
+   * saved as the stable phase right before, since the emulation
+   * thread has not yet announced the respective clock edge.
+   */
+  public void saveState(final DataOutput out) throws IOException
+  {
+    final Phase stablePhase;
+    switch (phase) {
+    case PHASE_0_IN_PROGRESS:
+      stablePhase = Phase.PHASE_1_STABLE;
+      break;
+    case PHASE_1_IN_PROGRESS:
+      stablePhase = Phase.PHASE_0_STABLE;
+      break;
+    default:
+      stablePhase = phase;
+      break;
+    }
+    out.writeInt((int)frequency);
+    out.writeByte(mode.ordinal());
+    out.writeByte(stablePhase.ordinal());
+    out.writeLong(wallClock);
+  }
+
+  /**
+   * Reads back what has been written by saveState().  Must be called
+   * from within accessHalted().
+   */
+  public void restoreState(final DataInput in) throws IOException
+  {
+    setFrequency(in.readInt());
+    final Mode mode = Mode.fromValue(in.readByte());
+    phase = PHASES[in.readByte()];
+    wallClock = in.readLong();
+    this.mode = mode;
+    resetRef();
+  }
+
   @Override
   public void addTransitionListener(final TransitionListener listener)
   {
-    listeners.add(listener);
+    // listeners are announced while holding the phase lock
+    synchronized(phaseLock) {
+      listeners.add(listener);
+    }
   }
 
   @Override
   public boolean removeTransitionListener(final TransitionListener listener)
   {
-    return listeners.remove(listener);
+    synchronized(phaseLock) {
+      return listeners.remove(listener);
+    }
   }
 
   @Override
@@ -303,7 +433,7 @@ public class MasterClock implements Clock, Constants
       synchronized(drivingGear) {
         if (phase == Phase.PHASE_1_STABLE) {
           phase = Phase.PHASE_0_IN_PROGRESS;
-          drivingGear.notify();
+          drivingGear.notifyAll();
         }
       }
     }
@@ -315,8 +445,10 @@ public class MasterClock implements Clock, Constants
       console.println("warning: cyclePhase0: unexpected phase: " + phase);
       return;
     }
-    announceRisingEdge();
-    phase = Phase.PHASE_0_STABLE;
+    synchronized(phaseLock) {
+      announceRisingEdge();
+      phase = Phase.PHASE_0_STABLE;
+    }
     synchronized(registerWaitLock) {
       registerWaitLock.notifyAll();
     }
@@ -329,7 +461,7 @@ public class MasterClock implements Clock, Constants
       synchronized(drivingGear) {
         if (phase == Phase.PHASE_0_STABLE) {
           phase = Phase.PHASE_1_IN_PROGRESS;
-          drivingGear.notify();
+          drivingGear.notifyAll();
         }
       }
     }
@@ -341,9 +473,11 @@ public class MasterClock implements Clock, Constants
       console.println("warning: cyclePhase1: unexpected phase: " + phase);
       return;
     }
-    announceFallingEdge();
-    wallClock++;
-    phase = Phase.PHASE_1_STABLE;
+    synchronized(phaseLock) {
+      announceFallingEdge();
+      wallClock++;
+      phase = Phase.PHASE_1_STABLE;
+    }
     synchronized(registerWaitLock) {
       registerWaitLock.notifyAll();
     }
@@ -363,6 +497,22 @@ public class MasterClock implements Clock, Constants
       registerWaitLock.wait(millisTimeout);
     }
   }
+
+  /**
+   * Waits until the clock has left the specified phase, or the
+   * timeout has elapsed.  Unlike awaitPhaseChange(), this method
+   * returns immediately if the clock is already in some other phase,
+   * such that a phase change right before the call is not missed.
+   */
+  public void awaitPhaseChange(final Phase phase, final long millisTimeout)
+    throws InterruptedException
+  {
+    synchronized(registerWaitLock) {
+      if (this.phase == phase) {
+        registerWaitLock.wait(millisTimeout);
+      }
+    }
+  }
 }
 
 /*
@@ -24,6 +24,10 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * 32 32-Bit Words of Shared Instruction Memory
  */
@@ -47,6 +51,25 @@ public class Memory implements Constants
     }
   }
 
+  public void saveState(final DataOutput out) throws IOException
+  {
+    synchronized(FETCH_LOCK) {
+      for (int address = 0; address < MEMORY_SIZE; address++) {
+        out.writeShort(code[address]);
+      }
+    }
+  }
+
+  public void restoreState(final DataInput in) throws IOException
+  {
+    synchronized(FETCH_LOCK) {
+      for (int address = 0; address < MEMORY_SIZE; address++) {
+        code[address] = in.readShort();
+      }
+      FETCH_LOCK.notifyAll();
+    }
+  }
+
   public void set(final int address, final int value,
                   final int mask, final boolean xor)
   {
@@ -0,0 +1,432 @@
+/*
+ * @(#)MirrorAddressSpace.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Address space that serves reads from a local mirror of the
+ * registers of another address space, such that any number of
+ * observers can share a single connection to the emulator.
+ *
+ * Each address that is read becomes subscribed to the mirror.  A
+ * single background thread keeps all subscribed addresses up to
+ * date by waiting for changes via method waitAddressesChanged() of
+ * the mirrored address space, i.e. with a single request per change
+ * rather than one request per observer and register.  Subscriptions
+ * that have not been accessed for a while expire.  Waiting for
+ * register changes is served from the mirror, too.
+ *
+ * All other accesses, most notably writes, are forwarded to the
+ * mirrored address space.  After each forwarded access that may
+ * change registers, the mirror is refreshed before returning, such
+ * that a client never reads values older than its own writes.
+ * Reads of registers with side effects (i.e. the RX FIFOs) are
+ * never mirrored.
+ *
+ * Since the mirror thread blocks in the mirrored address space while
+ * waiting for changes, it needs an access path of its own.  Hence,
+ * two instances of the mirrored address space must be provided, both
+ * referring to the same emulator, unless the mirrored address space
+ * serves concurrent accesses, like LocalAddressSpace does.
+ */
+public class MirrorAddressSpace extends AddressSpace
+{
+  /**
+   * Maximum time that the mirror thread waits for changes in a
+   * single call.  This also limits the delay until a newly
+   * subscribed address is included in change detection.
+   */
+  private static final long MIRROR_WAIT_MILLIS = 50;
+
+  /**
+   * Time after which a subscription that has not been accessed
+   * expires.
+   */
+  private static final long SUBSCRIPTION_TIMEOUT_MILLIS = 10000;
+
+  private static class Entry
+  {
+    private int value;
+    private long lastAccess;
+
+    private Entry(final int value, final long lastAccess)
+    {
+      this.value = value;
+      this.lastAccess = lastAccess;
+    }
+  }
+
+  private final PrintStream console;
+  private final AddressSpace memory;
+  private final AddressSpace mirrorMemory;
+  private final Map<Integer, Entry> mirror;
+  private long refreshCount;
+  private IOException mirrorError;
+
+  private MirrorAddressSpace()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  /**
+   * @param memory The mirrored address space for forwarded accesses.
+   * @param mirrorMemory The mirrored address space as accessed by
+   * the mirror thread.
+   */
+  public MirrorAddressSpace(final PrintStream console,
+                            final AddressSpace memory,
+                            final AddressSpace mirrorMemory)
+  {
+    if (console == null) {
+      throw new NullPointerException("console");
+    }
+    if (memory == null) {
+      throw new NullPointerException("memory");
+    }
+    if (mirrorMemory == null) {
+      throw new NullPointerException("mirrorMemory");
+    }
+    this.console = console;
+    this.memory = memory;
+    this.mirrorMemory = mirrorMemory;
+    mirror = new HashMap<Integer, Entry>();
+    refreshCount = 0;
+    mirrorError = null;
+    final Thread thread = new Thread(() -> mirrorLoop(), "register mirror");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private static boolean isMirrorable(final int address)
+  {
+    final int baseAddress = address & ~0x3000;
+    for (int pioNum = 0; pioNum < Constants.PIO_NUM; pioNum++) {
+      for (int smNum = 0; smNum < Constants.SM_COUNT; smNum++) {
+        if (baseAddress == PIORegisters.getRXFAddress(pioNum, smNum)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Collects the addresses of all current subscriptions, after
+   * dropping expired ones.  Must be called while holding the lock on
+   * this object.
+   */
+  private int[] getSubscribedAddresses()
+  {
+    final long now = System.currentTimeMillis();
+    final Iterator<Entry> entries = mirror.values().iterator();
+    while (entries.hasNext()) {
+      if (now - entries.next().lastAccess > SUBSCRIPTION_TIMEOUT_MILLIS) {
+        entries.remove();
+      }
+    }
+    final int[] addresses = new int[mirror.size()];
+    int index = 0;
+    for (final int address : mirror.keySet()) {
+      addresses[index++] = address;
+    }
+    return addresses;
+  }
+
+  /**
+   * Stores the specified values into the mirror and wakes up all
+   * threads waiting for changes.  Must be called while holding the
+   * lock on this object.
+   * @param subscribe If true, addresses that are not yet in the
+   * mirror are subscribed.  Otherwise, they are ignored, since their
+   * subscription has expired in the meantime.
+   */
+  private void store(final int[] addresses, final int[] values,
+                     final boolean subscribe)
+  {
+    final long now = System.currentTimeMillis();
+    for (int index = 0; index < addresses.length; index++) {
+      final int address = addresses[index];
+      final Entry entry = mirror.get(address);
+      if (entry != null) {
+        entry.value = values[index];
+      } else if (subscribe && isMirrorable(address)) {
+        mirror.put(address, new Entry(values[index], now));
+      }
+    }
+    mirrorError = null;
+    notifyAll();
+  }
+
+  private void mirrorLoop()
+  {
+    while (true) {
+      final int[] addresses;
+      final int[] values;
+      final long startRefreshCount;
+      synchronized(this) {
+        addresses = getSubscribedAddresses();
+        values = new int[addresses.length];
+        for (int index = 0; index < addresses.length; index++) {
+          values[index] = mirror.get(addresses[index]).value;
+        }
+        startRefreshCount = refreshCount;
+      }
+      try {
+        if (addresses.length == 0) {
+          Thread.sleep(MIRROR_WAIT_MILLIS);
+          continue;
+        }
+        final int[] receivedValues =
+          mirrorMemory.waitAddressesChanged(addresses, values,
+                                            MIRROR_WAIT_MILLIS);
+        synchronized(this) {
+          // Discard the result if the mirror has been refreshed in
+          // the meantime, since the result may be older than the
+          // refresh.  If so, the next call will return immediately.
+          if (refreshCount == startRefreshCount) {
+            store(addresses, receivedValues, false);
+          }
+        }
+      } catch (final IOException e) {
+        synchronized(this) {
+          if (mirrorError == null) {
+            console.println("register mirror failed: " + e.getMessage());
+          }
+          mirrorError = e;
+          mirror.clear();
+          notifyAll();
+        }
+        try {
+          Thread.sleep(1000); // limit CPU load in case of
+                              // persisting error
+        } catch (final InterruptedException e2) {
+          // ignore
+        }
+      } catch (final InterruptedException e) {
+        // ignore
+      }
+    }
+  }
+
+  /**
+   * Re-reads all subscribed addresses from the mirrored address
+   * space.  Called after forwarded accesses that may have changed
+   * registers.
+   */
+  private void refresh() throws IOException
+  {
+    final int[] addresses;
+    synchronized(this) {
+      addresses = getSubscribedAddresses();
+      refreshCount++;
+    }
+    if (addresses.length == 0) return;
+    final int[] values = memory.readAddresses(addresses);
+    synchronized(this) {
+      store(addresses, values, false);
+    }
+  }
+
+  /**
+   * Returns the mirrored values of the specified addresses, or
+   * &lt;code&gt;null&lt;/code&gt;, if any of them is not mirrored.
+   * Must be called while holding the lock on this object.
+   */
+  private int[] lookup(final int[] addresses)
+  {
+    final long now = System.currentTimeMillis();
+    final int[] values = new int[addresses.length];
+    for (int index = 0; index < addresses.length; index++) {
+      final Entry entry = mirror.get(addresses[index]);
+      if (entry == null) return null;
+      entry.lastAccess = now;
+      values[index] = entry.value;
+    }
+    return values;
+  }
+
+  @Override
+  public String getEmulatorInfo() throws IOException
+  {
+    return memory.getEmulatorInfo();
+  }
+
+  @Override
+  public boolean providesAddress(final int address) throws IOException
+  {
+    return memory.providesAddress(address);
+  }
+
+  @Override
+  public String getRegisterSetId(final int address) throws IOException
+  {
+    return memory.getRegisterSetId(address);
+  }
+
+  @Override
+  public String getAddressLabel(final int address) throws IOException
+  {
+    return memory.getAddressLabel(address);
+  }
+
+  @Override
+  public int readAddress(final int address) throws IOException
+  {
+    return readAddresses(new int[] { address })[0];
+  }
+
+  @Override
+  public int[] readAddresses(final int[] addresses) throws IOException
+  {
+    if (addresses == null) {
+      throw new NullPointerException("addresses");
+    }
+    synchronized(this) {
+      final int[] values = lookup(addresses);
+      if (values != null) return values;
+    }
+    // Read all addresses at once rather than only the missing ones,
+    // such that the result is a consistent snapshot.
+    final int[] values = memory.readAddresses(addresses);
+    synchronized(this) {
+      store(addresses, values, true);
+    }
+    return values;
+  }
+
+  @Override
+  public int[] sampleAddresses(final int[] addresses, final int cycles)
+    throws IOException
+  {
+    final int[] samples = memory.sampleAddresses(addresses, cycles);
+    refresh();
+    return samples;
+  }
+
+  @Override
+  public int[] waitAddressesChanged(final int[] addresses,
+                                    final int[] values,
+                                    final long millisTimeout)
+    throws IOException
+  {
+    if (addresses == null) {
+      throw new NullPointerException("addresses");
+    }
+    if (values == null) {
+      throw new NullPointerException("values");
+    }
+    if (values.length != addresses.length) {
+      throw new IllegalArgumentException("values.length != " +
+                                         "addresses.length: " +
+                                         values.length + " != " +
+                                         addresses.length);
+    }
+    if (millisTimeout < 0) {
+      throw new IllegalArgumentException("millisTimeout < 0: " + millisTimeout);
+    }
+    final long stopTime = System.currentTimeMillis() + millisTimeout;
+    int[] receivedValues = readAddresses(addresses);
+    synchronized(this) {
+      while (Arrays.equals(receivedValues, values)) {
+        if (mirrorError != null) {
+          throw new IOException(mirrorError.getMessage());
+        }
+        final long remaining = stopTime - System.currentTimeMillis();
+        if ((millisTimeout != 0) && (remaining <= 0)) break;
+        try {
+          wait(millisTimeout != 0 ? remaining : 0);
+        } catch (final InterruptedException e) {
+          // ignore here, since check in while condition
+        }
+        receivedValues = lookup(addresses);
+        if (receivedValues == null) {
+          // not all addresses mirrored anymore, e.g. after an error
+          break;
+        }
+      }
+    }
+    return receivedValues != null ? receivedValues : readAddresses(addresses);
+  }
+
+  @Override
+  public void writeAddressMasked(final int address, final int bits,
+                                 final int mask, final boolean xor)
+    throws IOException
+  {
+    memory.writeAddressMasked(address, bits, mask, xor);
+    refresh();
+  }
+
+  @Override
+  public void writeAddressesMasked(final int[] addresses, final int[] bits,
+                                   final int[] masks, final boolean[] xors)
+    throws IOException
+  {
+    memory.writeAddressesMasked(addresses, bits, masks, xors);
+    refresh();
+  }
+
+  @Override
+  public void writeAddressesAtomically(final int[] addresses,
+                                       final int[] bits,
+                                       final int[] masks,
+                                       final boolean[] xors)
+    throws IOException
+  {
+    memory.writeAddressesAtomically(addresses, bits, masks, xors);
+    refresh();
+  }
+
+  /**
+   * Waits for the specified value.  Unlike other reads, this method
+   * is forwarded to the mirrored address space, since the mirror may
+   * miss values that hold for a single clock phase only.  Note that
+   * the forwarded access blocks other forwarded accesses for the
+   * duration of the wait, if the mirrored address space serializes
+   * accesses, like RemoteAddressSpaceClient does.
+   */
+  @Override
+  public int waitAddress(final int address, final int expectedValue,
+                         final int mask,
+                         final long cyclesTimeout, final long millisTimeout)
+    throws IOException
+  {
+    return memory.waitAddress(address, expectedValue, mask,
+                              cyclesTimeout, millisTimeout);
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
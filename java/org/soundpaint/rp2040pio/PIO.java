@@ -24,16 +24,27 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
  * Peripheral I/O Unit
  */
 public class PIO implements Constants, Clock.TransitionListener
 {
+  /**
+   * Serializes register accesses of clients that address this PIO as
+   * a whole.  Registers specific to a single state machine are
+   * guarded by that state machine's lock instead.
+   */
+  private final Object registersLock;
   private final int index;
   private final PrintStream console;
   private final MasterClock masterClock;
@@ -120,6 +131,7 @@ public class PIO implements Constants, Clock.TransitionListener
     Objects.requireNonNull(console);
     Objects.requireNonNull(masterClock);
     Objects.requireNonNull(gpio);
+    registersLock = new Object();
     this.index = index;
     this.console = console;
     this.masterClock = masterClock;
@@ -144,6 +156,79 @@ public class PIO implements Constants, Clock.TransitionListener
     smEnabled = 0x0;
   }
 
+  /**
+   * Writes the state of instruction memory, pins, all state machines
+   * and the IRQ register set.  Should be called while holding the
+   * master clock's phase lock.
+   */
+  public void saveState(final DataOutput out) throws IOException
+  {
+    synchronized(registersLock) {
+      out.writeInt(smEnabled);
+      memory.saveState(out);
+      pioGpio.saveState(out);
+      for (final SM sm : sms) sm.saveState(out);
+      irq.saveState(out);
+    }
+  }
+
+  /**
+   * Reads back what has been written by saveState().  The IRQ
+   * register set is restored last, such that its FIFO status flags
+   * finally reflect the restored FIFO states.
+   */
+  public void restoreState(final DataInput in) throws IOException
+  {
+    synchronized(registersLock) {
+      smEnabled = in.readInt();
+      memory.restoreState(in);
+      pioGpio.restoreState(in);
+      for (final SM sm : sms) sm.restoreState(in);
+      irq.restoreState(in);
+    }
+  }
+
+  /**
+   * Returns the monitor that serializes register accesses of clients
+   * that address this PIO as a whole.
+   */
+  Object getRegistersLock()
+  {
+    return registersLock;
+  }
+
+  /**
+   * Applies the specified getter to this PIO while holding the
+   * monitor that serializes register accesses to this PIO as a
+   * whole, e.g. to CTRL, FSTAT, FLEVEL and FDEBUG.  Accesses to
+   * TXF/RXF registers are serialized by the locks of the respective
+   * state machines instead.  Hence, FIFO status read via this method
+   * is consistent with FSTAT/FLEVEL reads, but may change
+   * concurrently due to TXF/RXF accesses of other clients.
+   */
+  public int readLocked(final ToIntFunction<PIO> getter)
+  {
+    if (getter == null) {
+      throw new NullPointerException("getter");
+    }
+    synchronized(registersLock) {
+      return getter.applyAsInt(this);
+    }
+  }
+
+  /**
+   * Same as readLocked(), but for a boolean status.
+   */
+  public boolean testLocked(final Predicate<PIO> predicate)
+  {
+    if (predicate == null) {
+      throw new NullPointerException("predicate");
+    }
+    synchronized(registersLock) {
+      return predicate.test(this);
+    }
+  }
+
   public int getIndex()
   {
     return index;
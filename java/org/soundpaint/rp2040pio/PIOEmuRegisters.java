@@ -408,7 +408,40 @@ public abstract class PIOEmuRegisters extends RegisterSet
         .map(n -> new BitsInfo("IRQ" + (7 - n), 7 - n, 7 - n,
                                "0x1 for HIGH or 0x0 for LOW",
                                BitsType.RO, 0))
-        .collect(Collectors.toList()));
+        .collect(Collectors.toList())),
+    IRQ_LINES("Levels of the PIO's outgoing interrupt lines IRQ0 and%n" +
+              "IRQ1, i.e. whether IRQ0_INTS or IRQ1_INTS, respectively,%n" +
+              "is non-zero, and count of rising edges on each line.%n" +
+              "For reacting on an interrupt, wait for the edge count%n" +
+              "of the respective line to change rather than polling%n" +
+              "IRQ0_INTS or IRQ1_INTS.",
+              new BitsInfo[] {
+                new BitsInfo(null, 31, 24, null, BitsType.RESERVED, null),
+                new BitsInfo("IRQ1_EDGES", 23, 16,
+                             "number of rising edges of IRQ1 (modulo 256)",
+                             BitsType.RO, 0),
+                new BitsInfo("IRQ0_EDGES", 15, 8,
+                             "number of rising edges of IRQ0 (modulo 256)",
+                             BitsType.RO, 0),
+                new BitsInfo(null, 7, 2, null, BitsType.RESERVED, null),
+                new BitsInfo("IRQ1", 1, 1, "0x1 if IRQ1 is asserted",
+                             BitsType.RO, 0),
+                new BitsInfo("IRQ0", 0, 0, "0x1 if IRQ0 is asserted",
+                             BitsType.RO, 0)
+              }),
+    FIFO_SEQ0("Modification sequence number of the FIFO of the%n" +
+              "corresponding state machine.  The value is incremented%n" +
+              "(modulo 2^32) upon each change of the FIFO's memory,%n" +
+              "read or write pointers, join mode or FDEBUG flags.%n" +
+              "For observing a FIFO, wait for this value to change%n" +
+              "rather than repeatedly reading all of the FIFO's state.",
+              0,
+              new BitsInfo[] {
+                new BitsInfo(null, 31, 0, null, BitsType.RO, 0)
+              }),
+    FIFO_SEQ1(Regs.FIFO_SEQ0, 1),
+    FIFO_SEQ2(Regs.FIFO_SEQ0, 2),
+    FIFO_SEQ3(Regs.FIFO_SEQ0, 3);
 
     public static String getRegisterSetLabel()
     {
@@ -592,6 +625,15 @@ public abstract class PIOEmuRegisters extends RegisterSet
       0x4 * (Regs.RXF0.ordinal() + smNum);
   }
 
+  public static int getFIFOSeqAddress(final int pioNum, final int smNum)
+  {
+    Constants.checkPioNum(pioNum, "PIO index number");
+    Constants.checkSmNum(smNum);
+    return
+      Constants.getPIOEmuBaseAddress(pioNum) +
+      0x4 * (Regs.FIFO_SEQ0.ordinal() + smNum);
+  }
+
   public PIOEmuRegisters(final String id, final int baseAddress)
   {
     super(id, baseAddress);
@@ -24,6 +24,8 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.util.function.IntSupplier;
+
 /**
  * Facade to additonal emulator properties of the internal subsystems
  * of a PIO that are not available via the PIORegisters facade.  This
@@ -39,6 +41,7 @@ public class PIOEmuRegistersImpl extends PIOEmuRegisters
     super("PIOEmu" + pio.getIndex(),
           Constants.getPIOEmuBaseAddress(pio.getIndex()));
     this.pio = pio;
+    installAccessors();
   }
 
   public PIO getPIO() { return pio; }
@@ -81,61 +84,59 @@ public class PIOEmuRegistersImpl extends PIOEmuRegisters
   }
 
   @Override
-  public void writeRegister(final int regNum, final int value,
-                            final int mask, final boolean xor)
+  protected Writer createWriter(final int regNum)
   {
-    checkRegNum(regNum);
     final Regs register = REGS[regNum];
     switch (register) {
     case SM0_REGX:
     case SM1_REGX:
     case SM2_REGX:
     case SM3_REGX:
-      pio.getSM((regNum - Regs.SM0_REGX.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_REGX.ordinal()) / SM_SIZE).
         setX(value, mask, xor);
-      break;
     case SM0_REGY:
     case SM1_REGY:
     case SM2_REGY:
     case SM3_REGY:
-      pio.getSM((regNum - Regs.SM0_REGY.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_REGY.ordinal()) / SM_SIZE).
         setY(value, mask, xor);
-      break;
     case SM0_PC:
     case SM1_PC:
     case SM2_PC:
     case SM3_PC:
-      pio.getSM((regNum - Regs.SM0_PC.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_PC.ordinal()) / SM_SIZE).
         setPC(value, mask, xor);
-      break;
     case SM0_ISR:
     case SM1_ISR:
     case SM2_ISR:
     case SM3_ISR:
-      pio.getSM((regNum - Regs.SM0_ISR.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_ISR.ordinal()) / SM_SIZE).
         setISRValue(value, mask, xor);
-      break;
     case SM0_ISR_SHIFT_COUNT:
     case SM1_ISR_SHIFT_COUNT:
     case SM2_ISR_SHIFT_COUNT:
     case SM3_ISR_SHIFT_COUNT:
-      pio.getSM((regNum - Regs.SM0_ISR_SHIFT_COUNT.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_ISR_SHIFT_COUNT.ordinal()) / SM_SIZE).
         setISRShiftCount(value, mask, xor);
-      break;
     case SM0_OSR:
     case SM1_OSR:
     case SM2_OSR:
     case SM3_OSR:
-      pio.getSM((regNum - Regs.SM0_OSR.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_OSR.ordinal()) / SM_SIZE).
         setOSRValue(value, mask, xor);
-      break;
     case SM0_OSR_SHIFT_COUNT:
     case SM1_OSR_SHIFT_COUNT:
     case SM2_OSR_SHIFT_COUNT:
     case SM3_OSR_SHIFT_COUNT:
-      pio.getSM((regNum - Regs.SM0_OSR_SHIFT_COUNT.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_OSR_SHIFT_COUNT.ordinal()) / SM_SIZE).
         setOSRShiftCount(value, mask, xor);
-      break;
     case SM0_FIFO_MEM0:
     case SM0_FIFO_MEM1:
     case SM0_FIFO_MEM2:
@@ -168,78 +169,79 @@ public class PIOEmuRegistersImpl extends PIOEmuRegisters
     case SM3_FIFO_MEM5:
     case SM3_FIFO_MEM6:
     case SM3_FIFO_MEM7:
-      setFIFOMemValue(regNum - Regs.SM0_FIFO_MEM0.ordinal(), value, mask, xor);
-      break;
+      return (value, mask, xor) ->
+        setFIFOMemValue(regNum - Regs.SM0_FIFO_MEM0.ordinal(),
+                        value, mask, xor);
     case SM0_CLEAR_FORCED:
     case SM1_CLEAR_FORCED:
     case SM2_CLEAR_FORCED:
     case SM3_CLEAR_FORCED:
-      pio.getSM((regNum - Regs.SM0_CLEAR_FORCED.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_CLEAR_FORCED.ordinal()) / SM_SIZE).
         clearPendingForcedInstruction();
-      break;
     case SM0_CLEAR_EXECD:
     case SM1_CLEAR_EXECD:
     case SM2_CLEAR_EXECD:
     case SM3_CLEAR_EXECD:
-      pio.getSM((regNum - Regs.SM0_CLEAR_EXECD.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_CLEAR_EXECD.ordinal()) / SM_SIZE).
         clearPendingExecdInstruction();
-      break;
     case SM0_INSTR_ORIGIN:
     case SM1_INSTR_ORIGIN:
     case SM2_INSTR_ORIGIN:
     case SM3_INSTR_ORIGIN:
-      break; // (for now) read-only address
+      return (value, mask, xor) -> {}; // (for now) read-only address
     case SM0_DELAY:
     case SM1_DELAY:
     case SM2_DELAY:
     case SM3_DELAY:
-      break; // (for now) read-only address
+      return (value, mask, xor) -> {}; // (for now) read-only address
     case SM0_DELAY_CYCLE:
     case SM1_DELAY_CYCLE:
     case SM2_DELAY_CYCLE:
     case SM3_DELAY_CYCLE:
-      break; // (for now) read-only address
+      return (value, mask, xor) -> {}; // (for now) read-only address
     case SM0_PENDING_DELAY:
     case SM1_PENDING_DELAY:
     case SM2_PENDING_DELAY:
     case SM3_PENDING_DELAY:
-      break; // (for now) read-only address
+      return (value, mask, xor) -> {}; // (for now) read-only address
     case SM0_FORCED_INSTR:
     case SM1_FORCED_INSTR:
     case SM2_FORCED_INSTR:
     case SM3_FORCED_INSTR:
-      break; // (for now) read-only address
+      return (value, mask, xor) -> {}; // (for now) read-only address
     case SM0_EXECD_INSTR:
     case SM1_EXECD_INSTR:
     case SM2_EXECD_INSTR:
     case SM3_EXECD_INSTR:
-      pio.getSM((regNum - Regs.SM0_EXECD_INSTR.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_EXECD_INSTR.ordinal()) / SM_SIZE).
         execInstruction(value & mask);
-      break;
     case SM0_CLK_ENABLE:
     case SM1_CLK_ENABLE:
     case SM2_CLK_ENABLE:
     case SM3_CLK_ENABLE:
-      break; // (for now) read-only address
+      return (value, mask, xor) -> {}; // (for now) read-only address
     case SM0_NEXT_CLK_ENABLE:
     case SM1_NEXT_CLK_ENABLE:
     case SM2_NEXT_CLK_ENABLE:
     case SM3_NEXT_CLK_ENABLE:
-      break; // (for now) read-only address
+      return (value, mask, xor) -> {}; // (for now) read-only address
     case SM0_BREAKPOINTS:
     case SM1_BREAKPOINTS:
     case SM2_BREAKPOINTS:
     case SM3_BREAKPOINTS:
-      pio.getSM((regNum - Regs.SM0_BREAKPOINTS.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_BREAKPOINTS.ordinal()) / SM_SIZE).
         setBreakPoints(value, mask, xor);
-      break;
     case SM0_TRACEPOINTS:
     case SM1_TRACEPOINTS:
     case SM2_TRACEPOINTS:
     case SM3_TRACEPOINTS:
-      pio.getSM((regNum - Regs.SM0_TRACEPOINTS.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_TRACEPOINTS.ordinal()) / SM_SIZE).
         setTracePoints(value, mask, xor);
-      break;
     case INSTR_MEM0:
     case INSTR_MEM1:
     case INSTR_MEM2:
@@ -272,29 +274,37 @@ public class PIOEmuRegistersImpl extends PIOEmuRegisters
     case INSTR_MEM29:
     case INSTR_MEM30:
     case INSTR_MEM31:
-      pio.getMemory().set(regNum - Regs.INSTR_MEM0.ordinal(), value, mask, xor);
-      break;
+      return (value, mask, xor) ->
+        pio.getMemory().set(regNum - Regs.INSTR_MEM0.ordinal(),
+                            value, mask, xor);
     case RXF0:
     case RXF1:
     case RXF2:
     case RXF3:
-      pio.getSM(regNum - Regs.RXF0.ordinal()).putRXF(value & mask);
-      break;
+      return (value, mask, xor) ->
+        pio.getSM(regNum - Regs.RXF0.ordinal()).putRXF(value & mask);
     case TXF0:
     case TXF1:
     case TXF2:
     case TXF3:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case FREAD_PTR:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case GPIO_PINS:
-      pio.getPIOGPIO().setPinsMask(value, mask, xor);
-      break;
+      return (value, mask, xor) ->
+        pio.getPIOGPIO().setPinsMask(value, mask, xor);
     case GPIO_PINDIRS:
-      pio.getPIOGPIO().setPinDirsMask(value, mask, xor);
-      break;
+      return (value, mask, xor) ->
+        pio.getPIOGPIO().setPinDirsMask(value, mask, xor);
     case IRQ:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
+    case IRQ_LINES:
+      return (value, mask, xor) -> {}; // read-only address
+    case FIFO_SEQ0:
+    case FIFO_SEQ1:
+    case FIFO_SEQ2:
+    case FIFO_SEQ3:
+      return (value, mask, xor) -> {}; // read-only address
     default:
       throw new InternalError("unexpected case fall-through");
     }
@@ -336,53 +346,80 @@ public class PIOEmuRegistersImpl extends PIOEmuRegisters
   }
 
   @Override
-  public synchronized int readRegister(final int regNum)
+  protected Object createLock(final int regNum)
+  {
+    if (regNum <= Regs.SM3_TRACEPOINTS.ordinal()) {
+      return pio.getSM(regNum / SM_SIZE).getRegistersLock();
+    }
+    final Regs register = REGS[regNum];
+    switch (register) {
+    case TXF0:
+    case TXF1:
+    case TXF2:
+    case TXF3:
+      return pio.getSM(regNum - Regs.TXF0.ordinal()).getRegistersLock();
+    case RXF0:
+    case RXF1:
+    case RXF2:
+    case RXF3:
+      return pio.getSM(regNum - Regs.RXF0.ordinal()).getRegistersLock();
+    case FIFO_SEQ0:
+    case FIFO_SEQ1:
+    case FIFO_SEQ2:
+    case FIFO_SEQ3:
+      return pio.getSM(regNum - Regs.FIFO_SEQ0.ordinal()).getRegistersLock();
+    default:
+      return pio.getRegistersLock();
+    }
+  }
+
+  @Override
+  protected IntSupplier createReader(final int regNum)
   {
-    checkRegNum(regNum);
     final Regs register = REGS[regNum];
     switch (register) {
     case SM0_REGX:
     case SM1_REGX:
     case SM2_REGX:
     case SM3_REGX:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_REGX.ordinal()) / SM_SIZE).getX();
     case SM0_REGY:
     case SM1_REGY:
     case SM2_REGY:
     case SM3_REGY:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_REGY.ordinal()) / SM_SIZE).getY();
     case SM0_PC:
     case SM1_PC:
     case SM2_PC:
     case SM3_PC:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_PC.ordinal()) / SM_SIZE).getPC();
     case SM0_ISR:
     case SM1_ISR:
     case SM2_ISR:
     case SM3_ISR:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_ISR.ordinal()) / SM_SIZE).getISRValue();
     case SM0_ISR_SHIFT_COUNT:
     case SM1_ISR_SHIFT_COUNT:
     case SM2_ISR_SHIFT_COUNT:
     case SM3_ISR_SHIFT_COUNT:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_ISR_SHIFT_COUNT.ordinal()) / SM_SIZE).
         getISRShiftCount();
     case SM0_OSR:
     case SM1_OSR:
     case SM2_OSR:
     case SM3_OSR:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_OSR.ordinal()) / SM_SIZE).getOSRValue();
     case SM0_OSR_SHIFT_COUNT:
     case SM1_OSR_SHIFT_COUNT:
     case SM2_OSR_SHIFT_COUNT:
     case SM3_OSR_SHIFT_COUNT:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_OSR_SHIFT_COUNT.ordinal()) / SM_SIZE).
         getOSRShiftCount();
     case SM0_FIFO_MEM0:
@@ -417,81 +454,83 @@ public class PIOEmuRegistersImpl extends PIOEmuRegisters
     case SM3_FIFO_MEM5:
     case SM3_FIFO_MEM6:
     case SM3_FIFO_MEM7:
-      return getFIFOMemValue(regNum - Regs.SM0_FIFO_MEM0.ordinal());
+      return () -> getFIFOMemValue(regNum - Regs.SM0_FIFO_MEM0.ordinal());
     case SM0_CLEAR_FORCED:
     case SM1_CLEAR_FORCED:
     case SM2_CLEAR_FORCED:
     case SM3_CLEAR_FORCED:
-      return 0; // write-only address
+      return () -> 0; // write-only address
     case SM0_CLEAR_EXECD:
     case SM1_CLEAR_EXECD:
     case SM2_CLEAR_EXECD:
     case SM3_CLEAR_EXECD:
-      return 0; // write-only address
+      return () -> 0; // write-only address
     case SM0_INSTR_ORIGIN:
     case SM1_INSTR_ORIGIN:
     case SM2_INSTR_ORIGIN:
     case SM3_INSTR_ORIGIN:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_INSTR_ORIGIN.ordinal()) / SM_SIZE).
         getINSTR_ORIGIN();
     case SM0_DELAY:
     case SM1_DELAY:
     case SM2_DELAY:
     case SM3_DELAY:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_DELAY.ordinal()) / SM_SIZE).
         getTotalDelay();
     case SM0_DELAY_CYCLE:
     case SM1_DELAY_CYCLE:
     case SM2_DELAY_CYCLE:
     case SM3_DELAY_CYCLE:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_DELAY_CYCLE.ordinal()) / SM_SIZE).
         isDelayCycle() ? 0x1 : 0x0;
     case SM0_PENDING_DELAY:
     case SM1_PENDING_DELAY:
     case SM2_PENDING_DELAY:
     case SM3_PENDING_DELAY:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_PENDING_DELAY.ordinal()) / SM_SIZE).
         getPendingDelay();
     case SM0_FORCED_INSTR:
     case SM1_FORCED_INSTR:
     case SM2_FORCED_INSTR:
     case SM3_FORCED_INSTR:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_FORCED_INSTR.ordinal()) / SM_SIZE).
         getFORCED_INSTR();
     case SM0_EXECD_INSTR:
     case SM1_EXECD_INSTR:
     case SM2_EXECD_INSTR:
     case SM3_EXECD_INSTR:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_EXECD_INSTR.ordinal()) / SM_SIZE).
         getEXECD_INSTR();
     case SM0_CLK_ENABLE:
     case SM1_CLK_ENABLE:
     case SM2_CLK_ENABLE:
     case SM3_CLK_ENABLE:
-      return getClockEnable((regNum - Regs.SM0_CLK_ENABLE.ordinal()) / SM_SIZE);
+      return () ->
+        getClockEnable((regNum - Regs.SM0_CLK_ENABLE.ordinal()) / SM_SIZE);
     case SM0_NEXT_CLK_ENABLE:
     case SM1_NEXT_CLK_ENABLE:
     case SM2_NEXT_CLK_ENABLE:
     case SM3_NEXT_CLK_ENABLE:
-      return getNextClockEnable((regNum - Regs.SM0_CLK_ENABLE.ordinal()) / SM_SIZE);
+      return () ->
+        getNextClockEnable((regNum - Regs.SM0_CLK_ENABLE.ordinal()) / SM_SIZE);
     case SM0_BREAKPOINTS:
     case SM1_BREAKPOINTS:
     case SM2_BREAKPOINTS:
     case SM3_BREAKPOINTS:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_BREAKPOINTS.ordinal()) / SM_SIZE).
         getBreakPoints();
     case SM0_TRACEPOINTS:
     case SM1_TRACEPOINTS:
     case SM2_TRACEPOINTS:
     case SM3_TRACEPOINTS:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_TRACEPOINTS.ordinal()) / SM_SIZE).
         getTracePoints();
     case INSTR_MEM0:
@@ -526,25 +565,34 @@ public class PIOEmuRegistersImpl extends PIOEmuRegisters
     case INSTR_MEM29:
     case INSTR_MEM30:
     case INSTR_MEM31:
-      return pio.getMemory().get(regNum - Regs.INSTR_MEM0.ordinal()) & 0xffff;
+      return () ->
+        pio.getMemory().get(regNum - Regs.INSTR_MEM0.ordinal()) & 0xffff;
     case TXF0:
     case TXF1:
     case TXF2:
     case TXF3:
-      return pio.getSM(regNum - Regs.TXF0.ordinal()).getTXF();
+      return () -> pio.getSM(regNum - Regs.TXF0.ordinal()).getTXF();
     case RXF0:
     case RXF1:
     case RXF2:
     case RXF3:
-      return 0; // write-only address
+      return () -> 0; // write-only address
     case FREAD_PTR:
-      return getFIFOReadPointers();
+      return () -> getFIFOReadPointers();
     case GPIO_PINS:
-      return pio.getPIOGPIO().getPins(0, GPIO_NUM);
+      return () -> pio.getPIOGPIO().getPins(0, GPIO_NUM);
     case GPIO_PINDIRS:
-      return pio.getPIOGPIO().getPinDirs(0, GPIO_NUM);
+      return () -> pio.getPIOGPIO().getPinDirs(0, GPIO_NUM);
     case IRQ:
-      return pio.getIRQ().getIRQ();
+      return () -> pio.getIRQ().getIRQ();
+    case IRQ_LINES:
+      return () -> pio.getIRQ().getIRQLines();
+    case FIFO_SEQ0:
+    case FIFO_SEQ1:
+    case FIFO_SEQ2:
+    case FIFO_SEQ3:
+      return () ->
+        pio.getSM(regNum - Regs.FIFO_SEQ0.ordinal()).getFIFO().getSeq();
     default:
       throw new InternalError("unexpected case fall-through");
     }
@@ -24,6 +24,10 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * General-Purpose Set of 32 Peripheral I/O Terminals
  */
@@ -60,6 +64,34 @@ public class PIOGPIO implements Constants
     }
   }
 
+  /**
+   * Writes collated and applied pin states.  Collated levels and
+   * directions that are not set are written as -1.
+   */
+  public void saveState(final DataOutput out) throws IOException
+  {
+    for (int gpioNum = 0; gpioNum < GPIO_NUM; gpioNum++) {
+      final Bit level = collatedLevels[gpioNum];
+      final Direction direction = collatedDirections[gpioNum];
+      out.writeByte(level != null ? level.getValue() : -1);
+      out.writeByte(direction != null ? direction.getValue() : -1);
+      out.writeByte(appliedStates[gpioNum].ordinal());
+    }
+  }
+
+  public void restoreState(final DataInput in) throws IOException
+  {
+    final PinState[] pinStates = PinState.values();
+    for (int gpioNum = 0; gpioNum < GPIO_NUM; gpioNum++) {
+      final int level = in.readByte();
+      final int direction = in.readByte();
+      collatedLevels[gpioNum] = level >= 0 ? Bit.fromValue(level) : null;
+      collatedDirections[gpioNum] =
+        direction >= 0 ? Direction.fromValue(direction) : null;
+      appliedStates[gpioNum] = pinStates[in.readByte()];
+    }
+  }
+
   public GPIO getGPIO() { return gpio; }
 
   private void setLevel(final int gpioNum, final Bit level)
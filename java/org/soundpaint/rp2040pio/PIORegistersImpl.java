@@ -24,6 +24,8 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.util.function.IntSupplier;
+
 /**
  * Facade to the internal subsystems of a PIO.  The layout of
  * registers follows the list of registers in Sect. 3.7 of the RP2040
@@ -39,6 +41,7 @@ public class PIORegistersImpl extends PIORegisters
     super("PIO" + pio.getIndex(),
           Constants.getPIOBaseAddress(pio.getIndex()));
     this.pio = pio;
+    installAccessors();
   }
 
   public PIO getPIO() { return pio; }
@@ -101,49 +104,59 @@ public class PIORegistersImpl extends PIORegisters
     }
   }
 
+  /**
+   * Since writing CTRL may restart state machines, in addition to
+   * the PIO's lock, also the locks of all of its state machines are
+   * acquired, in ascending order of SM number.
+   */
+  private void writeCtrl(final int value, final int mask, final int smNum)
+  {
+    if (smNum == SM_COUNT) {
+      pio.setCtrl(value, mask);
+      return;
+    }
+    synchronized(pio.getSM(smNum).getRegistersLock()) {
+      writeCtrl(value, mask, smNum + 1);
+    }
+  }
+
   @Override
-  public void writeRegister(final int regNum, final int value,
-                            final int mask, final boolean xor)
+  protected Writer createWriter(final int regNum)
   {
-    checkRegNum(regNum);
     final Regs register = REGS[regNum];
     switch (register) {
     case CTRL:
-      pio.setCtrl(value, mask);
-      break;
+      return (value, mask, xor) -> writeCtrl(value, mask, 0);
     case FSTAT:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case FDEBUG:
-      writeFDebug(value, mask);
-      break;
+      return (value, mask, xor) -> writeFDebug(value, mask);
     case FLEVEL:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case TXF0:
     case TXF1:
     case TXF2:
     case TXF3:
-      pio.getSM(regNum - Regs.TXF0.ordinal()).put(value & mask);
-      break;
+      return (value, mask, xor) ->
+        pio.getSM(regNum - Regs.TXF0.ordinal()).put(value & mask);
     case RXF0:
     case RXF1:
     case RXF2:
     case RXF3:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case IRQ:
-      pio.getIRQ().writeRegIRQ(value & mask);
-      break;
+      return (value, mask, xor) -> pio.getIRQ().writeRegIRQ(value & mask);
     case IRQ_FORCE:
-      pio.getIRQ().writeRegIRQ_FORCE(value & mask);
-      break;
+      return (value, mask, xor) -> pio.getIRQ().writeRegIRQ_FORCE(value & mask);
     case INPUT_SYNC_BYPASS:
-      pio.getPIOGPIO().getGPIO().setInputSyncByPass(value, mask, xor);
-      break;
+      return (value, mask, xor) ->
+        pio.getPIOGPIO().getGPIO().setInputSyncByPass(value, mask, xor);
     case DBG_PADOUT:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case DBG_PADOE:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case DBG_CFGINFO:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case INSTR_MEM0:
     case INSTR_MEM1:
     case INSTR_MEM2:
@@ -176,65 +189,62 @@ public class PIORegistersImpl extends PIORegisters
     case INSTR_MEM29:
     case INSTR_MEM30:
     case INSTR_MEM31:
-      pio.getMemory().set(regNum - Regs.INSTR_MEM0.ordinal(), value, mask, xor);
-      break;
+      return (value, mask, xor) ->
+        pio.getMemory().set(regNum - Regs.INSTR_MEM0.ordinal(),
+                            value, mask, xor);
     case SM0_CLKDIV:
     case SM1_CLKDIV:
     case SM2_CLKDIV:
     case SM3_CLKDIV:
-      pio.getSM((regNum - Regs.SM0_CLKDIV.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_CLKDIV.ordinal()) / SM_SIZE).
         setCLKDIV(value, mask, xor);
-      break;
     case SM0_EXECCTRL:
     case SM1_EXECCTRL:
     case SM2_EXECCTRL:
     case SM3_EXECCTRL:
-      pio.getSM((regNum - Regs.SM0_EXECCTRL.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_EXECCTRL.ordinal()) / SM_SIZE).
         setEXECCTRL(value, mask, xor);
-      break;
     case SM0_SHIFTCTRL:
     case SM1_SHIFTCTRL:
     case SM2_SHIFTCTRL:
     case SM3_SHIFTCTRL:
-      pio.getSM((regNum - Regs.SM0_SHIFTCTRL.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_SHIFTCTRL.ordinal()) / SM_SIZE).
         setSHIFTCTRL(value, mask, xor);
-      break;
     case SM0_ADDR:
     case SM1_ADDR:
     case SM2_ADDR:
     case SM3_ADDR:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case SM0_INSTR:
     case SM1_INSTR:
     case SM2_INSTR:
     case SM3_INSTR:
-      pio.getSM((regNum - Regs.SM0_INSTR.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_INSTR.ordinal()) / SM_SIZE).
         forceInstruction(value & mask);
-      break;
     case SM0_PINCTRL:
     case SM1_PINCTRL:
     case SM2_PINCTRL:
     case SM3_PINCTRL:
-      pio.getSM((regNum - Regs.SM0_PINCTRL.ordinal()) / SM_SIZE).
+      return (value, mask, xor) ->
+        pio.getSM((regNum - Regs.SM0_PINCTRL.ordinal()) / SM_SIZE).
         setPINCTRL(value, mask, xor);
-      break;
     case INTR:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case IRQ0_INTE:
-      pio.getIRQ().setIRQ0_INTE(value, mask, xor);
-      break;
+      return (value, mask, xor) -> pio.getIRQ().setIRQ0_INTE(value, mask, xor);
     case IRQ1_INTE:
-      pio.getIRQ().setIRQ1_INTE(value, mask, xor);
-      break;
+      return (value, mask, xor) -> pio.getIRQ().setIRQ1_INTE(value, mask, xor);
     case IRQ0_INTF:
-      pio.getIRQ().setIRQ0_INTF(value, mask, xor);
-      break;
+      return (value, mask, xor) -> pio.getIRQ().setIRQ0_INTF(value, mask, xor);
     case IRQ1_INTF:
-      pio.getIRQ().setIRQ1_INTF(value, mask, xor);
-      break;
+      return (value, mask, xor) -> pio.getIRQ().setIRQ1_INTF(value, mask, xor);
     case IRQ0_INTS:
     case IRQ1_INTS:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     default:
       throw new InternalError("unexpected case fall-through");
     }
@@ -305,41 +315,67 @@ public class PIORegistersImpl extends PIORegisters
   }
 
   @Override
-  public synchronized int readRegister(final int regNum)
+  protected Object createLock(final int regNum)
+  {
+    if ((regNum >= Regs.SM0_CLKDIV.ordinal()) &&
+        (regNum <= Regs.SM3_PINCTRL.ordinal())) {
+      return pio.getSM((regNum - Regs.SM0_CLKDIV.ordinal()) / SM_SIZE).
+        getRegistersLock();
+    }
+    final Regs register = REGS[regNum];
+    switch (register) {
+    case TXF0:
+    case TXF1:
+    case TXF2:
+    case TXF3:
+      return pio.getSM(regNum - Regs.TXF0.ordinal()).getRegistersLock();
+    case RXF0:
+    case RXF1:
+    case RXF2:
+    case RXF3:
+      return pio.getSM(regNum - Regs.RXF0.ordinal()).getRegistersLock();
+    case INPUT_SYNC_BYPASS:
+      return pio.getPIOGPIO().getGPIO().getRegistersLock();
+    default:
+      return pio.getRegistersLock();
+    }
+  }
+
+  @Override
+  protected IntSupplier createReader(final int regNum)
   {
-    checkRegNum(regNum);
     final Regs register = REGS[regNum];
     switch (register) {
     case CTRL:
-      return pio.getCtrl();
+      return () -> pio.getCtrl();
     case FSTAT:
-      return readFStat();
+      return () -> readFStat();
     case FDEBUG:
-      return readFDebug();
+      return () -> readFDebug();
     case FLEVEL:
-      return readFLevel();
+      return () -> readFLevel();
     case TXF0:
     case TXF1:
     case TXF2:
     case TXF3:
-      return 0; // write-only address
+      return () -> 0; // write-only address
     case RXF0:
     case RXF1:
     case RXF2:
     case RXF3:
-      return pio.getSM(regNum - Regs.RXF0.ordinal()).get();
+      return () -> pio.getSM(regNum - Regs.RXF0.ordinal()).get();
     case IRQ:
-      return 0; // write-only address
+      return () -> 0; // write-only address
     case IRQ_FORCE:
-      return 0; // write-only address
+      return () -> 0; // write-only address
     case INPUT_SYNC_BYPASS:
-      return pio.getPIOGPIO().getGPIO().getInputSyncByPass();
+      return () -> pio.getPIOGPIO().getGPIO().getInputSyncByPass();
     case DBG_PADOUT:
-      return pio.getPIOGPIO().getPins(0, 32);
+      return () -> pio.getPIOGPIO().getPins(0, 32);
     case DBG_PADOE:
-      return pio.getPIOGPIO().getPinDirs(0, 32);
+      return () -> pio.getPIOGPIO().getPinDirs(0, 32);
     case DBG_CFGINFO:
-      return getCfgInfo();
+      return () -> getCfgInfo();
     case INSTR_MEM0:
     case INSTR_MEM1:
     case INSTR_MEM2:
@@ -372,59 +408,60 @@ public class PIORegistersImpl extends PIORegisters
     case INSTR_MEM29:
     case INSTR_MEM30:
     case INSTR_MEM31:
-      return 0; // write-only address
+      return () -> 0; // write-only address
     case SM0_CLKDIV:
     case SM1_CLKDIV:
     case SM2_CLKDIV:
     case SM3_CLKDIV:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_CLKDIV.ordinal()) / SM_SIZE).getCLKDIV();
     case SM0_EXECCTRL:
     case SM1_EXECCTRL:
     case SM2_EXECCTRL:
     case SM3_EXECCTRL:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_EXECCTRL.ordinal()) / SM_SIZE).
         getEXECCTRL();
     case SM0_SHIFTCTRL:
     case SM1_SHIFTCTRL:
     case SM2_SHIFTCTRL:
     case SM3_SHIFTCTRL:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_SHIFTCTRL.ordinal()) / SM_SIZE).
         getSHIFTCTRL();
     case SM0_ADDR:
     case SM1_ADDR:
     case SM2_ADDR:
     case SM3_ADDR:
-      return pio.getSM((regNum - Regs.SM0_ADDR.ordinal()) / SM_SIZE).getPC();
+      return () ->
+        pio.getSM((regNum - Regs.SM0_ADDR.ordinal()) / SM_SIZE).getPC();
     case SM0_INSTR:
     case SM1_INSTR:
     case SM2_INSTR:
     case SM3_INSTR:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_INSTR.ordinal()) / SM_SIZE).
         getOpCode();
     case SM0_PINCTRL:
     case SM1_PINCTRL:
     case SM2_PINCTRL:
     case SM3_PINCTRL:
-      return
+      return () ->
         pio.getSM((regNum - Regs.SM0_PINCTRL.ordinal()) / SM_SIZE).getPINCTRL();
     case INTR:
-      return pio.getIRQ().readINTR();
+      return () -> pio.getIRQ().readINTR();
     case IRQ0_INTE:
-      return pio.getIRQ().getIRQ0_INTE();
+      return () -> pio.getIRQ().getIRQ0_INTE();
     case IRQ1_INTE:
-      return pio.getIRQ().getIRQ1_INTE();
+      return () -> pio.getIRQ().getIRQ1_INTE();
     case IRQ0_INTF:
-      return pio.getIRQ().getIRQ0_INTF();
+      return () -> pio.getIRQ().getIRQ0_INTF();
     case IRQ1_INTF:
-      return pio.getIRQ().getIRQ1_INTF();
+      return () -> pio.getIRQ().getIRQ1_INTF();
     case IRQ0_INTS:
-      return pio.getIRQ().readIRQ0_INTS();
+      return () -> pio.getIRQ().readIRQ0_INTS();
     case IRQ1_INTS:
-      return pio.getIRQ().readIRQ1_INTS();
+      return () -> pio.getIRQ().readIRQ1_INTS();
     default:
       throw new InternalError("unexpected case fall-through");
     }
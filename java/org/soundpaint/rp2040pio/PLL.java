@@ -24,6 +24,9 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -65,6 +68,26 @@ public class PLL implements Clock.TransitionListener
     nextClockEnable = false;
   }
 
+  public void saveState(final DataOutput out) throws IOException
+  {
+    out.writeInt(regCLKDIV_INT);
+    out.writeInt(regCLKDIV_FRAC);
+    out.writeInt(countIntegerBits);
+    out.writeInt(countFractionalBits);
+    out.writeBoolean(clockEnable);
+    out.writeBoolean(nextClockEnable);
+  }
+
+  public void restoreState(final DataInput in) throws IOException
+  {
+    regCLKDIV_INT = in.readInt();
+    regCLKDIV_FRAC = in.readInt();
+    countIntegerBits = in.readInt();
+    countFractionalBits = in.readInt();
+    clockEnable = in.readBoolean();
+    nextClockEnable = in.readBoolean();
+  }
+
   public int getDivIntegerBits()
   {
     return regCLKDIV_INT;
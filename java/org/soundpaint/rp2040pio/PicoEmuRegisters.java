@@ -135,7 +135,184 @@ public abstract class PicoEmuRegisters extends RegisterSet
                                       "signal value 0x0 or 0x1, as%n" +
                                       "provided by some external source.",
                                       BitsType.RW, 0))
-               .collect(Collectors.toList()));
+               .collect(Collectors.toList())),
+    TESTBENCH_CYCLE_LSB("LSB value (lower 32 bits) of the wall clock%n" +
+                        "cycle that subsequent writes to registers%n" +
+                        "TESTBENCH_STIMULUS and TESTBENCH_EXPECT refer to.",
+                        new BitsInfo[] {
+                          new BitsInfo(null, 31, 0, null, BitsType.RW, 0)
+                        }),
+    TESTBENCH_CYCLE_MSB("MSB value (upper 32 bits) of the wall clock%n" +
+                        "cycle that subsequent writes to registers%n" +
+                        "TESTBENCH_STIMULUS and TESTBENCH_EXPECT refer to.",
+                        new BitsInfo[] {
+                          new BitsInfo(null, 31, 0, null, BitsType.RW, 0)
+                        }),
+    TESTBENCH_CYCLE_COUNT("Number of consecutive cycles, starting with%n" +
+                          "the cycle selected by TESTBENCH_CYCLE_LSB and%n" +
+                          "TESTBENCH_CYCLE_MSB, that subsequent writes to%n" +
+                          "registers TESTBENCH_STIMULUS and%n" +
+                          "TESTBENCH_EXPECT refer to.  The value is%n" +
+                          "unsigned.  A value of 0 is treated like 1.",
+                          new BitsInfo[] {
+                            new BitsInfo(null, 31, 0, null, BitsType.RW, 1)
+                          }),
+    TESTBENCH_STIMULUS_MASK("Selects the GPIO pads that subsequent%n" +
+                            "writes to register TESTBENCH_STIMULUS%n" +
+                            "refer to.",
+                            new BitsInfo[] {
+                              new BitsInfo(null, 31, 0, null,
+                                           BitsType.RW, 0)
+                            }),
+    TESTBENCH_STIMULUS("Writing a value to this address schedules%n" +
+                       "those bits of the value that are selected by%n" +
+                       "TESTBENCH_STIMULUS_MASK as external pad input%n" +
+                       "(just like GPIO_PADIN) for the cycle selected%n" +
+                       "by TESTBENCH_CYCLE_LSB and TESTBENCH_CYCLE_MSB.%n" +
+                       "The stimulus is applied by the emulator itself%n" +
+                       "right before the selected cycle begins, or%n" +
+                       "immediately, if the cycle has already begun.",
+                       new BitsInfo[] {
+                         new BitsInfo(null, 31, 0, null, BitsType.WF, null)
+                       }),
+    TESTBENCH_EXPECT_MASK("Selects the GPIO pads that subsequent%n" +
+                          "writes to register TESTBENCH_EXPECT refer to.",
+                          new BitsInfo[] {
+                            new BitsInfo(null, 31, 0, null, BitsType.RW, 0)
+                          }),
+    TESTBENCH_EXPECT("Writing a value to this address declares those%n" +
+                     "bits of the value that are selected by%n" +
+                     "TESTBENCH_EXPECT_MASK as expected GPIO pad levels%n" +
+                     "at the end of the cycle selected by%n" +
+                     "TESTBENCH_CYCLE_LSB and TESTBENCH_CYCLE_MSB.  The%n" +
+                     "emulator compares the pad levels against the%n" +
+                     "expected levels right after the selected cycle%n" +
+                     "has been executed.",
+                     new BitsInfo[] {
+                       new BitsInfo(null, 31, 0, null, BitsType.WF, null)
+                     }),
+    TESTBENCH_EXPECT_RX_SM("Selects the state machine that subsequent%n" +
+                           "writes to register TESTBENCH_EXPECT_RX%n" +
+                           "refer to.",
+                           new BitsInfo[] {
+                             new BitsInfo(null, 31, 3, null,
+                                          BitsType.RESERVED, null),
+                             new BitsInfo("PIO", 2, 2,
+                                          "PIO number, either 0 or 1.",
+                                          BitsType.RW, 0),
+                             new BitsInfo("SM", 1, 0,
+                                          "SM number (0…3).",
+                                          BitsType.RW, 0)
+                           }),
+    TESTBENCH_EXPECT_RX("Writing a value to this address appends the%n" +
+                        "value to the queue of values that the state%n" +
+                        "machine selected by TESTBENCH_EXPECT_RX_SM is%n" +
+                        "expected to push into its RX FIFO.  Each value%n" +
+                        "that the state machine pushes is compared%n" +
+                        "against the head of the queue, if the queue is%n" +
+                        "not empty.",
+                        new BitsInfo[] {
+                          new BitsInfo(null, 31, 0, null, BitsType.WF, null)
+                        }),
+    TESTBENCH_STATUS("Status of the test bench.  Writing any value to%n" +
+                     "this address discards all stimuli and%n" +
+                     "expectations that are still pending, as well as%n" +
+                     "the recorded mismatch, if any.",
+                     new BitsInfo[] {
+                       new BitsInfo(null, 31, 2, null,
+                                    BitsType.RESERVED, null),
+                       new BitsInfo("FAILED", 1, 1,
+                                    "0x1, if a mismatch has been%n" +
+                                    "recorded.",
+                                    BitsType.RO, 0),
+                       new BitsInfo("PENDING", 0, 0,
+                                    "0x1, if any stimulus or%n" +
+                                    "expectation has not yet been%n" +
+                                    "applied or checked.",
+                                    BitsType.RO, 0)
+                     }),
+    TESTBENCH_MISMATCH_CYCLE_LSB("LSB value (lower 32 bits) of the wall%n" +
+                                 "clock cycle of the first recorded%n" +
+                                 "mismatch.",
+                                 new BitsInfo[] {
+                                   new BitsInfo(null, 31, 0, null,
+                                                BitsType.RO, 0)
+                                 }),
+    TESTBENCH_MISMATCH_CYCLE_MSB("MSB value (upper 32 bits) of the wall%n" +
+                                 "clock cycle of the first recorded%n" +
+                                 "mismatch.",
+                                 new BitsInfo[] {
+                                   new BitsInfo(null, 31, 0, null,
+                                                BitsType.RO, 0)
+                                 }),
+    TESTBENCH_MISMATCH_EXPECTED("Expected value of the first recorded%n" +
+                                "mismatch, i.e. either the expected GPIO%n" +
+                                "pad levels or the expected RX FIFO%n" +
+                                "value.",
+                                new BitsInfo[] {
+                                  new BitsInfo(null, 31, 0, null,
+                                               BitsType.RO, 0)
+                                }),
+    TESTBENCH_MISMATCH_ACTUAL("Actual value of the first recorded%n" +
+                              "mismatch, i.e. either the actual GPIO pad%n" +
+                              "levels, restricted to the expected pads,%n" +
+                              "or the actual RX FIFO value.",
+                              new BitsInfo[] {
+                                new BitsInfo(null, 31, 0, null,
+                                             BitsType.RO, 0)
+                              }),
+    TESTBENCH_MISMATCH_SOURCE("Source of the first recorded mismatch.",
+                              new BitsInfo[] {
+                                new BitsInfo(null, 31, 5, null,
+                                             BitsType.RESERVED, null),
+                                new BitsInfo("MISSED", 4, 4,
+                                             "0x1, if the expectation%n" +
+                                             "was declared for a cycle%n" +
+                                             "that had already been%n" +
+                                             "executed.",
+                                             BitsType.RO, 0),
+                                new BitsInfo("RX", 3, 3,
+                                             "0x1 for an RX FIFO value,%n" +
+                                             "0x0 for GPIO pad levels.",
+                                             BitsType.RO, 0),
+                                new BitsInfo("PIO", 2, 2,
+                                             "PIO number of the RX FIFO.",
+                                             BitsType.RO, 0),
+                                new BitsInfo("SM", 1, 0,
+                                             "SM number of the RX FIFO.",
+                                             BitsType.RO, 0)
+                              }),
+    SNAPSHOT_SAVE("Writing a slot number to this address saves the%n" +
+                  "complete emulation state (master clock, GPIO%n" +
+                  "terminals, and for both PIOs instruction memory,%n" +
+                  "pins, IRQ registers and state machines including%n" +
+                  "FIFOs and clock dividers) into the specified%n" +
+                  "snapshot slot.  Test bench and VCD recording are%n" +
+                  "not part of the snapshot.  Snapshots survive a%n" +
+                  "write to PWR_UP.",
+                  new BitsInfo[] {
+                    new BitsInfo(null, 31, 5, null, BitsType.RESERVED, null),
+                    new BitsInfo("SLOT", 4, 0, "Snapshot slot number.",
+                                 BitsType.WF, null)
+                  }),
+    SNAPSHOT_RESTORE("Writing a slot number to this address replaces%n" +
+                     "the complete emulation state by the snapshot%n" +
+                     "previously saved into the specified slot.%n" +
+                     "Restoring requires the master clock to be in%n" +
+                     "single step mode, and restores the master clock%n" +
+                     "mode of the snapshot.  Writing a slot that does%n" +
+                     "not hold a snapshot has no effect.",
+                     new BitsInfo[] {
+                       new BitsInfo(null, 31, 5, null,
+                                    BitsType.RESERVED, null),
+                       new BitsInfo("SLOT", 4, 0, "Snapshot slot number.",
+                                    BitsType.WF, null)
+                     }),
+    SNAPSHOT_SLOTS("Bit n is set if and only if snapshot slot n%n" +
+                   "holds a snapshot.",
+                   new BitsInfo[] {
+                     new BitsInfo(null, 31, 0, null, BitsType.RO, 0)
+                   });
 
     public static String getRegisterSetLabel()
     {
@@ -24,6 +24,7 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.util.function.IntSupplier;
 import org.soundpaint.rp2040pio.Clock;
 
 /**
@@ -39,69 +40,211 @@ public class PicoEmuRegistersImpl extends PicoEmuRegisters
   public PicoEmuRegistersImpl(final Emulator emulator)
   {
     this.emulator = emulator;
+    installAccessors();
   }
 
   public Emulator getEmulator() { return emulator; }
 
   @Override
-  public void writeRegister(final int regNum, final int value,
-                            final int mask, final boolean xor)
+  protected Writer createWriter(final int regNum)
   {
-    checkRegNum(regNum);
     final Regs register = REGS[regNum];
     switch (register) {
     case PWR_UP:
-      if (value == PICO_PWR_UP_VALUE) emulator.reset();
-      break;
+      return (value, mask, xor) -> {
+        if (value == PICO_PWR_UP_VALUE) emulator.reset();
+      };
     case MASTERCLK_FREQ:
-      emulator.getMasterClock().setMASTERCLK_FREQ(value);
-      break;
+      return (value, mask, xor) ->
+        emulator.getMasterClock().setMASTERCLK_FREQ(value);
     case MASTERCLK_MODE:
-      emulator.getMasterClock().setMASTERCLK_MODE(value);
-      break;
+      return (value, mask, xor) ->
+        emulator.getMasterClock().setMASTERCLK_MODE(value);
     case MASTERCLK_TRIGGER_PHASE0:
-      emulator.getMasterClock().triggerPhase0();
-      break;
+      return (value, mask, xor) -> emulator.getMasterClock().triggerPhase0();
     case MASTERCLK_TRIGGER_PHASE1:
-      emulator.getMasterClock().triggerPhase1();
-      break;
+      return (value, mask, xor) -> emulator.getMasterClock().triggerPhase1();
     case WALLCLOCK_LSB:
     case WALLCLOCK_MSB:
-      break; // read-only address
+      return (value, mask, xor) -> {}; // read-only address
     case GPIO_PADIN:
-      emulator.getGPIO().setGPIO_PADIN(value, mask, xor);
-      break;
+      return (value, mask, xor) ->
+        emulator.getGPIO().setGPIO_PADIN(value, mask, xor);
+    case TESTBENCH_CYCLE_LSB:
+      return (value, mask, xor) -> {
+        final TestBench testBench = emulator.getTestBench();
+        testBench.setCycleLSB(Constants.hwSetBits(testBench.getCycleLSB(),
+                                                  value, mask, xor));
+      };
+    case TESTBENCH_CYCLE_MSB:
+      return (value, mask, xor) -> {
+        final TestBench testBench = emulator.getTestBench();
+        testBench.setCycleMSB(Constants.hwSetBits(testBench.getCycleMSB(),
+                                                  value, mask, xor));
+      };
+    case TESTBENCH_CYCLE_COUNT:
+      return (value, mask, xor) -> {
+        final TestBench testBench = emulator.getTestBench();
+        testBench.
+          setCycleCount(Constants.hwSetBits(testBench.getCycleCount(),
+                                            value, mask, xor));
+      };
+    case TESTBENCH_STIMULUS_MASK:
+      return (value, mask, xor) -> {
+        final TestBench testBench = emulator.getTestBench();
+        testBench.
+          setStimulusMask(Constants.hwSetBits(testBench.getStimulusMask(),
+                                              value, mask, xor));
+      };
+    case TESTBENCH_STIMULUS:
+      return (value, mask, xor) ->
+        emulator.getTestBench().addStimulus(value);
+    case TESTBENCH_EXPECT_MASK:
+      return (value, mask, xor) -> {
+        final TestBench testBench = emulator.getTestBench();
+        testBench.
+          setExpectMask(Constants.hwSetBits(testBench.getExpectMask(),
+                                            value, mask, xor));
+      };
+    case TESTBENCH_EXPECT:
+      return (value, mask, xor) ->
+        emulator.getTestBench().addExpectation(value);
+    case TESTBENCH_EXPECT_RX_SM:
+      return (value, mask, xor) -> {
+        final TestBench testBench = emulator.getTestBench();
+        testBench.setRxSm(Constants.hwSetBits(testBench.getRxSm(),
+                                              value, mask, xor));
+      };
+    case TESTBENCH_EXPECT_RX:
+      return (value, mask, xor) ->
+        emulator.getTestBench().addRxExpectation(value);
+    case TESTBENCH_STATUS:
+      return (value, mask, xor) -> emulator.getTestBench().reset();
+    case TESTBENCH_MISMATCH_CYCLE_LSB:
+    case TESTBENCH_MISMATCH_CYCLE_MSB:
+    case TESTBENCH_MISMATCH_EXPECTED:
+    case TESTBENCH_MISMATCH_ACTUAL:
+    case TESTBENCH_MISMATCH_SOURCE:
+      return (value, mask, xor) -> {}; // read-only address
+    case SNAPSHOT_SAVE:
+      return (value, mask, xor) ->
+        emulator.saveSnapshot(value & (Emulator.SNAPSHOT_SLOTS - 1));
+    case SNAPSHOT_RESTORE:
+      return (value, mask, xor) ->
+        emulator.restoreSnapshot(value & (Emulator.SNAPSHOT_SLOTS - 1));
+    case SNAPSHOT_SLOTS:
+      return (value, mask, xor) -> {}; // read-only address
     default:
       throw new InternalError("unexpected case fall-through");
     }
   }
 
+  /**
+   * Returns false for those registers that control the master clock
+   * or reset or restore the emulator as a whole.  Writing them
+   * requires the emulation thread to advance or to park, and
+   * therefore must not happen while the clock is held between two
+   * phases, as is done for transactional writes.
+   */
+  public boolean isAtomicallyWritable(final int regNum)
+  {
+    switch (REGS[regNum]) {
+    case PWR_UP:
+    case MASTERCLK_FREQ:
+    case MASTERCLK_MODE:
+    case MASTERCLK_TRIGGER_PHASE0:
+    case MASTERCLK_TRIGGER_PHASE1:
+    case SNAPSHOT_RESTORE:
+      return false;
+    default:
+      return true;
+    }
+  }
+
+  @Override
+  protected Object createLock(final int regNum)
+  {
+    final Regs register = REGS[regNum];
+    switch (register) {
+    case GPIO_PADIN:
+      return emulator.getGPIO().getRegistersLock();
+    case TESTBENCH_CYCLE_LSB:
+    case TESTBENCH_CYCLE_MSB:
+    case TESTBENCH_CYCLE_COUNT:
+    case TESTBENCH_STIMULUS_MASK:
+    case TESTBENCH_EXPECT_MASK:
+    case TESTBENCH_EXPECT_RX_SM:
+      // serialize read-modify-write of masked writes
+      return emulator.getTestBench();
+    default:
+      // Master clock and reset synchronize on their own.  Holding a
+      // register lock while calling into them could deadlock with
+      // clients that access registers from within a clock transition,
+      // as the cycle sampler does.
+      return null;
+    }
+  }
+
   @Override
-  public synchronized int readRegister(final int regNum)
+  protected IntSupplier createReader(final int regNum)
   {
-    checkRegNum(regNum);
     final Regs register = REGS[regNum];
     switch (register) {
     case PWR_UP:
-      return 0; // write-only address
+      return () -> 0; // write-only address
     case MASTERCLK_FREQ:
-      return emulator.getMasterClock().getMASTERCLK_FREQ();
+      return () -> emulator.getMasterClock().getMASTERCLK_FREQ();
     case MASTERCLK_MODE:
-      return emulator.getMasterClock().getMASTERCLK_MODE();
+      return () -> emulator.getMasterClock().getMASTERCLK_MODE();
     case MASTERCLK_TRIGGER_PHASE0:
-      return
+      return () ->
         emulator.getMasterClock().getPhase() == Clock.Phase.PHASE_0_STABLE ?
         0x1 : 0x0;
     case MASTERCLK_TRIGGER_PHASE1:
-      return
+      return () ->
         emulator.getMasterClock().getPhase() == Clock.Phase.PHASE_1_STABLE ?
         0x1 : 0x0;
     case WALLCLOCK_LSB:
-      return (int)emulator.getMasterClock().getWallClock();
+      return () -> (int)emulator.getMasterClock().getWallClock();
     case WALLCLOCK_MSB:
-      return (int)(emulator.getMasterClock().getWallClock() >>> 32);
+      return () -> (int)(emulator.getMasterClock().getWallClock() >>> 32);
     case GPIO_PADIN:
-      return emulator.getGPIO().getGPIO_PADIN();
+      return () -> emulator.getGPIO().getGPIO_PADIN();
+    case TESTBENCH_CYCLE_LSB:
+      return () -> emulator.getTestBench().getCycleLSB();
+    case TESTBENCH_CYCLE_MSB:
+      return () -> emulator.getTestBench().getCycleMSB();
+    case TESTBENCH_CYCLE_COUNT:
+      return () -> emulator.getTestBench().getCycleCount();
+    case TESTBENCH_STIMULUS_MASK:
+      return () -> emulator.getTestBench().getStimulusMask();
+    case TESTBENCH_STIMULUS:
+      return () -> 0; // write-only address
+    case TESTBENCH_EXPECT_MASK:
+      return () -> emulator.getTestBench().getExpectMask();
+    case TESTBENCH_EXPECT:
+      return () -> 0; // write-only address
+    case TESTBENCH_EXPECT_RX_SM:
+      return () -> emulator.getTestBench().getRxSm();
+    case TESTBENCH_EXPECT_RX:
+      return () -> 0; // write-only address
+    case TESTBENCH_STATUS:
+      return () -> emulator.getTestBench().getStatus();
+    case TESTBENCH_MISMATCH_CYCLE_LSB:
+      return () -> emulator.getTestBench().getMismatchCycleLSB();
+    case TESTBENCH_MISMATCH_CYCLE_MSB:
+      return () -> emulator.getTestBench().getMismatchCycleMSB();
+    case TESTBENCH_MISMATCH_EXPECTED:
+      return () -> emulator.getTestBench().getMismatchExpected();
+    case TESTBENCH_MISMATCH_ACTUAL:
+      return () -> emulator.getTestBench().getMismatchActual();
+    case TESTBENCH_MISMATCH_SOURCE:
+      return () -> emulator.getTestBench().getMismatchSource();
+    case SNAPSHOT_SAVE:
+    case SNAPSHOT_RESTORE:
+      return () -> 0; // write-only address
+    case SNAPSHOT_SLOTS:
+      return () -> emulator.getSnapshotSlots();
     default:
       throw new InternalError("unexpected case fall-through");
     }
@@ -26,12 +26,37 @@ package org.soundpaint.rp2040pio;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.function.IntSupplier;
 
+/**
+ * Abstract set of registers at consecutive addresses.  For fast
+ * dispatch, read and write access to each register is resolved via a
+ * table of accessors, indexed by register number.  Each concrete
+ * subclass provides the accessors by implementing methods
+ * createReader() and createWriter(), and must call
+ * installAccessors() at the end of its constructor.
+ *
+ * Concurrent accesses are serialized per register rather than per
+ * register set, using the monitor that method createLock() returns
+ * for the register.  By default, all registers of a set share the
+ * set itself as monitor.  Subclasses override createLock() to stripe
+ * locks more finely, e.g. per state machine, such that clients
+ * accessing unrelated registers do not block each other.
+ */
 public abstract class RegisterSet implements Constants
 {
+  @FunctionalInterface
+  public static interface Writer
+  {
+    void write(final int value, final int mask, final boolean xor);
+  }
+
   private final String id;
   private final int baseAddress;
   private final short size;
+  private final IntSupplier[] readers;
+  private final Writer[] writers;
+  private final Object[] locks;
 
   private RegisterSet()
   {
@@ -59,6 +84,42 @@ public abstract class RegisterSet implements Constants
       throw new IllegalArgumentException(String.format("size * 0x4 > 0x1000: " +
                                                        "0x%08x" + size * 0x4));
     }
+    readers = new IntSupplier[size];
+    writers = new Writer[size];
+    locks = new Object[size];
+  }
+
+  /**
+   * Fills the table of accessors.  Since the accessors typically
+   * refer to fields of the concrete subclass, this method must be
+   * called at the end of the subclass's constructor rather than
+   * from within this class's constructor.
+   */
+  protected void installAccessors()
+  {
+    for (int regNum = 0; regNum < size; regNum++) {
+      readers[regNum] = createReader(regNum);
+      writers[regNum] = createWriter(regNum);
+      locks[regNum] = createLock(regNum);
+    }
+  }
+
+  protected abstract IntSupplier createReader(final int regNum);
+
+  protected abstract Writer createWriter(final int regNum);
+
+  /**
+   * Returns the monitor that guards accesses to the specified
+   * register.  Registers whose accessors touch shared state must
+   * return the same monitor.  Registers whose accessors delegate to
+   * a component that already synchronizes on its own (like the
+   * master clock) may return &lt;code&gt;null&lt;/code&gt; to be
+   * accessed without any monitor, thus avoiding lock order
+   * conflicts with the component's own locks.
+   */
+  protected Object createLock(final int regNum)
+  {
+    return this;
   }
 
   public String getId() { return id; }
@@ -95,12 +156,32 @@ public abstract class RegisterSet implements Constants
     return regNum < regs.length ? regs[regNum].toString() : null;
   }
 
-  public abstract void writeRegister(final int regNum,
-                                     final int bits, final int mask,
-                                     final boolean xor)
-    throws IOException;
+  public void writeRegister(final int regNum,
+                            final int bits, final int mask,
+                            final boolean xor)
+  {
+    checkRegNum(regNum);
+    final Object lock = locks[regNum];
+    if (lock == null) {
+      writers[regNum].write(bits, mask, xor);
+      return;
+    }
+    synchronized(lock) {
+      writers[regNum].write(bits, mask, xor);
+    }
+  }
 
-  public abstract int readRegister(final int regNum) throws IOException;
+  public int readRegister(final int regNum)
+  {
+    checkRegNum(regNum);
+    final Object lock = locks[regNum];
+    if (lock == null) {
+      return readers[regNum].getAsInt();
+    }
+    synchronized(lock) {
+      return readers[regNum].getAsInt();
+    }
+  }
 
   @Override
   public String toString()
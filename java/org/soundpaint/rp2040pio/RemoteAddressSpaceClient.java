@@ -42,6 +42,12 @@ public class RemoteAddressSpaceClient extends AddressSpace
 {
   private static final String MSG_NO_CONNECTION = "no connection";
 
+  /**
+   * Maximum number of requests that method writeAddressesMasked()
+   * sends before collecting their responses.
+   */
+  private static final int MAX_PIPELINED_REQUESTS = 256;
+
   private static class Response
   {
     private final PrintStream console;
@@ -212,17 +218,48 @@ public class RemoteAddressSpaceClient extends AddressSpace
     this.port = port;
   }
 
-  private synchronized Response getResponse(final String request)
+  private Response getResponse(final String request) throws IOException
+  {
+    return getResponses(new String[] { request })[0];
+  }
+
+  /**
+   * Sends the specified requests in chunks of up to
+   * MAX_PIPELINED_REQUESTS requests, each chunk at once before
+   * collecting its responses, such that each chunk costs a single
+   * round trip rather than one per request.  Limiting the chunk size
+   * ensures that the server never blocks on sending responses that
+   * this client does not yet read.
+   * @return The responses in the order of the requests.  If the
+   * connection is lost, the corresponding and all subsequent
+   * responses are &lt;code&gt;null&lt;/code&gt;.
+   */
+  private synchronized Response[] getResponses(final String[] requests)
     throws IOException
   {
-    final PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+    final PrintWriter out = new PrintWriter(socket.getOutputStream(), false);
     final BufferedReader in =
       new BufferedReader(new InputStreamReader(socket.getInputStream()));
-    out.println(request);
-    final String response = in.readLine();
-    if (response == null) {
-      return null;
+    final Response[] responses = new Response[requests.length];
+    for (int chunkStart = 0; chunkStart < requests.length;
+         chunkStart += MAX_PIPELINED_REQUESTS) {
+      final int chunkStop =
+        Math.min(chunkStart + MAX_PIPELINED_REQUESTS, requests.length);
+      for (int index = chunkStart; index < chunkStop; index++) {
+        out.println(requests[index]);
+      }
+      out.flush();
+      for (int index = chunkStart; index < chunkStop; index++) {
+        final String response = in.readLine();
+        if (response == null) return responses;
+        responses[index] = parseResponse(response);
+      }
     }
+    return responses;
+  }
+
+  private Response parseResponse(final String response) throws IOException
+  {
     final int colonPos = response.indexOf(':');
     final String statusDisplay =
       colonPos >= 0 ? response.substring(0, colonPos) : response;
@@ -355,6 +392,59 @@ public class RemoteAddressSpaceClient extends AddressSpace
     response.getResultOrThrowOnFailure(message);
   }
 
+  @Override
+  public void writeAddressesMasked(final int[] addresses, final int[] bits,
+                                   final int[] masks, final boolean[] xors)
+    throws IOException
+  {
+    checkWrites(addresses, bits, masks, xors);
+    final String[] requests = new String[addresses.length];
+    for (int index = 0; index < addresses.length; index++) {
+      requests[index] =
+        String.format("w 0x%08x 0x%08x 0x%08x %s",
+                      addresses[index], bits[index], masks[index],
+                      xors[index] ? "t" : "f");
+    }
+    final Response[] responses = getResponses(requests);
+    for (int index = 0; index < addresses.length; index++) {
+      final Response response = responses[index];
+      checkResponse(response);
+      final String message =
+        String.format("failed writing value 0x%08x to address 0x%08x with " +
+                      "mask 0x%08x and xor=%s", bits[index], addresses[index],
+                      masks[index], xors[index]);
+      response.getResultOrThrowOnFailure(message);
+    }
+  }
+
+  /**
+   * Unlike method writeAddressesMasked(), which pipelines one request
+   * per write, all of the writes are sent as a single request, such
+   * that the server can apply them as a whole.
+   */
+  @Override
+  public void writeAddressesAtomically(final int[] addresses,
+                                       final int[] bits,
+                                       final int[] masks,
+                                       final boolean[] xors)
+    throws IOException
+  {
+    checkWrites(addresses, bits, masks, xors);
+    if (addresses.length == 0) return;
+    final StringBuilder request = new StringBuilder("t");
+    for (int index = 0; index < addresses.length; index++) {
+      request.append(String.format(" 0x%08x 0x%08x 0x%08x %s",
+                                   addresses[index], bits[index],
+                                   masks[index], xors[index] ? "t" : "f"));
+    }
+    final Response response = getResponse(request.toString());
+    checkResponse(response);
+    final String message =
+      String.format("failed writing %d values in a single transaction",
+                    addresses.length);
+    response.getResultOrThrowOnFailure(message);
+  }
+
   private int parseIntResult(final int address, final String result)
     throws IOException
   {
@@ -387,6 +477,101 @@ public class RemoteAddressSpaceClient extends AddressSpace
     return parseIntResult(address, result);
   }
 
+  @Override
+  public int[] readAddresses(final int[] addresses) throws IOException
+  {
+    if (addresses == null) {
+      throw new NullPointerException("addresses");
+    }
+    if (addresses.length == 0) {
+      return new int[0];
+    }
+    final StringBuilder request = new StringBuilder("m");
+    for (final int address : addresses) {
+      request.append(String.format(" 0x%08x", address));
+    }
+    final Response response = getResponse(request.toString());
+    checkResponse(response);
+    final String message =
+      String.format("failed retrieving values for %d addresses",
+                    addresses.length);
+    final String result = response.getResultOrThrowOnFailure(message);
+    final String[] unparsedValues =
+      result != null ? result.split(" ") : new String[0];
+    if (unparsedValues.length != addresses.length) {
+      final String mismatchMessage =
+        String.format("expected %d values, but received %d",
+                      addresses.length, unparsedValues.length);
+      throw new IOException(mismatchMessage);
+    }
+    final int[] values = new int[addresses.length];
+    for (int index = 0; index < addresses.length; index++) {
+      values[index] = parseIntResult(addresses[index], unparsedValues[index]);
+    }
+    return values;
+  }
+
+  @Override
+  public int[] sampleAddresses(final int[] addresses, final int cycles)
+    throws IOException
+  {
+    if (addresses == null) {
+      throw new NullPointerException("addresses");
+    }
+    checkSampleCount(addresses, cycles);
+    if ((addresses.length == 0) || (cycles == 0)) {
+      return new int[cycles * addresses.length];
+    }
+    final StringBuilder request = new StringBuilder("c " + cycles);
+    for (final int address : addresses) {
+      request.append(String.format(" 0x%08x", address));
+    }
+    final Response response = getResponse(request.toString());
+    checkResponse(response);
+    final String message =
+      String.format("failed sampling %d addresses for %d cycles",
+                    addresses.length, cycles);
+    final String result = response.getResultOrThrowOnFailure(message);
+    final String[] rows = result != null ? result.split(" ") : new String[0];
+    if (rows.length != cycles) {
+      final String mismatchMessage =
+        String.format("expected %d rows of samples, but received %d",
+                      cycles, rows.length);
+      throw new IOException(mismatchMessage);
+    }
+    final int[] samples = new int[cycles * addresses.length];
+    for (int cycle = 0; cycle < cycles; cycle++) {
+      final String[] cells = rows[cycle].split(",", -1);
+      if (cells.length != addresses.length) {
+        final String mismatchMessage =
+          String.format("expected %d samples in row %d, but received %d",
+                        addresses.length, cycle, cells.length);
+        throw new IOException(mismatchMessage);
+      }
+      final int offset = cycle * addresses.length;
+      for (int index = 0; index < addresses.length; index++) {
+        final String cell = cells[index];
+        if (cell.isEmpty()) {
+          if (cycle == 0) {
+            throw new IOException("missing value in first row of samples");
+          }
+          samples[offset + index] =
+            samples[offset - addresses.length + index];
+        } else {
+          try {
+            samples[offset + index] = Integer.parseUnsignedInt(cell, 16);
+          } catch (final NumberFormatException e) {
+            final String parseMessage =
+              String.format("failed parsing sample for address 0x%08x: %s",
+                            addresses[index], cell);
+            throw new IOException(parseMessage);
+          }
+        }
+      }
+    }
+    return samples;
+  }
+
   @Override
   public int waitAddress(final int address,
                          final int expectedValue, final int mask,
@@ -405,6 +590,54 @@ public class RemoteAddressSpaceClient extends AddressSpace
       response.getResultOrThrowOnFailure(message);
     return parseIntResult(address, result);
   }
+
+  @Override
+  public int[] waitAddressesChanged(final int[] addresses,
+                                    final int[] values,
+                                    final long millisTimeout)
+    throws IOException
+  {
+    if (addresses == null) {
+      throw new NullPointerException("addresses");
+    }
+    if (values == null) {
+      throw new NullPointerException("values");
+    }
+    if (values.length != addresses.length) {
+      throw new IllegalArgumentException("values.length != " +
+                                         "addresses.length: " +
+                                         values.length + " != " +
+                                         addresses.length);
+    }
+    if (addresses.length == 0) {
+      return new int[0];
+    }
+    final StringBuilder request = new StringBuilder("d " + millisTimeout);
+    for (int index = 0; index < addresses.length; index++) {
+      request.append(String.format(" 0x%08x 0x%08x",
+                                   addresses[index], values[index]));
+    }
+    final Response response = getResponse(request.toString());
+    checkResponse(response);
+    final String message =
+      String.format("failed waiting for change of %d addresses",
+                    addresses.length);
+    final String result = response.getResultOrThrowOnFailure(message);
+    final String[] unparsedValues =
+      result != null ? result.split(" ") : new String[0];
+    if (unparsedValues.length != addresses.length) {
+      final String mismatchMessage =
+        String.format("expected %d values, but received %d",
+                      addresses.length, unparsedValues.length);
+      throw new IOException(mismatchMessage);
+    }
+    final int[] receivedValues = new int[addresses.length];
+    for (int index = 0; index < addresses.length; index++) {
+      receivedValues[index] =
+        parseIntResult(addresses[index], unparsedValues[index]);
+    }
+    return receivedValues;
+  }
 }
 
 /*
@@ -125,10 +125,17 @@ public class RemoteAddressSpaceServer
       "v                   (version)" + ls +
       "q                   (quit)" + ls +
       "r <addr>            (read address)" + ls +
+      "m <addr> [<addr>...] (read addresses as consistent snapshot)" + ls +
+      "c <cycles> <addr> [<addr>...]" + ls +
+      "                    (run cycles, sampling addresses per cycle)" + ls +
       "w <addr> <value> <mask> <xor>" + ls +
       "                    (write address)" + ls +
+      "t <addr> <value> <mask> <xor> [<addr> <value> <mask> <xor>...]" + ls +
+      "                    (write addresses as single transaction)" + ls +
       "i <addr> <value> [<mask> [<timeout cycles> [<timeout millis>]]]" + ls +
       "                    (await value)" + ls +
+      "d <timeout millis> <addr> <value> [<addr> <value>...]" + ls +
+      "                    (await change of any address)" + ls +
       "s <addr>            (show address register set id)" + ls +
       "l <addr>            (show address label)" + ls +
       "p <addr>            (check address validity)";
@@ -333,6 +340,37 @@ public class RemoteAddressSpaceServer
     return createResponse(ResponseStatus.OK);
   }
 
+  private String handleWriteAddressesAtomically(final String[] args)
+    throws IOException
+  {
+    if ((args.length < 4) || ((args.length & 0x3) != 0)) {
+      return createResponse(ResponseStatus.ERR_MISSING_OPERAND, null);
+    }
+    final int count = args.length / 4;
+    final int[] addresses = new int[count];
+    final int[] values = new int[count];
+    final int[] masks = new int[count];
+    final boolean[] xors = new boolean[count];
+    for (int index = 0; index < count; index++) {
+      try {
+        addresses[index] = parseAddress(args[4 * index]);
+        values[index] = parseInt(args[4 * index + 1]);
+        masks[index] = parseInt(args[4 * index + 2]);
+      } catch (final NumberFormatException e) {
+        return createResponse(ResponseStatus.ERR_INVALID_NUMBER,
+                              e.getMessage());
+      }
+      try {
+        xors[index] = parseBoolean(args[4 * index + 3]);
+      } catch (final IllegalArgumentException e) {
+        return createResponse(ResponseStatus.ERR_INVALID_BOOL,
+                              e.getMessage());
+      }
+    }
+    memory.writeAddressesAtomically(addresses, values, masks, xors);
+    return createResponse(ResponseStatus.OK);
+  }
+
   private String handleReadAddress(final String[] args) throws IOException
   {
     if (args.length < 1) {
@@ -351,6 +389,83 @@ public class RemoteAddressSpaceServer
     return createResponse(ResponseStatus.OK, String.valueOf(value));
   }
 
+  private String handleReadAddresses(final String[] args) throws IOException
+  {
+    if (args.length < 1) {
+      return createResponse(ResponseStatus.ERR_MISSING_OPERAND, null);
+    }
+    final int[] addresses = new int[args.length];
+    for (int index = 0; index < args.length; index++) {
+      try {
+        addresses[index] = parseAddress(args[index]);
+      } catch (final NumberFormatException e) {
+        return createResponse(ResponseStatus.ERR_INVALID_NUMBER,
+                              e.getMessage());
+      }
+    }
+    final int[] values = memory.readAddresses(addresses);
+    final StringBuilder result = new StringBuilder();
+    for (final int value : values) {
+      if (result.length() > 0) result.append(' ');
+      result.append(value);
+    }
+    return createResponse(ResponseStatus.OK, result.toString());
+  }
+
+  /**
+   * Result format: one space-separated row per cycle, each row
+   * consisting of comma-separated hexadecimal values, one per
+   * address.  To keep the response compact, a value is omitted
+   * (i.e. left empty) if it equals the value of the previous row.
+   */
+  private String handleSampleAddresses(final String[] args)
+    throws IOException
+  {
+    if (args.length < 2) {
+      return createResponse(ResponseStatus.ERR_MISSING_OPERAND, null);
+    }
+    final int cycles;
+    try {
+      cycles = parseInt(args[0]);
+    } catch (final NumberFormatException e) {
+      return createResponse(ResponseStatus.ERR_INVALID_NUMBER, e.getMessage());
+    }
+    if (cycles < 0) {
+      return createResponse(ResponseStatus.ERR_INVALID_NUMBER,
+                            "cycles < 0: " + cycles);
+    }
+    final int[] addresses = new int[args.length - 1];
+    for (int index = 0; index < addresses.length; index++) {
+      try {
+        addresses[index] = parseAddress(args[index + 1]);
+      } catch (final NumberFormatException e) {
+        return createResponse(ResponseStatus.ERR_INVALID_NUMBER,
+                              e.getMessage());
+      }
+    }
+    final long sampleCount = (long)cycles * addresses.length;
+    if (sampleCount > AddressSpace.MAX_SAMPLES) {
+      return createResponse(ResponseStatus.ERR_INVALID_NUMBER,
+                            "number of samples exceeds " +
+                            AddressSpace.MAX_SAMPLES + ": " + sampleCount);
+    }
+    final int[] samples = memory.sampleAddresses(addresses, cycles);
+    final StringBuilder result = new StringBuilder();
+    for (int cycle = 0; cycle < cycles; cycle++) {
+      if (cycle > 0) result.append(' ');
+      final int offset = cycle * addresses.length;
+      final int prevOffset = offset - addresses.length;
+      for (int index = 0; index < addresses.length; index++) {
+        if (index > 0) result.append(',');
+        final int value = samples[offset + index];
+        if ((cycle == 0) || (value != samples[prevOffset + index])) {
+          result.append(Integer.toHexString(value));
+        }
+      }
+    }
+    return createResponse(ResponseStatus.OK, result.toString());
+  }
+
   private String handleWait(final String[] args) throws IOException
   {
     if (args.length < 2) {
@@ -408,6 +523,47 @@ public class RemoteAddressSpaceServer
     return createResponse(ResponseStatus.OK, String.valueOf(value));
   }
 
+  /**
+   * Result format: space-separated list of the current values, just
+   * as for command 'm'.
+   */
+  private String handleWaitChanged(final String[] args) throws IOException
+  {
+    if (args.length < 3) {
+      return createResponse(ResponseStatus.ERR_MISSING_OPERAND, null);
+    }
+    if ((args.length & 0x1) == 0) {
+      return createResponse(ResponseStatus.ERR_MISSING_OPERAND, null);
+    }
+    final int millisTimeout;
+    try {
+      millisTimeout = parseInt(args[0]);
+    } catch (final NumberFormatException e) {
+      return createResponse(ResponseStatus.ERR_INVALID_NUMBER, e.getMessage());
+    }
+    final int count = (args.length - 1) / 2;
+    final int[] addresses = new int[count];
+    final int[] values = new int[count];
+    for (int index = 0; index < count; index++) {
+      try {
+        addresses[index] = parseAddress(args[2 * index + 1]);
+        values[index] = parseInt(args[2 * index + 2]);
+      } catch (final NumberFormatException e) {
+        return createResponse(ResponseStatus.ERR_INVALID_NUMBER,
+                              e.getMessage());
+      }
+    }
+    final int[] receivedValues =
+      memory.waitAddressesChanged(addresses, values,
+                                  ((long)millisTimeout) & 0xffffffffL);
+    final StringBuilder result = new StringBuilder();
+    for (final int value : receivedValues) {
+      if (result.length() > 0) result.append(' ');
+      result.append(value);
+    }
+    return createResponse(ResponseStatus.OK, result.toString());
+  }
+
   private String handleRequest(final String request) throws IOException
   {
     if (request.isEmpty()) {
@@ -441,10 +597,18 @@ public class RemoteAddressSpaceServer
       return handleGetLabel(args);
     case 'w':
       return handleWriteAddress(args);
+    case 't':
+      return handleWriteAddressesAtomically(args);
     case 'r':
       return handleReadAddress(args);
+    case 'm':
+      return handleReadAddresses(args);
+    case 'c':
+      return handleSampleAddresses(args);
     case 'i':
       return handleWait(args);
+    case 'd':
+      return handleWaitChanged(args);
     default:
       return createResponse(ResponseStatus.ERR_UNKNOWN_COMMAND,
                             String.valueOf(command));
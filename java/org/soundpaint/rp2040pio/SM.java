@@ -24,15 +24,25 @@
  */
 package org.soundpaint.rp2040pio;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.function.Function;
 import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
 
 /**
  * State Machine
  */
 public class SM implements Constants
 {
+  /**
+   * Serializes register accesses of clients that address this state
+   * machine, such that clients accessing different state machines do
+   * not block each other.  Not used by the emulation thread.
+   */
+  private final Object registersLock;
   private final int num;
   private final PrintStream console;
   private final MasterClock masterClock;
@@ -192,6 +202,121 @@ public class SM implements Constants
       regTRACEPOINTS = 0;
     }
 
+    /**
+     * Writes all fields except for the currently decoded instruction,
+     * which is saved and restored by the enclosing state machine.
+     */
+    private void saveState(final DataOutput out) throws IOException
+    {
+      out.writeInt(origin);
+      out.writeByte(resultState != null ? resultState.ordinal() : -1);
+      out.writeBoolean(processing);
+      out.writeBoolean(smEnabled);
+      out.writeBoolean(clockEnabled);
+      out.writeBoolean(isDelayCycle);
+      out.writeInt(collateSideSetPins);
+      out.writeInt(collateSideSetBase);
+      out.writeInt(collateSideSetCount);
+      out.writeInt(outStickyPins);
+      out.writeInt(outStickyBase);
+      out.writeInt(outStickyCount);
+      out.writeBoolean(havePendingOutOrSetPins);
+      out.writeInt(regX);
+      out.writeInt(regY);
+      out.writeInt(isrValue);
+      out.writeInt(isrShiftCount);
+      out.writeInt(osrValue);
+      out.writeInt(osrShiftCount);
+      out.writeInt(totalDelay);
+      out.writeInt(pendingDelay);
+      out.writeInt(pendingForcedInstruction);
+      out.writeBoolean(isForcedInstruction);
+      out.writeInt(pendingExecdInstruction);
+      out.writeInt(regADDR);
+      out.writeBoolean(regEXECCTRL_SIDE_EN);
+      out.writeByte(regEXECCTRL_SIDE_PINDIR.ordinal());
+      out.writeInt(regEXECCTRL_JMP_PIN);
+      out.writeInt(regEXECCTRL_OUT_EN_SEL);
+      out.writeBoolean(regEXECCTRL_INLINE_OUT_EN);
+      out.writeBoolean(regEXECCTRL_OUT_STICKY);
+      out.writeInt(regEXECCTRL_WRAP_TOP);
+      out.writeInt(regEXECCTRL_WRAP_BOTTOM);
+      out.writeBoolean(regEXECCTRL_STATUS_SEL);
+      out.writeInt(regEXECCTRL_STATUS_N);
+      out.writeInt(regSHIFTCTRL_PULL_THRESH);
+      out.writeInt(regSHIFTCTRL_PUSH_THRESH);
+      out.writeByte(regSHIFTCTRL_IN_SHIFTDIR.ordinal());
+      out.writeBoolean(regSHIFTCTRL_AUTOPULL);
+      out.writeByte(regSHIFTCTRL_OUT_SHIFTDIR.ordinal());
+      out.writeBoolean(regSHIFTCTRL_AUTOPUSH);
+      out.writeInt(regPINCTRL_SIDESET_COUNT);
+      out.writeInt(regPINCTRL_SET_COUNT);
+      out.writeInt(regPINCTRL_OUT_COUNT);
+      out.writeInt(regPINCTRL_IN_BASE);
+      out.writeInt(regPINCTRL_SIDESET_BASE);
+      out.writeInt(regPINCTRL_SET_BASE);
+      out.writeInt(regPINCTRL_OUT_BASE);
+      out.writeInt(regBREAKPOINTS);
+      out.writeInt(regTRACEPOINTS);
+    }
+
+    private void restoreState(final DataInput in) throws IOException
+    {
+      origin = in.readInt();
+      final int resultStateIndex = in.readByte();
+      resultState =
+        resultStateIndex >= 0 ?
+        Instruction.ResultState.values()[resultStateIndex] : null;
+      processing = in.readBoolean();
+      smEnabled = in.readBoolean();
+      clockEnabled = in.readBoolean();
+      isDelayCycle = in.readBoolean();
+      collateSideSetPins = in.readInt();
+      collateSideSetBase = in.readInt();
+      collateSideSetCount = in.readInt();
+      outStickyPins = in.readInt();
+      outStickyBase = in.readInt();
+      outStickyCount = in.readInt();
+      havePendingOutOrSetPins = in.readBoolean();
+      regX = in.readInt();
+      regY = in.readInt();
+      isrValue = in.readInt();
+      isrShiftCount = in.readInt();
+      osrValue = in.readInt();
+      osrShiftCount = in.readInt();
+      totalDelay = in.readInt();
+      pendingDelay = in.readInt();
+      pendingForcedInstruction = in.readInt();
+      isForcedInstruction = in.readBoolean();
+      pendingExecdInstruction = in.readInt();
+      regADDR = in.readInt();
+      regEXECCTRL_SIDE_EN = in.readBoolean();
+      regEXECCTRL_SIDE_PINDIR = PIO.PinDir.values()[in.readByte()];
+      regEXECCTRL_JMP_PIN = in.readInt();
+      regEXECCTRL_OUT_EN_SEL = in.readInt();
+      regEXECCTRL_INLINE_OUT_EN = in.readBoolean();
+      regEXECCTRL_OUT_STICKY = in.readBoolean();
+      regEXECCTRL_WRAP_TOP = in.readInt();
+      regEXECCTRL_WRAP_BOTTOM = in.readInt();
+      regEXECCTRL_STATUS_SEL = in.readBoolean();
+      regEXECCTRL_STATUS_N = in.readInt();
+      regSHIFTCTRL_PULL_THRESH = in.readInt();
+      regSHIFTCTRL_PUSH_THRESH = in.readInt();
+      regSHIFTCTRL_IN_SHIFTDIR = PIO.ShiftDir.values()[in.readByte()];
+      regSHIFTCTRL_AUTOPULL = in.readBoolean();
+      regSHIFTCTRL_OUT_SHIFTDIR = PIO.ShiftDir.values()[in.readByte()];
+      regSHIFTCTRL_AUTOPUSH = in.readBoolean();
+      regPINCTRL_SIDESET_COUNT = in.readInt();
+      regPINCTRL_SET_COUNT = in.readInt();
+      regPINCTRL_OUT_COUNT = in.readInt();
+      regPINCTRL_IN_BASE = in.readInt();
+      regPINCTRL_SIDESET_BASE = in.readInt();
+      regPINCTRL_SET_BASE = in.readInt();
+      regPINCTRL_OUT_BASE = in.readInt();
+      regBREAKPOINTS = in.readInt();
+      regTRACEPOINTS = in.readInt();
+    }
+
     public void restart()
     {
       /*
@@ -338,6 +463,7 @@ public class SM implements Constants
     if (num > 3) {
       throw new IllegalArgumentException("SM num > 3: " + num);
     }
+    registersLock = new Object();
     if (console == null) {
       throw new NullPointerException("console");
     }
@@ -377,6 +503,30 @@ public class SM implements Constants
 
   public PLL getPLL() { return pll; }
 
+  /**
+   * Returns the monitor that serializes register accesses of clients
+   * that address this state machine.
+   */
+  Object getRegistersLock()
+  {
+    return registersLock;
+  }
+
+  /**
+   * Applies the specified getter to this state machine while holding
+   * the monitor that serializes register accesses, such that clients
+   * outside of the register layer get a consistent view of its state.
+   */
+  public int readLocked(final ToIntFunction<SM> getter)
+  {
+    if (getter == null) {
+      throw new NullPointerException("getter");
+    }
+    synchronized(registersLock) {
+      return getter.applyAsInt(this);
+    }
+  }
+
   public void reset()
   {
     status.reset();
@@ -385,6 +535,48 @@ public class SM implements Constants
     pll.reset();
   }
 
+  /**
+   * Writes the state machine's status, including its FIFO and PLL.
+   * The currently decoded instruction is saved as op-code and will
+   * be decoded again upon restore.
+   */
+  public void saveState(final DataOutput out) throws IOException
+  {
+    synchronized(registersLock) {
+      final Instruction instruction = status.instruction;
+      out.writeBoolean(instruction != null);
+      out.writeShort(instruction != null ? instruction.getOpCode() : 0);
+      status.saveState(out);
+      fifo.saveState(out);
+      pll.saveState(out);
+    }
+  }
+
+  public void restoreState(final DataInput in) throws IOException
+  {
+    synchronized(registersLock) {
+      final boolean haveInstruction = in.readBoolean();
+      final short opCode = in.readShort();
+      status.restoreState(in);
+      fifo.restoreState(in);
+      pll.restoreState(in);
+      decoder.reset();
+      if (haveInstruction) {
+        try {
+          status.instruction =
+            decoder.decode(opCode,
+                           status.regPINCTRL_SIDESET_COUNT,
+                           status.regEXECCTRL_SIDE_EN);
+        } catch (final Decoder.DecodeException e) {
+          throw new IOException("failed decoding saved instruction: " +
+                                e.getMessage());
+        }
+      } else {
+        status.instruction = null;
+      }
+    }
+  }
+
   public void setCLKDIV(final int clkdiv, final int mask, final boolean xor)
   {
     pll.setCLKDIV(Constants.hwSetBits(pll.getCLKDIV(), clkdiv, mask, xor));
@@ -0,0 +1,404 @@
+/*
+ * @(#)TestBench.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Applies timed stimuli to the GPIO pads and checks expected GPIO
+ * pad levels and RX FIFO values from within the emulation loop, such
+ * that a test sequence can be declared in advance and evaluated at
+ * full emulation speed, without any client interaction per cycle.
+ *
+ * Evaluation takes place on the falling edge of the master clock,
+ * right after all PIOs have committed their collated GPIO writes.
+ * First, the GPIO expectations for the completing cycle are compared
+ * against the pad levels, just as the VCD recorder samples them.
+ * Then, the stimuli for the upcoming cycle are applied as external
+ * pad input, such that a stimulus scheduled for cycle n is visible
+ * to the state machines throughout cycle n.  Values pushed into an
+ * RX FIFO are compared against the respective state machine's queue
+ * of expected values as soon as they are pushed.
+ *
+ * Only the first mismatch is recorded.  Thereafter, all remaining
+ * stimuli and expectations are discarded, such that clients waiting
+ * for the test bench to complete do not have to wait any longer.
+ * Expectations that are declared for a cycle that has already been
+ * completed can not be checked anymore and are reported as missed.
+ */
+public class TestBench implements Constants, Clock.TransitionListener
+{
+  public static final int STATUS_PENDING = 0x1;
+  public static final int STATUS_FAILED = 0x2;
+
+  public static final int SOURCE_SM_MASK = 0x3;
+  public static final int SOURCE_PIO = 0x4;
+  public static final int SOURCE_RX = 0x8;
+  public static final int SOURCE_MISSED = 0x10;
+
+  private static class Pattern
+  {
+    private int mask;
+    private int value;
+
+    private Pattern(final int mask, final int value)
+    {
+      this.mask = mask;
+      this.value = value & mask;
+    }
+
+    private void merge(final int mask, final int value)
+    {
+      this.value = (this.value & ~mask) | (value & mask);
+      this.mask |= mask;
+    }
+  }
+
+  private final MasterClock masterClock;
+  private final GPIO gpio;
+  private final TreeMap<Long, Pattern> stimuli;
+  private final TreeMap<Long, Pattern> expectations;
+  private final List<Deque<Integer>> rxExpectations;
+  private long cycle;
+  private int cycleCount;
+  private int stimulusMask;
+  private int expectMask;
+  private int rxSm;
+  private boolean failed;
+  private long mismatchCycle;
+  private int mismatchExpected;
+  private int mismatchActual;
+  private int mismatchSource;
+
+  private TestBench()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  public TestBench(final MasterClock masterClock, final GPIO gpio)
+  {
+    if (masterClock == null) {
+      throw new NullPointerException("masterClock");
+    }
+    if (gpio == null) {
+      throw new NullPointerException("gpio");
+    }
+    this.masterClock = masterClock;
+    this.gpio = gpio;
+    stimuli = new TreeMap<Long, Pattern>();
+    expectations = new TreeMap<Long, Pattern>();
+    rxExpectations = new ArrayList<Deque<Integer>>();
+    final PIO[] pios = { gpio.getPIO0(), gpio.getPIO1() };
+    for (int pioNum = 0; pioNum < PIO_NUM; pioNum++) {
+      for (int smNum = 0; smNum < SM_COUNT; smNum++) {
+        final int source = (pioNum != 0 ? SOURCE_PIO : 0x0) | smNum;
+        rxExpectations.add(new ArrayDeque<Integer>());
+        pios[pioNum].getSM(smNum).getFIFO().
+          setRXPushListener((value) -> rxPushed(source, value));
+      }
+    }
+    reset();
+    masterClock.addTransitionListener(this);
+  }
+
+  /**
+   * Discards all stimuli, expectations and the recorded mismatch, if
+   * any.
+   */
+  public synchronized void reset()
+  {
+    discardPending();
+    cycle = 0;
+    cycleCount = 1;
+    stimulusMask = 0x0;
+    expectMask = 0x0;
+    rxSm = 0;
+    failed = false;
+    mismatchCycle = 0;
+    mismatchExpected = 0x0;
+    mismatchActual = 0x0;
+    mismatchSource = 0x0;
+  }
+
+  public synchronized void setCycleLSB(final int value)
+  {
+    cycle = (cycle & 0xffffffff00000000L) | (value & 0xffffffffL);
+  }
+
+  public synchronized int getCycleLSB()
+  {
+    return (int)cycle;
+  }
+
+  public synchronized void setCycleMSB(final int value)
+  {
+    cycle = (cycle & 0xffffffffL) | ((long)value << 32);
+  }
+
+  public synchronized int getCycleMSB()
+  {
+    return (int)(cycle >>> 32);
+  }
+
+  public synchronized void setCycleCount(final int count)
+  {
+    cycleCount = count;
+  }
+
+  public synchronized int getCycleCount()
+  {
+    return cycleCount;
+  }
+
+  /**
+   * Returns the number of consecutive cycles, starting with the
+   * currently selected cycle, that stimuli and expectations refer to.
+   */
+  private long getEffectiveCycleCount()
+  {
+    return Math.max(cycleCount & 0xffffffffL, 1);
+  }
+
+  private static void addPattern(final TreeMap<Long, Pattern> patterns,
+                                 final long cycle, final int mask,
+                                 final int value)
+  {
+    final Pattern pattern = patterns.get(cycle);
+    if (pattern != null) {
+      pattern.merge(mask, value);
+    } else {
+      patterns.put(cycle, new Pattern(mask, value));
+    }
+  }
+
+  public synchronized void setStimulusMask(final int mask)
+  {
+    stimulusMask = mask;
+  }
+
+  public synchronized int getStimulusMask()
+  {
+    return stimulusMask;
+  }
+
+  /**
+   * Schedules the bits of the specified value that are selected by
+   * the stimulus mask as external pad input for each of the currently
+   * selected cycles.  If any of these cycles has already begun, the
+   * stimulus is applied immediately.
+   */
+  public synchronized void addStimulus(final int value)
+  {
+    if (stimulusMask == 0x0) return;
+    final long stopCycle = cycle + getEffectiveCycleCount();
+    final long wallClock = masterClock.getWallClock();
+    if (cycle <= wallClock) {
+      gpio.setGPIO_PADIN(value, stimulusMask, false);
+    }
+    for (long next = Math.max(cycle, wallClock + 1); next < stopCycle;
+         next++) {
+      addPattern(stimuli, next, stimulusMask, value);
+    }
+  }
+
+  public synchronized void setExpectMask(final int mask)
+  {
+    expectMask = mask;
+  }
+
+  public synchronized int getExpectMask()
+  {
+    return expectMask;
+  }
+
+  /**
+   * Declares the bits of the specified value that are selected by
+   * the expect mask as expected GPIO pad levels at the end of each
+   * of the currently selected cycles.
+   */
+  public synchronized void addExpectation(final int value)
+  {
+    if (expectMask == 0x0) return;
+    final long stopCycle = cycle + getEffectiveCycleCount();
+    for (long next = cycle; next < stopCycle; next++) {
+      addPattern(expectations, next, expectMask, value);
+    }
+  }
+
+  public synchronized void setRxSm(final int value)
+  {
+    rxSm = value & (SOURCE_PIO | SOURCE_SM_MASK);
+  }
+
+  public synchronized int getRxSm()
+  {
+    return rxSm;
+  }
+
+  /**
+   * Appends the specified value to the queue of values that the
+   * currently selected state machine is expected to push into its RX
+   * FIFO next.
+   */
+  public synchronized void addRxExpectation(final int value)
+  {
+    rxExpectations.get(rxSm).add(value);
+  }
+
+  public synchronized int getStatus()
+  {
+    boolean pending = !stimuli.isEmpty() || !expectations.isEmpty();
+    for (final Deque<Integer> queue : rxExpectations) {
+      if (!queue.isEmpty()) pending = true;
+    }
+    return (pending ? STATUS_PENDING : 0x0) | (failed ? STATUS_FAILED : 0x0);
+  }
+
+  public synchronized int getMismatchCycleLSB()
+  {
+    return (int)mismatchCycle;
+  }
+
+  public synchronized int getMismatchCycleMSB()
+  {
+    return (int)(mismatchCycle >>> 32);
+  }
+
+  public synchronized int getMismatchExpected()
+  {
+    return mismatchExpected;
+  }
+
+  public synchronized int getMismatchActual()
+  {
+    return mismatchActual;
+  }
+
+  public synchronized int getMismatchSource()
+  {
+    return mismatchSource;
+  }
+
+  private void discardPending()
+  {
+    stimuli.clear();
+    expectations.clear();
+    for (final Deque<Integer> queue : rxExpectations) {
+      queue.clear();
+    }
+  }
+
+  private void fail(final long cycle, final int expected, final int actual,
+                    final int source)
+  {
+    if (failed) return;
+    failed = true;
+    mismatchCycle = cycle;
+    mismatchExpected = expected;
+    mismatchActual = actual;
+    mismatchSource = source;
+  }
+
+  private synchronized void rxPushed(final int source, final int value)
+  {
+    final Integer expected = rxExpectations.get(source).poll();
+    if ((expected != null) && (expected != value)) {
+      fail(masterClock.getWallClock(), expected, value, SOURCE_RX | source);
+      discardPending();
+    }
+  }
+
+  private int getPadLevels(final int mask)
+  {
+    int levels = 0x0;
+    for (int pin = 0; pin < GPIO_NUM; pin++) {
+      if ((mask & (0x1 << pin)) != 0x0) {
+        levels |= gpio.getInFromPad(pin).getValue() << pin;
+      }
+    }
+    return levels;
+  }
+
+  private void checkExpectations(final long wallClock)
+  {
+    final Iterator<Map.Entry<Long, Pattern>> entries =
+      expectations.entrySet().iterator();
+    while (entries.hasNext()) {
+      final Map.Entry<Long, Pattern> entry = entries.next();
+      final long expectedCycle = entry.getKey();
+      if (expectedCycle > wallClock) break;
+      final Pattern expectation = entry.getValue();
+      entries.remove();
+      if (expectedCycle < wallClock) {
+        fail(expectedCycle, expectation.value, 0x0, SOURCE_MISSED);
+        discardPending();
+        return;
+      }
+      final int actual = getPadLevels(expectation.mask);
+      if (actual != expectation.value) {
+        fail(wallClock, expectation.value, actual, 0x0);
+        discardPending();
+        return;
+      }
+    }
+  }
+
+  private void applyStimuli(final long wallClock)
+  {
+    final Iterator<Pattern> entries =
+      stimuli.headMap(wallClock, true).values().iterator();
+    while (entries.hasNext()) {
+      final Pattern stimulus = entries.next();
+      gpio.setGPIO_PADIN(stimulus.value, stimulus.mask, false);
+      entries.remove();
+    }
+  }
+
+  @Override
+  public void risingEdge(final long wallClock)
+  {
+    // nothing to do
+  }
+
+  @Override
+  public synchronized void fallingEdge(final long wallClock)
+  {
+    checkExpectations(wallClock);
+    applyStimuli(wallClock + 1);
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,275 @@
+/*
+ * @(#)TransactionalAddressSpace.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Address space that forwards all accesses to another address space,
+ * except for writes that a thread issues while running a
+ * transaction.  Such writes are queued and, when the transaction
+ * completes, sent to the other address space as a single batch of
+ * writes that is applied atomically, i.e. between the same two clock
+ * phases.  This way, a series of configuration calls costs a single
+ * round trip over a remote connection, and the emulation never
+ * observes the configuration half-applied.
+ *
+ * Transactions are per thread, such that other threads that share
+ * this address space are not affected.  Reads within a transaction
+ * are forwarded immediately and hence do not see any of the queued
+ * writes.
+ */
+public class TransactionalAddressSpace extends AddressSpace
+{
+  @FunctionalInterface
+  public static interface Transaction
+  {
+    void run() throws IOException;
+  }
+
+  private static class PendingWrites
+  {
+    private final List<int[]> writes;
+    private final List<Boolean> xors;
+    private final List<Runnable> commitActions;
+
+    private PendingWrites()
+    {
+      writes = new ArrayList<int[]>();
+      xors = new ArrayList<Boolean>();
+      commitActions = new ArrayList<Runnable>();
+    }
+
+    private void add(final int address, final int bits, final int mask,
+                     final boolean xor)
+    {
+      writes.add(new int[] { address, bits, mask });
+      xors.add(xor);
+    }
+
+    private void flush(final AddressSpace memory) throws IOException
+    {
+      write(memory);
+      for (final Runnable action : commitActions) {
+        action.run();
+      }
+    }
+
+    private void write(final AddressSpace memory) throws IOException
+    {
+      final int count = writes.size();
+      if (count == 0) return;
+      final int[] addresses = new int[count];
+      final int[] bits = new int[count];
+      final int[] masks = new int[count];
+      final boolean[] xorValues = new boolean[count];
+      for (int index = 0; index < count; index++) {
+        final int[] write = writes.get(index);
+        addresses[index] = write[0];
+        bits[index] = write[1];
+        masks[index] = write[2];
+        xorValues[index] = xors.get(index);
+      }
+      memory.writeAddressesAtomically(addresses, bits, masks, xorValues);
+    }
+  }
+
+  private final AddressSpace memory;
+  private final ThreadLocal<PendingWrites> pendingWrites;
+
+  private TransactionalAddressSpace()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  public TransactionalAddressSpace(final AddressSpace memory)
+  {
+    if (memory == null) {
+      throw new NullPointerException("memory");
+    }
+    this.memory = memory;
+    pendingWrites = new ThreadLocal<PendingWrites>();
+  }
+
+  /**
+   * Runs the specified transaction, queueing all of its writes, and
+   * finally applies the queued writes atomically.  If the calling
+   * thread is already running a transaction, the specified
+   * transaction just becomes part of it.  If the transaction throws
+   * an exception, none of its writes is applied.
+   */
+  public void runTransaction(final Transaction transaction)
+    throws IOException
+  {
+    if (transaction == null) {
+      throw new NullPointerException("transaction");
+    }
+    if (pendingWrites.get() != null) {
+      transaction.run();
+      return;
+    }
+    final PendingWrites pending = new PendingWrites();
+    pendingWrites.set(pending);
+    try {
+      transaction.run();
+    } finally {
+      pendingWrites.remove();
+    }
+    pending.flush(memory);
+  }
+
+  /**
+   * Runs the specified action as soon as the writes of the
+   * transaction that the calling thread is currently running have
+   * been applied successfully, or immediately, if the calling thread
+   * is not running a transaction.  If the transaction throws an
+   * exception or applying its writes fails, the action is discarded.
+   * Useful for keeping bookkeeping about the emulator's state in
+   * line with what has actually been written.
+   */
+  public void runAfterCommit(final Runnable action)
+  {
+    if (action == null) {
+      throw new NullPointerException("action");
+    }
+    final PendingWrites pending = pendingWrites.get();
+    if (pending != null) {
+      pending.commitActions.add(action);
+    } else {
+      action.run();
+    }
+  }
+
+  @Override
+  public String getEmulatorInfo() throws IOException
+  {
+    return memory.getEmulatorInfo();
+  }
+
+  @Override
+  public boolean providesAddress(final int address) throws IOException
+  {
+    return memory.providesAddress(address);
+  }
+
+  @Override
+  public String getRegisterSetId(final int address) throws IOException
+  {
+    return memory.getRegisterSetId(address);
+  }
+
+  @Override
+  public String getAddressLabel(final int address) throws IOException
+  {
+    return memory.getAddressLabel(address);
+  }
+
+  @Override
+  public int readAddress(final int address) throws IOException
+  {
+    return memory.readAddress(address);
+  }
+
+  @Override
+  public int[] readAddresses(final int[] addresses) throws IOException
+  {
+    return memory.readAddresses(addresses);
+  }
+
+  @Override
+  public int[] sampleAddresses(final int[] addresses, final int cycles)
+    throws IOException
+  {
+    return memory.sampleAddresses(addresses, cycles);
+  }
+
+  @Override
+  public int[] waitAddressesChanged(final int[] addresses,
+                                    final int[] values,
+                                    final long millisTimeout)
+    throws IOException
+  {
+    return memory.waitAddressesChanged(addresses, values, millisTimeout);
+  }
+
+  @Override
+  public void writeAddressMasked(final int address, final int bits,
+                                 final int mask, final boolean xor)
+    throws IOException
+  {
+    final PendingWrites pending = pendingWrites.get();
+    if (pending != null) {
+      checkAddressAligned(address);
+      pending.add(address, bits, mask, xor);
+    } else {
+      memory.writeAddressMasked(address, bits, mask, xor);
+    }
+  }
+
+  @Override
+  public void writeAddressesMasked(final int[] addresses, final int[] bits,
+                                   final int[] masks, final boolean[] xors)
+    throws IOException
+  {
+    if (pendingWrites.get() != null) {
+      super.writeAddressesMasked(addresses, bits, masks, xors);
+    } else {
+      memory.writeAddressesMasked(addresses, bits, masks, xors);
+    }
+  }
+
+  @Override
+  public void writeAddressesAtomically(final int[] addresses,
+                                       final int[] bits,
+                                       final int[] masks,
+                                       final boolean[] xors)
+    throws IOException
+  {
+    if (pendingWrites.get() != null) {
+      super.writeAddressesMasked(addresses, bits, masks, xors);
+    } else {
+      memory.writeAddressesAtomically(addresses, bits, masks, xors);
+    }
+  }
+
+  @Override
+  public int waitAddress(final int address, final int expectedValue,
+                         final int mask,
+                         final long cyclesTimeout, final long millisTimeout)
+    throws IOException
+  {
+    return memory.waitAddress(address, expectedValue, mask,
+                              cyclesTimeout, millisTimeout);
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
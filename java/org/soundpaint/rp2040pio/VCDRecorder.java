@@ -0,0 +1,416 @@
+/*
+ * @(#)VCDRecorder.java 1.00 21/07/27
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.IntSupplier;
+
+/**
+ * Records GPIO pad levels and selected state machine internals into
+ * a file of standard value change dump (VCD) format, as specified in
+ * IEEE 1364.  Sampling takes place on the falling edge of the master
+ * clock, right after all PIOs have committed their collated GPIO
+ * writes, such that each time step of the dump reflects the stable
+ * state at the end of the respective clock cycle.  Time stamps of
+ * the dump count cycles of the master clock.  Since the VCD format
+ * requires a physical time scale, the dump declares a nominal scale
+ * of 1 ns per time unit, which does not reflect the actual clock
+ * period.
+ *
+ * Only values that have changed are handed over to a background
+ * thread that formats and writes the dump via a buffered writer,
+ * such that recording costs little emulation throughput.  If the
+ * writer falls behind by more than the queue capacity, the emulation
+ * is slowed down rather than samples being dropped.
+ */
+public class VCDRecorder implements Constants, Clock.TransitionListener
+{
+  private static final int QUEUE_CAPACITY = 0x1000;
+
+  private static class Signal
+  {
+    private final String scope;
+    private final String name;
+    private final int width;
+    private final IntSupplier supplier;
+    private String id;
+
+    private Signal(final String scope, final String name, final int width,
+                   final IntSupplier supplier)
+    {
+      this.scope = scope;
+      this.name = name;
+      this.width = width;
+      this.supplier = supplier;
+    }
+  }
+
+  private static class Sample
+  {
+    private final long wallClock;
+    private final int[] values;
+
+    private Sample(final long wallClock, final int[] values)
+    {
+      this.wallClock = wallClock;
+      this.values = values;
+    }
+  }
+
+  private static final Sample END_OF_RECORDING = new Sample(-1, null);
+
+  private class Session extends Thread
+  {
+    private final Signal[] signals;
+    private final Writer out;
+    private final BlockingQueue<Sample> queue;
+    private final int[] scratch;
+    private int[] lastValues;
+    private IOException writeError;
+
+    private Session(final Signal[] signals, final Writer out)
+    {
+      super("VCD Recorder Thread");
+      this.signals = signals;
+      this.out = out;
+      queue = new ArrayBlockingQueue<Sample>(QUEUE_CAPACITY);
+      scratch = new int[signals.length];
+      lastValues = null;
+      writeError = null;
+    }
+
+    /**
+     * Samples all signals into a reused scratch buffer.  Only if any
+     * value has changed, a copy is handed over to the writer thread.
+     */
+    private void sample(final long wallClock)
+    {
+      boolean changed = lastValues == null;
+      for (int index = 0; index < signals.length; index++) {
+        final int value = signals[index].supplier.getAsInt();
+        scratch[index] = value;
+        if (!changed && (value != lastValues[index])) changed = true;
+      }
+      if (changed) {
+        final int[] values = scratch.clone();
+        lastValues = values;
+        enqueue(new Sample(wallClock, values));
+      }
+    }
+
+    private void enqueue(final Sample sample)
+    {
+      while (true) {
+        try {
+          queue.put(sample);
+          return;
+        } catch (final InterruptedException e) {
+          // ignore, since sample must not be lost
+        }
+      }
+    }
+
+    private Sample dequeue()
+    {
+      while (true) {
+        try {
+          return queue.take();
+        } catch (final InterruptedException e) {
+          // ignore, since sample must not be lost
+        }
+      }
+    }
+
+    private void writeHeader() throws IOException
+    {
+      out.write(String.format("$date%n  %s%n$end%n", Instant.now()));
+      out.write(String.format("$version%n  %s%n$end%n",
+                              Constants.getEmulatorIdAndVersionWithOs()));
+      out.write(String.format("$comment%n" +
+                              "  time stamps count master clock cycles;%n" +
+                              "  the time scale is nominal only%n" +
+                              "$end%n"));
+      out.write(String.format("$timescale 1 ns $end%n"));
+      out.write(String.format("$scope module rp2040 $end%n"));
+      String[] scope = new String[0];
+      for (final Signal signal : signals) {
+        final String[] signalScope = signal.scope.split("\\.");
+        int common = 0;
+        while ((common < scope.length) && (common < signalScope.length) &&
+               scope[common].equals(signalScope[common])) {
+          common++;
+        }
+        for (int i = common; i < scope.length; i++) {
+          out.write(String.format("$upscope $end%n"));
+        }
+        for (int i = common; i < signalScope.length; i++) {
+          out.write(String.format("$scope module %s $end%n", signalScope[i]));
+        }
+        scope = signalScope;
+        out.write(String.format("$var %s %d %s %s $end%n",
+                                signal.width == 1 ? "wire" : "reg",
+                                signal.width, signal.id, signal.name));
+      }
+      for (int i = 0; i < scope.length; i++) {
+        out.write(String.format("$upscope $end%n"));
+      }
+      out.write(String.format("$upscope $end%n"));
+      out.write(String.format("$enddefinitions $end%n"));
+    }
+
+    private void writeValue(final Signal signal, final int value)
+      throws IOException
+    {
+      if (signal.width == 1) {
+        out.write(((value & 0x1) != 0) ? '1' : '0');
+        out.write(signal.id);
+      } else {
+        out.write('b');
+        out.write(Integer.toBinaryString(value));
+        out.write(' ');
+        out.write(signal.id);
+      }
+      out.write('\n');
+    }
+
+    private void writeSample(final Sample sample, final int[] previousValues)
+      throws IOException
+    {
+      out.write('#');
+      out.write(Long.toString(sample.wallClock));
+      out.write('\n');
+      if (previousValues == null) {
+        out.write(String.format("$dumpvars%n"));
+      }
+      for (int index = 0; index < signals.length; index++) {
+        final int value = sample.values[index];
+        if ((previousValues == null) || (previousValues[index] != value)) {
+          writeValue(signals[index], value);
+        }
+      }
+      if (previousValues == null) {
+        out.write(String.format("$end%n"));
+      }
+    }
+
+    @Override
+    public void run()
+    {
+      int[] previousValues = null;
+      try {
+        writeHeader();
+      } catch (final IOException e) {
+        writeError = e;
+      }
+      while (true) {
+        final Sample sample = dequeue();
+        if (sample == END_OF_RECORDING) break;
+        if (writeError != null) continue; // keep draining the queue
+        try {
+          writeSample(sample, previousValues);
+        } catch (final IOException e) {
+          writeError = e;
+        }
+        previousValues = sample.values;
+      }
+      try {
+        out.close();
+      } catch (final IOException e) {
+        if (writeError == null) writeError = e;
+      }
+    }
+
+    private IOException finish()
+    {
+      enqueue(END_OF_RECORDING);
+      while (true) {
+        try {
+          join();
+          return writeError;
+        } catch (final InterruptedException e) {
+          // ignore, since writer must be completed
+        }
+      }
+    }
+  }
+
+  private final GPIO gpio;
+  private final PIO[] pios;
+  private volatile Session session;
+
+  private VCDRecorder()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  public VCDRecorder(final MasterClock masterClock, final GPIO gpio)
+  {
+    if (masterClock == null) {
+      throw new NullPointerException("masterClock");
+    }
+    if (gpio == null) {
+      throw new NullPointerException("gpio");
+    }
+    this.gpio = gpio;
+    pios = new PIO[] { gpio.getPIO0(), gpio.getPIO1() };
+    session = null;
+
+    // Must be registered *after* the PIOs, such that sampling takes
+    // place after the PIOs have applied their collated GPIO writes.
+    masterClock.addTransitionListener(this);
+  }
+
+  private static String createId(final int index)
+  {
+    // VCD identifier codes consist of printable ASCII characters
+    // in the range '!'…'~'.
+    final StringBuilder id = new StringBuilder();
+    int n = index;
+    do {
+      id.append((char)('!' + n % 94));
+      n = n / 94 - 1;
+    } while (n >= 0);
+    return id.toString();
+  }
+
+  private Signal[] createSignals(final int pinsMask, final int smsMask)
+  {
+    final List<Signal> signals = new ArrayList<Signal>();
+    for (int gpioNum = 0; gpioNum < GPIO_NUM; gpioNum++) {
+      if (((pinsMask >>> gpioNum) & 0x1) == 0x0) continue;
+      final int pin = gpioNum;
+      signals.add(new Signal("gpio", "gpio" + gpioNum, 1,
+                             () -> gpio.getInFromPad(pin).getValue()));
+    }
+    for (final PIO pio : pios) {
+      final String pioScope = "pio" + pio.getIndex();
+      final IRQ irq = pio.getIRQ();
+      signals.add(new Signal(pioScope, "irq", 8, () -> irq.getIRQ()));
+      signals.add(new Signal(pioScope, "intr", 12, () -> irq.readINTR()));
+      for (int smNum = 0; smNum < SM_COUNT; smNum++) {
+        if (((smsMask >>> (pio.getIndex() * SM_COUNT + smNum)) & 0x1) == 0x0)
+          continue;
+        final SM sm = pio.getSM(smNum);
+        final SM.Status status = sm.getStatus();
+        final String smScope = pioScope + ".sm" + smNum;
+        signals.add(new Signal(smScope, "pc", 5, () -> sm.getPC()));
+        signals.add(new Signal(smScope, "x", 32, () -> status.regX));
+        signals.add(new Signal(smScope, "y", 32, () -> status.regY));
+        signals.add(new Signal(smScope, "isr_shift_count", 6,
+                               () -> status.isrShiftCount));
+        signals.add(new Signal(smScope, "osr_shift_count", 6,
+                               () -> status.osrShiftCount));
+        signals.add(new Signal(smScope, "tx_level", 4,
+                               () -> sm.getTXFIFOLevel()));
+        signals.add(new Signal(smScope, "rx_level", 4,
+                               () -> sm.getRXFIFOLevel()));
+        signals.add(new Signal(smScope, "clk_enable", 1,
+                               () -> status.clockEnabled ? 1 : 0));
+        signals.add(new Signal(smScope, "delay_cycle", 1,
+                               () -> status.isDelayCycle ? 1 : 0));
+      }
+    }
+    for (int index = 0; index < signals.size(); index++) {
+      signals.get(index).id = createId(index);
+    }
+    return signals.toArray(new Signal[0]);
+  }
+
+  /**
+   * Starts recording into the specified file, replacing any
+   * existing file of that name.
+   * @param pinsMask Bit mask of GPIO pins whose pad level to record.
+   * @param smsMask Bit mask of state machines whose internals to
+   * record, with bits 0…3 selecting SM0…SM3 of PIO0, and bits 4…7
+   * selecting SM0…SM3 of PIO1.
+   */
+  public synchronized void start(final String filePath,
+                                 final int pinsMask, final int smsMask)
+    throws IOException
+  {
+    if (filePath == null) {
+      throw new NullPointerException("filePath");
+    }
+    if (session != null) {
+      throw new IOException("recording already in progress");
+    }
+    final Writer out = new BufferedWriter(new FileWriter(filePath));
+    session = new Session(createSignals(pinsMask, smsMask), out);
+    session.start();
+  }
+
+  /**
+   * Stops recording, after all pending samples have been written
+   * out.  Does nothing, if there is no recording in progress.
+   */
+  public synchronized void stop() throws IOException
+  {
+    if (session == null) return;
+    final Session session = this.session;
+    this.session = null;
+    final IOException writeError = session.finish();
+    if (writeError != null) {
+      throw writeError;
+    }
+  }
+
+  public synchronized boolean isRecording()
+  {
+    return session != null;
+  }
+
+  @Override
+  public void risingEdge(final long wallClock)
+  {
+    // nothing to do
+  }
+
+  @Override
+  public void fallingEdge(final long wallClock)
+  {
+    // cheap check for the common case of not recording
+    if (session == null) return;
+    synchronized(this) {
+      if (session != null) {
+        session.sample(wallClock);
+      }
+    }
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
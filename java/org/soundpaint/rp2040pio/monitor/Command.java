@@ -25,12 +25,19 @@
 package org.soundpaint.rp2040pio.monitor;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.soundpaint.rp2040pio.CmdOptions;
+import org.soundpaint.rp2040pio.sdk.SDK;
 
 /**
  * Common abstract super class for all monitor commands.
@@ -62,6 +69,7 @@ public abstract class Command
   private final String notes;
   private final List<CmdOptions.OptionDeclaration<?>> optionDeclarations;
   private final CmdOptions options;
+  private SDK.AsyncTask<?> pendingOperation;
 
   private Command()
   {
@@ -205,6 +213,68 @@ public abstract class Command
   protected abstract boolean execute(final CmdOptions options)
     throws IOException;
 
+  /**
+   * Waits for the specified asynchronous operation to complete,
+   * while allowing it to be cancelled via method cancel().  If
+   * cancelled or timed out, still waits for the operation to
+   * terminate, such that it does not interfere with subsequent
+   * commands.
+   * @param millisTimeout Time after which the operation is
+   * cancelled, or 0 for no timeout.
+   * @return The result of the operation, even if it has been
+   * cancelled or timed out, which the task's method isCancelled()
+   * tells.
+   */
+  protected <T> T await(final SDK.AsyncTask<T> task,
+                        final long millisTimeout)
+    throws IOException
+  {
+    synchronized(this) {
+      pendingOperation = task;
+    }
+    final CompletableFuture<T> result = task.getResult();
+    try {
+      if (millisTimeout != 0) {
+        try {
+          return result.get(millisTimeout, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+          task.cancel();
+        }
+      }
+      return result.get();
+    } catch (final InterruptedException e) {
+      task.cancel();
+      try {
+        // not interruptible, but terminates soon when cancelled
+        result.join();
+      } catch (final CompletionException e2) {
+        // report interruption rather than failure of the operation
+      }
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(fullName + " interrupted");
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException)cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+      throw new IOException(cause.getMessage(), cause);
+    } finally {
+      synchronized(this) {
+        pendingOperation = null;
+      }
+    }
+  }
+
+  /**
+   * Cancels the asynchronous operation that this command currently
+   * awaits, if any.
+   * @return &lt;code&gt;true&lt;/code&gt;, if an operation has been
+   * cancelled.
+   */
+  public synchronized boolean cancel()
+  {
+    return (pendingOperation != null) && pendingOperation.cancel();
+  }
+
   /**
    * Subclasses that implement this abstract class should override
    * this method and throw a CmdOptions.ParseException, if they
@@ -230,6 +300,25 @@ public abstract class Command
      */
   }
 
+  /**
+   * Returns true, if the only effect of executing this command,
+   * apart from console output, is writing emulator registers via the
+   * SDK, and the command's output does not depend on anything but
+   * its arguments.  Such commands may be replaced by a recording of
+   * their writes when compiling monitor scripts.  Commands that read
+   * registers or console input are detected automatically during
+   * compilation.  By default, commands are not plannable.  Commands
+   * that are known to have no other effects, in particular that do
+   * not change bookkeeping of the SDK, files or any other state, may
+   * override this method and return true.
+   *
+   * @see ScriptCompiler
+   */
+  public boolean isPlannable()
+  {
+    return false;
+  }
+
   public String getHelp()
   {
     return options.getFullInfo();
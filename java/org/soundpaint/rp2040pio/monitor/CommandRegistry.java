@@ -40,6 +40,7 @@ import org.soundpaint.rp2040pio.monitor.commands.Clear;
 import org.soundpaint.rp2040pio.monitor.commands.Clock;
 import org.soundpaint.rp2040pio.monitor.commands.Enter;
 import org.soundpaint.rp2040pio.monitor.commands.Execute;
+import org.soundpaint.rp2040pio.monitor.commands.Expect;
 import org.soundpaint.rp2040pio.monitor.commands.Fifo;
 import org.soundpaint.rp2040pio.monitor.commands.Gpio;
 import org.soundpaint.rp2040pio.monitor.commands.Help;
@@ -55,6 +56,8 @@ import org.soundpaint.rp2040pio.monitor.commands.Save;
 import org.soundpaint.rp2040pio.monitor.commands.Script;
 import org.soundpaint.rp2040pio.monitor.commands.SideSet;
 import org.soundpaint.rp2040pio.monitor.commands.Sm;
+import org.soundpaint.rp2040pio.monitor.commands.Snapshot;
+import org.soundpaint.rp2040pio.monitor.commands.Stimulus;
 import org.soundpaint.rp2040pio.monitor.commands.Trace;
 import org.soundpaint.rp2040pio.monitor.commands.Unassemble;
 import org.soundpaint.rp2040pio.monitor.commands.Unload;
@@ -73,6 +76,7 @@ public class CommandRegistry implements Iterable<Command>
   private final Set<Command> commands;
   private final HashMap<String, List<Command>> token2commands;
   private final Command quit;
+  private final ScriptCompiler scriptCompiler;
 
   private CommandRegistry()
   {
@@ -93,6 +97,7 @@ public class CommandRegistry implements Iterable<Command>
                            cmd1.getFullName().compareTo(cmd2.getFullName()));
     token2commands = new HashMap<String, List<Command>>();
     quit = installCommands(in, sdk, appFullName);
+    scriptCompiler = new ScriptCompiler(sdk, appFullName);
   }
 
   private Quit installCommands(final BufferedReader in, final SDK sdk,
@@ -104,6 +109,7 @@ public class CommandRegistry implements Iterable<Command>
     add(new Clock(console, sdk));
     add(new Enter(console, sdk, in));
     add(new Execute(console, sdk));
+    add(new Expect(console, sdk));
     add(new Fifo(console, sdk));
     add(new Gpio(console, sdk));
     add(new Help(console, this));
@@ -119,6 +125,8 @@ public class CommandRegistry implements Iterable<Command>
     add(new Script(console, this));
     add(new SideSet(console, sdk));
     add(new Sm(console, sdk));
+    add(new Snapshot(console, sdk));
+    add(new Stimulus(console, sdk));
     add(new Trace(console, sdk));
     add(new Unassemble(console, sdk));
     add(new Unload(console, sdk));
@@ -194,6 +202,61 @@ public class CommandRegistry implements Iterable<Command>
     return commands.iterator();
   }
 
+  /**
+   * Returns true, if the specified command line is empty or refers
+   * to a plannable command.
+   *
+   * @see Command#isPlannable()
+   */
+  public boolean isPlannable(final String commandLine)
+  {
+    final String[] argv;
+    try {
+      argv = CmdOptions.splitArgs(commandLine);
+    } catch (final CmdOptions.ParseException e) {
+      return false;
+    }
+    if (argv.length == 0) {
+      return true;
+    }
+    final List<Command> matchingCommands = lookup(argv[0]);
+    if ((matchingCommands == null) || (matchingCommands.size() != 1)) {
+      return false;
+    }
+    return matchingCommands.get(0).isPlannable();
+  }
+
+  /**
+   * Cancels the asynchronous operations that any command currently
+   * awaits, e.g. upon the user pressing Ctrl-C.
+   * @return &lt;code&gt;true&lt;/code&gt;, if any operation has been
+   * cancelled.
+   */
+  public boolean cancelPendingOperations()
+  {
+    boolean cancelled = false;
+    for (final Command command : commands) {
+      cancelled |= command.cancel();
+    }
+    return cancelled;
+  }
+
+  /**
+   * Executes the specified script lines via the script compiler, as
+   * if each line was passed to method parseAndExecute().
+   *
+   * @see ScriptCompiler
+   */
+  public int executeScript(final List<String> lines,
+                           final boolean localEcho,
+                           final String prompt,
+                           final boolean stopOnError)
+  {
+    return
+      scriptCompiler.execute(lines, this, console, localEcho, prompt,
+                             stopOnError);
+  }
+
   private ParseException createCommandParseException(final Command command,
                                                      final Exception e)
   {
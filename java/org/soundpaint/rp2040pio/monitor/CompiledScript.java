@@ -0,0 +1,202 @@
+/*
+ * @(#)CompiledScript.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.monitor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.soundpaint.rp2040pio.sdk.Panic;
+import org.soundpaint.rp2040pio.sdk.SDK;
+
+/**
+ * Plan of a monitor script as created by the script compiler.  Each
+ * line of the script becomes a step that is either replayed from a
+ * recording of its console output and register writes, or executed
+ * live like an interactively entered command.  When running the
+ * plan, the writes of consecutive recorded steps are collected and
+ * transferred in a single batch right before the next live step and
+ * at the end of the plan.
+ *
+ * @see ScriptCompiler
+ */
+public class CompiledScript
+{
+  static class Step
+  {
+    private final String line;
+    private final boolean live;
+    private final String output;
+    private final int[] addresses;
+    private final int[] bits;
+    private final int[] masks;
+    private final boolean[] xors;
+    private final boolean quit;
+
+    /**
+     * Creates a live step.
+     */
+    Step(final String line)
+    {
+      this.line = line;
+      live = true;
+      output = null;
+      addresses = null;
+      bits = null;
+      masks = null;
+      xors = null;
+      quit = false;
+    }
+
+    /**
+     * Creates a recorded step.
+     */
+    Step(final String line, final String output,
+         final int[] addresses, final int[] bits, final int[] masks,
+         final boolean[] xors, final boolean quit)
+    {
+      this.line = line;
+      live = false;
+      this.output = output;
+      this.addresses = addresses;
+      this.bits = bits;
+      this.masks = masks;
+      this.xors = xors;
+      this.quit = quit;
+    }
+
+    boolean isQuit() { return quit; }
+  }
+
+  private final List<Step> steps;
+  private final int liveStepCount;
+
+  private CompiledScript()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  CompiledScript(final List<Step> steps)
+  {
+    this.steps = Collections.unmodifiableList(new ArrayList<Step>(steps));
+    int liveStepCount = 0;
+    for (final Step step : steps) {
+      if (step.live) liveStepCount++;
+    }
+    this.liveStepCount = liveStepCount;
+  }
+
+  public int getStepCount() { return steps.size(); }
+
+  public int getLiveStepCount() { return liveStepCount; }
+
+  /**
+   * Transfers the writes of the specified recorded steps in a single
+   * batch.
+   */
+  private static void flush(final SDK sdk, final List<Step> pending)
+    throws IOException
+  {
+    int count = 0;
+    for (final Step step : pending) {
+      count += step.addresses.length;
+    }
+    if (count == 0) {
+      pending.clear();
+      return;
+    }
+    final int[] addresses = new int[count];
+    final int[] bits = new int[count];
+    final int[] masks = new int[count];
+    final boolean[] xors = new boolean[count];
+    int offset = 0;
+    for (final Step step : pending) {
+      final int length = step.addresses.length;
+      System.arraycopy(step.addresses, 0, addresses, offset, length);
+      System.arraycopy(step.bits, 0, bits, offset, length);
+      System.arraycopy(step.masks, 0, masks, offset, length);
+      System.arraycopy(step.xors, 0, xors, offset, length);
+      offset += length;
+    }
+    pending.clear();
+    sdk.writeAddressesMasked(addresses, bits, masks, xors);
+  }
+
+  private static void reportError(final PrintStream console,
+                                  final Exception e)
+  {
+    console.println(e.getMessage());
+    if (e instanceof Panic) {
+      console.printf(Command.panicNotes);
+      console.println();
+    }
+  }
+
+  /**
+   * Runs the plan.  Console output is the same as when executing the
+   * script's lines one by one.
+   * @param commands The command registry for executing live steps.
+   * @param stopOnError If true, execution stops upon the first error.
+   * Otherwise, the error is reported and execution continues.
+   * @return 0, if no error occurred or if errors do not stop
+   * execution, or -1 otherwise.
+   */
+  public int execute(final CommandRegistry commands, final SDK sdk,
+                     final PrintStream console, final boolean localEcho,
+                     final String prompt, final boolean stopOnError)
+  {
+    final List<Step> pending = new ArrayList<Step>();
+    for (final Step step : steps) {
+      console.print(prompt);
+      if (localEcho) console.println(step.line);
+      try {
+        if (step.live) {
+          flush(sdk, pending);
+          if (commands.parseAndExecute(step.line, false)) return 0;
+        } else {
+          console.print(step.output);
+          pending.add(step);
+          if (step.quit) {
+            flush(sdk, pending);
+            return 0;
+          }
+        }
+      } catch (final Panic | IOException e) {
+        reportError(console, e);
+        if (stopOnError) return -1;
+      }
+    }
+    try {
+      flush(sdk, pending);
+    } catch (final Panic | IOException e) {
+      reportError(console, e);
+      if (stopOnError) return -1;
+    }
+    // like reading end of script after the prompt
+    console.print(prompt);
+    return 0;
+  }
+}
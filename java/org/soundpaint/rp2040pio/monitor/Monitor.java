@@ -29,6 +29,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.List;
 import org.soundpaint.rp2040pio.AddressSpace;
@@ -198,10 +199,36 @@ public class Monitor
     }
     return
       (scriptIn != null) ?
-      session(scriptIn, false, true, "script> ") :
+      scriptSession(scriptIn) :
       session(in, false, localEcho, "> ");
   }
 
+  /**
+   * Like method session(), but runs the script compiled, such that
+   * its register writes are transferred in batches.
+   */
+  private int scriptSession(final BufferedReader in)
+  {
+    try {
+      final List<String> lines;
+      try {
+        lines = IOUtils.readLines(in);
+      } catch (final IOException e) {
+        console.println(e.getMessage());
+        return -1;
+      }
+      commands.executeScript(lines, true, "script> ", false);
+      console.println("bye");
+      return 0;
+    } catch (final RuntimeException e) {
+      console.printf("fatal error: %s%n", e.getMessage());
+      console.println();
+      console.println("detailed debug information:");
+      e.printStackTrace(console);
+      return -1;
+    }
+  }
+
   private int session(final BufferedReader in,
                       final boolean dryRun,
                       final boolean localEcho,
@@ -237,11 +264,30 @@ public class Monitor
                          final InputStream in,
                          final PrintStream out,
                          final boolean localEcho)
+  {
+    return main(argv, in, out, localEcho, false);
+  }
+
+  /**
+   * @param handleInterrupts If true, Ctrl-C is handled as described
+   * for method installInterruptHandler().  Since signal handlers are
+   * global to the JVM, this should be done only if the monitor runs
+   * as application of its own.
+   */
+  private static int main(final String argv[],
+                          final InputStream in,
+                          final PrintStream out,
+                          final boolean localEcho,
+                          final boolean handleInterrupts)
   {
     final BufferedReader reader =
       new BufferedReader(new InputStreamReader(in));
     try {
-      final int exitCode = new Monitor(reader, out, argv).run(localEcho);
+      final Monitor monitor = new Monitor(reader, out, argv);
+      if (handleInterrupts) {
+        monitor.installInterruptHandler();
+      }
+      final int exitCode = monitor.run(localEcho);
       return exitCode;
     } catch (final IOException e) {
       out.println(e.getMessage());
@@ -249,9 +295,55 @@ public class Monitor
     }
   }
 
+  /**
+   * Lets Ctrl-C cancel ongoing asynchronous operations of commands
+   * like "wait" or "trace" rather than terminating the monitor, as
+   * long as there is any such operation.  Since Java provides no
+   * official API for handling signals, the unofficial, but widely
+   * available API of package sun.misc is used, if available.
+   * Reflection avoids a compile time dependency on it.
+   */
+  private void installInterruptHandler()
+  {
+    try {
+      final Class<?> signalClass = Class.forName("sun.misc.Signal");
+      final Class<?> handlerClass = Class.forName("sun.misc.SignalHandler");
+      final Object handler =
+        Proxy.newProxyInstance(handlerClass.getClassLoader(),
+                               new Class<?>[] { handlerClass },
+                               (proxy, method, args) -> {
+                                 switch (method.getName()) {
+                                 case "handle":
+                                   interrupted();
+                                   return null;
+                                 case "hashCode":
+                                   return System.identityHashCode(proxy);
+                                 case "equals":
+                                   return proxy == args[0];
+                                 default:
+                                   return "interrupt handler";
+                                 }
+                               });
+      final Object signal =
+        signalClass.getConstructor(String.class).newInstance("INT");
+      signalClass.getMethod("handle", signalClass, handlerClass).
+        invoke(null, signal, handler);
+    } catch (final ReflectiveOperationException | RuntimeException e) {
+      // no signal handling available => Ctrl-C terminates as usual
+    }
+  }
+
+  private void interrupted()
+  {
+    if ((commands == null) || !commands.cancelPendingOperations()) {
+      console.println();
+      System.exit(130); // conventional exit code upon SIGINT
+    }
+  }
+
   public static void main(final String argv[])
   {
-    final int exitCode = main(argv, System.in, System.out, false);
+    final int exitCode = main(argv, System.in, System.out, false, true);
     System.exit(exitCode);
   }
 }
@@ -0,0 +1,348 @@
+/*
+ * @(#)ScriptCompiler.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.monitor;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.soundpaint.rp2040pio.AddressSpace;
+import org.soundpaint.rp2040pio.sdk.SDK;
+
+/**
+ * Compiles monitor scripts into plans of register writes, such that
+ * running a script neither needs to parse its command lines again
+ * nor to issue each register write as a separate access.
+ *
+ * For compiling, each line is executed once against an address
+ * space that records writes rather than performing them, and the
+ * console output is captured.  Lines whose execution depends on the
+ * emulator's state, i.e. that read or wait for registers, or that
+ * read console input, can not be recorded and remain live steps,
+ * which are parsed and executed as usual when running the plan.  The
+ * same holds for commands that are not plannable (see method
+ * Command#isPlannable()), and for lines that fail, such that errors
+ * are reported when running the plan just as without compiling.
+ *
+ * Recorded steps depend on the script's text, but also on the
+ * address layout and monitor of the session the compiler belongs to.
+ * Hence, each compiler keeps its own cache of compiled plans, keyed
+ * by a hash value of the script's text.
+ */
+public class ScriptCompiler
+{
+  private static final int CACHE_SIZE = 64;
+
+  /**
+   * Thrown during compilation upon any access that a recording can
+   * not replace.  Unchecked, such that commands that catch
+   * IOException do not swallow it.
+   */
+  private static class LiveAccessRequired extends RuntimeException
+  {
+    private static final long serialVersionUID = 3120969718307656286L;
+
+    private LiveAccessRequired(final String access)
+    {
+      super("live access required: " + access);
+    }
+  }
+
+  /**
+   * Address space that records writes and refuses reads.  Queries
+   * about the address layout are forwarded to the actual emulator,
+   * since they do not depend on the emulator's state.
+   */
+  private static class RecordingAddressSpace extends AddressSpace
+  {
+    private final SDK sdk;
+    private final List<int[]> writes;
+    private final List<Boolean> xors;
+
+    private RecordingAddressSpace(final SDK sdk)
+    {
+      this.sdk = sdk;
+      writes = new ArrayList<int[]>();
+      xors = new ArrayList<Boolean>();
+    }
+
+    private void clear()
+    {
+      writes.clear();
+      xors.clear();
+    }
+
+    private CompiledScript.Step createStep(final String line,
+                                           final String output,
+                                           final boolean quit)
+    {
+      final int count = writes.size();
+      final int[] addresses = new int[count];
+      final int[] bits = new int[count];
+      final int[] masks = new int[count];
+      final boolean[] xorValues = new boolean[count];
+      for (int index = 0; index < count; index++) {
+        final int[] write = writes.get(index);
+        addresses[index] = write[0];
+        bits[index] = write[1];
+        masks[index] = write[2];
+        xorValues[index] = xors.get(index);
+      }
+      return new CompiledScript.Step(line, output, addresses, bits, masks,
+                                     xorValues, quit);
+    }
+
+    @Override
+    public String getEmulatorInfo()
+    {
+      throw new LiveAccessRequired("emulator info");
+    }
+
+    @Override
+    public boolean providesAddress(final int address) throws IOException
+    {
+      return sdk.providesAddress(address);
+    }
+
+    @Override
+    public String getRegisterSetId(final int address) throws IOException
+    {
+      return sdk.getRegisterSetId(address);
+    }
+
+    @Override
+    public String getAddressLabel(final int address) throws IOException
+    {
+      return sdk.getLabelForAddress(address);
+    }
+
+    @Override
+    public int readAddress(final int address)
+    {
+      throw new LiveAccessRequired("read");
+    }
+
+    @Override
+    public int[] readAddresses(final int[] addresses)
+    {
+      throw new LiveAccessRequired("read");
+    }
+
+    @Override
+    public int[] sampleAddresses(final int[] addresses, final int cycles)
+    {
+      throw new LiveAccessRequired("sample");
+    }
+
+    @Override
+    public int[] waitAddressesChanged(final int[] addresses,
+                                      final int[] values,
+                                      final long millisTimeout)
+    {
+      throw new LiveAccessRequired("wait");
+    }
+
+    @Override
+    public void writeAddressMasked(final int address, final int bits,
+                                   final int mask, final boolean xor)
+    {
+      checkAddressAligned(address);
+      writes.add(new int[] { address, bits, mask });
+      xors.add(xor);
+    }
+
+    @Override
+    public void writeAddressesAtomically(final int[] addresses,
+                                         final int[] bits,
+                                         final int[] masks,
+                                         final boolean[] xors)
+    {
+      checkWrites(addresses, bits, masks, xors);
+      for (int index = 0; index < addresses.length; index++) {
+        writeAddressMasked(addresses[index], bits[index], masks[index],
+                           xors[index]);
+      }
+    }
+
+    @Override
+    public int waitAddress(final int address, final int expectedValue,
+                           final int mask,
+                           final long cyclesTimeout, final long millisTimeout)
+    {
+      throw new LiveAccessRequired("wait");
+    }
+  }
+
+  /**
+   * Console input for compilation.  Commands that read console input
+   * can not be recorded.
+   */
+  private static class LiveInput extends Reader
+  {
+    @Override
+    public int read(final char[] buffer, final int offset, final int length)
+    {
+      throw new LiveAccessRequired("console input");
+    }
+
+    @Override
+    public void close()
+    {
+    }
+  }
+
+  private final SDK sdk;
+  private final String appFullName;
+  private final Map<String, CompiledScript> cache;
+
+  private ScriptCompiler()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  public ScriptCompiler(final SDK sdk, final String appFullName)
+  {
+    if (sdk == null) {
+      throw new NullPointerException("sdk");
+    }
+    this.sdk = sdk;
+    this.appFullName = appFullName;
+    cache = createCache();
+  }
+
+  private static Map<String, CompiledScript> createCache()
+  {
+    return
+      new LinkedHashMap<String, CompiledScript>(2 * CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = -5096428472370880196L;
+
+        @Override
+        protected boolean
+          removeEldestEntry(final Map.Entry<String, CompiledScript> eldest)
+        {
+          return size() > CACHE_SIZE;
+        }
+      };
+  }
+
+  private static String computeHash(final List<String> lines)
+  {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new InternalError("SHA-256 not supported", e);
+    }
+    for (final String line : lines) {
+      digest.update(line.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte)'\n');
+    }
+    final StringBuilder hash = new StringBuilder();
+    for (final byte b : digest.digest()) {
+      hash.append(String.format("%02x", b & 0xff));
+    }
+    return hash.toString();
+  }
+
+  /**
+   * Returns the compiled plan for the specified script lines, either
+   * from the cache or by compiling it.
+   */
+  public CompiledScript compile(final List<String> lines)
+  {
+    if (lines == null) {
+      throw new NullPointerException("lines");
+    }
+    final String hash = computeHash(lines);
+    synchronized(cache) {
+      final CompiledScript cached = cache.get(hash);
+      if (cached != null) return cached;
+    }
+    final CompiledScript compiled = compileUncached(lines);
+    synchronized(cache) {
+      cache.put(hash, compiled);
+    }
+    return compiled;
+  }
+
+  private CompiledScript compileUncached(final List<String> lines)
+  {
+    final ByteArrayOutputStream capture = new ByteArrayOutputStream();
+    final PrintStream captureConsole = new PrintStream(capture, true);
+    final RecordingAddressSpace recorder = new RecordingAddressSpace(sdk);
+    final CommandRegistry commands =
+      new CommandRegistry(captureConsole,
+                          new BufferedReader(new LiveInput()),
+                          new SDK(captureConsole, recorder), appFullName);
+    final List<CompiledScript.Step> steps =
+      new ArrayList<CompiledScript.Step>();
+    for (final String line : lines) {
+      capture.reset();
+      recorder.clear();
+      CompiledScript.Step step;
+      try {
+        if (commands.isPlannable(line)) {
+          final boolean quit = commands.parseAndExecute(line, false);
+          captureConsole.flush();
+          step = recorder.createStep(line, capture.toString(), quit);
+        } else {
+          step = new CompiledScript.Step(line);
+        }
+      } catch (final IOException | RuntimeException e) {
+        // includes LiveAccessRequired; errors are left to the live
+        // execution for being reported as usual
+        step = new CompiledScript.Step(line);
+      }
+      steps.add(step);
+      if (step.isQuit()) break;
+    }
+    return new CompiledScript(steps);
+  }
+
+  /**
+   * Compiles the specified script lines, if not yet cached, and runs
+   * the compiled plan, using the specified command registry for live
+   * steps.
+   */
+  public int execute(final List<String> lines,
+                     final CommandRegistry commands,
+                     final PrintStream console,
+                     final boolean localEcho,
+                     final String prompt,
+                     final boolean stopOnError)
+  {
+    return
+      compile(lines).execute(commands, sdk, console, localEcho, prompt,
+                             stopOnError);
+  }
+}
@@ -26,6 +26,7 @@ package org.soundpaint.rp2040pio.monitor;
 
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -58,6 +59,9 @@ public class ScriptInfo
 
   public static final String DEFAULT_GROUP_NAME = "Other";
 
+  private static final Map<String, ScriptInfo> scriptInfoCache =
+    new HashMap<String, ScriptInfo>();
+
   private final String scriptId;
   private final String scriptName;
   private final String groupName;
@@ -113,6 +117,25 @@ public class ScriptInfo
   private static final String SCRIPT_HEADER_ID = "Script:";
   private static final String GROUP_HEADER_ID = "Group:";
 
+  /**
+   * Returns the info for the specified example script.  Since the
+   * example scripts do not change during runtime, each script's
+   * headers are parsed only once.
+   */
+  private static ScriptInfo getScriptInfo(final String scriptId)
+    throws IOException
+  {
+    synchronized(scriptInfoCache) {
+      final ScriptInfo scriptInfo = scriptInfoCache.get(scriptId);
+      if (scriptInfo != null) return scriptInfo;
+    }
+    final ScriptInfo scriptInfo = createScriptInfo(scriptId);
+    synchronized(scriptInfoCache) {
+      scriptInfoCache.put(scriptId, scriptInfo);
+    }
+    return scriptInfo;
+  }
+
   private static ScriptInfo createScriptInfo(final String scriptId)
     throws IOException
   {
@@ -169,7 +192,7 @@ public class ScriptInfo
     final Map<String, Map<String, ScriptInfo>> scriptsInfo =
       new TreeMap<String, Map<String, ScriptInfo>>();
     for (final String scriptId : scriptIds) {
-      final ScriptInfo scriptInfo = createScriptInfo(scriptId);
+      final ScriptInfo scriptInfo = getScriptInfo(scriptId);
       final String groupName = scriptInfo.getGroupName();
       final Map<String, ScriptInfo> scriptsGroupInfo;
       if (scriptsInfo.containsKey(groupName)) {
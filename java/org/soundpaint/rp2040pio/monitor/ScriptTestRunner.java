@@ -0,0 +1,521 @@
+/*
+ * @(#)ScriptTestRunner.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.monitor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import org.soundpaint.rp2040pio.CmdOptions;
+import org.soundpaint.rp2040pio.Constants;
+import org.soundpaint.rp2040pio.Emulator;
+import org.soundpaint.rp2040pio.IOUtils;
+import org.soundpaint.rp2040pio.LocalAddressSpace;
+import org.soundpaint.rp2040pio.sdk.SDK;
+
+/**
+ * Command line tool that runs monitor scripts as a regression test
+ * suite.  Rather than connecting to an emulation server, each script
+ * runs against an emulator instance of its own within this process,
+ * such that scripts do not interfere with each other and can be
+ * executed in parallel on a bounded number of threads.  A script
+ * passes if it executes without any error.  Results, including the
+ * number of emulated cycles and the console output of each script,
+ * are written as JUnit-style XML report, as understood by common
+ * continuous integration tools.
+ */
+public class ScriptTestRunner
+{
+  private static final String APP_TITLE = "ScriptTestRunner";
+  private static final String APP_FULL_NAME =
+    "Monitor Script Test Runner Version 0.1";
+  private static final String SUITE_NAME = "rp2040pio.scripts";
+  private static final String PROMPT = "script> ";
+  private static final CmdOptions.FlagOptionDeclaration optVersion =
+    CmdOptions.createFlagOption(false, 'V', "version", CmdOptions.Flag.OFF,
+                                "display version information and exit");
+  private static final CmdOptions.FlagOptionDeclaration optHelp =
+    CmdOptions.createFlagOption(false, 'h', "help", CmdOptions.Flag.OFF,
+                                "display this help text and exit");
+  private static final CmdOptions.StringOptionDeclaration optExamples =
+    CmdOptions.createStringOption("NAMES", false, 'e', "examples", null,
+                                  "comma-separated list of names of " +
+                                  "built-in example scripts to run");
+  private static final CmdOptions.StringOptionDeclaration optFiles =
+    CmdOptions.createStringOption("PATHS", false, 'f', "files", null,
+                                  "comma-separated list of paths of " +
+                                  "monitor script files to run; if " +
+                                  "neither \"-e\" nor \"-f\" is " +
+                                  "specified, all built-in examples " +
+                                  "are run");
+  private static final CmdOptions.IntegerOptionDeclaration optThreads =
+    CmdOptions.createIntegerOption("COUNT", false, 'j', "threads",
+                                   Runtime.getRuntime().
+                                   availableProcessors(),
+                                   "maximum number of scripts to run " +
+                                   "in parallel");
+  private static final CmdOptions.IntegerOptionDeclaration optTimeout =
+    CmdOptions.createIntegerOption("SECONDS", false, 't', "timeout", 60,
+                                   "maximum time per script before it " +
+                                   "is aborted and reported as error");
+  private static final CmdOptions.StringOptionDeclaration optOutput =
+    CmdOptions.createStringOption("PATH", false, 'o', "output", null,
+                                  "path of JUnit-style XML report file " +
+                                  "to write");
+  private static final List<CmdOptions.OptionDeclaration<?>>
+    optionDeclarations =
+    Arrays.asList(new CmdOptions.OptionDeclaration<?>[]
+                  { optVersion, optHelp, optExamples, optFiles,
+                    optThreads, optTimeout, optOutput });
+
+  private enum Status
+  {
+    PASSED, FAILED, ERROR;
+  }
+
+  private static class ScriptSource
+  {
+    private final String name;
+    private final String className;
+    private final String resourcePath;
+
+    private ScriptSource(final String name, final String className,
+                         final String resourcePath)
+    {
+      this.name = name;
+      this.className = className;
+      this.resourcePath = resourcePath;
+    }
+  }
+
+  private static class TestResult
+  {
+    private final ScriptSource source;
+    private final Status status;
+    private final String message;
+    private final long cycles;
+    private final double seconds;
+    private final String output;
+
+    private TestResult(final ScriptSource source, final Status status,
+                       final String message, final long cycles,
+                       final double seconds, final String output)
+    {
+      this.source = source;
+      this.status = status;
+      this.message = message;
+      this.cycles = cycles;
+      this.seconds = seconds;
+      this.output = output;
+    }
+  }
+
+  private final PrintStream console;
+  private final CmdOptions options;
+
+  private ScriptTestRunner()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  private ScriptTestRunner(final PrintStream console, final String[] argv)
+  {
+    if (console == null) {
+      throw new NullPointerException("console");
+    }
+    this.console = console;
+    options = parseArgs(argv);
+  }
+
+  private CmdOptions parseArgs(final String argv[])
+  {
+    final CmdOptions options;
+    try {
+      options = new CmdOptions(APP_TITLE, APP_FULL_NAME, null,
+                               optionDeclarations);
+      options.parse(argv);
+      checkValidity(options);
+    } catch (final CmdOptions.ParseException e) {
+      console.println(e.getMessage());
+      System.exit(-1);
+      throw new InternalError();
+    }
+    if (options.getValue(optVersion) == CmdOptions.Flag.ON) {
+      console.println(APP_FULL_NAME);
+      console.println(Constants.getEmulatorIdAndVersionWithOs());
+      System.exit(0);
+      throw new InternalError();
+    }
+    if (options.getValue(optHelp) == CmdOptions.Flag.ON) {
+      console.println(options.getFullInfo());
+      System.exit(0);
+      throw new InternalError();
+    }
+    return options;
+  }
+
+  private void checkValidity(final CmdOptions options)
+    throws CmdOptions.ParseException
+  {
+    if (options.getValue(optThreads) <= 0) {
+      throw new CmdOptions.
+        ParseException("COUNT must be a positive value", optThreads);
+    }
+    if (options.getValue(optTimeout) <= 0) {
+      throw new CmdOptions.
+        ParseException("SECONDS must be a positive value", optTimeout);
+    }
+  }
+
+  private List<ScriptSource> getScriptSources() throws IOException
+  {
+    final List<ScriptSource> sources = new ArrayList<ScriptSource>();
+    final List<String> exampleNames;
+    if (options.isDefined(optExamples)) {
+      exampleNames = Arrays.asList(options.getValue(optExamples).split(","));
+    } else if (!options.isDefined(optFiles)) {
+      final String suffix = ".mon";
+      exampleNames =
+        IOUtils.list("examples").stream().
+        filter(s -> s.endsWith(suffix)).
+        map(s -> s.substring(0, s.length() - suffix.length())).
+        sorted().
+        collect(Collectors.toList());
+    } else {
+      exampleNames = new ArrayList<String>();
+    }
+    for (final String exampleName : exampleNames) {
+      final String resourcePath =
+        String.format("/examples/%s.mon", exampleName);
+      sources.add(new ScriptSource(exampleName, "examples", resourcePath));
+    }
+    if (options.isDefined(optFiles)) {
+      for (final String path : options.getValue(optFiles).split(",")) {
+        sources.add(new ScriptSource(path, "files", path));
+      }
+    }
+    return sources;
+  }
+
+  /**
+   * Returns the first line of output of the last executed command,
+   * which, when the script stopped due to an error, is the error
+   * message.
+   */
+  private static String getErrorMessage(final String output)
+  {
+    final String[] lines = output.split("\\R");
+    for (int index = lines.length - 1; index > 0; index--) {
+      if (lines[index - 1].startsWith(PROMPT)) return lines[index];
+    }
+    return "";
+  }
+
+  /**
+   * Waits until the watchdog alarm, which has already decided to
+   * fire, has delivered its interrupt, such that clearing the
+   * interrupt status afterwards does not leave a pending interrupt
+   * for the next script on this thread.
+   */
+  private static void awaitAlarm(final Future<?> alarm)
+  {
+    while (true) {
+      try {
+        alarm.get();
+        return;
+      } catch (final InterruptedException e) {
+        // the alarm's own interrupt => retry until it has completed
+      } catch (final ExecutionException | CancellationException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Runs the specified script against an emulator instance of its
+   * own.  Called from a thread of the executor, such that the number
+   * of concurrently existing emulator instances is bounded by the
+   * number of threads.  If the script does not complete within the
+   * specified timeout, e.g. since it waits for a register value that
+   * no other party is going to provide, the watchdog interrupts it.
+   */
+  private static TestResult runScript(final ScriptSource source,
+                                      final ByteArrayOutputStream capture,
+                                      final ScheduledExecutorService
+                                      watchdog,
+                                      final int timeout)
+  {
+    final long startTime = System.nanoTime();
+    final PrintStream scriptConsole = new PrintStream(capture, true);
+    final Emulator emulator = new Emulator(scriptConsole);
+    final Thread thread = Thread.currentThread();
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final AtomicBoolean timedOut = new AtomicBoolean(false);
+    final ScheduledFuture<?> alarm =
+      watchdog.schedule(() -> {
+          if (done.compareAndSet(false, true)) {
+            timedOut.set(true);
+            thread.interrupt();
+          }
+        }, timeout, TimeUnit.SECONDS);
+    long cycles = 0;
+    Status status;
+    String message;
+    try {
+      final List<String> lines =
+        IOUtils.readLines(IOUtils.
+                          getReaderForResourcePath(source.resourcePath));
+      final SDK sdk =
+        new SDK(scriptConsole, new LocalAddressSpace(emulator));
+      final BufferedReader in = new BufferedReader(new StringReader(""));
+      final CommandRegistry commands =
+        new CommandRegistry(scriptConsole, in, sdk, APP_FULL_NAME);
+      final int exitCode =
+        commands.executeScript(lines, true, PROMPT, true);
+      cycles = sdk.getWallClock();
+      scriptConsole.flush();
+      if (exitCode == 0) {
+        status = Status.PASSED;
+        message = null;
+      } else {
+        status = Status.FAILED;
+        message = getErrorMessage(capture.toString());
+      }
+    } catch (final IOException | RuntimeException e) {
+      status = Status.ERROR;
+      message = e.toString();
+    } finally {
+      if (done.compareAndSet(false, true)) {
+        // alarm can no longer interrupt this thread
+        alarm.cancel(false);
+      } else {
+        awaitAlarm(alarm);
+      }
+      Thread.interrupted(); // clear interrupt status for next script
+      emulator.terminate();
+    }
+    if (timedOut.get()) {
+      status = Status.ERROR;
+      message = "timeout after " + timeout + " seconds";
+    }
+    final double seconds = (System.nanoTime() - startTime) * 1.0e-9;
+    scriptConsole.flush();
+    return new TestResult(source, status, message, cycles, seconds,
+                          capture.toString());
+  }
+
+  private static String escape(final String text)
+  {
+    final StringBuilder s = new StringBuilder();
+    for (final char ch : text.toCharArray()) {
+      switch (ch) {
+      case '&':
+        s.append("&amp;");
+        break;
+      case '<':
+        s.append("&lt;");
+        break;
+      case '>':
+        s.append("&gt;");
+        break;
+      case '"':
+        s.append("&quot;");
+        break;
+      default:
+        if ((ch < 0x20) && (ch != '\t') && (ch != '\n') && (ch != '\r')) {
+          // not allowed in XML 1.0
+          s.append('?');
+        } else {
+          s.append(ch);
+        }
+      }
+    }
+    return s.toString();
+  }
+
+  private void writeReport(final PrintWriter out,
+                           final List<TestResult> results,
+                           final Instant timestamp, final double seconds)
+  {
+    int failures = 0;
+    int errors = 0;
+    for (final TestResult result : results) {
+      if (result.status == Status.FAILED) failures++;
+      if (result.status == Status.ERROR) errors++;
+    }
+    out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    out.printf("<testsuite name=\"%s\" tests=\"%d\" failures=\"%d\" " +
+               "errors=\"%d\" skipped=\"0\" time=\"%.3f\" " +
+               "timestamp=\"%s\">%n",
+               SUITE_NAME, results.size(), failures, errors, seconds,
+               timestamp.truncatedTo(ChronoUnit.SECONDS));
+    for (final TestResult result : results) {
+      out.printf("  <testcase classname=\"%s.%s\" name=\"%s\" " +
+                 "time=\"%.3f\">%n",
+                 SUITE_NAME, result.source.className,
+                 escape(result.source.name), result.seconds);
+      out.println("    <properties>");
+      out.printf("      <property name=\"cycles\" value=\"%d\"/>%n",
+                 result.cycles);
+      out.println("    </properties>");
+      if (result.status != Status.PASSED) {
+        out.printf("    <%s message=\"%s\"/>%n",
+                   result.status == Status.FAILED ? "failure" : "error",
+                   escape(result.message));
+      }
+      out.printf("    <system-out>%s</system-out>%n",
+                 escape(result.output));
+      out.println("  </testcase>");
+    }
+    out.println("</testsuite>");
+  }
+
+  private void writeReport(final String path,
+                           final List<TestResult> results,
+                           final Instant timestamp, final double seconds)
+    throws IOException
+  {
+    final PrintWriter out =
+      new PrintWriter(new BufferedWriter
+                      (new OutputStreamWriter(new FileOutputStream(path),
+                                              StandardCharsets.UTF_8)));
+    try {
+      writeReport(out, results, timestamp, seconds);
+    } finally {
+      out.close();
+    }
+    if (out.checkError()) {
+      throw new IOException("failed writing " + path);
+    }
+  }
+
+  private static Thread createDaemonThread(final Runnable runnable)
+  {
+    final Thread thread = new Thread(runnable, "script test runner");
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /**
+   * @return The number of scripts that did not pass.
+   */
+  private int run() throws IOException
+  {
+    final List<ScriptSource> sources = getScriptSources();
+    final int timeout = options.getValue(optTimeout);
+    final Instant timestamp = Instant.now();
+    final long startTime = System.nanoTime();
+    final ExecutorService executor =
+      Executors.newFixedThreadPool(options.getValue(optThreads),
+                                   ScriptTestRunner::createDaemonThread);
+    final ScheduledExecutorService watchdog =
+      Executors.newSingleThreadScheduledExecutor(ScriptTestRunner::
+                                                 createDaemonThread);
+    final List<ByteArrayOutputStream> captures =
+      new ArrayList<ByteArrayOutputStream>();
+    final List<Future<TestResult>> futures =
+      new ArrayList<Future<TestResult>>();
+    for (final ScriptSource source : sources) {
+      final ByteArrayOutputStream capture = new ByteArrayOutputStream();
+      captures.add(capture);
+      futures.add(executor.submit(() ->
+                                  runScript(source, capture, watchdog,
+                                            timeout)));
+    }
+    executor.shutdown();
+    final List<TestResult> results = new ArrayList<TestResult>();
+    int notPassed = 0;
+    for (int index = 0; index < sources.size(); index++) {
+      final ScriptSource source = sources.get(index);
+      final Future<TestResult> future = futures.get(index);
+      TestResult result;
+      try {
+        result = future.get();
+      } catch (final ExecutionException | InterruptedException e) {
+        result = new TestResult(source, Status.ERROR, e.toString(), 0, 0.0,
+                                captures.get(index).toString());
+      }
+      results.add(result);
+      if (result.status != Status.PASSED) notPassed++;
+      console.printf("%-6s %s (%d cycles, %.3fs)%s%n",
+                     result.status, source.name, result.cycles,
+                     result.seconds,
+                     result.message != null ? ": " + result.message : "");
+    }
+    watchdog.shutdown();
+    final double seconds = (System.nanoTime() - startTime) * 1.0e-9;
+    console.printf("%d scripts, %d passed, %d not passed, %.3fs%n",
+                   results.size(), results.size() - notPassed, notPassed,
+                   seconds);
+    if (options.isDefined(optOutput)) {
+      final String output = options.getValue(optOutput);
+      writeReport(output, results, timestamp, seconds);
+      console.println("wrote report to " + output);
+    }
+    return notPassed;
+  }
+
+  public static void main(final String argv[])
+  {
+    final PrintStream console = System.out;
+    final int notPassed;
+    try {
+      notPassed = new ScriptTestRunner(console, argv).run();
+    } catch (final IOException e) {
+      console.println(e.getMessage());
+      System.exit(-1);
+      throw new InternalError();
+    }
+    System.exit(notPassed > 0 ? 1 : 0);
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -117,6 +117,15 @@ public class BreakPoints extends Command
     }
     return true;
   }
+
+  /**
+   * Plannable, since this command only reads and writes registers.
+   */
+  @Override
+  public boolean isPlannable()
+  {
+    return true;
+  }
 }
 
 /*
@@ -64,6 +64,15 @@ public class Clear extends Command
     console.printf("\u001b[H");
     return true;
   }
+
+  /**
+   * Plannable, since this command only prints to the console.
+   */
+  @Override
+  public boolean isPlannable()
+  {
+    return true;
+  }
 }
 
 /*
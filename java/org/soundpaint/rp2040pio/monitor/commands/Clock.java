@@ -289,6 +289,15 @@ public class Clock extends Command
     }
     return true;
   }
+
+  /**
+   * Plannable, since this command only reads and writes registers.
+   */
+  @Override
+  public boolean isPlannable()
+  {
+    return true;
+  }
 }
 
 /*
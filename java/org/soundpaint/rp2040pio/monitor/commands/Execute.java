@@ -313,6 +313,15 @@ public class Execute extends Command
     }
     return true;
   }
+
+  /**
+   * Plannable, since this command only reads and writes registers.
+   */
+  @Override
+  public boolean isPlannable()
+  {
+    return true;
+  }
 }
 
 /*
@@ -0,0 +1,403 @@
+/*
+ * @(#)Expect.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.monitor.commands;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import org.soundpaint.rp2040pio.CmdOptions;
+import org.soundpaint.rp2040pio.Constants;
+import org.soundpaint.rp2040pio.PicoEmuRegisters;
+import org.soundpaint.rp2040pio.TestBench;
+import org.soundpaint.rp2040pio.monitor.Command;
+import org.soundpaint.rp2040pio.sdk.SDK;
+
+/**
+ * Monitor command "expect" declares expected GPIO pad levels and RX
+ * FIFO values in advance, and verifies them.  The expectations are
+ * checked by the emulator itself while executing, such that a
+ * complete test sequence runs at full emulation speed, and the first
+ * mismatch is reported with the exact cycle that it occurred in.
+ */
+public class Expect extends Command
+{
+  private static final String fullName = "expect";
+  private static final String singleLineDescription =
+    "declare and verify expected GPIO levels and RX FIFO values";
+  private static final String notes =
+    "Either use option \"-g\" together with option \"--bits\" for%n" +
+    "declaring a sequence of expected output levels of a single GPIO%n" +
+    "pin, or use options \"-m\" and \"-v\" for declaring the expected%n" +
+    "levels of all GPIO pins selected by the mask at once, for COUNT%n" +
+    "consecutive cycles.  Each character of the bits string is one of%n" +
+    "\"0\" or \"1\" for the pin's expected level throughout PERIOD%n" +
+    "cycles, or \"x\" for not caring.  Levels are compared at the end%n" +
+    "of each cycle.  The first expected cycle is specified by option%n" +
+    "\"-a\", or, if not specified, is the specified number of cycles%n" +
+    "(0, if not specified) after the cycle that the emulator currently%n" +
+    "executes or will execute next.%n" +
+    "%n" +
+    "Use options \"-p\", \"-s\" and \"--rx\" for declaring the values%n" +
+    "that the specified state machine is expected to push into its RX%n" +
+    "FIFO next, in that order.%n" +
+    "%n" +
+    "Use option \"--verify\" for running the emulation at full speed%n" +
+    "until all stimuli and expectations have been processed, or until%n" +
+    "the first mismatch.  Then, the clock mode is restored, and the%n" +
+    "result is reported.  Unless all expectations are met, the command%n" +
+    "fails, such that a script that ends with \"expect --verify\" is a%n" +
+    "self-checking test.  Use option \"--status\" for displaying the%n" +
+    "result so far, without running the emulation, and option%n" +
+    "\"--clear\" for discarding all stimuli and expectations.";
+
+  private static final CmdOptions.IntegerOptionDeclaration optGpio =
+    CmdOptions.createIntegerOption("NUMBER", false, 'g', "gpio", null,
+                                   "number of GPIO pin (0…31)");
+  private static final CmdOptions.StringOptionDeclaration optBits =
+    CmdOptions.createStringOption("STRING", false, null, "bits", null,
+                                  "sequence of expected levels (\"0\", " +
+                                  "\"1\" or \"x\") of the GPIO pin");
+  private static final CmdOptions.IntegerOptionDeclaration optPeriod =
+    CmdOptions.createIntegerOption("COUNT", false, null, "period", 1,
+                                   "number of cycles per character of " +
+                                   "the bits string");
+  private static final CmdOptions.IntegerOptionDeclaration optMask =
+    CmdOptions.createIntegerOption("MASK", false, 'm', "mask", null,
+                                   "bit mask to select GPIO pins");
+  private static final CmdOptions.IntegerOptionDeclaration optValue =
+    CmdOptions.createIntegerOption("VALUE", false, 'v', "value", null,
+                                   "expected levels of the selected " +
+                                   "GPIO pins");
+  private static final CmdOptions.IntegerOptionDeclaration optCount =
+    CmdOptions.createIntegerOption("COUNT", false, 'c', "count", 1,
+                                   "number of cycles that the levels " +
+                                   "are expected for");
+  private static final CmdOptions.IntegerOptionDeclaration optAt =
+    CmdOptions.createIntegerOption("CYCLE", false, 'a', "at", null,
+                                   "absolute wall clock cycle of the " +
+                                   "first expectation");
+  private static final CmdOptions.IntegerOptionDeclaration optDelay =
+    CmdOptions.createIntegerOption("COUNT", false, 'd', "delay", 0,
+                                   "number of cycles from now until the " +
+                                   "first expectation");
+  private static final CmdOptions.IntegerOptionDeclaration optPio =
+    CmdOptions.createIntegerOption("NUMBER", false, 'p', "pio", 0,
+                                   "PIO number, either 0 or 1");
+  private static final CmdOptions.IntegerOptionDeclaration optSm =
+    CmdOptions.createIntegerOption("NUMBER", false, 's', "sm", 0,
+                                   "SM number (0…3)");
+  private static final CmdOptions.StringOptionDeclaration optRx =
+    CmdOptions.createStringOption("VALUES", false, null, "rx", null,
+                                  "comma-separated list of values " +
+                                  "expected to be pushed into the RX FIFO");
+  private static final CmdOptions.FlagOptionDeclaration optVerify =
+    CmdOptions.createFlagOption(false, null, "verify", CmdOptions.Flag.OFF,
+                                "run emulation until all expectations " +
+                                "have been checked and report result");
+  private static final CmdOptions.IntegerOptionDeclaration optTime =
+    CmdOptions.createIntegerOption("COUNT", false, 't', "time", 100000,
+                                   "when verifying, timeout after " +
+                                   "<COUNT> millis or no timeout, if 0");
+  private static final CmdOptions.FlagOptionDeclaration optStatus =
+    CmdOptions.createFlagOption(false, null, "status", CmdOptions.Flag.OFF,
+                                "display result so far");
+  private static final CmdOptions.FlagOptionDeclaration optClear =
+    CmdOptions.createFlagOption(false, null, "clear", CmdOptions.Flag.OFF,
+                                "discard all stimuli and expectations");
+
+  private final SDK sdk;
+
+  public Expect(final PrintStream console, final SDK sdk)
+  {
+    super(console, fullName, singleLineDescription, notes,
+          new CmdOptions.OptionDeclaration<?>[] {
+            optGpio, optBits, optPeriod, optMask, optValue, optCount,
+            optAt, optDelay, optPio, optSm, optRx, optVerify, optTime,
+            optStatus, optClear });
+    if (sdk == null) {
+      throw new NullPointerException("sdk");
+    }
+    this.sdk = sdk;
+  }
+
+  private static int[] parseRxValues(final String rx)
+    throws CmdOptions.ParseException
+  {
+    final String[] tokens = rx.split(",");
+    final int[] values = new int[tokens.length];
+    for (int index = 0; index < tokens.length; index++) {
+      final String token = tokens[index].trim();
+      try {
+        final long value = Long.decode(token);
+        if ((value < Integer.MIN_VALUE) || (value > 0xffffffffL)) {
+          throw new NumberFormatException();
+        }
+        values[index] = (int)value;
+      } catch (final NumberFormatException e) {
+        throw new CmdOptions.
+          ParseException("invalid 32 bit value: \"" + token + "\"", optRx);
+      }
+    }
+    return values;
+  }
+
+  @Override
+  protected void checkValidity(final CmdOptions options)
+    throws CmdOptions.ParseException
+  {
+    if (options.getValue(optHelp) == CmdOptions.Flag.ON) return;
+    final boolean isLevels =
+      options.isDefined(optGpio) || options.isDefined(optMask);
+    final boolean isRx = options.isDefined(optRx);
+    final boolean isVerify = options.getValue(optVerify) == CmdOptions.Flag.ON;
+    final boolean isStatus = options.getValue(optStatus) == CmdOptions.Flag.ON;
+    final boolean isClear = options.getValue(optClear) == CmdOptions.Flag.ON;
+    int modes = 0;
+    for (final boolean mode :
+           new boolean[] { isLevels, isRx, isVerify, isStatus, isClear }) {
+      if (mode) modes++;
+    }
+    if (modes != 1) {
+      throw new CmdOptions.
+        ParseException("exactly one of options \"-g\", \"-m\", \"--rx\", " +
+                       "\"--verify\", \"--status\" and \"--clear\" must " +
+                       "be specified");
+    }
+    if (isLevels) {
+      Stimulus.checkLevels(options, optGpio, optBits, optPeriod, optMask,
+                           optValue, optAt, optDelay);
+      if (options.getValue(optCount) <= 0) {
+        throw new CmdOptions.
+          ParseException("COUNT must be a positive value", optCount);
+      }
+    }
+    if (isRx) {
+      final int pioNum = options.getValue(optPio);
+      if ((pioNum < 0) || (pioNum > Constants.PIO_NUM - 1)) {
+        throw new CmdOptions.
+          ParseException("PIO number must be either 0 or 1", optPio);
+      }
+      final int smNum = options.getValue(optSm);
+      if ((smNum < 0) || (smNum > Constants.SM_COUNT - 1)) {
+        throw new CmdOptions.
+          ParseException("SM number must be one of 0, 1, 2 or 3", optSm);
+      }
+      parseRxValues(options.getValue(optRx));
+    }
+    if (options.getValue(optTime) < 0) {
+      throw new CmdOptions.
+        ParseException("COUNT must be a non-negative value", optTime);
+    }
+  }
+
+  private void expectLevels(final CmdOptions options) throws IOException
+  {
+    final long startCycle =
+      Stimulus.getStartCycle(sdk, options, optAt, optDelay);
+    final int mask;
+    final long stopCycle;
+    if (options.isDefined(optMask)) {
+      mask = options.getValue(optMask);
+      final int value = options.getValue(optValue);
+      final int count = options.getValue(optCount);
+      sdk.addTestBenchPatterns(false, mask, new long[] { startCycle },
+                               new int[] { count }, new int[] { value });
+      stopCycle = startCycle + count - 1;
+    } else {
+      final int gpioNum = options.getValue(optGpio);
+      final String bits = options.getValue(optBits);
+      final int period = options.getValue(optPeriod);
+      mask = 0x1 << gpioNum;
+      // one range for each run of equal bits
+      final long[] startCycles = new long[bits.length()];
+      final int[] cycleCounts = new int[bits.length()];
+      final int[] values = new int[bits.length()];
+      int ranges = 0;
+      char prevCh = ' ';
+      for (int index = 0; index < bits.length(); index++) {
+        final char ch = bits.charAt(index);
+        if ((ch == '0') || (ch == '1')) {
+          if ((ch == prevCh) &&
+              (cycleCounts[ranges - 1] <= Integer.MAX_VALUE - period)) {
+            cycleCounts[ranges - 1] += period;
+          } else {
+            startCycles[ranges] = startCycle + (long)index * period;
+            cycleCounts[ranges] = period;
+            values[ranges] = (ch - '0') << gpioNum;
+            ranges++;
+          }
+        }
+        prevCh = ch;
+      }
+      sdk.addTestBenchPatterns(false, mask,
+                               Arrays.copyOf(startCycles, ranges),
+                               Arrays.copyOf(cycleCounts, ranges),
+                               Arrays.copyOf(values, ranges));
+      stopCycle = startCycle + (long)bits.length() * period - 1;
+    }
+    console.printf("(pio*:sm*) expecting GPIO levels (mask 0x%08x) " +
+                   "for cycles %d…%d%n", mask, startCycle, stopCycle);
+  }
+
+  private void expectRx(final CmdOptions options) throws IOException
+  {
+    final int pioNum = options.getValue(optPio);
+    final int smNum = options.getValue(optSm);
+    final int[] values;
+    try {
+      values = parseRxValues(options.getValue(optRx));
+    } catch (final CmdOptions.ParseException e) {
+      throw new InternalError("values already checked", e);
+    }
+    sdk.addTestBenchRxExpectations(pioNum, smNum, values);
+    console.printf("(pio%d:sm%d) expecting %d RX FIFO values%n",
+                   pioNum, smNum, values.length);
+  }
+
+  /**
+   * Lets the master clock run at full speed until the test bench has
+   * no more pending stimuli or expectations, or until the timeout.
+   * @return &lt;code&gt;false&lt;/code&gt;, if cancelled.
+   */
+  private boolean run(final int time) throws IOException
+  {
+    final int modeAddress =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.MASTERCLK_MODE);
+    final int freqAddress =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.MASTERCLK_FREQ);
+    final int statusAddress =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.TESTBENCH_STATUS);
+    final int mode = sdk.readAddress(modeAddress);
+    final int freq = sdk.readAddress(freqAddress);
+    sdk.writeAddress(freqAddress, 0);
+    sdk.writeAddress(modeAddress, 0);
+    try {
+      final SDK.AsyncTask<Integer> task =
+        sdk.waitAsync(statusAddress, 0x0, TestBench.STATUS_PENDING, 0, time);
+      await(task, 0);
+      return !task.isCancelled();
+    } finally {
+      sdk.writeAddress(modeAddress, mode);
+      sdk.writeAddress(freqAddress, freq);
+    }
+  }
+
+  /**
+   * Displays the result so far.
+   * @return &lt;code&gt;true&lt;/code&gt;, if all expectations have
+   * been checked and met.
+   */
+  private boolean displayStatus() throws IOException
+  {
+    final int[] values =
+      sdk.readAddresses(new int[] {
+          PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.
+                                      TESTBENCH_STATUS),
+          PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.
+                                      TESTBENCH_MISMATCH_CYCLE_LSB),
+          PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.
+                                      TESTBENCH_MISMATCH_CYCLE_MSB),
+          PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.
+                                      TESTBENCH_MISMATCH_EXPECTED),
+          PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.
+                                      TESTBENCH_MISMATCH_ACTUAL),
+          PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.
+                                      TESTBENCH_MISMATCH_SOURCE)
+        });
+    final int status = values[0];
+    final long cycle = ((long)values[2] << 32) | (values[1] & 0xffffffffL);
+    final int expected = values[3];
+    final int actual = values[4];
+    final int source = values[5];
+    if ((status & TestBench.STATUS_FAILED) != 0x0) {
+      if ((source & TestBench.SOURCE_MISSED) != 0x0) {
+        console.printf("(pio*:sm*) expectation failed: GPIO levels " +
+                       "0x%08x expected for cycle %d, but declared too " +
+                       "late%n", expected, cycle);
+      } else if ((source & TestBench.SOURCE_RX) != 0x0) {
+        final int pioNum = (source & TestBench.SOURCE_PIO) != 0x0 ? 1 : 0;
+        final int smNum = source & TestBench.SOURCE_SM_MASK;
+        console.printf("(pio%d:sm%d) expectation failed at cycle %d: " +
+                       "RX FIFO value 0x%08x expected, but 0x%08x " +
+                       "pushed%n", pioNum, smNum, cycle, expected, actual);
+      } else {
+        console.printf("(pio*:sm*) expectation failed at cycle %d: " +
+                       "GPIO levels 0x%08x expected, but found " +
+                       "0x%08x%n", cycle, expected, actual);
+      }
+      return false;
+    }
+    if ((status & TestBench.STATUS_PENDING) != 0x0) {
+      console.printf("(pio*:sm*) expectations pending at cycle %d%n",
+                     sdk.getWallClock());
+      return false;
+    }
+    console.printf("(pio*:sm*) all expectations met at cycle %d%n",
+                   sdk.getWallClock());
+    return true;
+  }
+
+  private void verify(final int time) throws IOException
+  {
+    final int status = sdk.getTestBenchStatus();
+    if ((status & TestBench.STATUS_PENDING) != 0x0) {
+      if (!run(time)) {
+        console.printf("(pio*:sm*) verification cancelled%n");
+      }
+    }
+    if (!displayStatus()) {
+      throw new IOException("verification failed");
+    }
+  }
+
+  /**
+   * Returns true if no error occurred and the command has been
+   * executed.
+   */
+  @Override
+  protected boolean execute(final CmdOptions options) throws IOException
+  {
+    if (options.getValue(optVerify) == CmdOptions.Flag.ON) {
+      verify(options.getValue(optTime));
+    } else if (options.getValue(optStatus) == CmdOptions.Flag.ON) {
+      displayStatus();
+    } else if (options.getValue(optClear) == CmdOptions.Flag.ON) {
+      sdk.clearTestBench();
+      console.printf("(pio*:sm*) cleared all stimuli and expectations%n");
+    } else if (options.isDefined(optRx)) {
+      expectRx(options);
+    } else {
+      expectLevels(options);
+    }
+    return true;
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -609,6 +609,15 @@ public class Fifo extends Command
     }
     return true;
   }
+
+  /**
+   * Plannable, since this command only reads and writes registers.
+   */
+  @Override
+  public boolean isPlannable()
+  {
+    return true;
+  }
 }
 
 /*
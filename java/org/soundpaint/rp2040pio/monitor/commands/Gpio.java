@@ -460,6 +460,15 @@ public class Gpio extends Command
     }
     return true;
   }
+
+  /**
+   * Plannable, since this command only reads and writes registers.
+   */
+  @Override
+  public boolean isPlannable()
+  {
+    return true;
+  }
 }
 
 /*
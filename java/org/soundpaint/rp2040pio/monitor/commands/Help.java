@@ -67,6 +67,15 @@ public class Help extends Command
     console.println();
     return true;
   }
+
+  /**
+   * Plannable, since this command only prints to the console.
+   */
+  @Override
+  public boolean isPlannable()
+  {
+    return true;
+  }
 }
 
 /*
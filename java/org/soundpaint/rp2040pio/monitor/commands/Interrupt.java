@@ -62,7 +62,10 @@ public class Interrupt extends Command
     "For selecting to which IRQ (IRQ0, IRQ1) option \"-e\", \"-d\",%n" +
     "\"-f\" or \"-u\" will apply, use option \"-0\" or \"-1\".%n" +
     "For setting or clearing one of the IRQs visible to all SMs, use%n" +
-    "option \"-v\".";
+    "option \"-v\".%n" +
+    "For waiting until the PIO's interrupt line IRQ0 or IRQ1 (as%n" +
+    "selected by option \"-0\" or \"-1\") is asserted, use option%n" +
+    "\"-w\".";
 
   private static final CmdOptions.IntegerOptionDeclaration optPio =
     CmdOptions.createIntegerOption("NUMBER", false, 'p', "pio", 0,
@@ -107,6 +110,11 @@ public class Interrupt extends Command
     CmdOptions.createBooleanOption(false, 'v', "value", null,
                                    "set value for the selected IRQ flag " +
                                    "of those visible to all SMs");
+  private static final CmdOptions.IntegerOptionDeclaration optWait =
+    CmdOptions.createIntegerOption("COUNT", false, 'w', "wait", null,
+                                   "wait until selected IRQ line is " +
+                                   "asserted, timeout after <COUNT> " +
+                                   "millis or no timeout, if 0");
 
   private enum FlagsGroup
   {
@@ -143,7 +151,7 @@ public class Interrupt extends Command
           new CmdOptions.OptionDeclaration<?>[]
           { optPio, optSm, optIrq, optTxNFull, optRxNEmpty,
               optDisable, optEnable, optForce, optUnforce,
-              optZero, optOne, optValue });
+              optZero, optOne, optValue, optWait });
     if (sdk == null) {
       throw new NullPointerException("sdk");
     }
@@ -217,7 +225,21 @@ public class Interrupt extends Command
         }
       }
       final boolean haveIrqSelection = zero || one;
-      if (haveIrqSelection) {
+      final Integer optWaitValue = options.getValue(optWait);
+      if (optWaitValue != null) {
+        if (optWaitValue < 0) {
+          throw new CmdOptions.ParseException("wait timeout must be >= 0");
+        }
+        if (haveModOp) {
+          throw new CmdOptions.
+            ParseException("option -w can not be combined with " +
+                           "modification options");
+        }
+        if (!(zero ^ one)) {
+          throw new CmdOptions.ParseException("expected either option " +
+                                              "-0 or -1");
+        }
+      } else if (haveIrqSelection) {
         if (!haveMaskingOrForcingOp) {
           final String message = "missing option: -e, -d, -f or -u";
           throw new CmdOptions.ParseException(message);
@@ -298,6 +320,29 @@ public class Interrupt extends Command
                    int2bin((i1IntS >> 8) & 0xf),
                    int2bin((i1IntS >> 4) & 0xf),
                    int2bin(i1IntS & 0xf));
+    final int irqLines =
+      (pioNum == 0 ? sdk.getPIO0SDK() : sdk.getPIO1SDK()).getIRQLines();
+    console.printf("(pio%d:sm*) IRQ0 line %s (%d rising edges mod 256)%n",
+                   pioNum, (irqLines & 0x1) != 0 ? "asserted" : "idle",
+                   (irqLines >>> 8) & 0xff);
+    console.printf("(pio%d:sm*) IRQ1 line %s (%d rising edges mod 256)%n",
+                   pioNum, (irqLines & 0x2) != 0 ? "asserted" : "idle",
+                   (irqLines >>> 16) & 0xff);
+  }
+
+  private boolean await(final int pioNum, final int irqNum,
+                        final int millisTimeout)
+    throws IOException
+  {
+    final PIOSDK pioSdk =
+      pioNum == 0 ? sdk.getPIO0SDK() : sdk.getPIO1SDK();
+    if (!pioSdk.awaitIRQLine(irqNum, 0, millisTimeout)) {
+      console.printf("(pio%d:sm*) timeout while waiting for IRQ%d%n",
+                     pioNum, irqNum);
+      return false;
+    }
+    console.printf("(pio%d:sm*) IRQ%d asserted%n", pioNum, irqNum);
+    return true;
   }
 
   private void disable(final int pioNum, final int smNum,
@@ -393,7 +438,11 @@ public class Interrupt extends Command
       (optValueValue != null);
     final FlagsGroup flagsGroup = FlagsGroup.fromOptions(txNFull, rxNEmpty);
     final int irqNum = one ? 1 : (zero ? 0 : -1);
+    final Integer optWaitValue = options.getValue(optWait);
 
+    if (optWaitValue != null) {
+      return await(pioNum, irqNum, optWaitValue);
+    }
     if (!haveModOp) {
       displayInterrupts(pioNum);
     }
@@ -85,6 +85,15 @@ public class Label extends Command
     console.printf("%s (0x%08x)%n" , label, address);
     return true;
   }
+
+  /**
+   * Plannable, since this command only prints the address layout.
+   */
+  @Override
+  public boolean isPlannable()
+  {
+    return true;
+  }
 }
 
 /*
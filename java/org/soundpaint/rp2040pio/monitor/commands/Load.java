@@ -65,6 +65,14 @@ public class Load extends Command
     "this instance's allocation tracking and may arbitrarily%n" +
     "overwrite allocated PIO memory, using their own allocation scheme.%n" +
     "%n" +
+    "If the program does not fit into the PIO's free memory, option%n" +
+    "\"-r\" allows for moving relocatable programs that have been%n" +
+    "loaded before and are not in use by any enabled state machine%n" +
+    "to other addresses, thereby adjusting their JMP targets and the%n" +
+    "program counter and wrap addresses of disabled state machines%n" +
+    "using them.  A relocated program can still be unloaded by%n" +
+    "specifying the address that has been reported when loading it.%n" +
+    "%n" +
     "Expected file format:%n" +
     "The program file to be loaded must be a regular text file with%n" +
     "either \"\\n\" or \"\\r\\n\" line endings and UTF-8 encoding.%n" +
@@ -78,7 +86,8 @@ public class Load extends Command
     "is not a meta information line must contain a single opcode.  Each%n" +
     "opcode is a 32 bits integer and represented as a plain four-digit%n" +
     "hexadecimal value without leading \"0x\".  The maximum allowed number%n" +
-    "of opcodes is 32.";
+    "of opcodes is 32.  JMP targets are relative to the program start%n" +
+    "and adjusted to the address that the program is loaded to.";
 
   private final SDK sdk;
 
@@ -101,12 +110,17 @@ public class Load extends Command
     CmdOptions.createIntegerOption("ADDRESS", false, 'a', "address", null,
                                    "preferred program start address " +
                                    "(0x00…0x1f)");
+  private static final CmdOptions.FlagOptionDeclaration optRelocate =
+    CmdOptions.createFlagOption(false, 'r', "relocate", CmdOptions.Flag.OFF,
+                                "if necessary, make room by relocating " +
+                                "other programs");
 
   public Load(final PrintStream console, final SDK sdk)
   {
     super(console, fullName, singleLineDescription, notes,
           new CmdOptions.OptionDeclaration<?>[]
-          { optPio, optList, optShow, optExample, optFile, optAddress });
+          { optPio, optList, optShow, optExample, optFile, optAddress,
+            optRelocate });
     if (sdk == null) {
       throw new NullPointerException("sdk");
     }
@@ -149,14 +163,15 @@ public class Load extends Command
   private boolean loadHexDump(final int pioNum,
                               final BufferedReader reader,
                               final String hexDumpId,
-                              final Integer address)
+                              final Integer address,
+                              final boolean relocate)
     throws IOException
   {
     final PIOSDK pioSdk = pioNum == 0 ? sdk.getPIO0SDK() : sdk.getPIO1SDK();
     final int assignedAddress =
       address != null ?
-      pioSdk.addProgramAtOffset(hexDumpId, reader, address) :
-      pioSdk.addProgram(hexDumpId, reader);
+      pioSdk.addProgramAtOffset(hexDumpId, reader, address, relocate) :
+      pioSdk.addProgram(hexDumpId, reader, relocate);
     console.printf("(pio%d:sm*) loaded program %s at address 0x%02x%n",
                    pioNum, hexDumpId, assignedAddress);
     return true;
@@ -176,6 +191,8 @@ public class Load extends Command
     final String optExampleValue = options.getValue(optExample);
     final String optFileValue = options.getValue(optFile);
     final Integer optAddressValue = options.getValue(optAddress);
+    final boolean optRelocateValue =
+      options.getValue(optRelocate) == CmdOptions.Flag.ON;
     if (optListValue) {
       return MonitorUtils.listExampleHexDumps(console);
     } else if (optShowValue != null) {
@@ -185,11 +202,13 @@ public class Load extends Command
         String.format("/examples/%s.hex", optExampleValue);
       final LineNumberReader reader =
         IOUtils.getReaderForResourcePath(resourcePath);
-      return loadHexDump(pioNum, reader, optExampleValue, optAddressValue);
+      return loadHexDump(pioNum, reader, optExampleValue, optAddressValue,
+                         optRelocateValue);
     } else if (optFileValue != null) {
       final LineNumberReader reader =
         IOUtils.getReaderForResourcePath(optFileValue);
-      return loadHexDump(pioNum, reader, optFileValue, optAddressValue);
+      return loadHexDump(pioNum, reader, optFileValue, optAddressValue,
+                         optRelocateValue);
     }
     return false;
   }
@@ -50,6 +50,15 @@ public class Quit extends Command
   {
     return true;
   }
+
+  /**
+   * Plannable, since this command has no effect by itself.
+   */
+  @Override
+  public boolean isPlannable()
+  {
+    return true;
+  }
 }
 
 /*
@@ -54,6 +54,9 @@ public class Save extends Command
     "the first memory address.  Any configuration of a SM specific wrap%n" +
     "or wrap target is ignored.%n" +
     "%n" +
+    "JMP targets are written relative to the program start, i.e. the%n" +
+    "specified start address, as expected by the \"load\" command.%n" +
+    "%n" +
     "If the file is specified to be not relocatable, a proper%n" +
     "\".origin\" directive will be added as a comment line.%n" +
     "%n" +
@@ -129,6 +132,20 @@ public class Save extends Command
     }
   }
 
+  /**
+   * Makes the target of a JMP instruction relative to the program
+   * start, such that the hex dump can be loaded at any address.
+   */
+  private static int toProgramRelative(final int opCode,
+                                       final int startAddress)
+  {
+    if ((opCode & 0xe000) != 0x0000) {
+      // not a JMP instruction
+      return opCode;
+    }
+    return (opCode & ~0x001f) | ((opCode - startAddress) & 0x001f);
+  }
+
   private void writeProgram(final int pioNum,
                             final int startAddress, final int stopAddress,
                             final PrintWriter out, final String name,
@@ -151,7 +168,7 @@ public class Save extends Command
       final int instrAddress =
         PIOEmuRegisters.getMemoryAddress(pioNum, address);
       final int opCode = sdk.readAddress(instrAddress) & 0xffff;
-      out.printf("%04x%n", opCode);
+      out.printf("%04x%n", toProgramRelative(opCode, startAddress));
       address = (address + 1) & (Constants.MEMORY_SIZE - 1);
     } while (address != stopAddress);
   }
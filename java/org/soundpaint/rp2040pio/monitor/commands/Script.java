@@ -210,8 +210,14 @@ public class Script extends Command
                                 final String scriptId, final boolean dryRun)
     throws IOException
   {
-    final int exitStatus =
-      executeScript(in, scriptId, dryRun, true, "script> ");
+    final int exitStatus;
+    if (dryRun) {
+      exitStatus = executeScript(in, scriptId, dryRun, true, "script> ");
+    } else {
+      console.printf("(pio*:sm*) running script %s%n", scriptId);
+      exitStatus =
+        commands.executeScript(IOUtils.readLines(in), true, "script> ", true);
+    }
     console.printf("(pio*:sm*) script %s exited with status %d%n",
                    scriptId, exitStatus);
     return true;
@@ -0,0 +1,168 @@
+/*
+ * @(#)Snapshot.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.monitor.commands;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import org.soundpaint.rp2040pio.CmdOptions;
+import org.soundpaint.rp2040pio.MasterClock;
+import org.soundpaint.rp2040pio.PicoEmuRegisters;
+import org.soundpaint.rp2040pio.monitor.Command;
+import org.soundpaint.rp2040pio.sdk.SDK;
+
+/**
+ * Monitor command "snapshot" saves the complete emulation state into
+ * one of the emulator's snapshot slots, or restores it from there,
+ * such that a series of tests can start over and over again from the
+ * same pre-configured state.
+ */
+public class Snapshot extends Command
+{
+  private static final String fullName = "snapshot";
+  private static final String singleLineDescription =
+    "save or restore complete emulation state";
+  private static final String notes =
+    "Use option \"--save\" for saving the complete emulation state%n" +
+    "into the specified snapshot slot of the emulator, and option%n" +
+    "\"--restore\" for restoring it from there.  The emulation state%n" +
+    "comprises the master clock, the GPIO terminals, and for both%n" +
+    "PIOs instruction memory, pins, IRQ registers and all state%n" +
+    "machines including their FIFOs and clock dividers.  Test bench%n" +
+    "stimuli and expectations and VCD recording are not part of the%n" +
+    "emulation state.  Snapshots survive an emulator reset, but are%n" +
+    "not persisted beyond the lifetime of the emulator.  Restoring%n" +
+    "requires the master clock to be in single step mode.%n" +
+    "%n" +
+    "If neither option is specified, the slots that hold a snapshot%n" +
+    "are listed.";
+
+  private static final CmdOptions.IntegerOptionDeclaration optSave =
+    CmdOptions.createIntegerOption("SLOT", false, null, "save", null,
+                                   "save emulation state into snapshot " +
+                                   "slot (0…31)");
+  private static final CmdOptions.IntegerOptionDeclaration optRestore =
+    CmdOptions.createIntegerOption("SLOT", false, null, "restore", null,
+                                   "restore emulation state from " +
+                                   "snapshot slot (0…31)");
+
+  private final SDK sdk;
+
+  public Snapshot(final PrintStream console, final SDK sdk)
+  {
+    super(console, fullName, singleLineDescription, notes,
+          new CmdOptions.OptionDeclaration<?>[] { optSave, optRestore });
+    if (sdk == null) {
+      throw new NullPointerException("sdk");
+    }
+    this.sdk = sdk;
+  }
+
+  private static void checkSlot(final CmdOptions options,
+                                final CmdOptions.IntegerOptionDeclaration opt)
+    throws CmdOptions.ParseException
+  {
+    if (!options.isDefined(opt)) return;
+    final int slot = options.getValue(opt);
+    if ((slot < 0) || (slot > 31)) {
+      throw new CmdOptions.ParseException("SLOT must be in the range 0…31",
+                                          opt);
+    }
+  }
+
+  @Override
+  protected void checkValidity(final CmdOptions options)
+    throws CmdOptions.ParseException
+  {
+    if (options.getValue(optHelp) == CmdOptions.Flag.ON) return;
+    if (options.isDefined(optSave) && options.isDefined(optRestore)) {
+      throw new CmdOptions.
+        ParseException("at most one of options \"--save\" and " +
+                       "\"--restore\" may be specified at the same time");
+    }
+    checkSlot(options, optSave);
+    checkSlot(options, optRestore);
+  }
+
+  private void list() throws IOException
+  {
+    final int slots = sdk.getSnapshotSlots();
+    if (slots == 0x0) {
+      console.printf("(pio*:sm*) no snapshots%n");
+      return;
+    }
+    final StringBuilder s = new StringBuilder();
+    for (int slot = 0; slot < 32; slot++) {
+      if (((slots >>> slot) & 0x1) != 0x0) {
+        if (s.length() > 0) s.append(", ");
+        s.append(slot);
+      }
+    }
+    console.printf("(pio*:sm*) snapshots in slots %s%n", s);
+  }
+
+  private void restore(final int slot) throws IOException
+  {
+    if (((sdk.getSnapshotSlots() >>> slot) & 0x1) == 0x0) {
+      throw new IOException("no snapshot in slot " + slot);
+    }
+    final int modeAddress =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.MASTERCLK_MODE);
+    if (sdk.readAddress(modeAddress) !=
+        MasterClock.Mode.SINGLE_STEP.ordinal()) {
+      throw new IOException("restoring a snapshot requires the master " +
+                            "clock to be in single step mode");
+    }
+    sdk.restoreSnapshot(slot);
+    console.printf("(pio*:sm*) restored snapshot from slot %d, " +
+                   "wall clock now at cycle %d%n", slot, sdk.getWallClock());
+  }
+
+  /**
+   * Returns true if no error occurred and the command has been
+   * executed.
+   */
+  @Override
+  protected boolean execute(final CmdOptions options) throws IOException
+  {
+    if (options.isDefined(optSave)) {
+      final int slot = options.getValue(optSave);
+      sdk.saveSnapshot(slot);
+      console.printf("(pio*:sm*) saved snapshot at cycle %d into slot %d%n",
+                     sdk.getWallClock(), slot);
+    } else if (options.isDefined(optRestore)) {
+      restore(options.getValue(optRestore));
+    } else {
+      list();
+    }
+    return true;
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,271 @@
+/*
+ * @(#)Stimulus.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.monitor.commands;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import org.soundpaint.rp2040pio.CmdOptions;
+import org.soundpaint.rp2040pio.Constants;
+import org.soundpaint.rp2040pio.monitor.Command;
+import org.soundpaint.rp2040pio.sdk.SDK;
+
+/**
+ * Monitor command "stimulus" schedules timed external GPIO pad input
+ * in advance.  The stimuli are applied by the emulator itself, in
+ * sync with the master clock, such that the emulation does not need
+ * to be driven cycle by cycle for feeding input signals.
+ */
+public class Stimulus extends Command
+{
+  private static final String fullName = "stimulus";
+  private static final String singleLineDescription =
+    "schedule timed external GPIO pad input";
+  private static final String notes =
+    "Either use option \"-g\" together with option \"--bits\" for%n" +
+    "scheduling a sequence of input levels for a single GPIO pin, or%n" +
+    "use options \"-m\" and \"-v\" for scheduling the levels of all GPIO%n" +
+    "pins selected by the mask at once.  Each character of the bits%n" +
+    "string is one of \"0\" or \"1\" for setting the pin's input level%n" +
+    "for the duration of PERIOD cycles, or \"x\" for leaving it%n" +
+    "unchanged.%n" +
+    "%n" +
+    "The first stimulus applies to the cycle specified by option%n" +
+    "\"-a\", or, if not specified, to the cycle that is the specified%n" +
+    "number of cycles (0, if not specified) after the cycle that the%n" +
+    "emulator currently executes or will execute next.  Once applied,%n" +
+    "input levels remain until changed again, just as when changed%n" +
+    "via \"gpio --set\" or \"gpio --clear\".%n" +
+    "%n" +
+    "Use command \"expect\" for declaring expected output and for%n" +
+    "verifying the expectations.";
+
+  private static final CmdOptions.IntegerOptionDeclaration optGpio =
+    CmdOptions.createIntegerOption("NUMBER", false, 'g', "gpio", null,
+                                   "number of GPIO pin (0…31)");
+  private static final CmdOptions.StringOptionDeclaration optBits =
+    CmdOptions.createStringOption("STRING", false, null, "bits", null,
+                                  "sequence of input levels (\"0\", " +
+                                  "\"1\" or \"x\") for the GPIO pin");
+  private static final CmdOptions.IntegerOptionDeclaration optPeriod =
+    CmdOptions.createIntegerOption("COUNT", false, null, "period", 1,
+                                   "number of cycles per character of " +
+                                   "the bits string");
+  private static final CmdOptions.IntegerOptionDeclaration optMask =
+    CmdOptions.createIntegerOption("MASK", false, 'm', "mask", null,
+                                   "bit mask to select GPIO pins");
+  private static final CmdOptions.IntegerOptionDeclaration optValue =
+    CmdOptions.createIntegerOption("VALUE", false, 'v', "value", null,
+                                   "input levels of the selected GPIO pins");
+  private static final CmdOptions.IntegerOptionDeclaration optAt =
+    CmdOptions.createIntegerOption("CYCLE", false, 'a', "at", null,
+                                   "absolute wall clock cycle of the " +
+                                   "first stimulus");
+  private static final CmdOptions.IntegerOptionDeclaration optDelay =
+    CmdOptions.createIntegerOption("COUNT", false, 'd', "delay", 0,
+                                   "number of cycles from now until the " +
+                                   "first stimulus");
+
+  private final SDK sdk;
+
+  public Stimulus(final PrintStream console, final SDK sdk)
+  {
+    super(console, fullName, singleLineDescription, notes,
+          new CmdOptions.OptionDeclaration<?>[] {
+            optGpio, optBits, optPeriod, optMask, optValue, optAt,
+            optDelay });
+    if (sdk == null) {
+      throw new NullPointerException("sdk");
+    }
+    this.sdk = sdk;
+  }
+
+  /**
+   * Checks that the specified string consists of the characters
+   * "0", "1", "x" or "X" only.
+   */
+  static void checkBits(final String bits,
+                        final CmdOptions.StringOptionDeclaration optBits)
+    throws CmdOptions.ParseException
+  {
+    if (bits.isEmpty()) {
+      throw new CmdOptions.ParseException("empty bits string", optBits);
+    }
+    for (final char ch : bits.toCharArray()) {
+      if ((ch != '0') && (ch != '1') && (ch != 'x') && (ch != 'X')) {
+        throw new CmdOptions.
+          ParseException("invalid character in bits string: " + ch,
+                         optBits);
+      }
+    }
+  }
+
+  /**
+   * Checks the options that are shared between this command and
+   * command "expect" for specifying a sequence of GPIO levels.
+   */
+  static void
+    checkLevels(final CmdOptions options,
+                final CmdOptions.IntegerOptionDeclaration optGpio,
+                final CmdOptions.StringOptionDeclaration optBits,
+                final CmdOptions.IntegerOptionDeclaration optPeriod,
+                final CmdOptions.IntegerOptionDeclaration optMask,
+                final CmdOptions.IntegerOptionDeclaration optValue,
+                final CmdOptions.IntegerOptionDeclaration optAt,
+                final CmdOptions.IntegerOptionDeclaration optDelay)
+    throws CmdOptions.ParseException
+  {
+    final boolean isGpio = options.isDefined(optGpio);
+    final boolean isMask = options.isDefined(optMask);
+    if (isGpio == isMask) {
+      throw new CmdOptions.
+        ParseException("exactly one of options \"-g\" and \"-m\" must " +
+                       "be specified");
+    }
+    if (isGpio) {
+      final int gpioNum = options.getValue(optGpio);
+      if ((gpioNum < 0) || (gpioNum > Constants.GPIO_NUM - 1)) {
+        throw new CmdOptions.
+          ParseException("NUMBER must be in the range 0…31", optGpio);
+      }
+      if (!options.isDefined(optBits)) {
+        throw new CmdOptions.ParseException("option not specified", optBits);
+      }
+      checkBits(options.getValue(optBits), optBits);
+      if (options.isDefined(optValue)) {
+        throw new CmdOptions.
+          ParseException("option \"-v\" requires option \"-m\"");
+      }
+    } else {
+      if (!options.isDefined(optValue)) {
+        throw new CmdOptions.
+          ParseException("option not specified", optValue);
+      }
+      if (options.isDefined(optBits)) {
+        throw new CmdOptions.
+          ParseException("option \"--bits\" requires option \"-g\"");
+      }
+    }
+    if (options.getValue(optPeriod) <= 0) {
+      throw new CmdOptions.
+        ParseException("COUNT must be a positive value", optPeriod);
+    }
+    if (options.isDefined(optAt) && options.isDefined(optDelay)) {
+      throw new CmdOptions.
+        ParseException("at most one of options \"-a\" and \"-d\" may be " +
+                       "specified at the same time");
+    }
+    if (options.isDefined(optAt) && (options.getValue(optAt) < 0)) {
+      throw new CmdOptions.
+        ParseException("CYCLE must be a non-negative value", optAt);
+    }
+    if (options.getValue(optDelay) < 0) {
+      throw new CmdOptions.
+        ParseException("COUNT must be a non-negative value", optDelay);
+    }
+  }
+
+  /**
+   * Returns the absolute wall clock cycle that either of options
+   * "-a" or "-d" specifies.
+   */
+  static long getStartCycle(final SDK sdk, final CmdOptions options,
+                            final CmdOptions.IntegerOptionDeclaration optAt,
+                            final CmdOptions.IntegerOptionDeclaration optDelay)
+    throws IOException
+  {
+    if (options.isDefined(optAt)) {
+      return options.getValue(optAt);
+    }
+    return sdk.getWallClock() + options.getValue(optDelay);
+  }
+
+  @Override
+  protected void checkValidity(final CmdOptions options)
+    throws CmdOptions.ParseException
+  {
+    if (options.getValue(optHelp) != CmdOptions.Flag.ON) {
+      checkLevels(options, optGpio, optBits, optPeriod, optMask, optValue,
+                  optAt, optDelay);
+    }
+  }
+
+  /**
+   * Returns true if no error occurred and the command has been
+   * executed.
+   */
+  @Override
+  protected boolean execute(final CmdOptions options) throws IOException
+  {
+    final long startCycle = getStartCycle(sdk, options, optAt, optDelay);
+    if (options.isDefined(optMask)) {
+      final int mask = options.getValue(optMask);
+      final int value = options.getValue(optValue);
+      sdk.addTestBenchPatterns(true, mask, new long[] { startCycle },
+                               new int[] { 1 }, new int[] { value });
+      console.printf("(pio*:sm*) scheduled GPIO input 0x%08x " +
+                     "(mask 0x%08x) for cycle %d%n",
+                     value & mask, mask, startCycle);
+      return true;
+    }
+    final int gpioNum = options.getValue(optGpio);
+    final String bits = options.getValue(optBits);
+    final int period = options.getValue(optPeriod);
+    // levels hold, hence one stimulus for each run of equal bits
+    final long[] startCycles = new long[bits.length()];
+    final int[] values = new int[bits.length()];
+    int levels = 0;
+    int ranges = 0;
+    char prevCh = ' ';
+    for (int index = 0; index < bits.length(); index++) {
+      final char ch = bits.charAt(index);
+      if ((ch == '0') || (ch == '1')) {
+        if (ch != prevCh) {
+          startCycles[ranges] = startCycle + (long)index * period;
+          values[ranges] = (ch - '0') << gpioNum;
+          ranges++;
+        }
+        levels++;
+      }
+      prevCh = ch;
+    }
+    final int[] cycleCounts = new int[ranges];
+    Arrays.fill(cycleCounts, 1);
+    sdk.addTestBenchPatterns(true, 0x1 << gpioNum,
+                             Arrays.copyOf(startCycles, ranges), cycleCounts,
+                             Arrays.copyOf(values, ranges));
+    console.printf("(pio*:sm*) scheduled %d input levels of GPIO pin %02x " +
+                   "for cycles %d…%d%n", levels, gpioNum, startCycle,
+                   startCycle + (long)bits.length() * period - 1);
+    return true;
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -78,6 +78,10 @@ public class Trace extends Command
     CmdOptions.createIntegerOption("NUMBER", false, 'w', "wait", 0,
                                    "before each cycle, sleep for the " +
                                    "specified time [ms] or until interrupted");
+  private static final CmdOptions.IntegerOptionDeclaration optTime =
+    CmdOptions.createIntegerOption("COUNT", false, 't', "time", 0,
+                                   "timeout after <COUNT> millis or " +
+                                   "no timeout, if 0");
 
   private static final int[][] addressPioSmPc = {{
       PIOEmuRegisters.getAddress(0, PIOEmuRegisters.Regs.SM0_PC),
@@ -98,7 +102,7 @@ public class Trace extends Command
     super(console, fullName, singleLineDescription,
           new CmdOptions.OptionDeclaration<?>[]
           { optPio, optSm, optCycles, optPc,
-              optPioGpio, optGpio, optBefore, optWait });
+              optPioGpio, optGpio, optBefore, optWait, optTime });
     if (sdk == null) {
       throw new NullPointerException("sdk");
     }
@@ -135,6 +139,11 @@ public class Trace extends Command
       throw new CmdOptions.
         ParseException("NUMBER must be a non-negative value", optWait);
     }
+    final int time = options.getValue(optTime);
+    if (time < 0) {
+      throw new CmdOptions.
+        ParseException("COUNT must be a non-negative value", optTime);
+    }
     if (options.getValue(optBefore) == CmdOptions.Flag.ON) {
       if (!options.isDefined(optGpio)) {
         throw new CmdOptions.
@@ -191,38 +200,28 @@ public class Trace extends Command
       optSmValue != null ? optSmValue : Constants.SM_COUNT - 1;
     final int cycles = options.getValue(optCycles);
     final int wait = options.getValue(optWait);
-    final int wait0 = wait / 2;
-    final int wait1 = wait - wait0;
-    for (int i = 0; i < cycles; i++) {
-      if (wait0 > 0) {
-        try {
-          Thread.sleep(wait0);
-        } catch (final InterruptedException e) {
-          console.printf("(pio*:sm*) Interrupted: %s%n", e.getMessage());
-        }
-      }
-      sdk.triggerCyclePhase0(true);
-      if (wait1 > 0) {
-        try {
-          Thread.sleep(wait1);
-        } catch (final InterruptedException e) {
-          console.printf("(pio*:sm*) Interrupted: %s%n", e.getMessage());
-        }
-      }
-      sdk.triggerCyclePhase1(true);
-      if (options.getValue(optPc).isOn()) {
+    final int time = options.getValue(optTime);
+    final boolean showPc = options.getValue(optPc).isOn();
+    final boolean showPioGpio = options.getValue(optPioGpio).isOn();
+    final boolean showGpio = options.getValue(optGpio).isOn();
+    final boolean before = options.getValue(optBefore) == CmdOptions.Flag.ON;
+    final SDK.CycleListener listener = (cycle) -> {
+      if (showPc) {
         displayPcValues(pioNumFirst, pioNumLast, smNumFirst, smNumLast);
       }
-      if (options.getValue(optPioGpio).isOn()) {
+      if (showPioGpio) {
         displayGpioValues(pioNumFirst, pioNumLast);
       }
-      if (options.getValue(optGpio).isOn()) {
-        final boolean before = options.getValue(optBefore) == CmdOptions.Flag.ON;
+      if (showGpio) {
         displayGpioValues(before);
       }
-    }
-    console.println(cycles + " clock cycle" + (cycles != 1 ? "s" : "") +
-                    " executed.");
+    };
+    final SDK.AsyncTask<Integer> task =
+      sdk.runCyclesAsync(cycles, wait, listener);
+    final int count = await(task, time);
+    console.println(count + " clock cycle" + (count != 1 ? "s" : "") +
+                    " executed" +
+                    (task.isCancelled() ? " (cancelled)." : "."));
     return true;
   }
 }
@@ -150,11 +150,13 @@ public class Unassemble extends Command
       PIOEmuRegisters.getSMAddress(pioNum, smNum,
                                    PIOEmuRegisters.Regs.SM0_BREAKPOINTS);
     final int breakPoints = sdk.readAddress(addressBreakPoints);
+    final PIOSDK.InstructionInfo[] instructionInfos =
+      pioSdk.getMemoryInstructions(smNum, true, true);
     int address = startAddress;
     do {
       final boolean isCurrentAddr = address == addrValue;
       final PIOSDK.InstructionInfo instructionInfo =
-        pioSdk.getMemoryInstruction(smNum, address, true, true);
+        instructionInfos[address];
       final boolean isAllocated = ((memoryAllocation >>> address) & 0x1) != 0x0;
       final boolean isWrap = address == wrap;
       final boolean isWrapTarget = address == wrapTarget;
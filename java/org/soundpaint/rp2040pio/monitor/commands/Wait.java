@@ -33,10 +33,9 @@ import org.soundpaint.rp2040pio.sdk.SDK;
 /**
  * Monitor command "wait" observes a register's bits and will not
  * return until the register's value matches an expected bit pattern,
- * or when a timeout has occurred.
- *
- * TODO: There is currently no way to cancel an ongoing wait command
- * other than killing the monitor application.
+ * or when a timeout has occurred.  Waiting is performed
+ * asynchronously via the SDK, such that an ongoing wait can be
+ * cancelled, e.g. by pressing Ctrl-C in the monitor.
  */
 public class Wait extends Command
 {
@@ -118,7 +117,14 @@ public class Wait extends Command
     final int mask = options.getValue(optMask);
     final int cycles = options.getValue(optCycles);
     final int time = options.getValue(optTime);
-    final int result = sdk.wait(address, expectedValue, mask, cycles, time);
+    final SDK.AsyncTask<Integer> task =
+      sdk.waitAsync(address, expectedValue, mask, cycles, time);
+    final int result = await(task, 0);
+    if (task.isCancelled()) {
+      console.printf("wait on 0x%08x for 0x%08x cancelled%n",
+                     address, expectedValue);
+      return false;
+    }
     console.printf("wait on 0x%08x for 0x%08x returned 0x%08x%n",
                    address, expectedValue, result);
     return true;
@@ -96,6 +96,15 @@ public class Write extends Command
     console.printf("wrote 0x%04x to %s (0x%08x)%n", value, label, address);
     return true;
   }
+
+  /**
+   * Plannable, since this command only writes a register.
+   */
+  @Override
+  public boolean isPlannable()
+  {
+    return true;
+  }
 }
 
 /*
@@ -29,9 +29,15 @@ import java.awt.Color;
 import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JFrame;
@@ -41,7 +47,6 @@ import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import org.soundpaint.rp2040pio.Constants;
 import org.soundpaint.rp2040pio.CmdOptions;
-import org.soundpaint.rp2040pio.PicoEmuRegisters;
 import org.soundpaint.rp2040pio.RemoteAddressSpaceClient;
 import org.soundpaint.rp2040pio.sdk.SDK;
 
@@ -67,14 +72,22 @@ public abstract class GUIObserver extends JFrame
                                    REGISTER_SERVER_DEFAULT_PORT_NUMBER,
                                    "use PORT as server port number");
   private static final CmdOptions.IntegerOptionDeclaration optRefresh =
-    CmdOptions.createIntegerOption("TIME", false, 'r', "refresh", 1000,
-                                   "autorefresh after <TIME> millis or " +
-                                   "no autorefresh, if 0");
+    CmdOptions.createIntegerOption("TIME", false, 'r', "refresh", 40,
+                                   "refresh view upon changes, but at " +
+                                   "most once per <TIME> millis, or " +
+                                   "without limit, if 0");
   private static final List<CmdOptions.OptionDeclaration<?>>
     optionDeclarations =
     Arrays.asList(new CmdOptions.OptionDeclaration<?>[]
                   { optVersion, optHelp, optPort, optRefresh });
 
+  /**
+   * Upper bound for waiting for changes of observed registers, such
+   * that changes of the set of observed registers, e.g. when the user
+   * selects another state machine, take effect timely.
+   */
+  private static final int MAX_WAIT_MILLIS = 250;
+
   static
   {
     UIManager.put("OptionPane.okButtonMnemonic", "79"); // 'O' as mnemonic
@@ -91,6 +104,7 @@ public abstract class GUIObserver extends JFrame
   private final RemoteAddressSpaceClient sdkClient;
   private final RemoteAddressSpaceClient updateLoopClient;
   private final ActionPanel<? extends GUIObserver> actionPanel;
+  private final List<RegisterView> registerViews;
 
   private GUIObserver()
   {
@@ -113,6 +127,7 @@ public abstract class GUIObserver extends JFrame
     setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
     connectDialog = new ConnectDialog(this, getPort());
     lbStatus = new JLabel();
+    registerViews = new ArrayList<RegisterView>();
     sdkClient = createRemoteAddressSpace("GUI event thread");
     sdk = new SDK(console, sdkClient);
     updateLoopClient = createRemoteAddressSpace("update loop thread");
@@ -187,6 +202,16 @@ public abstract class GUIObserver extends JFrame
     return actionPanel;
   }
 
+  /**
+   * Returns the parsed command-line options, e.g. for retrieving
+   * values of options added via method
+   * getAdditionalOptionDeclarations().
+   */
+  protected CmdOptions getOptions()
+  {
+    return options;
+  }
+
   protected int getPort()
   {
     return options.getValue(optPort);
@@ -204,12 +229,14 @@ public abstract class GUIObserver extends JFrame
 
   private List<CmdOptions.OptionDeclaration<?>> collectOptionDeclarations()
   {
+    final List<CmdOptions.OptionDeclaration<?>> allOptionDeclarations =
+      new ArrayList<CmdOptions.OptionDeclaration<?>>(optionDeclarations);
     final List<CmdOptions.OptionDeclaration<?>> additionalOptionDeclarations =
       getAdditionalOptionDeclarations();
     if (additionalOptionDeclarations != null) {
-      optionDeclarations.addAll(additionalOptionDeclarations);
+      allOptionDeclarations.addAll(additionalOptionDeclarations);
     }
-    return optionDeclarations;
+    return allOptionDeclarations;
   }
 
   private CmdOptions parseArgs(final String argv[])
@@ -328,41 +355,147 @@ public abstract class GUIObserver extends JFrame
     dispatchEvent(closeEvent);
   }
 
+  /**
+   * Adds a view to be updated whenever at least one of the registers
+   * that it observes changes.  Should be called before calling
+   * method startUpdating().
+   */
+  protected void addRegisterView(final RegisterView registerView)
+  {
+    Objects.requireNonNull(registerView);
+    synchronized(registerViews) {
+      registerViews.add(registerView);
+    }
+  }
+
   protected void startUpdating()
   {
     new Thread(() -> updateLoop()).start();
   }
 
   /**
-   * This method is regularly called.  The observer implementation
-   * should check if the RP2040 Emulator's data, that it displays,
-   * has changed, and if so, properly update its view.
+   * Unconditionally updates all register views.  Called when
+   * updating starts and after recovering from a connection error,
+   * since changes may have been missed in the meantime.  Override
+   * this method, if the observer's view needs further updates.
    */
-  protected abstract void updateView();
+  protected void updateView()
+  {
+    for (final RegisterView registerView : getRegisterViews()) {
+      registerView.updateView();
+    }
+  }
+
+  private RegisterView[] getRegisterViews()
+  {
+    synchronized(registerViews) {
+      return registerViews.toArray(new RegisterView[0]);
+    }
+  }
+
+  private static boolean intersects(final int[] addresses,
+                                    final Set<Integer> changedAddresses)
+  {
+    for (final int address : addresses) {
+      if (changedAddresses.contains(address)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Waits until any of the registers observed by the register views
+   * changes, and updates only those views that observe a changed
+   * register.
+   * @param lastValues Maps each observed address to its value as of
+   * the last update.  Addresses that are observed for the first
+   * time, e.g. after the user has selected another state machine,
+   * are read first for establishing a baseline.
+   */
+  private void updateChangedViews(final Map<Integer, Integer> lastValues)
+    throws IOException
+  {
+    final RegisterView[] views = getRegisterViews();
+    final int[][] viewAddresses = new int[views.length][];
+    final Set<Integer> addressSet = new LinkedHashSet<Integer>();
+    for (int viewIndex = 0; viewIndex < views.length; viewIndex++) {
+      viewAddresses[viewIndex] = views[viewIndex].getObservedAddresses();
+      for (final int address : viewAddresses[viewIndex]) {
+        addressSet.add(address);
+      }
+    }
+    if (addressSet.isEmpty()) {
+      try {
+        Thread.sleep(MAX_WAIT_MILLIS);
+      } catch (final InterruptedException e) {
+        // ignore
+      }
+      return;
+    }
+    final int[] addresses = new int[addressSet.size()];
+    int index = 0;
+    for (final int address : addressSet) {
+      addresses[index++] = address;
+    }
+    lastValues.keySet().retainAll(addressSet);
+    int[] values = new int[addresses.length];
+    if (lastValues.size() < addresses.length) {
+      values = updateLoopClient.readAddresses(addresses);
+    } else {
+      for (index = 0; index < addresses.length; index++) {
+        values[index] = lastValues.get(addresses[index]);
+      }
+    }
+    final int[] receivedValues =
+      updateLoopClient.waitAddressesChanged(addresses, values,
+                                            MAX_WAIT_MILLIS);
+    final Set<Integer> changedAddresses = new HashSet<Integer>();
+    for (index = 0; index < addresses.length; index++) {
+      final int address = addresses[index];
+      if (receivedValues[index] != values[index]) {
+        changedAddresses.add(address);
+      }
+      lastValues.put(address, receivedValues[index]);
+    }
+    if (changedAddresses.isEmpty()) return;
+    for (int viewIndex = 0; viewIndex < views.length; viewIndex++) {
+      if (intersects(viewAddresses[viewIndex], changedAddresses)) {
+        views[viewIndex].updateView();
+      }
+    }
+    SwingUtilities.invokeLater(() -> repaint());
+  }
+
+  /**
+   * Sleeps for the remainder of the frame that started at the
+   * specified time, such that changes that occur in quick succession
+   * are coalesced into a single update per frame.
+   */
+  private void awaitEndOfFrame(final long frameStart, final int frameMillis)
+  {
+    final long remaining =
+      frameStart + frameMillis - System.currentTimeMillis();
+    if ((remaining > 0) && (remaining <= frameMillis)) {
+      try {
+        Thread.sleep(remaining);
+      } catch (final InterruptedException e) {
+        // ignore
+      }
+    }
+  }
 
   private void updateLoop()
   {
-    final int addressPhase0 =
-      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.
-                                  MASTERCLK_TRIGGER_PHASE0);
-    final int addressPhase1 =
-      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.
-                                  MASTERCLK_TRIGGER_PHASE1);
-    final int expectedValue = 0x1; // update upon stable cycle phase 1
-    final int mask = 0xffffffff;
-    final int cyclesTimeout = 0;
-    final int refresh = options.getValue(optRefresh);
-    final int millisTimeoutPhase0 = refresh / 2;
-    final int millisTimeoutPhase1 = refresh - millisTimeoutPhase0;
+    final int frameMillis = options.getValue(optRefresh);
+    final Map<Integer, Integer> lastValues = new HashMap<Integer, Integer>();
     while (true) {
       try {
+        lastValues.clear();
+        updateView();
+        SwingUtilities.invokeLater(() -> repaint());
         while (true) {
-          updateLoopClient.waitAddress(addressPhase1, expectedValue, mask,
-                                       cyclesTimeout, millisTimeoutPhase1);
-          updateView();
-          SwingUtilities.invokeLater(() -> repaint());
-          updateLoopClient.waitAddress(addressPhase0, expectedValue, mask,
-                                       cyclesTimeout, millisTimeoutPhase0);
+          final long frameStart = System.currentTimeMillis();
+          updateChangedViews(lastValues);
+          awaitEndOfFrame(frameStart, frameMillis);
         }
       } catch (final IOException e) {
         final String message = String.format("Error: %s", e.getMessage());
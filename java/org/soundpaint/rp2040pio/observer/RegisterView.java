@@ -1,5 +1,5 @@
 /*
- * @(#)ToolTip.java 1.00 21/04/07
+ * @(#)RegisterView.java 1.00 21/07/31
  *
  * Copyright (C) 2021 Jürgen Reuter
  *
@@ -22,33 +22,32 @@
  *
  * Author's web site: www.juergen-reuter.de
  */
-package org.soundpaint.rp2040pio.observer.diagram;
+package org.soundpaint.rp2040pio.observer;
 
-public class ToolTip
+/**
+ * A part of an observer's view that displays the values of a set of
+ * registers.  By declaring these registers, the view is updated only
+ * when at least one of them has changed, rather than periodically.
+ *
+ * @see GUIObserver#addRegisterView
+ */
+public interface RegisterView
 {
-  final int x0;
-  final int y0;
-  final int x1;
-  final int y1;
-  final String text;
-
-  private ToolTip()
-  {
-    throw new UnsupportedOperationException("unsupported empty constructor");
-  }
+  /**
+   * Returns the addresses of all registers that the view displays.
+   * The result may vary over time, e.g. when the user selects
+   * another PIO or state machine for display.  In that case, the
+   * view itself is responsible for updating itself upon the change
+   * of selection.
+   */
+  int[] getObservedAddresses();
 
-  public ToolTip(final int x0, final int y0, final int x1, final int y1,
-                 final String text)
-  {
-    if (text == null) {
-      throw new NullPointerException("text");
-    }
-    this.x0 = x0;
-    this.y0 = y0;
-    this.x1 = x1;
-    this.y1 = y1;
-    this.text = text;
-  }
+  /**
+   * Called from the observer's update thread after at least one of
+   * the observed registers has changed.  The view should re-read the
+   * values that it displays and update accordingly.
+   */
+  void updateView();
 }
 
 /*
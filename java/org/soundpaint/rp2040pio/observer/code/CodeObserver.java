@@ -46,17 +46,12 @@ public class CodeObserver extends GUIObserver
   {
     super(APP_TITLE, APP_FULL_NAME, console, argv);
     add(codeViewPanel = new CodeViewPanel(console, getSDK(), APP_TITLE));
+    addRegisterView(codeViewPanel);
     pack();
     setVisible(true);
     startUpdating();
   }
 
-  @Override
-  protected void updateView()
-  {
-    codeViewPanel.updateView();
-  }
-
   public static void main(final String argv[])
   {
     final PrintStream console = System.out;
@@ -42,10 +42,9 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
 import org.soundpaint.rp2040pio.Constants;
-import org.soundpaint.rp2040pio.PIOEmuRegisters;
-import org.soundpaint.rp2040pio.PIORegisters;
 import org.soundpaint.rp2040pio.sdk.PIOSDK;
 import org.soundpaint.rp2040pio.sdk.SDK;
+import org.soundpaint.rp2040pio.sdk.SMSnapshot;
 
 public class CodeSmViewPanel extends JPanel
 {
@@ -174,50 +173,14 @@ public class CodeSmViewPanel extends JPanel
     lastPC = -1;
   }
 
-  private boolean isClkEnabled() throws IOException
-  {
-    final int clkEnableAddress =
-      PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                   PIOEmuRegisters.Regs.SM0_NEXT_CLK_ENABLE);
-    final int clkEnable = sdk.readAddress(clkEnableAddress) & 0x1;
-    return clkEnable != 0x0;
-  }
-
-  private int getPC() throws IOException
-  {
-    final int addressAddr =
-      PIORegisters.getSMAddress(pioNum, smNum,
-                                PIORegisters.Regs.SM0_ADDR);
-    return
-      sdk.readAddress(addressAddr) & (Constants.MEMORY_SIZE - 1);
-  }
-
-  private int getBreakPoints() throws IOException
-  {
-    final int addressBreakPoints =
-      PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                   PIOEmuRegisters.Regs.SM0_BREAKPOINTS);
-    return sdk.readAddress(addressBreakPoints);
-  }
-
-  private int getPendingDelay() throws IOException
-  {
-    final int addressPendingDelay =
-      PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                   PIOEmuRegisters.Regs.SM0_PENDING_DELAY);
-    final int pendingDelay = sdk.readAddress(addressPendingDelay);
-    return pendingDelay & 0x1f;
-  }
-
   private void updateInstructions() throws IOException
   {
     final PIOSDK pioSdk = pioNum == 0 ? sdk.getPIO0SDK() : sdk.getPIO1SDK();
-    final int pc = getPC();
+    final SMSnapshot snapshot = pioSdk.smGetSnapshot(smNum);
+    final int pc = snapshot.getPC() & (Constants.MEMORY_SIZE - 1);
     final int memoryAllocation = pioSdk.getMemoryAllocation();
 
-    final int addressExecCtrl =
-      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_EXECCTRL);
-    final int execCtrl = sdk.readAddress(addressExecCtrl);
+    final int execCtrl = snapshot.getExecCtrl();
     final int wrap =
       (execCtrl & Constants.SM0_EXECCTRL_WRAP_TOP_BITS) >>>
       Constants.SM0_EXECCTRL_WRAP_TOP_LSB;
@@ -225,27 +188,23 @@ public class CodeSmViewPanel extends JPanel
       (execCtrl & Constants.SM0_EXECCTRL_WRAP_BOTTOM_BITS) >>>
       Constants.SM0_EXECCTRL_WRAP_BOTTOM_LSB;
 
-    final int breakPoints = getBreakPoints();
-    final int pendingDelay = getPendingDelay();
+    final int breakPoints = snapshot.getBreakPoints();
+    final int pendingDelay = snapshot.getPendingDelay() & 0x1f;
 
-    final int forcedInstrAddress =
-      PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                   PIOEmuRegisters.Regs.SM0_FORCED_INSTR);
-    final int forcedInstr = sdk.readAddress(forcedInstrAddress);
+    final int forcedInstr = snapshot.getForcedInstr();
     final boolean haveForced = (forcedInstr & 0x00010000) != 0x0;
     final int forcedOpCode = haveForced ? forcedInstr & 0xffff : 0x0;
 
-    final int execdInstrAddress =
-      PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                   PIOEmuRegisters.Regs.SM0_EXECD_INSTR);
-    final int execdInstr = sdk.readAddress(execdInstrAddress);
+    final int execdInstr = snapshot.getExecdInstr();
     final boolean haveExecd = (execdInstr & 0x00010000) != 0x0;
     final int execdOpCode = haveExecd ? execdInstr & 0xffff : 0x0;
 
+    final PIOSDK.InstructionInfo[] instructionInfos =
+      pioSdk.getMemoryInstructions(smNum, true, true);
     for (int address = 0; address < Constants.MEMORY_SIZE; address++) {
       final boolean isCurrentAddress = address == pc;
       final PIOSDK.InstructionInfo instructionInfo =
-        pioSdk.getMemoryInstruction(smNum, address, true, true);
+        instructionInfos[address];
       final boolean isAllocated = ((memoryAllocation >>> address) & 0x1) != 0x0;
       final boolean isWrap = address == wrap;
       final boolean isWrapTarget = address == wrapTarget;
@@ -268,7 +227,8 @@ public class CodeSmViewPanel extends JPanel
     final PIOSDK.InstructionInfo currentInstructionInfo =
       pioSdk.getCurrentInstruction(smNum, true, true);
     updateDelayDisplay(currentInstructionInfo, pendingDelay);
-    final boolean isActive = pioSdk.smGetEnabled(smNum) && isClkEnabled();
+    final boolean isActive =
+      snapshot.isEnabled() && snapshot.isNextClkEnabled();
     updateForcedOrExecdInstructionDisplay(pioSdk, haveForced, forcedOpCode,
                                           haveExecd, execdOpCode, isActive);
     lsInstructions.setEnabled(isActive);
@@ -27,6 +27,7 @@ package org.soundpaint.rp2040pio.observer.code;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Objects;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -38,10 +39,13 @@ import javax.swing.JProgressBar;
 import javax.swing.JRadioButton;
 import javax.swing.JTextField;
 import org.soundpaint.rp2040pio.Constants;
+import org.soundpaint.rp2040pio.PIOEmuRegisters;
 import org.soundpaint.rp2040pio.SwingUtils;
+import org.soundpaint.rp2040pio.observer.RegisterView;
 import org.soundpaint.rp2040pio.sdk.SDK;
+import org.soundpaint.rp2040pio.sdk.SMSnapshot;
 
-public class CodeViewPanel extends JPanel
+public class CodeViewPanel extends JPanel implements RegisterView
 {
   private static final long serialVersionUID = -2394791187467829359L;
 
@@ -141,6 +145,21 @@ public class CodeViewPanel extends JPanel
     }
   }
 
+  @Override
+  public int[] getObservedAddresses()
+  {
+    final int[] stateAddresses = SMSnapshot.getStateAddresses(pioNum, smNum);
+    final int[] addresses =
+      Arrays.copyOf(stateAddresses,
+                    stateAddresses.length + Constants.MEMORY_SIZE);
+    for (int address = 0; address < Constants.MEMORY_SIZE; address++) {
+      addresses[stateAddresses.length + address] =
+        PIOEmuRegisters.getMemoryAddress(pioNum, address);
+    }
+    return addresses;
+  }
+
+  @Override
   public void updateView()
   {
     codeSmViewPanel.smChanged(pioNum, smNum);
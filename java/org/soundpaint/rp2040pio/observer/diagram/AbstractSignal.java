@@ -24,37 +24,22 @@
  */
 package org.soundpaint.rp2040pio.observer.diagram;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.Graphics2D;
+import java.io.IOException;
 import java.util.Objects;
 
+/**
+ * Base class for signals that record one value of type T per cycle.
+ * Values are not stored as objects, but mapped to int values by the
+ * subclass (see methods toInt() and fromInt()) and kept in a
+ * run-length encoded store, such that memory consumption depends on
+ * the number of value changes rather than on the number of recorded
+ * cycles.
+ */
 public abstract class AbstractSignal<T> implements Signal
 {
-  private static class SignalRecord<T>
-  {
-    private T value;
-    private int notChangedSince;
-
-    private SignalRecord()
-    {
-      throw new UnsupportedOperationException("unsupported empty constructor");
-    }
-
-    private SignalRecord(final T value, final int notChangedSince)
-    {
-      this.value = value;
-      this.notChangedSince = notChangedSince;
-    }
-
-    @Override
-    public String toString()
-    {
-      return String.format("SignalRecord(value=%s,notChangedSince=%d",
-                           value, notChangedSince);
-    }
-  }
-
-  private final List<SignalRecord<T>> signalRecords;
+  private final RunLengthStore store;
+  private final SignalSummary.Range columnSummary;
   private final SignalRendering.SignalParams signalParams;
   private boolean visible;
 
@@ -66,7 +51,8 @@ public abstract class AbstractSignal<T> implements Signal
   public AbstractSignal(final SignalRendering.SignalParams signalParams)
   {
     Objects.requireNonNull(signalParams);
-    this.signalRecords = new ArrayList<SignalRecord<T>>();
+    store = new RunLengthStore();
+    columnSummary = new SignalSummary.Range();
     this.signalParams = signalParams;
     visible = false;
   }
@@ -78,54 +64,65 @@ public abstract class AbstractSignal<T> implements Signal
 
   @Override
   public void reset() {
-    signalRecords.clear();
+    store.clear();
     // keep visibility unmodified
   }
 
+  @Override
+  public void setHistoryRetention(final SignalHistoryFile historyFile,
+                                  final int retainedCycles)
+  {
+    store.setRetention(historyFile, retainedCycles);
+  }
+
   @Override
   public String getLabel() { return signalParams.getLabel(); }
 
+  /**
+   * Maps a non-null value to its int representation.  The mapping
+   * must be injective, such that equal int values imply equal
+   * values.
+   */
+  abstract protected int toInt(final T value);
+
+  /**
+   * Inverse function of method toInt().
+   */
+  abstract protected T fromInt(final int value);
+
   protected void record(final T value, final boolean enforceChanged)
+    throws IOException
   {
-    final int size = signalRecords.size();
-    final T previousValue =
-      size > 0 ? signalRecords.get(size - 1).value : null;
-    final int previousNotChangedSince =
-      size > 0 ? signalRecords.get(size - 1).notChangedSince : 0;
-    final int notChangedSince =
-      enforceChanged ||
-      ((value == null) && (previousValue != null)) ||
-      ((value != null) && !value.equals(previousValue)) ?
-      0 : previousNotChangedSince + 1;
-    final SignalRecord<T> signalRecord =
-      new SignalRecord<T>(value, notChangedSince);
-    signalRecords.add(signalRecord);
+    if (value != null) {
+      store.append(toInt(value), false, enforceChanged);
+    } else {
+      store.append(0, true, enforceChanged);
+    }
   }
 
   @Override
   public int size()
   {
-    return signalRecords.size();
+    return store.size();
   }
 
   public boolean next(final int cycle)
   {
-    return cycle < signalRecords.size() - 1;
+    return cycle < store.size() - 1;
   }
 
   public T getValue(final int index)
   {
-    return
-      index < 0 ?
-      null :
-      (index >= size() ? null : signalRecords.get(index).value);
+    if ((index < 0) || (index >= store.size()) || store.isUndefined(index)) {
+      return null;
+    }
+    return fromInt(store.getValue(index));
   }
 
   @Override
   public int getNotChangedSince(final int cycle)
   {
-    return
-      cycle >= 0 ? signalRecords.get(cycle).notChangedSince : 0;
+    return cycle >= 0 ? store.getNotChangedSince(cycle) : 0;
   }
 
   public boolean changed(final int cycle)
@@ -141,34 +138,26 @@ public abstract class AbstractSignal<T> implements Signal
 
   abstract protected double getSignalHeight();
 
+  /**
+   * Paints a single pixel column that covers the cycles
+   * fromCycle…toCycle-1, given a summary of these cycles.
+   */
+  abstract protected void paintSummary(final Graphics2D g, final double zoom,
+                                       final double x, final double yBottom,
+                                       final SignalSummary.Range summary,
+                                       final int fromCycle,
+                                       final int toCycle);
+
   @Override
-  public void createToolTip(final List<ToolTip> toolTips,
-                            final int cycle,
-                            final boolean isFirstCycle,
-                            final boolean isLastCycle,
-                            final double zoom,
-                            final double xStart,
-                            final double yBottom)
+  public void paintColumn(final Graphics2D g, final double zoom,
+                          final double x, final double yBottom,
+                          final int fromCycle, final int toCycle)
   {
-    final String previousToolTipText = getToolTipText(cycle - 1);
-    if (previousToolTipText != null) {
-      final int previousCycles = getNotChangedSince(cycle - 1) + 1;
-      toolTips.add(new ToolTip((int)(xStart - previousCycles * zoom),
-                               (int)(yBottom - getSignalHeight()),
-                               (int)xStart - 1, (int)yBottom,
-                               previousToolTipText));
-    }
-    if (isLastCycle) {
-      // print label as preview for not yet finished value
-      final String toolTipText = getToolTipText(cycle);
-      if (toolTipText != null) {
-        final int cycles = getNotChangedSince(cycle) - 1;
-        toolTips.add(new ToolTip((int)(xStart - cycles * zoom),
-                                 (int)(yBottom - getSignalHeight()),
-                                 (int)xStart - 1, (int)yBottom,
-                                 toolTipText));
-      }
-    }
+    final int to = Math.min(toCycle, store.size());
+    if (fromCycle >= to) return;
+    columnSummary.clear();
+    store.summarize(fromCycle, to, columnSummary);
+    paintSummary(g, zoom, x, yBottom, columnSummary, fromCycle, to);
   }
 
   @Override
@@ -187,9 +176,9 @@ public abstract class AbstractSignal<T> implements Signal
   public String toString()
   {
     final StringBuffer values = new StringBuffer();
-    for (final SignalRecord<T> record : signalRecords) {
+    for (int cycle = 0; cycle < store.size(); cycle++) {
       if (values.length() > 0) values.append(", ");
-      values.append(record.value);
+      values.append(getValue(cycle));
     }
     return String.format("Signal[label=%s, values={%s}]", getLabel(), values);
   }
@@ -141,9 +141,10 @@ public class ActionPanel
       new JSlider(SignalPanel.ZOOM_MIN, SignalPanel.ZOOM_MAX,
                   SignalPanel.ZOOM_DEFAULT);
     lbZoom.setLabelFor(slZoom);
-    slZoom.setMajorTickSpacing(SignalPanel.ZOOM_MIN);
+    slZoom.setMajorTickSpacing(SignalPanel.ZOOM_LINEAR_MIN);
     slZoom.setPaintTicks(true);
-    slZoom.setLabelTable(slZoom.createStandardLabels(SignalPanel.ZOOM_MIN));
+    slZoom.
+      setLabelTable(slZoom.createStandardLabels(SignalPanel.ZOOM_LINEAR_MIN));
     slZoom.setPaintLabels(true);
     slZoom.addChangeListener((event) -> diagram.setZoom(slZoom.getValue()));
     slZoom.setToolTipText(TOOLTIP_TEXT_ZOOM);
@@ -26,6 +26,7 @@ package org.soundpaint.rp2040pio.observer.diagram;
 
 import java.awt.Graphics2D;
 import java.awt.geom.Line2D;
+import java.io.IOException;
 
 public class ClockSignal extends AbstractSignal<Void>
 {
@@ -42,11 +43,23 @@ public class ClockSignal extends AbstractSignal<Void>
   }
 
   @Override
-  public void record()
+  public void addSampleAddresses(final SampleSet sampleSet)
+  {
+    // no addresses to sample
+  }
+
+  @Override
+  public void record(final SampleSet sampleSet) throws IOException
   {
     record(null, false);
   }
 
+  @Override
+  protected int toInt(final Void value) { return 0; }
+
+  @Override
+  protected Void fromInt(final int value) { return null; }
+
   @Override
   protected double getSignalHeight() { return SIGNAL_HEIGHT; }
 
@@ -80,6 +93,16 @@ public class ClockSignal extends AbstractSignal<Void>
     g.draw(new Line2D.Double(xFallingEdge, yTop, xFallingEdge, yBottom));
     g.draw(new Line2D.Double(xFallingEdge, yBottom, xStop, yBottom));
   }
+
+  @Override
+  protected void paintSummary(final Graphics2D g, final double zoom,
+                              final double x, final double yBottom,
+                              final SignalSummary.Range summary,
+                              final int fromCycle, final int toCycle)
+  {
+    // at least one full clock period per column
+    g.draw(new Line2D.Double(x, yBottom - SIGNAL_HEIGHT, x, yBottom));
+  }
 }
 
 /*
@@ -38,8 +38,10 @@ public interface Constants
   static final String TOOLTIP_TEXT_CLEAR =
     "clear recorded cycles data";
   static final String TOOLTIP_TEXT_ZOOM =
-    "change horizontal display scale";
-  static final int ZOOM_MIN = 16;
+    "change horizontal display scale (pixels per cycle, or zoom out " +
+    "by powers of 2 below 16)";
+  static final int ZOOM_MIN = 0;
+  static final int ZOOM_LINEAR_MIN = 16;
   static final int ZOOM_MAX = 112;
   static final int ZOOM_DEFAULT = 32;
   static final double TOP_MARGIN = 0.0;
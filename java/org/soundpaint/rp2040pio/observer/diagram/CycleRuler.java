@@ -27,11 +27,13 @@ package org.soundpaint.rp2040pio.observer.diagram;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.geom.Line2D;
+import java.io.IOException;
 
 public class CycleRuler extends AbstractSignal<Void>
 {
   private static final double SIGNAL_HEIGHT = 16.0;
   private static final int PADDING = 1;
+  private static final double LABEL_DISTANCE = 80.0;
 
   public CycleRuler()
   {
@@ -44,11 +46,23 @@ public class CycleRuler extends AbstractSignal<Void>
   }
 
   @Override
-  public void record()
+  public void addSampleAddresses(final SampleSet sampleSet)
+  {
+    // no addresses to sample
+  }
+
+  @Override
+  public void record(final SampleSet sampleSet) throws IOException
   {
     record(null, false);
   }
 
+  @Override
+  protected int toInt(final Void value) { return 0; }
+
+  @Override
+  protected Void fromInt(final int value) { return null; }
+
   @Override
   protected double getSignalHeight() { return SIGNAL_HEIGHT; }
 
@@ -83,6 +97,42 @@ public class CycleRuler extends AbstractSignal<Void>
       g.drawString(label, (float)(xStart - 0.5 * width), (float)labelYBottom);
     }
   }
+
+  /**
+   * Returns the smallest distance of labelled cycles of the form 1,
+   * 2 or 5 times a power of 10 that keeps labels at least
+   * LABEL_DISTANCE pixels apart.
+   */
+  private static long getLabelStep(final double zoom)
+  {
+    final double minStep = LABEL_DISTANCE / zoom;
+    long step = 1;
+    while (true) {
+      if (step >= minStep) return step;
+      if (2 * step >= minStep) return 2 * step;
+      if (5 * step >= minStep) return 5 * step;
+      step *= 10;
+    }
+  }
+
+  @Override
+  protected void paintSummary(final Graphics2D g, final double zoom,
+                              final double x, final double yBottom,
+                              final SignalSummary.Range summary,
+                              final int fromCycle, final int toCycle)
+  {
+    final long step = getLabelStep(zoom);
+    final long labelCycle = ((fromCycle + step - 1) / step) * step;
+    if (labelCycle >= toCycle) return;
+    final double tickYTop = yBottom - 0.3 * SIGNAL_HEIGHT;
+    g.draw(new Line2D.Double(x, yBottom, x, tickYTop));
+    final double labelYBottom = yBottom - 0.5 * SIGNAL_HEIGHT;
+    final String label = String.format("%d", labelCycle);
+    g.setFont(Constants.DEFAULT_FONT);
+    final FontMetrics fm = g.getFontMetrics(g.getFont());
+    final int width = fm.stringWidth(label) - PADDING;
+    g.drawString(label, (float)(x - 0.5 * width), (float)labelYBottom);
+  }
 }
 
 /*
@@ -26,6 +26,7 @@ package org.soundpaint.rp2040pio.observer.diagram;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Supplier;
 import javax.swing.Box;
@@ -35,10 +36,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingUtilities;
-import org.soundpaint.rp2040pio.Constants;
-import org.soundpaint.rp2040pio.GPIOIOBank0Registers;
-import org.soundpaint.rp2040pio.PIOEmuRegisters;
-import org.soundpaint.rp2040pio.PIORegisters;
+import org.soundpaint.rp2040pio.CmdOptions;
 import org.soundpaint.rp2040pio.observer.GUIObserver;
 import org.soundpaint.rp2040pio.sdk.SDK;
 
@@ -66,6 +64,13 @@ public class Diagram extends GUIObserver
   private static final String APP_TITLE = "Diagram Creator";
   private static final String APP_FULL_NAME =
     "Timing Diagram Creator Version 0.1";
+  private static final CmdOptions.IntegerOptionDeclaration optHistory =
+    CmdOptions.createIntegerOption("CYCLES", false, 'k', "history",
+                                   DiagramModel.DEFAULT_RETAINED_CYCLES,
+                                   "keep the most recent <CYCLES> cycles " +
+                                   "in memory and page out older ones " +
+                                   "to a temporary file, or keep all " +
+                                   "cycles in memory, if 0");
 
   private final DiagramModel model;
   private final DiagramViewPanel diagramPanel;
@@ -77,16 +82,17 @@ public class Diagram extends GUIObserver
   {
     super(APP_TITLE, APP_FULL_NAME, console, argv);
     model = new DiagramModel(console, getSDK());
+    model.setRetainedCycles(getOptions().getValue(optHistory));
     diagramPanel = new DiagramViewPanel(model);
     telemetryPanel =
       new TelemetryPanel(model, () -> diagramPanel.getLeftMostVisibleCycle());
+    diagramPanel.addScrollListener(() -> telemetryPanel.modelChanged());
     configureModel();
     modelChanged();
     add(createView());
     scriptDialog = new ScriptDialog(this, console);
     pack();
     setVisible(true);
-    startUpdating();
   }
 
   private JPanel createView()
@@ -102,6 +108,24 @@ public class Diagram extends GUIObserver
     return view;
   }
 
+  @Override
+  protected List<CmdOptions.OptionDeclaration<?>>
+    getAdditionalOptionDeclarations()
+  {
+    return Arrays.asList(new CmdOptions.OptionDeclaration<?>[]
+                         { optHistory });
+  }
+
+  @Override
+  protected void checkValidity(final CmdOptions options)
+    throws CmdOptions.ParseException
+  {
+    if (options.getValue(optHistory) < 0) {
+      throw new CmdOptions.
+        ParseException("CYCLES must be a non-negative value", optHistory);
+    }
+  }
+
   public DiagramModel getModel()
   {
     return model;
@@ -125,96 +149,14 @@ public class Diagram extends GUIObserver
     telemetryPanel.modelChanged();
   }
 
-  @Override
-  protected void updateView()
-  {
-    modelChanged();
-  }
-
   public void showScriptDialog()
   {
     scriptDialog.setVisible(true);
   }
 
-  /**
-   * Add pseudo signals that are not directly displayed, but provided
-   * for shared use for instruction rendering.
-   */
-  private void createInternalSignals() throws IOException
-  {
-    for (int pioNum = 0; pioNum < Constants.PIO_NUM; pioNum++) {
-      for (int smNum = 0; smNum < Constants.SM_COUNT; smNum++) {
-        final String labelPrefix = String.format("_PIO%d_SM%d_", pioNum, smNum);
-        final int addressPinCtrl =
-          PIORegisters.getSMAddress(pioNum, smNum,
-                                    PIORegisters.Regs.SM0_PINCTRL);
-        final String labelPinCtrl = labelPrefix + "PINCTRL";
-        model.addInternalSignal(this, labelPinCtrl, addressPinCtrl);
-        final int addressExecCtrl =
-          PIORegisters.getSMAddress(pioNum, smNum,
-                                    PIORegisters.Regs.SM0_EXECCTRL);
-        final String labelExecCtrl = labelPrefix + "EXECCTRL";
-        model.addInternalSignal(this, labelExecCtrl, addressExecCtrl);
-        final int addressDelayCycle =
-          PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                       PIOEmuRegisters.Regs.SM0_DELAY_CYCLE);
-        final String labelDelayCycle = labelPrefix + "DELAY_CYCLE";
-        model.addInternalSignal(this, labelDelayCycle, addressDelayCycle);
-        final int addressDelay =
-          PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                       PIOEmuRegisters.Regs.SM0_DELAY);
-        final String labelDelay = labelPrefix + "DELAY";
-        model.addInternalSignal(this, labelDelay, addressDelay);
-        final int addressInstrOrigin =
-          PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                       PIOEmuRegisters.Regs.SM0_INSTR_ORIGIN);
-        final String labelInstrOrigin = labelPrefix + "INSTR_ORIGIN";
-        model.addInternalSignal(this, labelInstrOrigin, addressInstrOrigin);
-      }
-    }
-  }
-
   private void configureModel() throws IOException
   {
-    createInternalSignals();
-    model.addSignal(SignalFactory.createRuler("cycle#")).setVisible(true);
-    model.addSignal(SignalFactory.createClockSignal("clock")).setVisible(true);
-    model.addSignal(this, "SM0_CLK_ENABLE", PIOEmuRegisters.
-                    getAddress(0, PIOEmuRegisters.Regs.SM0_CLK_ENABLE), 0).
-      setVisible(true);
-    final GPIOIOBank0Registers.Regs regGpio0Status =
-      GPIOIOBank0Registers.Regs.GPIO0_STATUS;
-    for (int gpioNum = 0; gpioNum < 30; gpioNum++) {
-      final String label = "GPIO" + gpioNum + " (out from peri)";
-      final int address =
-        GPIOIOBank0Registers.getGPIOAddress(gpioNum, regGpio0Status);
-      model.addSignal(this, label + " Value", address, 8, 8).
-        setVisible(gpioNum < 2);
-      model.addSignal(this, label + " Level", address, 8, null, -1, -1);
-    }
-    final List<SignalFilter> noDelayFilter =
-      ValueFilterPanel.createFilters(true, false);
-    final int addrSm0Pc =
-      PIOEmuRegisters.getAddress(0, PIOEmuRegisters.Regs.SM0_PC);
-    model.addSignal(this, "SM0_PC", addrSm0Pc);
-    model.addSignal(this, "SM0_PC (hidden delay)", addrSm0Pc,
-                    noDelayFilter, 0, 0);
-    final int instrAddr =
-      PIORegisters.getAddress(0, PIORegisters.Regs.SM0_INSTR);
-    final List<SignalFilter> displayFilters =
-      ValueFilterPanel.createFilters(true, true);
-    model.addSignal(SignalFactory.
-                    createFromRegister(this, getSDK(), "PIO0_SM0_INSTR",
-                                       instrAddr, 15, 0,
-                                       SignalRendering.Mnemonic,
-                                       displayFilters, 0, 0)).
-      setVisible(true);
-    final int addrSm0RegX =
-      PIOEmuRegisters.getAddress(0, PIOEmuRegisters.Regs.SM0_REGX);
-    model.addSignal(this, "SM0_REGX", addrSm0RegX).setVisible(true);
-    final int addrSm0RegY =
-      PIOEmuRegisters.getAddress(0, PIOEmuRegisters.Regs.SM0_REGY);
-    model.addSignal(this, "SM0_REGY", addrSm0RegY);
+    model.addDefaultSignals();
   }
 
   public void clear()
@@ -228,7 +170,6 @@ public class Diagram extends GUIObserver
     model.applyCycles(count);
     modelChanged();
     diagramPanel.ensureCycleIsVisible(model.getSignalSize() - 1);
-    diagramPanel.rebuildToolTips();
   }
 
   public void applyCycles()
@@ -0,0 +1,299 @@
+/*
+ * @(#)DiagramExport.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.observer.diagram;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.soundpaint.rp2040pio.CmdOptions;
+import org.soundpaint.rp2040pio.Constants;
+import org.soundpaint.rp2040pio.RemoteAddressSpaceClient;
+import org.soundpaint.rp2040pio.monitor.Monitor;
+import org.soundpaint.rp2040pio.sdk.SDK;
+
+/**
+ * Command line tool that records a timing diagram from the emulation
+ * server and exports it to an SVG or PNG file, without requiring a
+ * display, e.g. for including waveforms into reports of automated
+ * builds.  The emulation is optionally set up by first executing a
+ * monitor script, just like via the diagram application's script
+ * dialog.  The signals are those that the diagram application shows
+ * by default, and the set of visible signals can be selected by
+ * their labels.
+ */
+public class DiagramExport
+{
+  private static final String APP_TITLE = "DiagramExport";
+  private static final String APP_FULL_NAME =
+    "Timing Diagram Export Version 0.1";
+  private static final CmdOptions.FlagOptionDeclaration optVersion =
+    CmdOptions.createFlagOption(false, 'V', "version", CmdOptions.Flag.OFF,
+                                "display version information and exit");
+  private static final CmdOptions.FlagOptionDeclaration optHelp =
+    CmdOptions.createFlagOption(false, 'h', "help", CmdOptions.Flag.OFF,
+                                "display this help text and exit");
+  private static final CmdOptions.IntegerOptionDeclaration optPort =
+    CmdOptions.createIntegerOption("PORT", false, 'p', "port",
+                                   Constants.
+                                   REGISTER_SERVER_DEFAULT_PORT_NUMBER,
+                                   "use PORT as server port number");
+  private static final CmdOptions.StringOptionDeclaration optExample =
+    CmdOptions.createStringOption("NAME", false, 'e', "example", null,
+                                  "name of built-in example script to " +
+                                  "execute before recording");
+  private static final CmdOptions.StringOptionDeclaration optFile =
+    CmdOptions.createStringOption("PATH", false, 'f', "file", null,
+                                  "path of monitor script file to " +
+                                  "execute before recording");
+  private static final CmdOptions.StringOptionDeclaration optSignals =
+    CmdOptions.createStringOption("LABELS", false, 's', "signals", null,
+                                  "comma-separated list of labels of " +
+                                  "signals to show rather than the " +
+                                  "default selection");
+  private static final CmdOptions.IntegerOptionDeclaration optCycles =
+    CmdOptions.createIntegerOption("COUNT", false, 'c', "cycles", 100,
+                                   "number of cycles to record");
+  private static final CmdOptions.IntegerOptionDeclaration optZoom =
+    CmdOptions.createIntegerOption("ZOOM", false, 'z', "zoom",
+                                   DiagramPainter.ZOOM_DEFAULT,
+                                   "horizontal scale (pixels per cycle, " +
+                                   "or zoom out by powers of 2 below 16)");
+  private static final CmdOptions.IntegerOptionDeclaration optHistory =
+    CmdOptions.createIntegerOption("CYCLES", false, 'k', "history",
+                                   DiagramModel.DEFAULT_RETAINED_CYCLES,
+                                   "keep the most recent <CYCLES> cycles " +
+                                   "in memory and page out older ones " +
+                                   "to a temporary file, or keep all " +
+                                   "cycles in memory, if 0");
+  private static final CmdOptions.StringOptionDeclaration optOutput =
+    CmdOptions.createStringOption("PATH", false, 'o', "output", null,
+                                  "path of SVG (*.svg) or PNG (*.png) " +
+                                  "file to write (required)");
+  private static final List<CmdOptions.OptionDeclaration<?>>
+    optionDeclarations =
+    Arrays.asList(new CmdOptions.OptionDeclaration<?>[]
+                  { optVersion, optHelp, optPort, optExample, optFile,
+                    optSignals, optCycles, optZoom, optHistory,
+                    optOutput });
+
+  private final PrintStream console;
+  private final CmdOptions options;
+
+  private DiagramExport()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  private DiagramExport(final PrintStream console, final String[] argv)
+  {
+    if (console == null) {
+      throw new NullPointerException("console");
+    }
+    this.console = console;
+    options = parseArgs(argv);
+  }
+
+  private CmdOptions parseArgs(final String argv[])
+  {
+    final CmdOptions options;
+    try {
+      options = new CmdOptions(APP_TITLE, APP_FULL_NAME, null,
+                               optionDeclarations);
+      options.parse(argv);
+      checkValidity(options);
+    } catch (final CmdOptions.ParseException e) {
+      console.println(e.getMessage());
+      System.exit(-1);
+      throw new InternalError();
+    }
+    if (options.getValue(optVersion) == CmdOptions.Flag.ON) {
+      console.println(APP_FULL_NAME);
+      console.println(Constants.getEmulatorIdAndVersionWithOs());
+      System.exit(0);
+      throw new InternalError();
+    }
+    if (options.getValue(optHelp) == CmdOptions.Flag.ON) {
+      console.println(options.getFullInfo());
+      System.exit(0);
+      throw new InternalError();
+    }
+    return options;
+  }
+
+  private void checkValidity(final CmdOptions options)
+    throws CmdOptions.ParseException
+  {
+    if ((options.getValue(optHelp) == CmdOptions.Flag.ON) ||
+        (options.getValue(optVersion) == CmdOptions.Flag.ON)) {
+      // nothing else to check, since nothing else will be done
+      return;
+    }
+    final int port = options.getValue(optPort);
+    if ((port < 0) || (port > 65535)) {
+      throw new CmdOptions.
+        ParseException("PORT must be in the range 0…65535");
+    }
+    if (options.isDefined(optExample) && options.isDefined(optFile)) {
+      throw new CmdOptions.
+        ParseException("at most one of options \"-e\" and \"-f\" may be " +
+                       "specified at the same time");
+    }
+    if (options.getValue(optCycles) < 0) {
+      throw new CmdOptions.
+        ParseException("COUNT must be a non-negative value", optCycles);
+    }
+    final int zoom = options.getValue(optZoom);
+    if ((zoom < DiagramPainter.ZOOM_MIN) ||
+        (zoom > DiagramPainter.ZOOM_MAX)) {
+      throw new CmdOptions.
+        ParseException(String.format("ZOOM must be in the range %d…%d",
+                                     DiagramPainter.ZOOM_MIN,
+                                     DiagramPainter.ZOOM_MAX), optZoom);
+    }
+    if (options.getValue(optHistory) < 0) {
+      throw new CmdOptions.
+        ParseException("CYCLES must be a non-negative value", optHistory);
+    }
+    final String output = options.getValue(optOutput);
+    if (output == null) {
+      throw new CmdOptions.
+        ParseException("option not specified: " + optOutput);
+    }
+    if (DiagramExporter.Format.fromFileName(output) == null) {
+      throw new CmdOptions.
+        ParseException("PATH must end with suffix \".svg\" or \".png\"",
+                       optOutput);
+    }
+  }
+
+  private SDK connect() throws IOException
+  {
+    final int port = options.getValue(optPort);
+    try {
+      return
+        new SDK(console, new RemoteAddressSpaceClient(console, null, port));
+    } catch (final IOException e) {
+      final String message =
+        String.format("failed to connect to emulation server: %s%n" +
+                      "check that emulation server runs at port address %d",
+                      e.getMessage(), port);
+      throw new IOException(message);
+    }
+  }
+
+  /**
+   * Executes the selected monitor script, if any, the same way as
+   * the diagram application's script dialog does.
+   */
+  private void executeScript() throws IOException
+  {
+    final List<String> argv = new ArrayList<String>();
+    argv.add("--port=" + options.getValue(optPort));
+    if (options.isDefined(optExample)) {
+      argv.add("--example=" + options.getValue(optExample));
+    } else if (options.isDefined(optFile)) {
+      argv.add("--file=" + options.getValue(optFile));
+    } else {
+      return;
+    }
+    final int exitCode =
+      Monitor.main(argv.toArray(new String[0]),
+                   new ByteArrayInputStream(new byte[0]), console, false);
+    if (exitCode != 0) {
+      throw new IOException("script execution failed with exit code " +
+                            exitCode);
+    }
+  }
+
+  private void selectSignals(final DiagramModel model) throws IOException
+  {
+    if (!options.isDefined(optSignals)) return;
+    final Set<String> labels =
+      new HashSet<String>(Arrays.asList(options.getValue(optSignals).
+                                        split(",")));
+    final Set<String> unknownLabels = new HashSet<String>(labels);
+    for (final Signal signal : model) {
+      signal.setVisible(labels.contains(signal.getLabel()));
+      unknownLabels.remove(signal.getLabel());
+    }
+    if (!unknownLabels.isEmpty()) {
+      final List<String> knownLabels = new ArrayList<String>();
+      for (final Signal signal : model) {
+        knownLabels.add(signal.getLabel());
+      }
+      throw new IOException("unknown signal label(s): " +
+                            String.join(", ", unknownLabels) +
+                            "; known labels are: " +
+                            String.join(", ", knownLabels));
+    }
+  }
+
+  private void run() throws IOException
+  {
+    final SDK sdk = connect();
+    executeScript();
+    final DiagramModel model = new DiagramModel(console, sdk);
+    model.setRetainedCycles(options.getValue(optHistory));
+    model.addDefaultSignals();
+    selectSignals(model);
+    final String output = options.getValue(optOutput);
+    final DiagramExporter.Format format =
+      DiagramExporter.Format.fromFileName(output);
+    final double zoom =
+      DiagramPainter.getPixelsPerCycle(options.getValue(optZoom));
+    final int cycles = options.getValue(optCycles);
+    final DiagramExporter exporter = new DiagramExporter(model, zoom);
+    exporter.export(new File(output), format, cycles,
+                    (signalSize) ->
+                    model.applyCycles(signalSize - model.getSignalSize()));
+    console.printf("exported %d cycles to %s%n",
+                   model.getSignalSize(), output);
+  }
+
+  public static void main(final String argv[])
+  {
+    final PrintStream console = System.out;
+    try {
+      new DiagramExport(console, argv).run();
+    } catch (final IOException e) {
+      console.println(e.getMessage());
+      System.exit(-1);
+    }
+    System.exit(0);
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
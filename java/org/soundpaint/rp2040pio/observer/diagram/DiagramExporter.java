@@ -0,0 +1,284 @@
+/*
+ * @(#)DiagramExporter.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.observer.diagram;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import javax.imageio.ImageIO;
+
+/**
+ * Renders a diagram model into SVG or PNG files without a display.
+ * The diagram is processed in chunks of CHUNK_WIDTH pixels.  Before
+ * painting a chunk, an optional recorder is asked to record the
+ * cycles that the chunk depends on, such that recording and
+ * exporting proceed hand in hand, and memory consumption is bounded
+ * by the chunk size and the diagram model's history retention rather
+ * than by the total number of cycles.
+ *
+ * SVG output is written as a single file, with one clip group per
+ * chunk.  Since PNG images can not be written incrementally, PNG
+ * output is written as one image per chunk, each including the
+ * legend.  If there is more than one chunk, the chunk number is
+ * inserted before the file name suffix.
+ */
+public class DiagramExporter
+{
+  public static final int CHUNK_WIDTH = 4096;
+
+  public enum Format
+  {
+    SVG("svg"),
+    PNG("png");
+
+    private final String suffix;
+
+    private Format(final String suffix)
+    {
+      this.suffix = suffix;
+    }
+
+    public String getSuffix() { return suffix; }
+
+    /**
+     * Returns the format that matches the suffix of the specified
+     * file name, or &lt;code&gt;null&lt;/code&gt;, if there is no
+     * such format.
+     */
+    public static Format fromFileName(final String fileName)
+    {
+      final String lowerCaseFileName = fileName.toLowerCase();
+      for (final Format format : values()) {
+        if (lowerCaseFileName.endsWith("." + format.suffix)) {
+          return format;
+        }
+      }
+      return null;
+    }
+  }
+
+  @FunctionalInterface
+  public static interface Recorder
+  {
+    /**
+     * Records further cycles until the model holds at least the
+     * specified number of cycles, if possible.
+     */
+    void recordUntil(final int signalSize) throws IOException;
+  }
+
+  private final DiagramModel model;
+  private final DiagramPainter painter;
+  private final double zoom;
+
+  private DiagramExporter()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  /**
+   * @param zoom The number of pixels per cycle.
+   */
+  public DiagramExporter(final DiagramModel model, final double zoom)
+  {
+    if (model == null) {
+      throw new NullPointerException("model");
+    }
+    if (zoom <= 0.0) {
+      throw new IllegalArgumentException("zoom <= 0: " + zoom);
+    }
+    this.model = model;
+    painter = new DiagramPainter(model);
+    this.zoom = zoom;
+  }
+
+  private int getChunkCount(final int diagramWidth)
+  {
+    return Math.max((diagramWidth + CHUNK_WIDTH - 1) / CHUNK_WIDTH, 1);
+  }
+
+  private Rectangle getChunkBounds(final int chunk, final int diagramWidth,
+                                   final int height)
+  {
+    final int x = chunk * CHUNK_WIDTH;
+    return new Rectangle(x, 0, Math.min(CHUNK_WIDTH, diagramWidth - x),
+                         height);
+  }
+
+  private void paintChunk(final Graphics2D g, final Rectangle bounds,
+                          final int cycles, final Recorder recorder)
+    throws IOException
+  {
+    if (recorder != null) {
+      final int requiredSignalSize =
+        Math.min(cycles,
+                 DiagramPainter.
+                 getRequiredSignalSize(zoom, bounds,
+                                       DiagramPainter.LABEL_MARGIN));
+      if (model.getSignalSize() < requiredSignalSize) {
+        recorder.recordUntil(requiredSignalSize);
+      }
+    }
+    synchronized(model) {
+      painter.paint(g, zoom, bounds, DiagramPainter.LABEL_MARGIN);
+    }
+  }
+
+  private void paintLegend(final Graphics2D g)
+  {
+    g.setColor(Color.BLACK);
+    synchronized(model) {
+      painter.paintLegend(g, DiagramPainter.LEGEND_WIDTH);
+    }
+  }
+
+  /**
+   * Exports the specified number of cycles to the specified file.
+   * @param recorder Called for recording cycles as needed, or
+   * &lt;code&gt;null&lt;/code&gt;, if all cycles have already been
+   * recorded.
+   */
+  public void export(final File file, final Format format,
+                     final int cycles, final Recorder recorder)
+    throws IOException
+  {
+    if (file == null) {
+      throw new NullPointerException("file");
+    }
+    if (format == null) {
+      throw new NullPointerException("format");
+    }
+    if (cycles < 0) {
+      throw new IllegalArgumentException("cycles < 0: " + cycles);
+    }
+    switch (format) {
+    case SVG:
+      exportSvg(file, cycles, recorder);
+      break;
+    case PNG:
+      exportPng(file, cycles, recorder);
+      break;
+    default:
+      throw new InternalError("unexpected case fall-through");
+    }
+  }
+
+  private void exportSvg(final File file, final int cycles,
+                         final Recorder recorder)
+    throws IOException
+  {
+    final int height = (int)Math.ceil(painter.getHeight());
+    final int diagramWidth = (int)DiagramPainter.getWidth(cycles, zoom);
+    final PrintWriter out =
+      new PrintWriter(new BufferedWriter
+                      (new OutputStreamWriter(new FileOutputStream(file),
+                                              StandardCharsets.UTF_8)));
+    try {
+      final SvgGraphics2D g = new SvgGraphics2D(out);
+      g.writeHeader(DiagramPainter.LEGEND_WIDTH + diagramWidth, height);
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, DiagramPainter.LEGEND_WIDTH + diagramWidth, height);
+      paintLegend(g);
+      g.translate(DiagramPainter.LEGEND_WIDTH, 0);
+      final int chunkCount = getChunkCount(diagramWidth);
+      for (int chunk = 0; chunk < chunkCount; chunk++) {
+        final Rectangle bounds = getChunkBounds(chunk, diagramWidth, height);
+        g.beginClipGroup(bounds);
+        paintChunk(g, bounds, cycles, recorder);
+        g.endGroup();
+        g.flush();
+      }
+      g.writeFooter();
+      g.dispose();
+    } finally {
+      out.close();
+    }
+    if (out.checkError()) {
+      throw new IOException("failed writing " + file);
+    }
+  }
+
+  private static File getChunkFile(final File file, final int chunk,
+                                   final int chunkCount)
+  {
+    if (chunkCount == 1) return file;
+    final String name = file.getName();
+    final int dot = name.lastIndexOf('.');
+    final String chunkName =
+      dot >= 0 ?
+      String.format("%s-%04d%s", name.substring(0, dot), chunk,
+                    name.substring(dot)) :
+      String.format("%s-%04d", name, chunk);
+    return new File(file.getParentFile(), chunkName);
+  }
+
+  private void exportPng(final File file, final int cycles,
+                         final Recorder recorder)
+    throws IOException
+  {
+    final int height = (int)Math.ceil(painter.getHeight());
+    final int diagramWidth = (int)DiagramPainter.getWidth(cycles, zoom);
+    final int chunkCount = getChunkCount(diagramWidth);
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      final Rectangle bounds = getChunkBounds(chunk, diagramWidth, height);
+      final BufferedImage image =
+        new BufferedImage(DiagramPainter.LEGEND_WIDTH + bounds.width, height,
+                          BufferedImage.TYPE_INT_RGB);
+      final Graphics2D g = image.createGraphics();
+      try {
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                           RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), height);
+        paintLegend(g);
+        g.translate(DiagramPainter.LEGEND_WIDTH - bounds.x, 0);
+        g.setClip(bounds);
+        paintChunk(g, bounds, cycles, recorder);
+      } finally {
+        g.dispose();
+      }
+      final File chunkFile = getChunkFile(file, chunk, chunkCount);
+      if (!ImageIO.write(image, Format.PNG.getSuffix(), chunkFile)) {
+        throw new IOException("no image writer for PNG format");
+      }
+    }
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
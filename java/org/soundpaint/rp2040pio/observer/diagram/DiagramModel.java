@@ -32,16 +32,41 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.function.Supplier;
+import org.soundpaint.rp2040pio.AddressSpace;
+import org.soundpaint.rp2040pio.Constants;
+import org.soundpaint.rp2040pio.GPIOIOBank0Registers;
+import org.soundpaint.rp2040pio.PIOEmuRegisters;
+import org.soundpaint.rp2040pio.PIORegisters;
+import org.soundpaint.rp2040pio.PicoEmuRegisters;
 import org.soundpaint.rp2040pio.sdk.SDK;
 
+/**
+ * Holds the signals of a timing diagram and records their values.
+ * Since the signal panel renders the diagram in a background thread,
+ * all methods that record or reset signals or change the set of
+ * signals synchronize on the model instance, and so must any code
+ * that reads recorded values outside of the event dispatch thread.
+ */
 public class DiagramModel implements Iterable<Signal>
 {
+  /**
+   * Default number of most recent cycles to keep in memory per
+   * signal; older history is paged out to a temporary file.
+   */
+  public static final int DEFAULT_RETAINED_CYCLES = 0x10000;
+
+  private static final int WALLCLOCK_LSB_COLUMN = 0;
+  private static final int WALLCLOCK_MSB_COLUMN = 1;
+
   private final PrintStream console;
   private final SDK sdk;
   private final HashMap<Integer, RegisterIntSignal> address2internalSignal;
   private final List<Signal> signals;
+  private final SignalHistoryFile historyFile;
+  private int retainedCycles;
   private long wallClock;
-  private int signalSize;
+  private volatile int signalSize;
+  private volatile int generation;
 
   private DiagramModel()
   {
@@ -61,8 +86,46 @@ public class DiagramModel implements Iterable<Signal>
     this.sdk = sdk;
     address2internalSignal = new HashMap<Integer, RegisterIntSignal>();
     signals = new ArrayList<Signal>();
+    historyFile = new SignalHistoryFile(console);
+    retainedCycles = DEFAULT_RETAINED_CYCLES;
     wallClock = -1;
     signalSize = 0;
+    generation = 0;
+  }
+
+  /**
+   * Sets the number of most recent cycles that each signal keeps in
+   * memory.  Older cycles are paged out to a temporary file and
+   * reloaded on demand when scrolling back.  A value of 0 keeps the
+   * complete history in memory.
+   */
+  public synchronized void setRetainedCycles(final int retainedCycles)
+  {
+    if (retainedCycles < 0) {
+      throw new IllegalArgumentException("retainedCycles < 0: " +
+                                         retainedCycles);
+    }
+    this.retainedCycles = retainedCycles;
+    for (final Signal signal : address2internalSignal.values()) {
+      applyHistoryRetention(signal);
+    }
+    for (final Signal signal : signals) {
+      applyHistoryRetention(signal);
+    }
+  }
+
+  public int getRetainedCycles()
+  {
+    return retainedCycles;
+  }
+
+  private void applyHistoryRetention(final Signal signal)
+  {
+    if (retainedCycles > 0) {
+      signal.setHistoryRetention(historyFile, retainedCycles);
+    } else {
+      signal.setHistoryRetention(null, 0);
+    }
   }
 
   public Iterator<Signal> iterator()
@@ -75,13 +138,15 @@ public class DiagramModel implements Iterable<Signal>
     return address2internalSignal.values();
   }
 
-  public Signal addInternalSignal(final Diagram diagram,
-                                  final String label, final int address)
+  public synchronized Signal addInternalSignal(final String label,
+                                               final int address)
     throws IOException
   {
     final RegisterIntSignal signal =
-      SignalFactory.createInternal(diagram, sdk, label, address);
+      SignalFactory.createInternal(this, sdk, label, address);
+    applyHistoryRetention(signal);
     address2internalSignal.put(address, signal);
+    generation++;
     return signal;
   }
 
@@ -90,17 +155,18 @@ public class DiagramModel implements Iterable<Signal>
     return address2internalSignal.get(address);
   }
 
-  public Signal addSignal(final Signal signal)
+  public synchronized Signal addSignal(final Signal signal)
   {
     if (signal == null) {
       throw new NullPointerException("signal");
     }
+    applyHistoryRetention(signal);
     signals.add(signal);
+    generation++;
     return signal;
   }
 
-  public Signal addSignal(final Diagram diagram,
-                          final String label, final int address,
+  public Signal addSignal(final String label, final int address,
                           final int msb, final int lsb,
                           final List<SignalFilter> displayFilters,
                           final int pioNum, final int smNum)
@@ -108,70 +174,149 @@ public class DiagramModel implements Iterable<Signal>
   {
     final Signal signal =
       SignalFactory.
-      createFromRegister(diagram, sdk, label, address, msb, lsb,
+      createFromRegister(this, sdk, label, address, msb, lsb,
                          SignalRendering.Hex, displayFilters, pioNum, smNum);
     return addSignal(signal);
   }
 
-  public Signal addSignal(final Diagram diagram,
-                          final String label, final int address,
+  public Signal addSignal(final String label, final int address,
                           final int msb, final int lsb)
     throws IOException
   {
-    return addSignal(diagram, label, address, msb, lsb, null, -1, -1);
+    return addSignal(label, address, msb, lsb, null, -1, -1);
   }
 
-  public Signal addSignal(final Diagram diagram,
-                          final String label, final int address, final int bit,
+  public Signal addSignal(final String label, final int address, final int bit,
                           final List<SignalFilter> displayFilters,
                           final int pioNum, final int smNum)
     throws IOException
   {
     final RegisterBitSignal signal =
-      SignalFactory.createFromRegister(diagram, sdk, label, address, bit,
+      SignalFactory.createFromRegister(this, sdk, label, address, bit,
                                        displayFilters, pioNum, smNum);
     return addSignal(signal);
   }
 
-  public Signal addSignal(final Diagram diagram, final String label,
+  public Signal addSignal(final String label,
                           final int address, final int bit)
     throws IOException
   {
-    return addSignal(diagram, label, address, bit, null, -1, -1);
+    return addSignal(label, address, bit, null, -1, -1);
   }
 
-  public Signal addSignal(final Diagram diagram,
-                          final String label, final int address)
+  public Signal addSignal(final String label, final int address)
     throws IOException
   {
-    return addSignal(diagram, label, address, 31, 0);
+    return addSignal(label, address, 31, 0);
   }
 
-  public Signal addSignal(final Diagram diagram,
-                          final String label, final int address,
+  public Signal addSignal(final String label, final int address,
                           final List<SignalFilter> displayFilters,
                           final int pioNum, final int smNum)
     throws IOException
   {
-    return addSignal(diagram, label, address, 31, 0,
+    return addSignal(label, address, 31, 0,
                      displayFilters, pioNum, smNum);
   }
 
-  public Signal addSignal(final Diagram diagram, final int address)
+  public Signal addSignal(final int address)
     throws IOException
   {
-    return addSignal(diagram, null, address);
+    return addSignal(null, address);
   }
 
-  public Signal addSignal(final Diagram diagram, final int address,
+  public Signal addSignal(final int address,
                           final List<SignalFilter> displayFilters,
                           final int pioNum, final int smNum)
     throws IOException
   {
-    return addSignal(diagram, null, address, displayFilters, pioNum, smNum);
+    return addSignal(null, address, displayFilters, pioNum, smNum);
+  }
+
+  /**
+   * Add pseudo signals that are not directly displayed, but provided
+   * for shared use for instruction rendering.
+   */
+  private void createInternalSignals() throws IOException
+  {
+    for (int pioNum = 0; pioNum < Constants.PIO_NUM; pioNum++) {
+      for (int smNum = 0; smNum < Constants.SM_COUNT; smNum++) {
+        final String labelPrefix = String.format("_PIO%d_SM%d_", pioNum, smNum);
+        final int addressPinCtrl =
+          PIORegisters.getSMAddress(pioNum, smNum,
+                                    PIORegisters.Regs.SM0_PINCTRL);
+        final String labelPinCtrl = labelPrefix + "PINCTRL";
+        addInternalSignal(labelPinCtrl, addressPinCtrl);
+        final int addressExecCtrl =
+          PIORegisters.getSMAddress(pioNum, smNum,
+                                    PIORegisters.Regs.SM0_EXECCTRL);
+        final String labelExecCtrl = labelPrefix + "EXECCTRL";
+        addInternalSignal(labelExecCtrl, addressExecCtrl);
+        final int addressDelayCycle =
+          PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                       PIOEmuRegisters.Regs.SM0_DELAY_CYCLE);
+        final String labelDelayCycle = labelPrefix + "DELAY_CYCLE";
+        addInternalSignal(labelDelayCycle, addressDelayCycle);
+        final int addressDelay =
+          PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                       PIOEmuRegisters.Regs.SM0_DELAY);
+        final String labelDelay = labelPrefix + "DELAY";
+        addInternalSignal(labelDelay, addressDelay);
+        final int addressInstrOrigin =
+          PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                       PIOEmuRegisters.Regs.SM0_INSTR_ORIGIN);
+        final String labelInstrOrigin = labelPrefix + "INSTR_ORIGIN";
+        addInternalSignal(labelInstrOrigin, addressInstrOrigin);
+      }
+    }
   }
 
-  public void resetSignals()
+  /**
+   * Adds the signals that the diagram shows by default, i.e. unless
+   * the user configures a different set of signals.
+   */
+  public void addDefaultSignals() throws IOException
+  {
+    createInternalSignals();
+    addSignal(SignalFactory.createRuler("cycle#")).setVisible(true);
+    addSignal(SignalFactory.createClockSignal("clock")).setVisible(true);
+    addSignal("SM0_CLK_ENABLE", PIOEmuRegisters.
+              getAddress(0, PIOEmuRegisters.Regs.SM0_CLK_ENABLE), 0).
+      setVisible(true);
+    final GPIOIOBank0Registers.Regs regGpio0Status =
+      GPIOIOBank0Registers.Regs.GPIO0_STATUS;
+    for (int gpioNum = 0; gpioNum < 30; gpioNum++) {
+      final String label = "GPIO" + gpioNum + " (out from peri)";
+      final int address =
+        GPIOIOBank0Registers.getGPIOAddress(gpioNum, regGpio0Status);
+      addSignal(label + " Value", address, 8, 8).setVisible(gpioNum < 2);
+      addSignal(label + " Level", address, 8, null, -1, -1);
+    }
+    final List<SignalFilter> noDelayFilter =
+      ValueFilterPanel.createFilters(true, false);
+    final int addrSm0Pc =
+      PIOEmuRegisters.getAddress(0, PIOEmuRegisters.Regs.SM0_PC);
+    addSignal("SM0_PC", addrSm0Pc);
+    addSignal("SM0_PC (hidden delay)", addrSm0Pc, noDelayFilter, 0, 0);
+    final int instrAddr =
+      PIORegisters.getAddress(0, PIORegisters.Regs.SM0_INSTR);
+    final List<SignalFilter> displayFilters =
+      ValueFilterPanel.createFilters(true, true);
+    addSignal(SignalFactory.
+              createFromRegister(this, sdk, "PIO0_SM0_INSTR",
+                                 instrAddr, 15, 0,
+                                 SignalRendering.Mnemonic,
+                                 displayFilters, 0, 0)).
+      setVisible(true);
+    final int addrSm0RegX =
+      PIOEmuRegisters.getAddress(0, PIOEmuRegisters.Regs.SM0_REGX);
+    addSignal("SM0_REGX", addrSm0RegX).setVisible(true);
+    final int addrSm0RegY =
+      PIOEmuRegisters.getAddress(0, PIOEmuRegisters.Regs.SM0_REGY);
+    addSignal("SM0_REGY", addrSm0RegY);
+  }
+
+  public synchronized void resetSignals()
   {
     for (final Signal signal : address2internalSignal.values()) {
       signal.reset();
@@ -179,50 +324,110 @@ public class DiagramModel implements Iterable<Signal>
     for (final Signal signal : signals) {
       signal.reset();
     }
+    try {
+      historyFile.clear();
+    } catch (final IOException e) {
+      console.println("warning: failed clearing signal history: " +
+                      e.getMessage());
+    }
     signalSize = 0;
+    generation++;
+  }
+
+  /**
+   * Returns a counter that is incremented whenever previously painted
+   * parts of the diagram may have become invalid, i.e. whenever
+   * signals are added, replaced or reset, as opposed to just being
+   * extended by newly recorded cycles.
+   */
+  public int getGeneration()
+  {
+    return generation;
+  }
+
+  /**
+   * Creates a sample set with the wall clock in columns 0 and 1,
+   * followed by the addresses of all signals to record.
+   */
+  private SampleSet createSampleSet()
+  {
+    final SampleSet sampleSet = new SampleSet();
+    sampleSet.addAddress(PicoEmuRegisters.
+                         getAddress(PicoEmuRegisters.Regs.WALLCLOCK_LSB));
+    sampleSet.addAddress(PicoEmuRegisters.
+                         getAddress(PicoEmuRegisters.Regs.WALLCLOCK_MSB));
+    for (final Signal signal : address2internalSignal.values()) {
+      signal.addSampleAddresses(sampleSet);
+    }
+    for (final Signal signal : signals) {
+      if (signal.getVisible()) {
+        signal.addSampleAddresses(sampleSet);
+      }
+    }
+    return sampleSet;
   }
 
-  private void appendRecordToSignals() throws IOException
+  private void appendRecordToSignals(final SampleSet sampleSet)
+    throws IOException
   {
     for (final Signal signal : address2internalSignal.values()) {
-      signal.record();
+      signal.record(sampleSet);
     }
     for (final Signal signal : signals) {
       if (signal.getVisible()) {
-        signal.record();
+        signal.record(sampleSet);
       }
     }
     signalSize++;
   }
 
-  private void checkForUpdate() throws IOException
+  private void checkForUpdate(final SampleSet sampleSet) throws IOException
   {
-    try {
-      final long wallClock = sdk.getWallClock();
-      if (wallClock == this.wallClock) {
-        // nothing to update
-      } else {
-        if (wallClock != this.wallClock + 1) {
-          // discontinuity in time => restart view
-          resetSignals();
-        }
-        appendRecordToSignals();
+    final long wallClock =
+      ((long)sampleSet.getValue(WALLCLOCK_MSB_COLUMN) << 32) |
+      (sampleSet.getValue(WALLCLOCK_LSB_COLUMN) & 0xffffffffL);
+    if (wallClock == this.wallClock) {
+      // nothing to update
+    } else {
+      if (wallClock != this.wallClock + 1) {
+        // discontinuity in time => restart view
+        resetSignals();
       }
-      this.wallClock = wallClock;
-    } catch (final IOException e) {
-      console.println("error: failed reading wall clock: " + e.getMessage());
+      appendRecordToSignals(sampleSet);
     }
+    this.wallClock = wallClock;
   }
 
+  /**
+   * Runs the emulation for the specified number of cycles and
+   * records all signals.  Rather than triggering each clock phase
+   * and reading each signal's registers separately, all addresses
+   * that the signals depend on are sampled by the emulator in a
+   * single call, or in a few calls, if the number of samples would
+   * exceed the limit of a single call.
+   */
   public void applyCycles(final int count) throws IOException
   {
     if (count < 0) {
       throw new IllegalArgumentException("count < 0: " + count);
     }
-    for (int cycle = 0; cycle < count; cycle++) {
-      sdk.triggerCyclePhase0(true);
-      checkForUpdate();
-      sdk.triggerCyclePhase1(true);
+    final SampleSet sampleSet;
+    synchronized(this) {
+      sampleSet = createSampleSet();
+    }
+    final int maxChunkSize =
+      Math.max(AddressSpace.MAX_SAMPLES / sampleSet.getColumnCount(), 1);
+    int remaining = count;
+    while (remaining > 0) {
+      final int chunkSize = Math.min(remaining, maxChunkSize);
+      sampleSet.sample(sdk, chunkSize);
+      synchronized(this) {
+        for (int cycle = 0; cycle < chunkSize; cycle++) {
+          sampleSet.selectRow(cycle);
+          checkForUpdate(sampleSet);
+        }
+      }
+      remaining -= chunkSize;
     }
   }
 
@@ -231,7 +436,7 @@ public class DiagramModel implements Iterable<Signal>
     return signalSize;
   }
 
-  public void pullSignals(final List<Signal> targetSignals)
+  public synchronized void pullSignals(final List<Signal> targetSignals)
   {
     targetSignals.clear();
     for (final Signal signal : signals) {
@@ -239,10 +444,11 @@ public class DiagramModel implements Iterable<Signal>
     }
   }
 
-  public void pushSignals(final List<Signal> newSignals)
+  public synchronized void pushSignals(final List<Signal> newSignals)
   {
     signals.clear();
     for (final Signal signal : newSignals) {
+      applyHistoryRetention(signal);
       signals.add(signal);
     }
     resetSignals();
@@ -0,0 +1,286 @@
+/*
+ * @(#)DiagramPainter.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.observer.diagram;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Stroke;
+import java.awt.geom.Line2D;
+import java.io.IOException;
+
+/**
+ * Paints the signals and the legend of a diagram model onto an
+ * arbitrary graphics context, independent of any Swing component.
+ * Used by the signal panel for rendering tiles as well as for
+ * exporting diagrams without a display.  Callers that run outside
+ * of the event dispatch thread must synchronize on the model while
+ * painting.
+ */
+public class DiagramPainter implements Constants
+{
+  public static final double LEFT_MARGIN = 2.0; // for clock arrow
+  public static final double RIGHT_MARGIN = 0.0;
+  public static final int LEGEND_WIDTH = 200;
+
+  /**
+   * Margin for method paint() when painting adjacent areas
+   * separately, such that labels crossing the border between two
+   * areas are completely painted on both of them.
+   */
+  public static final int LABEL_MARGIN = 128;
+
+  private static final double LEGEND_LABEL_MARGIN_BOTTOM = 4.0;
+  private static final double LEGEND_LABEL_MARGIN_RIGHT = 10.0;
+  private static final Stroke PLAIN_STROKE =
+    new BasicStroke(1.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 1.0f);
+  private static final Stroke DOTTED_STROKE =
+    new BasicStroke(1.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL, 0.0f,
+                    new float[]{2.0f}, 0.0f);
+
+  /**
+   * Below this zoom (in pixels per cycle), the diagram is painted
+   * per pixel column from signal summaries rather than per cycle,
+   * such that painting cost depends on the painted width rather than
+   * on the number of covered cycles.
+   */
+  private static final double SUMMARY_ZOOM_THRESHOLD = 1.0;
+
+  private final DiagramModel model;
+
+  private DiagramPainter()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  public DiagramPainter(final DiagramModel model)
+  {
+    if (model == null) {
+      throw new NullPointerException("model");
+    }
+    this.model = model;
+  }
+
+  /**
+   * Converts a zoom value as selected by the user into pixels per
+   * cycle.
+   * @param zoom For values from ZOOM_LINEAR_MIN up to ZOOM_MAX, the
+   * number of pixels per cycle.  Each value below ZOOM_LINEAR_MIN
+   * halves the scale, starting with 1 pixel per cycle for value
+   * ZOOM_LINEAR_MIN - 1.
+   */
+  public static double getPixelsPerCycle(final int zoom)
+  {
+    final int value =
+      zoom < ZOOM_MIN ? ZOOM_MIN : (zoom > ZOOM_MAX ? ZOOM_MAX : zoom);
+    return
+      value >= ZOOM_LINEAR_MIN ?
+      value : Math.pow(2.0, value - ZOOM_LINEAR_MIN + 1);
+  }
+
+  public static int x2cycle(final double x, final double zoom)
+  {
+    return (int)((x - LEFT_MARGIN) / zoom);
+  }
+
+  public static double cycle2x(final double cycle, final double zoom)
+  {
+    return cycle * zoom + LEFT_MARGIN;
+  }
+
+  /**
+   * Returns the first cycle that starts at or right of the specified
+   * x position.
+   */
+  private static int x2nextCycle(final double x, final double zoom)
+  {
+    return (int)Math.ceil((x - LEFT_MARGIN) / zoom);
+  }
+
+  /**
+   * Returns the height of all visible signals including margins.
+   */
+  public double getHeight()
+  {
+    double height = TOP_MARGIN + BOTTOM_MARGIN;
+    for (final Signal signal : model) {
+      if (signal.getVisible()) {
+        height += signal.getDisplayHeight();
+      }
+    }
+    return height;
+  }
+
+  /**
+   * Returns the width of the specified number of cycles including
+   * margins.
+   */
+  public static double getWidth(final int cycles, final double zoom)
+  {
+    return Math.round(LEFT_MARGIN + zoom * cycles + RIGHT_MARGIN);
+  }
+
+  private void paintGridLine(final Graphics2D g, final double x,
+                             final double height)
+  {
+    g.setColor(Color.LIGHT_GRAY);
+    g.setStroke(DOTTED_STROKE);
+    g.draw(new Line2D.Double(x, TOP_MARGIN, x, height - BOTTOM_MARGIN));
+  }
+
+  private void paintSignalsCycle(final Graphics2D g, final double zoom,
+                                 final double xStart, final int cycle,
+                                 final boolean firstCycle,
+                                 final boolean lastCycle)
+  {
+    g.setColor(Color.BLACK);
+    g.setStroke(PLAIN_STROKE);
+    double y = TOP_MARGIN;
+    for (final Signal signal : model) {
+      if (signal.getVisible()) {
+        final double height = signal.getDisplayHeight();
+        signal.paintCycle(g, zoom, xStart, y += height, cycle,
+                          firstCycle, lastCycle);
+      }
+    }
+  }
+
+  private void paintSummaryColumn(final Graphics2D g, final double zoom,
+                                  final double x,
+                                  final int fromCycle, final int toCycle)
+  {
+    double y = TOP_MARGIN;
+    for (final Signal signal : model) {
+      if (signal.getVisible()) {
+        final double height = signal.getDisplayHeight();
+        signal.paintColumn(g, zoom, x, y += height, fromCycle, toCycle);
+      }
+    }
+  }
+
+  private void paintSummary(final Graphics2D g, final double zoom,
+                            final int xStart, final int xStop)
+  {
+    g.setColor(Color.BLACK);
+    g.setStroke(PLAIN_STROKE);
+    final int cycles = model.getSignalSize();
+    for (int x = Math.max(xStart, 0); x < xStop; x++) {
+      final int fromCycle = Math.max(x2nextCycle(x, zoom), 0);
+      if (fromCycle >= cycles) break;
+      final int toCycle = Math.min(x2nextCycle(x + 1, zoom), cycles);
+      if (fromCycle < toCycle) {
+        paintSummaryColumn(g, zoom, x, fromCycle, toCycle);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of recorded cycles beyond which additionally
+   * recorded cycles do not change what method paint() paints for the
+   * specified arguments.
+   */
+  public static int getRequiredSignalSize(final double zoom,
+                                          final Rectangle bounds,
+                                          final int margin)
+  {
+    final int xStop = bounds.x + bounds.width + margin;
+    if (zoom <= SUMMARY_ZOOM_THRESHOLD) {
+      return x2nextCycle(xStop, zoom);
+    }
+    // painting the last recorded cycle depends on whether it is the
+    // last one
+    return x2cycle(xStop - 1, zoom) + 2;
+  }
+
+  /**
+   * Paints the signals for the specified bounds.  Since labels may
+   * extend beyond the cycle or column they belong to, painting covers
+   * an additional margin on either side, which is expected to be
+   * clipped by the graphics context.
+   * @param zoom The number of pixels per cycle.
+   * @param margin The number of pixels to paint beyond the left and
+   * right edge of the bounds.
+   */
+  public void paint(final Graphics2D g, final double zoom,
+                    final Rectangle bounds, final int margin)
+    throws IOException
+  {
+    g.setStroke(PLAIN_STROKE);
+    final int xStart = bounds.x - margin;
+    final int xStop = bounds.x + bounds.width + margin;
+    if (zoom <= SUMMARY_ZOOM_THRESHOLD) {
+      paintSummary(g, zoom, xStart, xStop);
+      return;
+    }
+    final int cycles = model.getSignalSize();
+    final int leftMostCycle = Math.max(x2cycle(xStart, zoom), 0);
+    final int rightMostCycle = Math.min(cycles, x2cycle(xStop - 1, zoom) + 1);
+    for (int cycle = leftMostCycle; cycle < rightMostCycle; cycle++) {
+      final double x = cycle2x(cycle, zoom);
+      final boolean firstCycle = cycle == 0;
+      final boolean lastCycle = cycle == cycles - 1;
+      paintGridLine(g, x, bounds.height);
+      paintSignalsCycle(g, zoom, x, cycle, firstCycle, lastCycle);
+    }
+    paintGridLine(g, cycle2x(rightMostCycle, zoom), bounds.height);
+  }
+
+  private void paintLegendLabel(final Graphics2D g,
+                                final double xStart, final double yBottom,
+                                final String label)
+  {
+    final FontMetrics fm = g.getFontMetrics(g.getFont());
+    final int width = fm.stringWidth(label);
+    g.drawString(label,
+                 (float)(xStart - width - LEGEND_LABEL_MARGIN_RIGHT),
+                 (float)(yBottom - LEGEND_LABEL_MARGIN_BOTTOM));
+  }
+
+  /**
+   * Paints the labels of all visible signals right-aligned to the
+   * specified x position.
+   */
+  public void paintLegend(final Graphics2D g, final double xRight)
+  {
+    g.setFont(DEFAULT_FONT);
+    double y = TOP_MARGIN;
+    for (final Signal signal : model) {
+      if (signal.getVisible()) {
+        final String label = signal.getLabel();
+        final double height = signal.getDisplayHeight();
+        paintLegendLabel(g, xRight, y += height, label);
+      }
+    }
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,291 @@
+/*
+ * @(#)DiagramTileCache.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.observer.diagram;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of pre-rendered tiles of the signal panel.  Each tile is an
+ * image of fixed width TILE_WIDTH that covers the full height of the
+ * panel.  Tiles are rendered by a background thread on request and
+ * kept in a least recently used cache, such that the event dispatch
+ * thread only needs to copy finished images onto the screen.
+ *
+ * Requests are served last in, first out, since the most recently
+ * requested tiles are those that are currently visible.  When the
+ * user scrolls fast, older requests are dropped rather than piling
+ * up.
+ */
+public class DiagramTileCache
+{
+  public static final int TILE_WIDTH = 256;
+
+  private static final int MAX_TILES = 32;
+  private static final int MAX_PENDING = 16;
+
+  /**
+   * Identifies a tile by everything that determines its contents
+   * except for the number of cycles recorded so far.
+   */
+  public static class Key
+  {
+    private final double zoom;
+    private final int index;
+    private final int height;
+    private final int generation;
+
+    public Key(final double zoom, final int index, final int height,
+               final int generation)
+    {
+      this.zoom = zoom;
+      this.index = index;
+      this.height = height;
+      this.generation = generation;
+    }
+
+    public double getZoom() { return zoom; }
+
+    /**
+     * Returns the index of the tile, counted from the left of the
+     * panel, i.e. the tile's left edge is at x = index * TILE_WIDTH.
+     */
+    public int getIndex() { return index; }
+
+    public int getHeight() { return height; }
+
+    /**
+     * Returns the generation of the diagram model's set of signals
+     * that the tile shows.
+     */
+    public int getGeneration() { return generation; }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (!(obj instanceof Key)) return false;
+      final Key other = (Key)obj;
+      return
+        (Double.compare(zoom, other.zoom) == 0) &&
+        (index == other.index) &&
+        (height == other.height) &&
+        (generation == other.generation);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return
+        ((Double.hashCode(zoom) * 31 + index) * 31 + height) * 31 +
+        generation;
+    }
+
+    @Override
+    public String toString()
+    {
+      return "Tile.Key(zoom=" + zoom + ", index=" + index +
+        ", height=" + height + ", generation=" + generation + ")";
+    }
+  }
+
+  public static class Tile
+  {
+    private final Key key;
+    private final BufferedImage image;
+    private final int signalSize;
+    private final int requiredSignalSize;
+
+    /**
+     * @param signalSize The number of cycles that had been recorded
+     * when the tile was rendered.
+     * @param requiredSignalSize The number of recorded cycles beyond
+     * which additionally recorded cycles no more change the tile's
+     * contents.
+     */
+    public Tile(final Key key, final BufferedImage image,
+                final int signalSize, final int requiredSignalSize)
+    {
+      if (key == null) {
+        throw new NullPointerException("key");
+      }
+      if (image == null) {
+        throw new NullPointerException("image");
+      }
+      this.key = key;
+      this.image = image;
+      this.signalSize = signalSize;
+      this.requiredSignalSize = requiredSignalSize;
+    }
+
+    public Key getKey() { return key; }
+
+    public BufferedImage getImage() { return image; }
+
+    /**
+     * True, if recording cycles after the tile has been rendered did
+     * not change the tile's contents.
+     */
+    public boolean isUpToDate(final int currentSignalSize)
+    {
+      return
+        (currentSignalSize == signalSize) ||
+        (signalSize >= requiredSignalSize);
+    }
+  }
+
+  public interface Renderer
+  {
+    /**
+     * Called from the background thread for rendering the tile with
+     * the specified key.
+     * @return The rendered tile, or &lt;code&gt;null&lt;/code&gt;, if
+     * the tile turned out to be obsolete.
+     */
+    Tile render(final Key key);
+
+    /**
+     * Called from the background thread after a tile has been
+     * rendered and put into the cache.
+     */
+    void tileRendered(final Tile tile);
+  }
+
+  private final Renderer renderer;
+  private final Map<Key, Tile> tiles;
+  private final Deque<Key> pending;
+  private final Set<Key> pendingKeys;
+
+  private DiagramTileCache()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  public DiagramTileCache(final Renderer renderer)
+  {
+    if (renderer == null) {
+      throw new NullPointerException("renderer");
+    }
+    this.renderer = renderer;
+    tiles = new LinkedHashMap<Key, Tile>(2 * MAX_TILES, 0.75f, true) {
+        private static final long serialVersionUID = -3102596431207154782L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, Tile> eldest)
+        {
+          return size() > MAX_TILES;
+        }
+      };
+    pending = new ArrayDeque<Key>();
+    pendingKeys = new HashSet<Key>();
+    final Thread thread =
+      new Thread(() -> renderLoop(), "diagram tile renderer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Returns the cached tile for the specified key, or
+   * &lt;code&gt;null&lt;/code&gt;, if there is no such tile.
+   */
+  public synchronized Tile get(final Key key)
+  {
+    return tiles.get(key);
+  }
+
+  /**
+   * Requests (re-)rendering the tile with the specified key in the
+   * background, unless such a request is already pending.
+   */
+  public synchronized void request(final Key key)
+  {
+    if (key == null) {
+      throw new NullPointerException("key");
+    }
+    if (pendingKeys.contains(key)) return;
+    pending.addFirst(key);
+    pendingKeys.add(key);
+    if (pending.size() > MAX_PENDING) {
+      pendingKeys.remove(pending.removeLast());
+    }
+    notify();
+  }
+
+  /**
+   * Discards all cached tiles and pending requests.
+   */
+  public synchronized void clear()
+  {
+    tiles.clear();
+    pending.clear();
+    pendingKeys.clear();
+  }
+
+  private synchronized Key takeRequest() throws InterruptedException
+  {
+    while (pending.isEmpty()) {
+      wait();
+    }
+    return pending.getFirst();
+  }
+
+  private synchronized void completeRequest(final Key key, final Tile tile)
+  {
+    if (pendingKeys.remove(key)) {
+      pending.remove(key);
+    }
+    if (tile != null) {
+      tiles.put(key, tile);
+    }
+  }
+
+  private void renderLoop()
+  {
+    while (true) {
+      final Key key;
+      try {
+        key = takeRequest();
+      } catch (final InterruptedException e) {
+        return;
+      }
+      final Tile tile = renderer.render(key);
+      completeRequest(key, tile);
+      if (tile != null) {
+        renderer.tileRendered(tile);
+      }
+    }
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -35,7 +35,6 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
-import javax.swing.JViewport;
 import javax.swing.Scrollable;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingUtilities;
@@ -49,7 +48,6 @@ public class DiagramViewPanel extends JPanel implements Scrollable
   private final LegendPanel legendPanel;
   private final SignalPanel signalPanel;
   private final JScrollPane scrollPane;
-  private final JViewport viewport;
   private final Dimension preferredViewportSize;
 
   private DiagramViewPanel()
@@ -71,8 +69,6 @@ public class DiagramViewPanel extends JPanel implements Scrollable
       new JScrollPane(signalPanel,
                       ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER,
                       ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-    viewport = scrollPane.getViewport();
-    viewport.addChangeListener((event) -> rebuildToolTips());
     add(scrollPane);
     preferredViewportSize = new Dimension(720, 360);
   }
@@ -111,6 +107,17 @@ public class DiagramViewPanel extends JPanel implements Scrollable
     return false;
   }
 
+  /**
+   * Adds a listener that is called whenever the diagram is scrolled
+   * horizontally.
+   */
+  public void addScrollListener(final Runnable listener)
+  {
+    Objects.requireNonNull(listener);
+    scrollPane.getHorizontalScrollBar().
+      addAdjustmentListener((event) -> listener.run());
+  }
+
   public void modelChanged()
   {
     legendPanel.updatePreferredSize();
@@ -156,10 +163,7 @@ public class DiagramViewPanel extends JPanel implements Scrollable
     final JScrollBar scrollBar = scrollPane.getHorizontalScrollBar();
     final double scrollBarValue = signalPanel.cycle2x(cycle);
     scrollBar.setValue((int)Math.round(scrollBarValue));
-    SwingUtilities.invokeLater(() -> {
-        rebuildToolTips();
-        signalPanel.repaint();
-      });
+    SwingUtilities.invokeLater(() -> signalPanel.repaint());
   }
 
   public void setZoom(final int zoom)
@@ -168,19 +172,6 @@ public class DiagramViewPanel extends JPanel implements Scrollable
     signalPanel.setZoom(zoom);
     setLeftMostVisibleCycle(leftMostCycle);
   }
-
-  /**
-   * While redraw of viewport is done via paintComponent() methods,
-   * rebuild of tooltips is triggered separately and executed via this
-   * method, such that partial repaint (e.g. when a displayed tooltip
-   * disappears) does not retrigger a complete rebuild of all
-   * tooltips.
-   */
-  public void rebuildToolTips()
-  {
-    final Rectangle viewRect = viewport.getViewRect();
-    signalPanel.rebuildToolTips(viewRect);
-  }
 }
 
 /*
@@ -25,7 +25,6 @@
 package org.soundpaint.rp2040pio.observer.diagram;
 
 import java.awt.Dimension;
-import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.io.PrintStream;
@@ -39,11 +38,9 @@ public class LegendPanel extends JComponent
 {
   private static final long serialVersionUID = 6634499718877657461L;
 
-  private static final int LEGEND_WIDTH = 200;
-  private static final double LABEL_MARGIN_BOTTOM = 4.0;
-  private static final double LABEL_MARGIN_RIGHT = 10.0;
+  private static final int LEGEND_WIDTH = DiagramPainter.LEGEND_WIDTH;
 
-  private final DiagramModel model;
+  private final DiagramPainter painter;
   private final Dimension preferredSize;
 
   private LegendPanel()
@@ -54,7 +51,7 @@ public class LegendPanel extends JComponent
   public LegendPanel(final DiagramModel model)
   {
     Objects.requireNonNull(model);
-    this.model = model;
+    painter = new DiagramPainter(model);
     setMinimumSize(new Dimension(LEGEND_WIDTH, 0));
     setMaximumSize(new Dimension(LEGEND_WIDTH, Integer.MAX_VALUE));
     preferredSize = new Dimension(LEGEND_WIDTH, 0);
@@ -63,12 +60,7 @@ public class LegendPanel extends JComponent
 
   private void updatePreferredHeight()
   {
-    double preferredHeight = Constants.TOP_MARGIN + Constants.BOTTOM_MARGIN;
-    for (final Signal signal : model) {
-      if (signal.getVisible()) {
-        preferredHeight += signal.getDisplayHeight();
-      }
-    }
+    final double preferredHeight = painter.getHeight();
     preferredSize.setSize(preferredSize.getWidth(), (int)preferredHeight);
   }
 
@@ -84,35 +76,11 @@ public class LegendPanel extends JComponent
     return preferredSize;
   }
 
-  private void paintLabel(final Graphics2D g,
-                          final double xStart, final double yBottom,
-                          final String label)
-  {
-    final FontMetrics fm = g.getFontMetrics(g.getFont());
-    final int width = fm.stringWidth(label);
-    g.drawString(label,
-                 (float)(xStart - width - LABEL_MARGIN_RIGHT),
-                 (float)(yBottom - LABEL_MARGIN_BOTTOM));
-  }
-
-  private void paintLabels(final Graphics2D g)
-  {
-    g.setFont(Constants.DEFAULT_FONT);
-    double y = Constants.TOP_MARGIN;
-    for (final Signal signal : model) {
-      if (signal.getVisible()) {
-        final String label = signal.getLabel();
-        final double height = signal.getDisplayHeight();
-        paintLabel(g, LEGEND_WIDTH, y += height, label);
-      }
-    }
-  }
-
   @Override
   public void paintComponent(final Graphics g)
   {
     super.paintComponent(g);
-    paintLabels((Graphics2D)g);
+    painter.paintLegend((Graphics2D)g, LEGEND_WIDTH);
   }
 }
 
@@ -27,11 +27,9 @@ package org.soundpaint.rp2040pio.observer.diagram;
 import java.awt.Graphics2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
-import java.io.IOException;
 import java.util.List;
 import java.util.function.Supplier;
 import org.soundpaint.rp2040pio.Bit;
-import org.soundpaint.rp2040pio.sdk.SDK;
 
 public class RegisterBitSignal extends ValuedSignal<Bit>
 {
@@ -68,13 +66,16 @@ public class RegisterBitSignal extends ValuedSignal<Bit>
   }
 
   @Override
-  protected Bit sampleValue() throws IOException
+  protected int toInt(final Bit value) { return value.getValue(); }
+
+  @Override
+  protected Bit fromInt(final int value) { return Bit.fromValue(value); }
+
+  @Override
+  protected Bit sampleValue(final SampleSet sampleSet, final int column)
   {
-    final SignalRendering.SignalParams signalParams = getSignalParams();
-    final SDK sdk = signalParams.getSDK();
-    final int address = signalParams.getAddress();
     final int bit = getBit();
-    return Bit.fromValue(sdk.readAddress(address, bit, bit));
+    return Bit.fromValue(sampleSet.getValue(column, bit, bit));
   }
 
   @Override
@@ -118,6 +119,25 @@ public class RegisterBitSignal extends ValuedSignal<Bit>
       fillG.fill(rectangle);
     }
   }
+
+  @Override
+  protected void paintSummary(final Graphics2D g, final double zoom,
+                              final double x, final double yBottom,
+                              final SignalSummary.Range summary,
+                              final int fromCycle, final int toCycle)
+  {
+    final double yTop = yBottom - SIGNAL_HEIGHT;
+    if (!summary.hasDefined()) {
+      paintUndefinedColumn(g, x, yTop, yBottom);
+    } else if (summary.changed() ||
+               (summary.getMin() != summary.getMax())) {
+      // one or more edges within this column
+      g.draw(new Line2D.Double(x, yTop, x, yBottom));
+    } else {
+      final double y = summary.getMin() != 0 ? yTop : yBottom;
+      g.draw(new Line2D.Double(x, y, x + 1.0, y));
+    }
+  }
 }
 
 /*
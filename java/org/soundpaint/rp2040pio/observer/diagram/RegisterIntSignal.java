@@ -29,11 +29,9 @@ import java.awt.Graphics2D;
 import java.awt.TexturePaint;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
-import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.Supplier;
-import org.soundpaint.rp2040pio.sdk.SDK;
 
 public class RegisterIntSignal extends ValuedSignal<Integer>
 {
@@ -64,14 +62,18 @@ public class RegisterIntSignal extends ValuedSignal<Integer>
   }
 
   @Override
-  protected Integer sampleValue() throws IOException
+  protected int toInt(final Integer value) { return value; }
+
+  @Override
+  protected Integer fromInt(final int value) { return value; }
+
+  @Override
+  protected Integer sampleValue(final SampleSet sampleSet, final int column)
   {
     final SignalRendering.SignalParams signalParams = getSignalParams();
-    final SDK sdk = signalParams.getSDK();
-    final int address = signalParams.getAddress();
     final int msb = signalParams.getMsb();
     final int lsb = signalParams.getLsb();
-    return sdk.readAddress(address, msb, lsb);
+    return sampleSet.getValue(column, msb, lsb);
   }
 
   @Override
@@ -171,6 +173,24 @@ public class RegisterIntSignal extends ValuedSignal<Integer>
                        getRenderedValue(cycle), getNotChangedSince(cycle) - 1);
     }
   }
+
+  @Override
+  protected void paintSummary(final Graphics2D g, final double zoom,
+                              final double x, final double yBottom,
+                              final SignalSummary.Range summary,
+                              final int fromCycle, final int toCycle)
+  {
+    final double yTop = yBottom - SIGNAL_HEIGHT;
+    if (!summary.hasDefined()) {
+      paintUndefinedColumn(g, x, yTop, yBottom);
+    } else if (summary.changed()) {
+      // one or more value transitions within this column
+      g.draw(new Line2D.Double(x, yTop, x, yBottom));
+    } else {
+      g.draw(new Line2D.Double(x, yTop, x + 1.0, yTop));
+      g.draw(new Line2D.Double(x, yBottom, x + 1.0, yBottom));
+    }
+  }
 }
 
 /*
@@ -0,0 +1,359 @@
+/*
+ * @(#)RunLengthStore.java 1.00 21/07/29
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.observer.diagram;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Run-length encoded storage of a sequence of optional int values,
+ * one value per cycle.  Rather than storing each cycle separately,
+ * the store keeps one run per sequence of cycles with unchanged
+ * value, in three parallel primitive arrays (start cycle, value,
+ * and whether the value is undefined).  Looking up the value or the
+ * run that contains a particular cycle takes O(log n) time in the
+ * number of runs, and O(1) time for sequential access, as is
+ * typical for painting.
+ *
+ * Optionally, a retention limit can be set.  Then, runs that lie
+ * completely before the most recent retained cycles are paged out
+ * in segments of fixed size into a signal history file, and only a
+ * small index of these segments is kept in memory.  Paged out
+ * segments are reloaded on demand, e.g. when the user scrolls back
+ * in the diagram, with the two most recently used segments being
+ * cached.  The multi-resolution summary of old runs is not paged
+ * out, but thinned out to coarse resolution instead.
+ */
+public class RunLengthStore
+{
+  private static final int INITIAL_CAPACITY = 16;
+  private static final int SEGMENT_RUNS = 0x1000;
+
+  private static class Segment
+  {
+    private final int index;
+    private final int[] starts;
+    private final int[] values;
+    private final boolean[] undefined;
+    private int runCount;
+    private boolean failed;
+
+    private Segment(final int index)
+    {
+      this.index = index;
+      starts = new int[SEGMENT_RUNS];
+      values = new int[SEGMENT_RUNS];
+      undefined = new boolean[SEGMENT_RUNS];
+      runCount = 0;
+      failed = false;
+    }
+  }
+
+  private int[] runStarts;
+  private int[] runValues;
+  private boolean[] runUndefined;
+  private int runCount;
+  private int size;
+  private int lastLookupRun;
+
+  private final SignalSummary summary;
+  private SignalHistoryFile historyFile;
+  private int retainedCycles;
+  private int[] segmentStarts;
+  private long[] segmentPositions;
+  private int segmentCount;
+  private final Segment[] segmentCache;
+
+  public RunLengthStore()
+  {
+    summary = new SignalSummary();
+    historyFile = null;
+    retainedCycles = 0;
+    segmentCache = new Segment[2];
+    clear();
+  }
+
+  public void clear()
+  {
+    runStarts = new int[INITIAL_CAPACITY];
+    runValues = new int[INITIAL_CAPACITY];
+    runUndefined = new boolean[INITIAL_CAPACITY];
+    runCount = 0;
+    size = 0;
+    lastLookupRun = 0;
+    segmentStarts = new int[INITIAL_CAPACITY];
+    segmentPositions = new long[INITIAL_CAPACITY];
+    segmentCount = 0;
+    segmentCache[0] = null;
+    segmentCache[1] = null;
+    summary.clear();
+  }
+
+  /**
+   * Sets the retention policy for subsequently appended values.
+   * @param historyFile The file to page out old runs to, or
+   * &lt;code&gt;null&lt;/code&gt; for keeping all runs in memory.
+   * @param retainedCycles The number of most recent cycles that
+   * are guaranteed to be kept in memory.  Ignored, if historyFile is
+   * &lt;code&gt;null&lt;/code&gt;.
+   */
+  public void setRetention(final SignalHistoryFile historyFile,
+                           final int retainedCycles)
+  {
+    if (retainedCycles < 0) {
+      throw new IllegalArgumentException("retainedCycles < 0: " +
+                                         retainedCycles);
+    }
+    this.historyFile = historyFile;
+    this.retainedCycles = retainedCycles;
+    summary.setRetainedCycles(historyFile != null ?
+                              retainedCycles : Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the number of cycles recorded so far.
+   */
+  public int size() { return size; }
+
+  /**
+   * Returns the number of runs that are currently held in memory.
+   */
+  public int getRunCount() { return runCount; }
+
+  private void ensureCapacity()
+  {
+    if (runCount < runStarts.length) return;
+    final int capacity = 2 * runStarts.length;
+    runStarts = Arrays.copyOf(runStarts, capacity);
+    runValues = Arrays.copyOf(runValues, capacity);
+    runUndefined = Arrays.copyOf(runUndefined, capacity);
+  }
+
+  /**
+   * Appends a value for the next cycle.
+   * @param value The value to append.  Ignored if undefined is true.
+   * @param undefined If true, the value for this cycle is undefined.
+   * @param enforceChanged If true, a new run is started even if the
+   * value equals the value of the previous cycle.
+   */
+  public void append(final int value, final boolean undefined,
+                     final boolean enforceChanged)
+    throws IOException
+  {
+    if (!enforceChanged && (runCount > 0)) {
+      final int lastRun = runCount - 1;
+      if (undefined ?
+          runUndefined[lastRun] :
+          !runUndefined[lastRun] && (runValues[lastRun] == value)) {
+        summary.add(value, undefined, false);
+        size++;
+        return;
+      }
+    }
+    ensureCapacity();
+    runStarts[runCount] = size;
+    runValues[runCount] = undefined ? 0 : value;
+    runUndefined[runCount] = undefined;
+    runCount++;
+    summary.add(value, undefined, true);
+    size++;
+    if (historyFile != null) {
+      pageOut();
+    }
+  }
+
+  /**
+   * Moves the oldest SEGMENT_RUNS runs to the history file, as long
+   * as they all lie before the retained cycles.  The remaining runs
+   * are shifted down, such that the in-memory arrays stay bounded and
+   * sorted for binary search.
+   */
+  private void pageOut() throws IOException
+  {
+    while ((runCount > SEGMENT_RUNS) &&
+           (runStarts[SEGMENT_RUNS] <= size - retainedCycles)) {
+      final long position =
+        historyFile.write(runStarts, runValues, runUndefined,
+                          0, SEGMENT_RUNS);
+      if (segmentCount == segmentStarts.length) {
+        final int capacity = 2 * segmentStarts.length;
+        segmentStarts = Arrays.copyOf(segmentStarts, capacity);
+        segmentPositions = Arrays.copyOf(segmentPositions, capacity);
+      }
+      segmentStarts[segmentCount] = runStarts[0];
+      segmentPositions[segmentCount] = position;
+      segmentCount++;
+      runCount -= SEGMENT_RUNS;
+      System.arraycopy(runStarts, SEGMENT_RUNS, runStarts, 0, runCount);
+      System.arraycopy(runValues, SEGMENT_RUNS, runValues, 0, runCount);
+      System.arraycopy(runUndefined, SEGMENT_RUNS, runUndefined, 0, runCount);
+      lastLookupRun = 0;
+    }
+  }
+
+  private Segment loadSegment(final int index)
+  {
+    final Segment segment = new Segment(index);
+    try {
+      historyFile.read(segmentPositions[index], SEGMENT_RUNS,
+                       segment.starts, segment.values, segment.undefined);
+      segment.runCount = SEGMENT_RUNS;
+    } catch (final IOException e) {
+      // history not available => report and display whole segment
+      // as undefined
+      historyFile.reportReadError(e);
+      segment.starts[0] = segmentStarts[index];
+      segment.undefined[0] = true;
+      segment.runCount = 1;
+      segment.failed = true;
+    }
+    return segment;
+  }
+
+  /**
+   * Returns the paged out segment that contains the specified
+   * cycle, reloading it from the history file, if not cached.
+   * Segments that failed to load are not cached, such that loading
+   * is retried upon the next access.
+   */
+  private Segment getSegment(final int cycle)
+  {
+    final int found =
+      Arrays.binarySearch(segmentStarts, 0, segmentCount, cycle);
+    final int index = found >= 0 ? found : -found - 2;
+    if ((segmentCache[0] != null) && (segmentCache[0].index == index)) {
+      return segmentCache[0];
+    }
+    final Segment segment;
+    if ((segmentCache[1] != null) && (segmentCache[1].index == index)) {
+      segment = segmentCache[1];
+    } else {
+      segment = loadSegment(index);
+      if (segment.failed) return segment;
+    }
+    segmentCache[1] = segmentCache[0];
+    segmentCache[0] = segment;
+    return segment;
+  }
+
+  private static int findRun(final int[] starts, final int count,
+                             final int cycle)
+  {
+    final int found = Arrays.binarySearch(starts, 0, count, cycle);
+    return found >= 0 ? found : -found - 2;
+  }
+
+  /**
+   * Returns the index of the in-memory run that contains the
+   * specified cycle, or -1, if the cycle has been paged out.
+   */
+  private int findRun(final int cycle)
+  {
+    if ((cycle < 0) || (cycle >= size)) {
+      throw new IndexOutOfBoundsException("cycle out of range: " + cycle);
+    }
+    if (cycle < runStarts[0]) {
+      return -1;
+    }
+    final int hint = lastLookupRun;
+    if ((hint < runCount) && (runStarts[hint] <= cycle)) {
+      if ((hint + 1 == runCount) || (runStarts[hint + 1] > cycle)) {
+        return hint;
+      }
+      if ((hint + 2 == runCount) || (runStarts[hint + 2] > cycle)) {
+        return lastLookupRun = hint + 1;
+      }
+    }
+    return lastLookupRun = findRun(runStarts, runCount, cycle);
+  }
+
+  public boolean isUndefined(final int cycle)
+  {
+    final int run = findRun(cycle);
+    if (run >= 0) {
+      return runUndefined[run];
+    }
+    final Segment segment = getSegment(cycle);
+    return segment.undefined[findRun(segment.starts, segment.runCount, cycle)];
+  }
+
+  /**
+   * Returns the value of the specified cycle, or 0, if undefined.
+   */
+  public int getValue(final int cycle)
+  {
+    final int run = findRun(cycle);
+    if (run >= 0) {
+      return runValues[run];
+    }
+    final Segment segment = getSegment(cycle);
+    return segment.values[findRun(segment.starts, segment.runCount, cycle)];
+  }
+
+  /**
+   * Returns the number of cycles that precede the specified cycle
+   * within the same run, i.e. 0 for the first cycle of a run.
+   */
+  public int getNotChangedSince(final int cycle)
+  {
+    final int run = findRun(cycle);
+    if (run >= 0) {
+      return cycle - runStarts[run];
+    }
+    final Segment segment = getSegment(cycle);
+    return
+      cycle - segment.starts[findRun(segment.starts, segment.runCount, cycle)];
+  }
+
+  /**
+   * Merges a summary of the cycles fromCycle…toCycle-1 into the
+   * specified range.  For short ranges, the summary is computed
+   * precisely from the recorded values.  Longer ranges are summarized
+   * via the multi-resolution summary, which may extend the range up
+   * to the enclosing bucket boundaries.  For cycles before the
+   * retained cycles, the summary is kept in memory only at coarse
+   * resolution, such that the range may be extended even further.
+   */
+  public void summarize(final int fromCycle, final int toCycle,
+                        final SignalSummary.Range range)
+  {
+    final int to = Math.min(toCycle, size);
+    if (to - fromCycle >= SignalSummary.BUCKET_SIZE) {
+      summary.summarize(fromCycle, to, range);
+      return;
+    }
+    for (int cycle = Math.max(fromCycle, 0); cycle < to; cycle++) {
+      range.add(getValue(cycle), isUndefined(cycle),
+                getNotChangedSince(cycle) == 0);
+    }
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
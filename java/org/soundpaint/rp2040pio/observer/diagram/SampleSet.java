@@ -0,0 +1,127 @@
+/*
+ * @(#)SampleSet.java 1.00 21/07/30
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.observer.diagram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.soundpaint.rp2040pio.Constants;
+import org.soundpaint.rp2040pio.sdk.SDK;
+
+/**
+ * Set of addresses that the diagram samples once per cycle.  Each
+ * signal registers the addresses it depends on (its value register
+ * and the registers of its display filters), and gets back a column
+ * index for each address.  Addresses that are registered multiple
+ * times share the same column.  The emulator then samples all
+ * columns for a whole sequence of cycles in a single call, and the
+ * signals record their values from the currently selected row.
+ */
+public class SampleSet
+{
+  private final List<Integer> addresses;
+  private final Map<Integer, Integer> address2column;
+  private int[] samples;
+  private int rowOffset;
+
+  public SampleSet()
+  {
+    addresses = new ArrayList<Integer>();
+    address2column = new HashMap<Integer, Integer>();
+    samples = null;
+    rowOffset = 0;
+  }
+
+  /**
+   * Registers the specified address, if not yet registered.
+   * @return The column of the address.
+   */
+  public int addAddress(final int address)
+  {
+    final Integer column = address2column.get(address);
+    if (column != null) {
+      return column;
+    }
+    final int newColumn = addresses.size();
+    addresses.add(address);
+    address2column.put(address, newColumn);
+    return newColumn;
+  }
+
+  public int getColumnCount()
+  {
+    return addresses.size();
+  }
+
+  /**
+   * Runs the emulation for the specified number of cycles, sampling
+   * all registered addresses once per cycle.  Afterwards, rows
+   * 0…cycles-1 can be selected via method selectRow().
+   */
+  public void sample(final SDK sdk, final int cycles) throws IOException
+  {
+    final int[] addressArray =
+      addresses.stream().mapToInt(Integer::intValue).toArray();
+    samples = sdk.sampleAddresses(addressArray, cycles);
+    rowOffset = 0;
+  }
+
+  public void selectRow(final int row)
+  {
+    rowOffset = row * addresses.size();
+  }
+
+  /**
+   * Returns the value of the specified column in the currently
+   * selected row.
+   */
+  public int getValue(final int column)
+  {
+    return samples[rowOffset + column];
+  }
+
+  /**
+   * Returns bits msb…lsb of the value of the specified column in the
+   * currently selected row.
+   */
+  public int getValue(final int column, final int msb, final int lsb)
+  {
+    Constants.checkMSBLSB(msb, lsb);
+    final int value = getValue(column);
+    return
+      (msb - lsb == 31) ?
+      value :
+      (value >>> lsb) & ((0x1 << (msb - lsb + 1)) - 1);
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -26,16 +26,18 @@ package org.soundpaint.rp2040pio.observer.diagram;
 
 import java.awt.Graphics2D;
 import java.io.IOException;
-import java.util.List;
 
 public interface Signal
 {
   void reset();
+  void setHistoryRetention(final SignalHistoryFile historyFile,
+                           final int retainedCycles);
   String getLabel();
   double getDisplayHeight();
   int size();
   String getToolTipText(final int cycle);
-  void record() throws IOException;
+  void addSampleAddresses(final SampleSet sampleSet);
+  void record(final SampleSet sampleSet) throws IOException;
   int getNotChangedSince(final int cycle);
   void setVisible(final boolean visible);
   boolean getVisible();
@@ -43,13 +45,9 @@ public interface Signal
                   final double xStart, final double yBottom,
                   final int cycle,
                   final boolean isFirstCycle, final boolean isLastCycle);
-  void createToolTip(final List<ToolTip> toolTips,
-                     final int cycle,
-                     final boolean isFirstCycle,
-                     final boolean isLastCycle,
-                     final double zoom,
-                     final double xStart,
-                     final double yBottom);
+  void paintColumn(final Graphics2D g, final double zoom,
+                   final double x, final double yBottom,
+                   final int fromCycle, final int toCycle);
 }
 
 /*
@@ -75,48 +75,50 @@ public class SignalFactory
   }
 
   public static RegisterBitSignal
-    createFromRegister(final Diagram diagram, final SDK sdk, final String label,
+    createFromRegister(final DiagramModel model, final SDK sdk,
+                       final String label,
                        final int address, final int bit,
                        final List<SignalFilter> displayFilters,
                        final int pioNum, final int smNum)
     throws IOException
   {
-    Objects.requireNonNull(diagram);
+    Objects.requireNonNull(model);
     Objects.requireNonNull(sdk);
     Objects.requireNonNull(label);
     Constants.checkBit(bit);
     final String signalLabel = createSignalLabel(sdk, label, address, bit);
     final SignalRendering.SignalParams signalParams =
-      new SignalRendering.SignalParams(diagram, sdk, label, address,
+      new SignalRendering.SignalParams(model, sdk, label, address,
                                        bit, bit, displayFilters, pioNum, smNum);
     return new RegisterBitSignal(signalParams);
   }
 
   public static RegisterIntSignal
-    createInternal(final Diagram diagram, final SDK sdk,
+    createInternal(final DiagramModel model, final SDK sdk,
                    final String label, final int address)
     throws IOException
   {
     final SignalRendering.SignalParams signalParams =
-      new SignalRendering.SignalParams(diagram, sdk, label, address, 31, 0,
+      new SignalRendering.SignalParams(model, sdk, label, address, 31, 0,
                                        null, -1, -1);
     return new RegisterIntSignal(SignalRendering.Unsigned, signalParams);
   }
 
   public static RegisterIntSignal
-    createFromRegister(final Diagram diagram, final SDK sdk, final String label,
+    createFromRegister(final DiagramModel model, final SDK sdk,
+                       final String label,
                        final int address, final int msb, final int lsb,
                        final SignalRendering valueRendering,
                        final List<SignalFilter> displayFilters,
                        final int pioNum, final int smNum)
     throws IOException
   {
-    Objects.requireNonNull(diagram);
+    Objects.requireNonNull(model);
     Objects.requireNonNull(sdk);
     Objects.requireNonNull(label);
     final String signalLabel = createSignalLabel(sdk, label, address, msb, lsb);
     final SignalRendering.SignalParams signalParams =
-      new SignalRendering.SignalParams(diagram, sdk, signalLabel, address,
+      new SignalRendering.SignalParams(model, sdk, signalLabel, address,
                                        msb, lsb, displayFilters, pioNum, smNum);
     return new RegisterIntSignal(valueRendering, signalParams);
   }
@@ -24,57 +24,51 @@
  */
 package org.soundpaint.rp2040pio.observer.diagram;
 
-import java.io.IOException;
 import java.util.Objects;
+import java.util.function.IntPredicate;
 import org.soundpaint.rp2040pio.PIOEmuRegisters;
-import org.soundpaint.rp2040pio.sdk.SDK;
 
 public enum SignalFilter
 {
   NO_DELAY("Cycle is a delay cycle on below target state machine.",
-           (sdk, pioNum, smNum) -> {
-             final PIOEmuRegisters.Regs sm0DelayCycle =
-               PIOEmuRegisters.Regs.SM0_DELAY_CYCLE;
-             final int smDelayCycleAddress =
-               PIOEmuRegisters.getSMAddress(pioNum, smNum, sm0DelayCycle);
-             final boolean isDelayCycle =
-               sdk.readAddress(smDelayCycleAddress) != 0x0;
-             return !isDelayCycle;
-           }),
+           PIOEmuRegisters.Regs.SM0_DELAY_CYCLE,
+           (delayCycle) -> delayCycle == 0x0),
   CLK_ENABLED("CLK enable signal is false for below target state machine.",
-              (sdk, pioNum, smNum) -> {
-                final PIOEmuRegisters.Regs sm0ClkEnable =
-                  PIOEmuRegisters.Regs.SM0_CLK_ENABLE;
-                final int clkEnableAddress =
-                  PIOEmuRegisters.getSMAddress(pioNum, smNum, sm0ClkEnable);
-                final int clkEnable = sdk.readAddress(clkEnableAddress) & 0x1;
-                return clkEnable != 0x0;
-              });
-
-  @FunctionalInterface
-  private static interface FilterFunction
-  {
-    boolean acceptCurrentSignalValue(final SDK sdk,
-                                     final int pioNum, final int smNum)
-      throws IOException;
-  }
+              PIOEmuRegisters.Regs.SM0_CLK_ENABLE,
+              (clkEnable) -> (clkEnable & 0x1) != 0x0);
 
   private final String description;
-  private final FilterFunction filterFunction;
+  private final PIOEmuRegisters.Regs sm0Register;
+  private final IntPredicate acceptFunction;
 
   private SignalFilter(final String description,
-                       final FilterFunction filterFunction)
+                       final PIOEmuRegisters.Regs sm0Register,
+                       final IntPredicate acceptFunction)
   {
     Objects.requireNonNull(description);
+    Objects.requireNonNull(sm0Register);
+    Objects.requireNonNull(acceptFunction);
     this.description = description;
-    this.filterFunction = filterFunction;
+    this.sm0Register = sm0Register;
+    this.acceptFunction = acceptFunction;
+  }
+
+  /**
+   * Returns the address of the register that this filter examines
+   * for the specified state machine.
+   */
+  public int getAddress(final int pioNum, final int smNum)
+  {
+    return PIOEmuRegisters.getSMAddress(pioNum, smNum, sm0Register);
   }
 
-  public boolean acceptCurrentSignalValue(final SDK sdk,
-                                          final int pioNum, final int smNum)
-    throws IOException
+  /**
+   * @param registerValue The current value of the register at the
+   * address returned by method getAddress().
+   */
+  public boolean acceptCurrentSignalValue(final int registerValue)
   {
-    return filterFunction.acceptCurrentSignalValue(sdk, pioNum, smNum);
+    return acceptFunction.test(registerValue);
   }
 
   @Override
@@ -0,0 +1,160 @@
+/*
+ * @(#)SignalHistoryFile.java 1.00 21/07/30
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.observer.diagram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Temporary file that holds segments of signal runs that have been
+ * paged out of memory, shared by all signals of a diagram model.
+ * Each run is stored in 9 bytes (start cycle, value, undefined
+ * flag).  The file is created on first use and deleted when the
+ * JVM exits.
+ */
+public class SignalHistoryFile
+{
+  private static final int BYTES_PER_RUN = 9;
+
+  private final PrintStream console;
+  private File path;
+  private RandomAccessFile file;
+  private boolean readErrorReported;
+
+  private SignalHistoryFile()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  public SignalHistoryFile(final PrintStream console)
+  {
+    if (console == null) {
+      throw new NullPointerException("console");
+    }
+    this.console = console;
+    path = null;
+    file = null;
+    readErrorReported = false;
+  }
+
+  private void ensureOpen() throws IOException
+  {
+    if (file != null) return;
+    path = File.createTempFile("rp2040pio-diagram-", ".hist");
+    path.deleteOnExit();
+    file = new RandomAccessFile(path, "rw");
+  }
+
+  /**
+   * Appends the specified runs to the end of the file.
+   * @return The file position where the runs have been written to.
+   */
+  public synchronized long write(final int[] starts, final int[] values,
+                                 final boolean[] undefined,
+                                 final int offset, final int count)
+    throws IOException
+  {
+    ensureOpen();
+    final ByteBuffer buffer = ByteBuffer.allocate(count * BYTES_PER_RUN);
+    for (int index = offset; index < offset + count; index++) {
+      buffer.putInt(starts[index]);
+      buffer.putInt(values[index]);
+      buffer.put((byte)(undefined[index] ? 1 : 0));
+    }
+    final long position = file.length();
+    file.seek(position);
+    file.write(buffer.array());
+    return position;
+  }
+
+  /**
+   * Reads the specified number of runs from the specified file
+   * position into the target arrays, starting at index 0.
+   */
+  public synchronized void read(final long position, final int count,
+                                final int[] starts, final int[] values,
+                                final boolean[] undefined)
+    throws IOException
+  {
+    if (file == null) {
+      throw new IOException("signal history file not yet written");
+    }
+    final byte[] bytes = new byte[count * BYTES_PER_RUN];
+    file.seek(position);
+    file.readFully(bytes);
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    for (int index = 0; index < count; index++) {
+      starts[index] = buffer.getInt();
+      values[index] = buffer.getInt();
+      undefined[index] = buffer.get() != 0;
+    }
+  }
+
+  /**
+   * Reports a failure of reading back paged out runs on the console.
+   * Only the first failure since the file has been cleared is
+   * reported, such that repainting does not flood the console.
+   */
+  public synchronized void reportReadError(final IOException e)
+  {
+    if (readErrorReported) return;
+    readErrorReported = true;
+    console.println("warning: failed reading signal history, " +
+                    "affected cycles are shown as undefined: " +
+                    e.getMessage());
+  }
+
+  /**
+   * Discards all contents of the file, e.g. after all signals have
+   * been reset.
+   */
+  public synchronized void clear() throws IOException
+  {
+    readErrorReported = false;
+    if (file != null) {
+      file.setLength(0);
+    }
+  }
+
+  public synchronized void close() throws IOException
+  {
+    if (file != null) {
+      file.close();
+      file = null;
+      path.delete();
+      path = null;
+    }
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
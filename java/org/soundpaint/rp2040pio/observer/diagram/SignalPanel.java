@@ -24,20 +24,18 @@
  */
 package org.soundpaint.rp2040pio.observer.diagram;
 
-import java.awt.BasicStroke;
-import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.awt.Stroke;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
 import java.awt.event.MouseEvent;
-import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 
 /**
  * Panel for drawing the view of the signals.
@@ -45,19 +43,16 @@ import javax.swing.JComponent;
 public class SignalPanel extends JComponent implements Constants
 {
   private static final long serialVersionUID = 6327282160532117231L;
-  private static final double LEFT_MARGIN = 2.0; // for clock arrow
-  private static final double RIGHT_MARGIN = 0.0;
-  private static final Stroke PLAIN_STROKE =
-    new BasicStroke(1.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 1.0f);
-  private static final Stroke DOTTED_STROKE =
-    new BasicStroke(1.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL, 0.0f,
-                    new float[]{2.0f}, 0.0f);
+
+  private static final RenderingHints DESKTOP_HINTS =
+    (RenderingHints)Toolkit.getDefaultToolkit().
+    getDesktopProperty("awt.font.desktophints");
 
   private final DiagramModel model;
-  private final List<ToolTip> toolTips;
+  private final DiagramPainter painter;
   private final Dimension preferredSize;
-  private double zoom;
-  private Rectangle clipBounds;
+  private final DiagramTileCache tileCache;
+  private volatile double zoom;
 
   private SignalPanel()
   {
@@ -70,42 +65,61 @@ public class SignalPanel extends JComponent implements Constants
       throw new NullPointerException("model");
     }
     this.model = model;
-    toolTips = new ArrayList<ToolTip>();
+    painter = new DiagramPainter(model);
     setToolTipText("");
     preferredSize = new Dimension();
     zoom = ZOOM_DEFAULT;
-    clipBounds = new Rectangle();
+    tileCache = new DiagramTileCache(new DiagramTileCache.Renderer() {
+        @Override
+        public DiagramTileCache.Tile render(final DiagramTileCache.Key key)
+        {
+          return renderTile(key);
+        }
+
+        @Override
+        public void tileRendered(final DiagramTileCache.Tile tile)
+        {
+          SignalPanel.this.tileRendered(tile);
+        }
+      });
     updatePreferredSize();
   }
 
   @Override
   public String getToolTipText(final MouseEvent event)
   {
+    // tool tip text is created on demand for the hovered cycle only
     final Point p = event.getPoint();
-    for (final ToolTip toolTip: toolTips) {
-      if ((p.x >= toolTip.x0) && (p.x <= toolTip.x1) &&
-          (p.y >= toolTip.y0) && (p.y <= toolTip.y1)) {
-        return toolTip.text;
+    final int cycle = x2cycle(p.x);
+    synchronized(model) {
+      if ((cycle < 0) || (cycle >= model.getSignalSize())) {
+        return null;
       }
+      double y = TOP_MARGIN;
+      for (final Signal signal : model) {
+        if (signal.getVisible()) {
+          final double yTop = y;
+          y += signal.getDisplayHeight();
+          if ((p.y > yTop) && (p.y <= y)) {
+            return
+              cycle < signal.size() ? signal.getToolTipText(cycle) : null;
+          }
+        }
+      }
+      return null;
     }
-    return null;
   }
 
   private void updatePreferredHeight()
   {
-    double preferredHeight = TOP_MARGIN + BOTTOM_MARGIN;
-    for (final Signal signal : model) {
-      if (signal.getVisible()) {
-        preferredHeight += signal.getDisplayHeight();
-      }
-    }
+    final double preferredHeight = painter.getHeight();
     preferredSize.setSize((int)preferredSize.getWidth(), (int)preferredHeight);
   }
 
   private void updatePreferredWidth()
   {
     final double preferredWidth =
-      Math.round(LEFT_MARGIN + zoom * model.getSignalSize() + RIGHT_MARGIN);
+      DiagramPainter.getWidth(model.getSignalSize(), zoom);
     preferredSize.setSize((int)preferredWidth, (int)preferredSize.getHeight());
   }
 
@@ -122,10 +136,13 @@ public class SignalPanel extends JComponent implements Constants
     return preferredSize;
   }
 
+  /**
+   * @param zoom The zoom value as selected by the user.
+   * @see DiagramPainter#getPixelsPerCycle(int)
+   */
   public void setZoom(final int zoom)
   {
-    this.zoom =
-      zoom < ZOOM_MIN ? ZOOM_MIN : (zoom > ZOOM_MAX ? ZOOM_MAX : zoom);
+    this.zoom = DiagramPainter.getPixelsPerCycle(zoom);
     updatePreferredWidth();
     revalidate();
   }
@@ -135,114 +152,108 @@ public class SignalPanel extends JComponent implements Constants
     return zoom;
   }
 
-  private void paintGridLine(final Graphics2D g, final double x,
-                             final double height)
-  {
-    g.setColor(Color.LIGHT_GRAY);
-    g.setStroke(DOTTED_STROKE);
-    g.draw(new Line2D.Double(x, TOP_MARGIN, x, height - BOTTOM_MARGIN));
-  }
-
-  private void paintSignalsCycle(final Graphics2D g,
-                                 final double xStart, final int cycle,
-                                 final boolean firstCycle,
-                                 final boolean lastCycle)
-  {
-    g.setColor(Color.BLACK);
-    g.setStroke(PLAIN_STROKE);
-    double y = TOP_MARGIN;
-    for (final Signal signal : model) {
-      if (signal.getVisible()) {
-        final double height = signal.getDisplayHeight();
-        signal.paintCycle(g, zoom, xStart, y += height, cycle,
-                          firstCycle, lastCycle);
-      }
-    }
-  }
-
   public int x2cycle(final double x)
   {
-    return (int)((x - LEFT_MARGIN) / zoom);
+    return DiagramPainter.x2cycle(x, zoom);
   }
 
   public double cycle2x(final double cycle)
   {
-    return cycle * zoom + LEFT_MARGIN;
-  }
-
-  private void paintDiagram(final Graphics2D g,
-                            final int width, final int height)
-    throws IOException
-  {
-    g.setStroke(PLAIN_STROKE);
-    g.getClipBounds(clipBounds);
-    final int cycles = model.getSignalSize();
-    final int leftMostCycle =
-      Math.min(model.getSignalSize(),
-               x2cycle(clipBounds.x));
-    final int rightMostCycle =
-      Math.min(model.getSignalSize(),
-               x2cycle(clipBounds.x + clipBounds.width - 1) + 1);
-    for (int cycle = leftMostCycle; cycle < rightMostCycle; cycle++) {
-      final double x = LEFT_MARGIN + cycle * zoom;
-      final boolean firstCycle = cycle == 0;
-      final boolean lastCycle = cycle == cycles - 1;
-      paintGridLine(g, x, height);
-      paintSignalsCycle(g, x, cycle, firstCycle, lastCycle);
-    }
-    paintGridLine(g, LEFT_MARGIN + rightMostCycle * zoom, height);
+    return DiagramPainter.cycle2x(cycle, zoom);
   }
 
   private void paintError(final Graphics2D g,
-                          final int width, final int height,
                           final IOException exception)
   {
-    g.setStroke(PLAIN_STROKE);
     g.setFont(LABEL_FONT);
     g.drawString(exception.getMessage(), 10.0f, 10.0f);
   }
 
-  @Override
-  public void paintComponent(final Graphics g)
+  /**
+   * Called from the tile cache's background thread.  Painting is
+   * synchronized with recording via the model's monitor.
+   */
+  private DiagramTileCache.Tile renderTile(final DiagramTileCache.Key key)
   {
-    super.paintComponent(g);
+    final int height = key.getHeight();
+    final BufferedImage image =
+      new BufferedImage(DiagramTileCache.TILE_WIDTH, height,
+                        BufferedImage.TYPE_INT_ARGB);
+    final Graphics2D g = image.createGraphics();
+    final int signalSize;
+    int requiredSignalSize;
     try {
-      paintDiagram((Graphics2D)g, getWidth(), getHeight());
-    } catch (final IOException e) {
-      paintError((Graphics2D)g, getWidth(), getHeight(), e);
+      if (DESKTOP_HINTS != null) {
+        g.addRenderingHints(DESKTOP_HINTS);
+      }
+      final Rectangle bounds =
+        new Rectangle(key.getIndex() * DiagramTileCache.TILE_WIDTH, 0,
+                      DiagramTileCache.TILE_WIDTH, height);
+      g.translate(-bounds.x, 0);
+      g.setClip(bounds);
+      synchronized(model) {
+        if ((key.getGeneration() != model.getGeneration()) ||
+            (key.getZoom() != zoom)) {
+          return null;
+        }
+        signalSize = model.getSignalSize();
+        final double tileZoom = key.getZoom();
+        final int margin = DiagramPainter.LABEL_MARGIN;
+        try {
+          painter.paint(g, tileZoom, bounds, margin);
+          requiredSignalSize =
+            DiagramPainter.getRequiredSignalSize(tileZoom, bounds, margin);
+        } catch (final IOException e) {
+          paintError(g, e);
+          requiredSignalSize = Integer.MAX_VALUE;
+        }
+      }
+    } finally {
+      g.dispose();
     }
+    return
+      new DiagramTileCache.Tile(key, image, signalSize, requiredSignalSize);
   }
 
-  private final void createToolTips(final int cycle,
-                                    final boolean firstCycle,
-                                    final boolean lastCycle,
-                                    final double xStart)
+  private void tileRendered(final DiagramTileCache.Tile tile)
   {
-    double y = TOP_MARGIN;
-    for (final Signal signal : model) {
-      if (signal.getVisible()) {
-        final double height = signal.getDisplayHeight();
-        signal.createToolTip(toolTips, cycle, firstCycle, lastCycle,
-                             zoom, xStart, y += height);
-      }
-    }
+    final DiagramTileCache.Key key = tile.getKey();
+    SwingUtilities.invokeLater(() ->
+                               repaint(key.getIndex() *
+                                       DiagramTileCache.TILE_WIDTH, 0,
+                                       DiagramTileCache.TILE_WIDTH,
+                                       key.getHeight()));
   }
 
-  public void rebuildToolTips(final Rectangle clipBounds)
+  /**
+   * Copies the cached tiles that intersect with the clip bounds onto
+   * the screen.  Missing or outdated tiles are requested for being
+   * rendered in the background; until then, an outdated tile is
+   * displayed as is, and a missing tile is left blank.
+   */
+  @Override
+  public void paintComponent(final Graphics g)
   {
-    toolTips.clear();
-    final int cycles = model.getSignalSize();
-    final int leftMostCycle =
-      Math.min(model.getSignalSize(),
-               x2cycle(clipBounds.x));
-    final int rightMostCycle =
-      Math.min(model.getSignalSize(),
-               x2cycle(clipBounds.x + clipBounds.width - 1) + 1);
-    for (int cycle = leftMostCycle; cycle <= rightMostCycle; cycle++) {
-      final double x = LEFT_MARGIN + cycle * zoom;
-      final boolean firstCycle = cycle == 0;
-      final boolean lastCycle = cycle == cycles - 1;
-      createToolTips(cycle, firstCycle, lastCycle, x);
+    super.paintComponent(g);
+    final Rectangle clipBounds = g.getClipBounds();
+    final int height = getHeight();
+    final int generation = model.getGeneration();
+    final int signalSize = model.getSignalSize();
+    final int firstTile =
+      Math.max(clipBounds.x, 0) / DiagramTileCache.TILE_WIDTH;
+    final int lastTile =
+      (clipBounds.x + clipBounds.width - 1) / DiagramTileCache.TILE_WIDTH;
+    for (int index = firstTile; index <= lastTile; index++) {
+      final DiagramTileCache.Key key =
+        new DiagramTileCache.Key(zoom, index, height, generation);
+      final DiagramTileCache.Tile tile = tileCache.get(key);
+      if (tile != null) {
+        g.drawImage(tile.getImage(),
+                    index * DiagramTileCache.TILE_WIDTH, 0, null);
+      }
+      if ((tile == null) || !tile.isUpToDate(signalSize)) {
+        tileCache.request(key);
+      }
     }
   }
 }
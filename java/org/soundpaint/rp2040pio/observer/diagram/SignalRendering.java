@@ -79,7 +79,7 @@ public enum SignalRendering implements Constants
   // TODO: Make private again when removing demo signals from Diagram class
   public static class SignalParams
   {
-    private final Diagram diagram;
+    private final DiagramModel model;
     private final SDK sdk;
     private final String label;
     private final int address;
@@ -100,7 +100,7 @@ public enum SignalRendering implements Constants
     public SignalParams(final String label)
     {
       Objects.requireNonNull(label);
-      diagram = null;
+      model = null;
       sdk = null;
       this.label = label;
       address = -1;
@@ -114,7 +114,7 @@ public enum SignalRendering implements Constants
     }
 
     // TODO: Make private again when removing demo signals from Diagram class
-    public SignalParams(final Diagram diagram,
+    public SignalParams(final DiagramModel model,
                         final SDK sdk,
                         final String label,
                         final int address,
@@ -129,7 +129,7 @@ public enum SignalRendering implements Constants
       if ((msb != -1) || (lsb != -1)) {
         Constants.checkMSBLSB(msb, lsb);
       }
-      this.diagram = diagram;
+      this.model = model;
       this.sdk = sdk;
       this.label = label;
       this.address = address;
@@ -143,7 +143,7 @@ public enum SignalRendering implements Constants
         sdk.getFullLabelForAddress(address).matches("PIO\\d_SM\\d_INSTR");
     }
 
-    public Diagram getDiagram() { return diagram; }
+    public DiagramModel getModel() { return model; }
 
     public SDK getSDK() { return sdk; }
 
@@ -182,20 +182,20 @@ public enum SignalRendering implements Constants
       final int delay;
       final int origin;
       final String addressLabel;
-      final int signalSize = diagram.getModel().getSignalSize();
+      final int signalSize = model.getSignalSize();
       if ((pioNum >= 0) && (smNum >= 0) && (cycle >= 0)) {
         final int smPinCtrlSidesetCountAddress =
           PIORegisters.getSMAddress(pioNum, smNum,
                                     PIORegisters.Regs.SM0_PINCTRL);
         pinCtrlSidesetCount =
-          (diagram.getInternalSignalByAddress(smPinCtrlSidesetCountAddress).
+          (model.getInternalSignalByAddress(smPinCtrlSidesetCountAddress).
            getValue(cycle) &
            SM0_PINCTRL_SIDESET_COUNT_BITS) >>> SM0_PINCTRL_SIDESET_COUNT_LSB;
         final int smExecCtrlSideEnAddress =
           PIORegisters.getSMAddress(pioNum, smNum,
                                     PIORegisters.Regs.SM0_EXECCTRL);
         execCtrlSideEn =
-          (diagram.getInternalSignalByAddress(smExecCtrlSideEnAddress).
+          (model.getInternalSignalByAddress(smExecCtrlSideEnAddress).
            getValue(cycle) &
            SM0_EXECCTRL_SIDE_EN_BITS) != 0x0;
         if (isSmInstr) {
@@ -203,20 +203,20 @@ public enum SignalRendering implements Constants
             PIOEmuRegisters.getSMAddress(pioNum, smNum,
                                          PIOEmuRegisters.Regs.SM0_DELAY_CYCLE);
           isDelayCycle =
-            diagram.getInternalSignalByAddress(smDelayCycleAddress).
+            model.getInternalSignalByAddress(smDelayCycleAddress).
             getValue(cycle) == 0x1;
 
           final int smDelayAddress =
             PIOEmuRegisters.getSMAddress(pioNum, smNum,
                                          PIOEmuRegisters.Regs.SM0_DELAY);
           delay =
-            diagram.getInternalSignalByAddress(smDelayAddress).
+            model.getInternalSignalByAddress(smDelayAddress).
             getValue(cycle);
           final int instrOriginAddress =
             PIOEmuRegisters.getSMAddress(pioNum, smNum,
                                          PIOEmuRegisters.Regs.SM0_INSTR_ORIGIN);
           final int instrOrigin =
-            diagram.getInternalSignalByAddress(instrOriginAddress).
+            model.getInternalSignalByAddress(instrOriginAddress).
             getValue(cycle);
           origin = PIOSDK.decodeInstrOrigin(instrOrigin);
           addressLabel = PIOSDK.renderOrigin(origin) + ": ";
@@ -312,7 +312,7 @@ public enum SignalRendering implements Constants
 
   public ValueRenderer getToolTipRenderer() { return toolTipRenderer; }
 
-  public Signal createSignal(final Diagram diagram,
+  public Signal createSignal(final DiagramModel model,
                              final SDK sdk,
                              final String label,
                              final int address,
@@ -325,11 +325,11 @@ public enum SignalRendering implements Constants
   {
     if (this == Bit) {
       return
-        SignalFactory.createFromRegister(diagram, sdk, label, address, msb,
+        SignalFactory.createFromRegister(model, sdk, label, address, msb,
                                          displayFilters, pioNum, smNum);
     } else {
       return
-        SignalFactory.createFromRegister(diagram, sdk, label, address, msb, lsb,
+        SignalFactory.createFromRegister(model, sdk, label, address, msb, lsb,
                                          this, displayFilters, pioNum, smNum);
     }
   }
@@ -0,0 +1,287 @@
+/*
+ * @(#)SignalSummary.java 1.00 21/07/30
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.observer.diagram;
+
+import java.util.Arrays;
+
+/**
+ * Multi-resolution summary of a recorded signal, used for painting
+ * the diagram when zoomed out so far that a single pixel column
+ * covers many cycles.  Level 0 summarizes buckets of BUCKET_SIZE
+ * cycles; each further level summarizes pairs of buckets of the
+ * level below.  Each bucket holds the minimum and maximum defined
+ * value and whether it contains defined values, undefined values or
+ * value changes.  The summary is updated incrementally with each
+ * recorded cycle, and summarizing an arbitrary range of buckets takes
+ * O(log n) time.
+ *
+ * Optionally, the number of cycles to retain can be limited.  Then,
+ * each level keeps only a bounded number of its most recent buckets,
+ * at least as many as needed for covering the retained cycles.  Since
+ * buckets of coarser levels cover more cycles, older cycles are still
+ * summarized, but only coarsely, such that the memory use stays flat
+ * rather than growing with the number of recorded cycles.
+ */
+public class SignalSummary
+{
+  public static final int BUCKET_SHIFT = 6;
+  public static final int BUCKET_SIZE = 0x1 << BUCKET_SHIFT;
+
+  public static final int HAS_DEFINED = 0x1;
+  public static final int HAS_UNDEFINED = 0x2;
+  public static final int CHANGED = 0x4;
+
+  private static final int INITIAL_CAPACITY = 16;
+  private static final int MIN_RETAINED_BUCKETS = 0x400;
+
+  /**
+   * Summary of a range of cycles.
+   */
+  public static class Range
+  {
+    private int min;
+    private int max;
+    private int flags;
+
+    public Range()
+    {
+      clear();
+    }
+
+    public void clear()
+    {
+      min = Integer.MAX_VALUE;
+      max = Integer.MIN_VALUE;
+      flags = 0;
+    }
+
+    private void merge(final int min, final int max, final int flags)
+    {
+      if ((flags & HAS_DEFINED) != 0) {
+        if (min < this.min) this.min = min;
+        if (max > this.max) this.max = max;
+      }
+      this.flags |= flags;
+    }
+
+    public void add(final int value, final boolean undefined,
+                    final boolean changed)
+    {
+      if (undefined) {
+        merge(0, 0, changed ? HAS_UNDEFINED | CHANGED : HAS_UNDEFINED);
+      } else {
+        merge(value, value, changed ? HAS_DEFINED | CHANGED : HAS_DEFINED);
+      }
+    }
+
+    /**
+     * Returns the minimum defined value, or Integer.MAX_VALUE, if
+     * there is no defined value.
+     */
+    public int getMin() { return min; }
+
+    /**
+     * Returns the maximum defined value, or Integer.MIN_VALUE, if
+     * there is no defined value.
+     */
+    public int getMax() { return max; }
+
+    public boolean hasDefined() { return (flags & HAS_DEFINED) != 0; }
+
+    public boolean hasUndefined() { return (flags & HAS_UNDEFINED) != 0; }
+
+    public boolean isEmpty() { return flags == 0; }
+
+    /**
+     * True, if any cycle of the range starts a new value, including
+     * the case of a value that is re-recorded as changed although it
+     * is equal to its predecessor.
+     */
+    public boolean changed() { return (flags & CHANGED) != 0; }
+  }
+
+  private int[][] mins;
+  private int[][] maxs;
+  private byte[][] flags;
+  private int[] firstBuckets;
+  private int levelCount;
+  private int size;
+  private int retainedBuckets;
+
+  public SignalSummary()
+  {
+    retainedBuckets = Integer.MAX_VALUE;
+    clear();
+  }
+
+  /**
+   * Sets the number of most recent cycles that are guaranteed to be
+   * summarized at full resolution.  Summaries of older cycles may be
+   * extended up to the boundaries of coarser buckets.
+   * @param retainedCycles The number of cycles to retain, or
+   * Integer.MAX_VALUE for retaining all cycles.
+   */
+  public void setRetainedCycles(final int retainedCycles)
+  {
+    if (retainedCycles < 0) {
+      throw new IllegalArgumentException("retainedCycles < 0: " +
+                                         retainedCycles);
+    }
+    retainedBuckets =
+      retainedCycles == Integer.MAX_VALUE ?
+      Integer.MAX_VALUE :
+      Math.max((retainedCycles >>> BUCKET_SHIFT) + 2, MIN_RETAINED_BUCKETS);
+  }
+
+  public void clear()
+  {
+    mins = new int[0][];
+    maxs = new int[0][];
+    flags = new byte[0][];
+    firstBuckets = new int[0];
+    levelCount = 0;
+    size = 0;
+  }
+
+  private void addLevel()
+  {
+    final int level = levelCount++;
+    mins = Arrays.copyOf(mins, levelCount);
+    maxs = Arrays.copyOf(maxs, levelCount);
+    flags = Arrays.copyOf(flags, levelCount);
+    firstBuckets = Arrays.copyOf(firstBuckets, levelCount);
+    mins[level] = new int[INITIAL_CAPACITY];
+    maxs[level] = new int[INITIAL_CAPACITY];
+    flags[level] = new byte[INITIAL_CAPACITY];
+    if (level > 0) {
+      // new top level covers all buckets recorded so far
+      mins[level][0] = mins[level - 1][0];
+      maxs[level][0] = maxs[level - 1][0];
+      flags[level][0] = flags[level - 1][0];
+    }
+  }
+
+  /**
+   * Makes room for the specified new bucket of the specified level.
+   * If the level already holds at least twice as many buckets as to
+   * be retained, the oldest buckets are discarded instead of growing
+   * the arrays, such that discarding takes amortized O(1) time per
+   * bucket.
+   */
+  private void ensureCapacity(final int level, final int bucket)
+  {
+    final int index = bucket - firstBuckets[level];
+    if (index < mins[level].length) return;
+    final int dropped = index - retainedBuckets + 1;
+    if (dropped >= retainedBuckets) {
+      final int kept = retainedBuckets - 1;
+      System.arraycopy(mins[level], dropped, mins[level], 0, kept);
+      System.arraycopy(maxs[level], dropped, maxs[level], 0, kept);
+      System.arraycopy(flags[level], dropped, flags[level], 0, kept);
+      firstBuckets[level] += dropped;
+      return;
+    }
+    final int capacity = 2 * mins[level].length;
+    mins[level] = Arrays.copyOf(mins[level], capacity);
+    maxs[level] = Arrays.copyOf(maxs[level], capacity);
+    flags[level] = Arrays.copyOf(flags[level], capacity);
+  }
+
+  /**
+   * Adds the next cycle to the summary.
+   * @param changed True, if the cycle starts a new value.
+   */
+  public void add(final int value, final boolean undefined,
+                  final boolean changed)
+  {
+    final int cycle = size++;
+    if (levelCount == 0) addLevel();
+    while ((cycle >>> (BUCKET_SHIFT + levelCount - 1)) > 0) addLevel();
+    final int cycleFlags =
+      (undefined ? HAS_UNDEFINED : HAS_DEFINED) | (changed ? CHANGED : 0);
+    for (int level = 0; level < levelCount; level++) {
+      final int shift = BUCKET_SHIFT + level;
+      final int bucket = cycle >>> shift;
+      ensureCapacity(level, bucket);
+      final int index = bucket - firstBuckets[level];
+      if ((cycle & ((0x1 << shift) - 1)) == 0) {
+        // first cycle of bucket
+        mins[level][index] = Integer.MAX_VALUE;
+        maxs[level][index] = Integer.MIN_VALUE;
+        flags[level][index] = 0;
+      }
+      if (!undefined) {
+        if (value < mins[level][index]) mins[level][index] = value;
+        if (value > maxs[level][index]) maxs[level][index] = value;
+      }
+      flags[level][index] |= cycleFlags;
+    }
+  }
+
+  public int size() { return size; }
+
+  private void merge(final int level, final int bucket, final Range range)
+  {
+    final int index = bucket - firstBuckets[level];
+    range.merge(mins[level][index], maxs[level][index], flags[level][index]);
+  }
+
+  /**
+   * Merges the summary of all level 0 buckets that overlap the
+   * specified range of cycles into the specified range.  If some of
+   * these buckets have already been discarded, the enclosing bucket
+   * of the finest level that still holds it is merged instead.
+   */
+  public void summarize(final int fromCycle, final int toCycle,
+                        final Range range)
+  {
+    if ((fromCycle >= toCycle) || (fromCycle >= size)) return;
+    int lo = fromCycle >>> BUCKET_SHIFT;
+    int hi = (Math.min(toCycle, size) - 1) >>> BUCKET_SHIFT;
+    int level = 0;
+    while (lo <= hi) {
+      // the top level holds a single bucket that is never discarded
+      final int firstBucket = firstBuckets[level];
+      if (((lo & 0x1) != 0) && (lo >= firstBucket)) {
+        merge(level, lo, range);
+        lo++;
+      }
+      if (((hi & 0x1) == 0) && (hi >= firstBucket)) {
+        merge(level, hi, range);
+        hi--;
+      }
+      lo >>>= 1;
+      hi >>= 1;
+      level++;
+    }
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
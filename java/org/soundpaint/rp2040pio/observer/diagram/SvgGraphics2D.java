@@ -0,0 +1,871 @@
+/*
+ * @(#)SvgGraphics2D.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.observer.diagram;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.TexturePaint;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.AttributedCharacterIterator;
+import java.util.Base64;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * Minimal Graphics2D implementation that writes scalable vector
+ * graphics (SVG) to a stream rather than rendering pixels, such that
+ * the very same painting code that draws the diagram on the screen
+ * can be used for exporting it.  Only the subset of operations needed
+ * for painting diagrams is supported: shapes are stroked or filled
+ * with colors or texture paints, and text is written as SVG text
+ * elements.  Images are ignored.  Graphics state such as the current
+ * transform, font and stroke is tracked by an off-screen graphics
+ * context, which is also used for font metrics.  Clipping is not
+ * written to the output; instead, callers may group output into
+ * rectangular clip regions via method beginClipGroup().
+ */
+public class SvgGraphics2D extends Graphics2D
+{
+  /**
+   * Output state shared between a graphics context and all contexts
+   * created from it.
+   */
+  private static class Document
+  {
+    private final PrintWriter out;
+    private final Map<TexturePaint, String> patternIds;
+    private int nextId;
+
+    private Document(final PrintWriter out)
+    {
+      this.out = out;
+      patternIds = new IdentityHashMap<TexturePaint, String>();
+      nextId = 0;
+    }
+
+    private String createId(final String prefix)
+    {
+      return prefix + nextId++;
+    }
+  }
+
+  private final Document document;
+  private final Graphics2D state;
+
+  private SvgGraphics2D()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  /**
+   * Creates a graphics context that writes to the specified writer.
+   * The caller is responsible for writing the SVG document header and
+   * footer via methods writeHeader() and writeFooter().
+   */
+  public SvgGraphics2D(final PrintWriter out)
+  {
+    this(new Document(out),
+         new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).
+         createGraphics());
+    if (out == null) {
+      throw new NullPointerException("out");
+    }
+  }
+
+  private SvgGraphics2D(final Document document, final Graphics2D state)
+  {
+    this.document = document;
+    this.state = state;
+  }
+
+  private static String format(final double value)
+  {
+    final String s = String.format(Locale.ROOT, "%.2f", value);
+    int end = s.length();
+    while (s.charAt(end - 1) == '0') end--;
+    if (s.charAt(end - 1) == '.') end--;
+    final String trimmed = s.substring(0, end);
+    return trimmed.equals("-0") ? "0" : trimmed;
+  }
+
+  private static String escape(final String text)
+  {
+    final StringBuilder s = new StringBuilder();
+    for (final char ch : text.toCharArray()) {
+      switch (ch) {
+      case '&':
+        s.append("&amp;");
+        break;
+      case '<':
+        s.append("&lt;");
+        break;
+      case '>':
+        s.append("&gt;");
+        break;
+      case '"':
+        s.append("&quot;");
+        break;
+      default:
+        s.append(ch);
+      }
+    }
+    return s.toString();
+  }
+
+  public void writeHeader(final int width, final int height)
+  {
+    final PrintWriter out = document.out;
+    out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    out.printf("<svg xmlns=\"http://www.w3.org/2000/svg\" " +
+               "width=\"%d\" height=\"%d\" viewBox=\"0 0 %d %d\">%n",
+               width, height, width, height);
+  }
+
+  public void writeFooter()
+  {
+    document.out.println("</svg>");
+    document.out.flush();
+  }
+
+  /**
+   * Starts a group of elements that is clipped to the specified
+   * rectangle in current user space.  Groups must be closed via
+   * method endGroup().
+   */
+  public void beginClipGroup(final Rectangle2D clip)
+  {
+    final Rectangle2D bounds =
+      state.getTransform().createTransformedShape(clip).getBounds2D();
+    final String id = document.createId("clip");
+    final PrintWriter out = document.out;
+    out.printf("<clipPath id=\"%s\"><rect x=\"%s\" y=\"%s\" " +
+               "width=\"%s\" height=\"%s\"/></clipPath>%n",
+               id, format(bounds.getX()), format(bounds.getY()),
+               format(bounds.getWidth()), format(bounds.getHeight()));
+    out.printf("<g clip-path=\"url(#%s)\">%n", id);
+  }
+
+  public void endGroup()
+  {
+    document.out.println("</g>");
+  }
+
+  public void flush()
+  {
+    document.out.flush();
+  }
+
+  private String createPathData(final Shape shape)
+  {
+    final StringBuilder d = new StringBuilder();
+    final double[] coords = new double[6];
+    final PathIterator it = shape.getPathIterator(state.getTransform());
+    while (!it.isDone()) {
+      final int type = it.currentSegment(coords);
+      switch (type) {
+      case PathIterator.SEG_MOVETO:
+        d.append('M').append(format(coords[0])).append(',').
+          append(format(coords[1]));
+        break;
+      case PathIterator.SEG_LINETO:
+        d.append('L').append(format(coords[0])).append(',').
+          append(format(coords[1]));
+        break;
+      case PathIterator.SEG_QUADTO:
+        d.append('Q').append(format(coords[0])).append(',').
+          append(format(coords[1])).append(' ').
+          append(format(coords[2])).append(',').append(format(coords[3]));
+        break;
+      case PathIterator.SEG_CUBICTO:
+        d.append('C').append(format(coords[0])).append(',').
+          append(format(coords[1])).append(' ').
+          append(format(coords[2])).append(',').
+          append(format(coords[3])).append(' ').
+          append(format(coords[4])).append(',').append(format(coords[5]));
+        break;
+      case PathIterator.SEG_CLOSE:
+        d.append('Z');
+        break;
+      default:
+        throw new InternalError("unexpected path segment type: " + type);
+      }
+      it.next();
+    }
+    return d.toString();
+  }
+
+  private static String createColorAttributes(final String name,
+                                              final Color color)
+  {
+    final String rgb =
+      String.format("%s=\"#%06x\"", name, color.getRGB() & 0xffffff);
+    return
+      color.getAlpha() == 0xff ?
+      rgb :
+      String.format("%s %s-opacity=\"%s\"", rgb, name,
+                    format(color.getAlpha() / 255.0));
+  }
+
+  private String getPatternId(final TexturePaint paint)
+  {
+    final String knownId = document.patternIds.get(paint);
+    if (knownId != null) return knownId;
+    final String id = document.createId("pattern");
+    final ByteArrayOutputStream png = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(paint.getImage(), "png", png);
+    } catch (final IOException e) {
+      // in-memory stream => no I/O error expected
+      throw new InternalError("failed encoding pattern image", e);
+    }
+    final Rectangle2D anchor = paint.getAnchorRect();
+    document.out.printf("<defs><pattern id=\"%s\" " +
+                        "patternUnits=\"userSpaceOnUse\" " +
+                        "x=\"%s\" y=\"%s\" width=\"%s\" height=\"%s\">" +
+                        "<image width=\"%s\" height=\"%s\" " +
+                        "href=\"data:image/png;base64,%s\"/>" +
+                        "</pattern></defs>%n",
+                        id, format(anchor.getX()), format(anchor.getY()),
+                        format(anchor.getWidth()), format(anchor.getHeight()),
+                        format(anchor.getWidth()), format(anchor.getHeight()),
+                        Base64.getEncoder().encodeToString(png.toByteArray()));
+    document.patternIds.put(paint, id);
+    return id;
+  }
+
+  private String createPaintAttributes(final String name)
+  {
+    final Paint paint = state.getPaint();
+    if (paint instanceof TexturePaint) {
+      return
+        String.format("%s=\"url(#%s)\"", name,
+                      getPatternId((TexturePaint)paint));
+    }
+    return
+      createColorAttributes(name,
+                            paint instanceof Color ?
+                            (Color)paint : state.getColor());
+  }
+
+  private String createStrokeAttributes()
+  {
+    final StringBuilder s = new StringBuilder(createPaintAttributes("stroke"));
+    final Stroke stroke = state.getStroke();
+    if (stroke instanceof BasicStroke) {
+      final BasicStroke basicStroke = (BasicStroke)stroke;
+      s.append(" stroke-width=\"").
+        append(format(basicStroke.getLineWidth())).append('"');
+      switch (basicStroke.getEndCap()) {
+      case BasicStroke.CAP_ROUND:
+        s.append(" stroke-linecap=\"round\"");
+        break;
+      case BasicStroke.CAP_SQUARE:
+        s.append(" stroke-linecap=\"square\"");
+        break;
+      default:
+        // butt is SVG's default
+        break;
+      }
+      switch (basicStroke.getLineJoin()) {
+      case BasicStroke.JOIN_ROUND:
+        s.append(" stroke-linejoin=\"round\"");
+        break;
+      case BasicStroke.JOIN_BEVEL:
+        s.append(" stroke-linejoin=\"bevel\"");
+        break;
+      default:
+        // miter is SVG's default
+        break;
+      }
+      final float[] dashArray = basicStroke.getDashArray();
+      if (dashArray != null) {
+        s.append(" stroke-dasharray=\"");
+        for (int index = 0; index < dashArray.length; index++) {
+          if (index > 0) s.append(',');
+          s.append(format(dashArray[index]));
+        }
+        s.append('"');
+      }
+    }
+    return s.toString();
+  }
+
+  @Override
+  public void draw(final Shape s)
+  {
+    document.out.printf("<path d=\"%s\" fill=\"none\" %s/>%n",
+                        createPathData(s), createStrokeAttributes());
+  }
+
+  @Override
+  public void fill(final Shape s)
+  {
+    document.out.printf("<path d=\"%s\" %s/>%n",
+                        createPathData(s), createPaintAttributes("fill"));
+  }
+
+  @Override
+  public void drawString(final String str, final float x, final float y)
+  {
+    final Point2D p =
+      state.getTransform().transform(new Point2D.Double(x, y), null);
+    final Font font = state.getFont();
+    document.out.printf("<text x=\"%s\" y=\"%s\" " +
+                        "font-family=\"%s, sans-serif\" font-size=\"%s\"" +
+                        "%s%s %s>%s</text>%n",
+                        format(p.getX()), format(p.getY()),
+                        escape(font.getFamily()), format(font.getSize2D()),
+                        font.isBold() ? " font-weight=\"bold\"" : "",
+                        font.isItalic() ? " font-style=\"italic\"" : "",
+                        createPaintAttributes("fill"), escape(str));
+  }
+
+  @Override
+  public void drawString(final String str, final int x, final int y)
+  {
+    drawString(str, (float)x, (float)y);
+  }
+
+  @Override
+  public void drawString(final AttributedCharacterIterator iterator,
+                         final float x, final float y)
+  {
+    final StringBuilder s = new StringBuilder();
+    for (char ch = iterator.first();
+         ch != AttributedCharacterIterator.DONE;
+         ch = iterator.next()) {
+      s.append(ch);
+    }
+    drawString(s.toString(), x, y);
+  }
+
+  @Override
+  public void drawString(final AttributedCharacterIterator iterator,
+                         final int x, final int y)
+  {
+    drawString(iterator, (float)x, (float)y);
+  }
+
+  @Override
+  public void drawGlyphVector(final GlyphVector g, final float x,
+                              final float y)
+  {
+    fill(g.getOutline(x, y));
+  }
+
+  @Override
+  public void drawLine(final int x1, final int y1,
+                       final int x2, final int y2)
+  {
+    draw(new Line2D.Double(x1, y1, x2, y2));
+  }
+
+  @Override
+  public void fillRect(final int x, final int y,
+                       final int width, final int height)
+  {
+    fill(new Rectangle(x, y, width, height));
+  }
+
+  @Override
+  public void clearRect(final int x, final int y,
+                        final int width, final int height)
+  {
+    final Paint paint = state.getPaint();
+    state.setPaint(state.getBackground());
+    fillRect(x, y, width, height);
+    state.setPaint(paint);
+  }
+
+  @Override
+  public void drawRoundRect(final int x, final int y,
+                            final int width, final int height,
+                            final int arcWidth, final int arcHeight)
+  {
+    draw(new RoundRectangle2D.Double(x, y, width, height,
+                                     arcWidth, arcHeight));
+  }
+
+  @Override
+  public void fillRoundRect(final int x, final int y,
+                            final int width, final int height,
+                            final int arcWidth, final int arcHeight)
+  {
+    fill(new RoundRectangle2D.Double(x, y, width, height,
+                                     arcWidth, arcHeight));
+  }
+
+  @Override
+  public void drawOval(final int x, final int y,
+                       final int width, final int height)
+  {
+    draw(new Ellipse2D.Double(x, y, width, height));
+  }
+
+  @Override
+  public void fillOval(final int x, final int y,
+                       final int width, final int height)
+  {
+    fill(new Ellipse2D.Double(x, y, width, height));
+  }
+
+  @Override
+  public void drawArc(final int x, final int y,
+                      final int width, final int height,
+                      final int startAngle, final int arcAngle)
+  {
+    draw(new Arc2D.Double(x, y, width, height, startAngle, arcAngle,
+                          Arc2D.OPEN));
+  }
+
+  @Override
+  public void fillArc(final int x, final int y,
+                      final int width, final int height,
+                      final int startAngle, final int arcAngle)
+  {
+    fill(new Arc2D.Double(x, y, width, height, startAngle, arcAngle,
+                          Arc2D.PIE));
+  }
+
+  private static Path2D createPolyline(final int[] xPoints,
+                                       final int[] yPoints,
+                                       final int nPoints)
+  {
+    final Path2D path = new Path2D.Double();
+    for (int index = 0; index < nPoints; index++) {
+      if (index == 0) {
+        path.moveTo(xPoints[index], yPoints[index]);
+      } else {
+        path.lineTo(xPoints[index], yPoints[index]);
+      }
+    }
+    return path;
+  }
+
+  @Override
+  public void drawPolyline(final int[] xPoints, final int[] yPoints,
+                           final int nPoints)
+  {
+    draw(createPolyline(xPoints, yPoints, nPoints));
+  }
+
+  @Override
+  public void drawPolygon(final int[] xPoints, final int[] yPoints,
+                          final int nPoints)
+  {
+    draw(new Polygon(xPoints, yPoints, nPoints));
+  }
+
+  @Override
+  public void fillPolygon(final int[] xPoints, final int[] yPoints,
+                          final int nPoints)
+  {
+    fill(new Polygon(xPoints, yPoints, nPoints));
+  }
+
+  @Override
+  public boolean drawImage(final Image img, final AffineTransform xform,
+                           final ImageObserver obs)
+  {
+    // images are not supported
+    return true;
+  }
+
+  @Override
+  public void drawImage(final BufferedImage img, final BufferedImageOp op,
+                        final int x, final int y)
+  {
+    // images are not supported
+  }
+
+  @Override
+  public void drawRenderedImage(final RenderedImage img,
+                                final AffineTransform xform)
+  {
+    // images are not supported
+  }
+
+  @Override
+  public void drawRenderableImage(final RenderableImage img,
+                                  final AffineTransform xform)
+  {
+    // images are not supported
+  }
+
+  @Override
+  public boolean drawImage(final Image img, final int x, final int y,
+                           final ImageObserver observer)
+  {
+    // images are not supported
+    return true;
+  }
+
+  @Override
+  public boolean drawImage(final Image img, final int x, final int y,
+                           final int width, final int height,
+                           final ImageObserver observer)
+  {
+    // images are not supported
+    return true;
+  }
+
+  @Override
+  public boolean drawImage(final Image img, final int x, final int y,
+                           final Color bgcolor,
+                           final ImageObserver observer)
+  {
+    // images are not supported
+    return true;
+  }
+
+  @Override
+  public boolean drawImage(final Image img, final int x, final int y,
+                           final int width, final int height,
+                           final Color bgcolor,
+                           final ImageObserver observer)
+  {
+    // images are not supported
+    return true;
+  }
+
+  @Override
+  public boolean drawImage(final Image img,
+                           final int dx1, final int dy1,
+                           final int dx2, final int dy2,
+                           final int sx1, final int sy1,
+                           final int sx2, final int sy2,
+                           final ImageObserver observer)
+  {
+    // images are not supported
+    return true;
+  }
+
+  @Override
+  public boolean drawImage(final Image img,
+                           final int dx1, final int dy1,
+                           final int dx2, final int dy2,
+                           final int sx1, final int sy1,
+                           final int sx2, final int sy2,
+                           final Color bgcolor,
+                           final ImageObserver observer)
+  {
+    // images are not supported
+    return true;
+  }
+
+  @Override
+  public void copyArea(final int x, final int y,
+                       final int width, final int height,
+                       final int dx, final int dy)
+  {
+    // output already written can not be copied
+  }
+
+  @Override
+  public Graphics create()
+  {
+    return new SvgGraphics2D(document, (Graphics2D)state.create());
+  }
+
+  @Override
+  public void dispose()
+  {
+    state.dispose();
+  }
+
+  // graphics state is delegated to the off-screen graphics context
+
+  @Override
+  public boolean hit(final Rectangle rect, final Shape s,
+                     final boolean onStroke)
+  {
+    return state.hit(rect, s, onStroke);
+  }
+
+  @Override
+  public GraphicsConfiguration getDeviceConfiguration()
+  {
+    return state.getDeviceConfiguration();
+  }
+
+  @Override
+  public void setComposite(final Composite comp)
+  {
+    state.setComposite(comp);
+  }
+
+  @Override
+  public Composite getComposite()
+  {
+    return state.getComposite();
+  }
+
+  @Override
+  public void setPaint(final Paint paint)
+  {
+    state.setPaint(paint);
+  }
+
+  @Override
+  public Paint getPaint()
+  {
+    return state.getPaint();
+  }
+
+  @Override
+  public void setStroke(final Stroke s)
+  {
+    state.setStroke(s);
+  }
+
+  @Override
+  public Stroke getStroke()
+  {
+    return state.getStroke();
+  }
+
+  @Override
+  public void setRenderingHint(final RenderingHints.Key hintKey,
+                               final Object hintValue)
+  {
+    state.setRenderingHint(hintKey, hintValue);
+  }
+
+  @Override
+  public Object getRenderingHint(final RenderingHints.Key hintKey)
+  {
+    return state.getRenderingHint(hintKey);
+  }
+
+  @Override
+  public void setRenderingHints(final Map<?, ?> hints)
+  {
+    state.setRenderingHints(hints);
+  }
+
+  @Override
+  public void addRenderingHints(final Map<?, ?> hints)
+  {
+    state.addRenderingHints(hints);
+  }
+
+  @Override
+  public RenderingHints getRenderingHints()
+  {
+    return state.getRenderingHints();
+  }
+
+  @Override
+  public void translate(final int x, final int y)
+  {
+    state.translate(x, y);
+  }
+
+  @Override
+  public void translate(final double tx, final double ty)
+  {
+    state.translate(tx, ty);
+  }
+
+  @Override
+  public void rotate(final double theta)
+  {
+    state.rotate(theta);
+  }
+
+  @Override
+  public void rotate(final double theta, final double x, final double y)
+  {
+    state.rotate(theta, x, y);
+  }
+
+  @Override
+  public void scale(final double sx, final double sy)
+  {
+    state.scale(sx, sy);
+  }
+
+  @Override
+  public void shear(final double shx, final double shy)
+  {
+    state.shear(shx, shy);
+  }
+
+  @Override
+  public void transform(final AffineTransform tx)
+  {
+    state.transform(tx);
+  }
+
+  @Override
+  public void setTransform(final AffineTransform tx)
+  {
+    state.setTransform(tx);
+  }
+
+  @Override
+  public AffineTransform getTransform()
+  {
+    return state.getTransform();
+  }
+
+  @Override
+  public void setBackground(final Color color)
+  {
+    state.setBackground(color);
+  }
+
+  @Override
+  public Color getBackground()
+  {
+    return state.getBackground();
+  }
+
+  @Override
+  public void clip(final Shape s)
+  {
+    state.clip(s);
+  }
+
+  @Override
+  public FontRenderContext getFontRenderContext()
+  {
+    return state.getFontRenderContext();
+  }
+
+  @Override
+  public Color getColor()
+  {
+    return state.getColor();
+  }
+
+  @Override
+  public void setColor(final Color c)
+  {
+    state.setColor(c);
+  }
+
+  @Override
+  public void setPaintMode()
+  {
+    state.setPaintMode();
+  }
+
+  @Override
+  public void setXORMode(final Color c1)
+  {
+    state.setXORMode(c1);
+  }
+
+  @Override
+  public Font getFont()
+  {
+    return state.getFont();
+  }
+
+  @Override
+  public void setFont(final Font font)
+  {
+    state.setFont(font);
+  }
+
+  @Override
+  public FontMetrics getFontMetrics(final Font f)
+  {
+    return state.getFontMetrics(f);
+  }
+
+  @Override
+  public Rectangle getClipBounds()
+  {
+    return state.getClipBounds();
+  }
+
+  @Override
+  public void clipRect(final int x, final int y,
+                       final int width, final int height)
+  {
+    state.clipRect(x, y, width, height);
+  }
+
+  @Override
+  public void setClip(final int x, final int y,
+                      final int width, final int height)
+  {
+    state.setClip(x, y, width, height);
+  }
+
+  @Override
+  public Shape getClip()
+  {
+    return state.getClip();
+  }
+
+  @Override
+  public void setClip(final Shape clip)
+  {
+    state.setClip(clip);
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
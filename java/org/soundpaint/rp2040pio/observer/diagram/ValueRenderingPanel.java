@@ -119,8 +119,9 @@ public class ValueRenderingPanel extends JPanel
     }
     try {
       final Signal signal =
-        selectedRendering.createSignal(diagram, sdk, label, address,
-                                       msb, lsb, displayFilters, pioNum, smNum);
+        selectedRendering.createSignal(diagram.getModel(), sdk, label,
+                                       address, msb, lsb, displayFilters,
+                                       pioNum, smNum);
       signal.setVisible(visible);
       return signal;
     } catch (final IOException e) {
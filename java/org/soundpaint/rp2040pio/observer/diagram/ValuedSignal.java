@@ -25,6 +25,7 @@
 package org.soundpaint.rp2040pio.observer.diagram;
 
 import java.awt.Graphics2D;
+import java.awt.Paint;
 import java.awt.TexturePaint;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
@@ -32,7 +33,6 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.Supplier;
-import org.soundpaint.rp2040pio.sdk.SDK;
 
 public abstract class ValuedSignal<T> extends AbstractSignal<T>
 {
@@ -52,6 +52,8 @@ public abstract class ValuedSignal<T> extends AbstractSignal<T>
 
   private final SignalRendering valueRendering;
   private final Supplier<Boolean> changeInfoGetter;
+  private int valueColumn;
+  private int[] filterColumns;
 
   /**
    * @param changeInfoGetter If set to &lt;code&gt;null&lt;/code&gt;,
@@ -63,10 +65,12 @@ public abstract class ValuedSignal<T> extends AbstractSignal<T>
   {
     super(signalParams);
     Objects.requireNonNull(signalParams);
-    Objects.requireNonNull(signalParams.getDiagram());
+    Objects.requireNonNull(signalParams.getModel());
     Objects.requireNonNull(signalParams.getSDK());
     this.valueRendering = valueRendering;
     this.changeInfoGetter = changeInfoGetter;
+    valueColumn = -1;
+    filterColumns = null;
   }
 
   public SignalRendering getValueRendering()
@@ -77,36 +81,75 @@ public abstract class ValuedSignal<T> extends AbstractSignal<T>
   @Override
   protected double getSignalHeight() { return SIGNAL_HEIGHT; }
 
-  abstract protected T sampleValue() throws IOException;
+  /**
+   * Paints a single pixel column of the pattern that marks undefined
+   * values.
+   */
+  protected static void paintUndefinedColumn(final Graphics2D g,
+                                             final double x,
+                                             final double yTop,
+                                             final double yBottom)
+  {
+    final Paint paint = g.getPaint();
+    g.setPaint(FILL_PAINT);
+    g.fill(new Rectangle2D.Double(x, yTop + 1, 1.0, yBottom - yTop - 1));
+    g.setPaint(paint);
+  }
 
-  private boolean passesAllFilters(final List<SignalFilter> displayFilters)
-    throws IOException
+  /**
+   * Extracts this signal's value from the sampled value of the
+   * register at the signal's address.
+   */
+  abstract protected T sampleValue(final SampleSet sampleSet,
+                                   final int column);
+
+  @Override
+  public void addSampleAddresses(final SampleSet sampleSet)
   {
     final SignalRendering.SignalParams signalParams = getSignalParams();
-    final SDK sdk = signalParams.getSDK();
-    final int pioNum = signalParams.getPioNum();
-    final int smNum = signalParams.getSmNum();
-    for (final SignalFilter displayFilter : displayFilters) {
-      if (!displayFilter.acceptCurrentSignalValue(sdk, pioNum, smNum))
+    valueColumn = sampleSet.addAddress(signalParams.getAddress());
+    final List<SignalFilter> displayFilters = signalParams.getDisplayFilters();
+    if (displayFilters != null) {
+      final int pioNum = signalParams.getPioNum();
+      final int smNum = signalParams.getSmNum();
+      filterColumns = new int[displayFilters.size()];
+      for (int index = 0; index < filterColumns.length; index++) {
+        final SignalFilter displayFilter = displayFilters.get(index);
+        filterColumns[index] =
+          sampleSet.addAddress(displayFilter.getAddress(pioNum, smNum));
+      }
+    } else {
+      filterColumns = null;
+    }
+  }
+
+  private boolean passesAllFilters(final List<SignalFilter> displayFilters,
+                                   final SampleSet sampleSet)
+  {
+    for (int index = 0; index < filterColumns.length; index++) {
+      final SignalFilter displayFilter = displayFilters.get(index);
+      final int registerValue = sampleSet.getValue(filterColumns[index]);
+      if (!displayFilter.acceptCurrentSignalValue(registerValue))
         return false;
     }
     return true;
   }
 
   @Override
-  public void record() throws IOException
+  public void record(final SampleSet sampleSet) throws IOException
   {
     final boolean enforceChanged =
       changeInfoGetter != null ? changeInfoGetter.get() : false;
     final SignalRendering.SignalParams signalParams = getSignalParams();
     final List<SignalFilter> displayFilters = signalParams.getDisplayFilters();
     final boolean passes;
-    if (displayFilters != null) {
-      passes = passesAllFilters(displayFilters);
+    if (filterColumns != null) {
+      passes = passesAllFilters(displayFilters, sampleSet);
     } else {
       passes = true;
     }
-    record(passes ? sampleValue() : null, enforceChanged);
+    record(passes ? sampleValue(sampleSet, valueColumn) : null,
+           enforceChanged);
   }
 }
 
@@ -46,7 +46,6 @@ import org.soundpaint.rp2040pio.PIO;
 import org.soundpaint.rp2040pio.PIOEmuRegisters;
 import org.soundpaint.rp2040pio.PIORegisters;
 import org.soundpaint.rp2040pio.SwingUtils;
-import org.soundpaint.rp2040pio.sdk.PIOSDK;
 import org.soundpaint.rp2040pio.sdk.SDK;
 
 public class FifoEntriesViewPanel extends JPanel
@@ -140,6 +139,13 @@ public class FifoEntriesViewPanel extends JPanel
   private boolean joinTx;
   private boolean autoScroll;
 
+  /**
+   * Modification sequence number of the FIFO as of the last time
+   * that the FIFO's state has been read, or &lt;code&gt;null&lt;/code&gt;,
+   * if the FIFO's state needs to be read upon the next update.
+   */
+  private Integer fifoSeq;
+
   private FifoEntriesViewPanel()
   {
     throw new UnsupportedOperationException("unsupported empty constructor");
@@ -184,6 +190,7 @@ public class FifoEntriesViewPanel extends JPanel
     add(createShiftRegisters());
 
     autoScroll = initialAutoScroll;
+    fifoSeq = null;
     SwingUtils.setPreferredWidthAsMaximum(this);
   }
 
@@ -314,44 +321,10 @@ public class FifoEntriesViewPanel extends JPanel
     return hBox;
   }
 
-  private int getShiftCtrl() throws IOException
-  {
-    final int addressShiftCtrl =
-      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_SHIFTCTRL);
-    return sdk.readAddress(addressShiftCtrl);
-  }
-
-  private int getSMFReadPtr() throws IOException
-  {
-    final int addressFReadPtr =
-      PIOEmuRegisters.getAddress(pioNum, PIOEmuRegisters.Regs.FREAD_PTR);
-    final int fReadPtr = sdk.readAddress(addressFReadPtr);
-    return (fReadPtr >>> (smNum << 3)) & 0xff;
-  }
-
-  private int getSMFLevel() throws IOException
+  private void updateFifoContents(final int[] fifoValues)
   {
-    final int addressFLevel =
-      PIORegisters.getAddress(pioNum, PIORegisters.Regs.FLEVEL);
-    final int fLevel = sdk.readAddress(addressFLevel);
-    return (fLevel >>> (smNum << 3)) & 0xff;
-  }
-
-  private int getSMFStat() throws IOException
-  {
-    final int addressFStat =
-      PIORegisters.getAddress(pioNum, PIORegisters.Regs.FSTAT);
-    final int fStat = sdk.readAddress(addressFStat);
-    return fStat >>> smNum;
-  }
-
-  private void updateFifoContents() throws IOException
-  {
-    final int addressFifo =
-      PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                   PIOEmuRegisters.Regs.SM0_FIFO_MEM0);
     for (int entryNum = 0; entryNum < 2 * Constants.FIFO_DEPTH; entryNum++) {
-      buffer[entryNum] = sdk.readAddress(addressFifo + (entryNum << 2));
+      buffer[entryNum] = fifoValues[entryNum];
     }
   }
 
@@ -386,18 +359,19 @@ public class FifoEntriesViewPanel extends JPanel
     }
   }
 
-  private void updateEntries(final int shiftCtrl) throws IOException
+  private void updateEntries(final int shiftCtrl, final int[] fifoValues)
   {
-    final PIOSDK pioSdk = pioNum == 0 ? sdk.getPIO0SDK() : sdk.getPIO1SDK();
-    updateFifoContents();
+    updateFifoContents(fifoValues);
     final int smJoin =
       (shiftCtrl >>> Constants.SM0_SHIFTCTRL_FJOIN_TX_LSB) & 0x3;
     final boolean fJoinTX = (smJoin & 0x1) != 0x0;
     final boolean fJoinRX = (smJoin & 0x2) != 0x0;
-    final int smfReadPtr = getSMFReadPtr();
+    final int smfReadPtr =
+      (fifoValues[2 * Constants.FIFO_DEPTH] >>> (smNum << 3)) & 0xff;
     final int txReadPtr = smfReadPtr & 0xf;
     final int rxReadPtr = (smfReadPtr & 0xf0) >> 4;
-    final int smfLevel = getSMFLevel();
+    final int smfLevel =
+      (fifoValues[2 * Constants.FIFO_DEPTH + 1] >>> (smNum << 3)) & 0xff;
     final int txLevel = smfLevel & 0xf;
     final int rxLevel = (smfLevel >>> 4) & 0xf;
     lbBottomLine.setText(fJoinTX || fJoinRX ?
@@ -435,11 +409,8 @@ public class FifoEntriesViewPanel extends JPanel
     return (((fDebugValue & bits) >>> (lsb + smNum)) & 0x01) != 0x0;
   }
 
-  private void updateFDebugStatus() throws IOException
+  private void updateFDebugStatus(final int fDebugValue)
   {
-    final int addressFDebug =
-      PIORegisters.getAddress(pioNum, PIORegisters.Regs.FDEBUG);
-    final int fDebugValue = sdk.readAddress(addressFDebug);
     cbFDebugTxStall.
       setSelected(getFDebug(smNum, fDebugValue,
                             Constants.FDEBUG_TXSTALL_LSB,
@@ -479,18 +450,11 @@ public class FifoEntriesViewPanel extends JPanel
                               final JLabel lbLeftHandArrow,
                               final JLabel lbRightHandArrow,
                               final JLabel[] lbBits,
-                              final PIOEmuRegisters.Regs regShiftReg,
-                              final PIOEmuRegisters.Regs levelReg,
+                              final int value,
+                              final int level,
                               final int threshold,
                               final PIO.ShiftDir shiftDir)
-    throws IOException
   {
-    final int addressShiftReg =
-      PIOEmuRegisters.getSMAddress(pioNum, smNum, regShiftReg);
-    final int value = sdk.readAddress(addressShiftReg);
-    final int addressLevel =
-      PIOEmuRegisters.getSMAddress(pioNum, smNum, levelReg);
-    final int level = sdk.readAddress(addressLevel);
     final int labelNum = lbBits.length;
     final int bitNum = labelNum - 1;
     for (int bitIndex = 0; bitIndex < bitNum; bitIndex++) {
@@ -556,15 +520,16 @@ public class FifoEntriesViewPanel extends JPanel
     return thresholdValue == 0 ? 32 : thresholdValue;
   }
 
-  private void updateShiftRegs(final int shiftCtrl) throws IOException
+  private void updateShiftRegs(final int shiftCtrl,
+                               final int osr, final int osrShiftCount,
+                               final int isr, final int isrShiftCount)
   {
     final int outShiftDir =
       (shiftCtrl & Constants.SM0_SHIFTCTRL_OUT_SHIFTDIR_BITS) >>>
       Constants.SM0_SHIFTCTRL_OUT_SHIFTDIR_LSB;
     updateShiftReg((bit, level) -> bit >= level, Color.RED,
                    lbOsrLeftHandArrow, lbOsrRightHandArrow, lbOsrBits,
-                   PIOEmuRegisters.Regs.SM0_OSR,
-                   PIOEmuRegisters.Regs.SM0_OSR_SHIFT_COUNT,
+                   osr, osrShiftCount,
                    getThreshold(shiftCtrl,
                                 Constants.SM0_SHIFTCTRL_PULL_THRESH_BITS,
                                 Constants.SM0_SHIFTCTRL_PULL_THRESH_LSB),
@@ -576,8 +541,7 @@ public class FifoEntriesViewPanel extends JPanel
       Constants.SM0_SHIFTCTRL_IN_SHIFTDIR_LSB;
     updateShiftReg((bit, level) -> bit < level, Color.GREEN,
                    lbIsrLeftHandArrow, lbIsrRightHandArrow, lbIsrBits,
-                   PIOEmuRegisters.Regs.SM0_ISR,
-                   PIOEmuRegisters.Regs.SM0_ISR_SHIFT_COUNT,
+                   isr, isrShiftCount,
                    getThreshold(shiftCtrl,
                                 Constants.SM0_SHIFTCTRL_PUSH_THRESH_BITS,
                                 Constants.SM0_SHIFTCTRL_PUSH_THRESH_LSB),
@@ -586,14 +550,68 @@ public class FifoEntriesViewPanel extends JPanel
                             Constants.SM0_SHIFTCTRL_AUTOPUSH_BITS) != 0x0);
   }
 
+  /**
+   * Returns the addresses whose changes require updating this view.
+   * Rather than all of the FIFO's state, only its modification
+   * sequence number is observed, plus the shift registers, which are
+   * not part of the FIFO state.
+   */
+  public int[] getObservedAddresses()
+  {
+    return new int[] {
+      PIOEmuRegisters.getFIFOSeqAddress(pioNum, smNum),
+      PIORegisters.getSMAddress(pioNum, smNum,
+                                PIORegisters.Regs.SM0_SHIFTCTRL),
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_OSR),
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_OSR_SHIFT_COUNT),
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_ISR),
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_ISR_SHIFT_COUNT)
+    };
+  }
+
+  /**
+   * Returns the addresses of the FIFO's state, i.e. of its memory,
+   * followed by the read pointers, levels and debug flags.
+   */
+  private int[] getFifoAddresses()
+  {
+    final int[] addresses = new int[2 * Constants.FIFO_DEPTH + 3];
+    int index = 0;
+    for (int entryNum = 0; entryNum < 2 * Constants.FIFO_DEPTH; entryNum++) {
+      addresses[index++] =
+        PIOEmuRegisters.getFIFOMemAddress(pioNum, smNum, entryNum);
+    }
+    addresses[index++] =
+      PIOEmuRegisters.getAddress(pioNum, PIOEmuRegisters.Regs.FREAD_PTR);
+    addresses[index++] =
+      PIORegisters.getAddress(pioNum, PIORegisters.Regs.FLEVEL);
+    addresses[index++] =
+      PIORegisters.getAddress(pioNum, PIORegisters.Regs.FDEBUG);
+    return addresses;
+  }
+
   private void checkedUpdate()
   {
     try {
-      final int shiftCtrl = getShiftCtrl();
-      updateEntries(shiftCtrl);
-      updateFDebugStatus();
-      updateShiftRegs(shiftCtrl);
+      final int[] values = sdk.readAddresses(getObservedAddresses());
+      final int seq = values[0];
+      final int shiftCtrl = values[1];
+      updateShiftRegs(shiftCtrl, values[2], values[3], values[4], values[5]);
+      if ((fifoSeq == null) || (fifoSeq != seq)) {
+        // Since the sequence number has been read before the FIFO's
+        // state, a modification in between will be detected upon
+        // the next update.
+        final int[] fifoValues = sdk.readAddresses(getFifoAddresses());
+        fifoSeq = seq;
+        updateEntries(shiftCtrl, fifoValues);
+        updateFDebugStatus(fifoValues[2 * Constants.FIFO_DEPTH + 2]);
+      }
     } catch (final IOException e) {
+      fifoSeq = null;
       for (int entryNum = 0; entryNum < Constants.SM_COUNT; entryNum++) {
         buffer[entryNum] = null;
       }
@@ -606,15 +624,26 @@ public class FifoEntriesViewPanel extends JPanel
   {
     this.pioNum = pioNum;
     this.smNum = smNum;
+    fifoSeq = null;
     final String toolTipText =
       String.format("FIFO registers view for PIO%d, SM%d", pioNum, smNum);
     setToolTipText(toolTipText);
     checkedUpdate();
   }
 
+  /**
+   * Updates the view, re-reading the FIFO's state only if it has
+   * been modified since the last update.
+   */
+  public void update()
+  {
+    checkedUpdate();
+  }
+
   public void setAutoScroll(final boolean autoScroll)
   {
     this.autoScroll = autoScroll;
+    fifoSeq = null;
     checkedUpdate();
   }
 }
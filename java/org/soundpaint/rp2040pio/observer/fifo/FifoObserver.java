@@ -46,17 +46,12 @@ public class FifoObserver extends GUIObserver
   {
     super(APP_TITLE, APP_FULL_NAME, console, argv);
     add(fifoViewPanel = new FifoViewPanel(console, getSDK(), APP_TITLE));
+    addRegisterView(fifoViewPanel);
     pack();
     setVisible(true);
     startUpdating();
   }
 
-  @Override
-  protected void updateView()
-  {
-    fifoViewPanel.updateView();
-  }
-
   public static void main(final String argv[])
   {
     final PrintStream console = System.out;
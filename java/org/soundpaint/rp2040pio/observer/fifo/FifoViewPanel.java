@@ -38,9 +38,10 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import org.soundpaint.rp2040pio.Constants;
 import org.soundpaint.rp2040pio.SwingUtils;
+import org.soundpaint.rp2040pio.observer.RegisterView;
 import org.soundpaint.rp2040pio.sdk.SDK;
 
-public class FifoViewPanel extends JPanel
+public class FifoViewPanel extends JPanel implements RegisterView
 {
   private static final long serialVersionUID = -2782955870967022886L;
   private static final boolean initialAutoScroll = true;
@@ -147,9 +148,16 @@ public class FifoViewPanel extends JPanel
     }
   }
 
+  @Override
+  public int[] getObservedAddresses()
+  {
+    return fifoEntriesViewPanel.getObservedAddresses();
+  }
+
+  @Override
   public void updateView()
   {
-    fifoEntriesViewPanel.smChanged(pioNum, smNum);
+    fifoEntriesViewPanel.update();
   }
 }
 
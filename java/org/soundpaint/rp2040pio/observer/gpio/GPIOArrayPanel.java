@@ -38,10 +38,11 @@ import javax.swing.border.EtchedBorder;
 import org.soundpaint.rp2040pio.Constants;
 import org.soundpaint.rp2040pio.PinState;
 import org.soundpaint.rp2040pio.SwingUtils;
+import org.soundpaint.rp2040pio.observer.RegisterView;
 import org.soundpaint.rp2040pio.sdk.GPIOSDK;
 import org.soundpaint.rp2040pio.sdk.SDK;
 
-public class GPIOArrayPanel extends JPanel
+public class GPIOArrayPanel extends JPanel implements RegisterView
 {
   private static final long serialVersionUID = -2035403823264488596L;
 
@@ -117,6 +118,18 @@ public class GPIOArrayPanel extends JPanel
     }
   }
 
+  @Override
+  public int[] getObservedAddresses()
+  {
+    return GPIOSDK.getPinStatusAddresses();
+  }
+
+  @Override
+  public void updateView()
+  {
+    checkedUpdate();
+  }
+
   public void checkedUpdate()
   {
     try {
@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.io.PrintStream;
 import org.soundpaint.rp2040pio.Constants;
 import org.soundpaint.rp2040pio.observer.GUIObserver;
+import org.soundpaint.rp2040pio.observer.RegisterView;
 
 /**
  * Emulation GPIO Status Observation
@@ -46,17 +47,14 @@ public class GPIOObserver extends GUIObserver
   {
     super(APP_TITLE, APP_FULL_NAME, console, argv);
     add(gpioViewPanel = new GPIOViewPanel(console, getSDK()));
+    for (final RegisterView registerView : gpioViewPanel.getRegisterViews()) {
+      addRegisterView(registerView);
+    }
     pack();
     setVisible(true);
     startUpdating();
   }
 
-  @Override
-  protected void updateView()
-  {
-    gpioViewPanel.updateView();
-  }
-
   public static void main(final String argv[])
   {
     final PrintStream console = System.out;
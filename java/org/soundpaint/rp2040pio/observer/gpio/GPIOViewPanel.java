@@ -33,6 +33,7 @@ import javax.swing.ImageIcon;
 import javax.swing.JPanel;
 import org.soundpaint.rp2040pio.CollapsiblePanel;
 import org.soundpaint.rp2040pio.SwingUtils;
+import org.soundpaint.rp2040pio.observer.RegisterView;
 import org.soundpaint.rp2040pio.sdk.SDK;
 
 public class GPIOViewPanel extends JPanel
@@ -90,10 +91,13 @@ public class GPIOViewPanel extends JPanel
     add(Box.createVerticalGlue());
   }
 
-  public void updateView()
+  /**
+   * Returns the views of this panel that are to be updated
+   * separately upon register changes.
+   */
+  public RegisterView[] getRegisterViews()
   {
-    pioGpioArrayPanel.checkedUpdate();
-    gpioArrayPanel.checkedUpdate();
+    return new RegisterView[] { pioGpioArrayPanel, gpioArrayPanel };
   }
 }
 
@@ -26,6 +26,7 @@ package org.soundpaint.rp2040pio.observer.gpio;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Objects;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -36,12 +37,15 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.border.EtchedBorder;
 import org.soundpaint.rp2040pio.Constants;
+import org.soundpaint.rp2040pio.PIOEmuRegisters;
 import org.soundpaint.rp2040pio.PinState;
 import org.soundpaint.rp2040pio.SwingUtils;
+import org.soundpaint.rp2040pio.observer.RegisterView;
+import org.soundpaint.rp2040pio.sdk.GPIOSDK;
 import org.soundpaint.rp2040pio.sdk.PIOSDK;
 import org.soundpaint.rp2040pio.sdk.SDK;
 
-public class PIOGPIOArrayPanel extends JPanel
+public class PIOGPIOArrayPanel extends JPanel implements RegisterView
 {
   private static final long serialVersionUID = 7074300168406892457L;
 
@@ -115,6 +119,25 @@ public class PIOGPIOArrayPanel extends JPanel
     }
   }
 
+  @Override
+  public int[] getObservedAddresses()
+  {
+    final int[] statusAddresses = GPIOSDK.getPinStatusAddresses();
+    final int[] addresses =
+      Arrays.copyOf(statusAddresses, statusAddresses.length + 2);
+    addresses[statusAddresses.length] =
+      PIOEmuRegisters.getAddress(pioNum, PIOEmuRegisters.Regs.GPIO_PINS);
+    addresses[statusAddresses.length + 1] =
+      PIOEmuRegisters.getAddress(pioNum, PIOEmuRegisters.Regs.GPIO_PINDIRS);
+    return addresses;
+  }
+
+  @Override
+  public void updateView()
+  {
+    checkedUpdate();
+  }
+
   public void checkedUpdate()
   {
     try {
@@ -29,6 +29,7 @@ import org.soundpaint.rp2040pio.AddressSpace;
 import org.soundpaint.rp2040pio.Constants;
 import org.soundpaint.rp2040pio.Bit;
 import org.soundpaint.rp2040pio.Direction;
+import org.soundpaint.rp2040pio.GPIO;
 import org.soundpaint.rp2040pio.GPIOIOBank0Registers;
 import org.soundpaint.rp2040pio.GPIOPadsBank0Registers;
 import org.soundpaint.rp2040pio.PinState;
@@ -46,12 +47,30 @@ public class GPIOSDK implements Constants
 
   private final AddressSpace memory;
 
+  /**
+   * The emulated GPIO, if this SDK runs in the same JVM as the
+   * emulator, or null otherwise.  If available, pin status is read
+   * directly from it rather than via the address space.
+   */
+  private final GPIO gpio;
+
   public GPIOSDK(final AddressSpace memory)
+  {
+    this(memory, null);
+  }
+
+  /**
+   * @param gpio The emulated GPIO for direct access, if the emulator
+   * runs in the same JVM, or &lt;code&gt;null&lt;/code&gt; for
+   * accessing it only via the address space.
+   */
+  public GPIOSDK(final AddressSpace memory, final GPIO gpio)
   {
     if (memory == null) {
       throw new NullPointerException("memory");
     }
     this.memory = memory;
+    this.gpio = gpio;
   }
 
   public void setFunction(final int gpioNum, final GPIO_Function fn)
@@ -116,14 +135,37 @@ public class GPIOSDK implements Constants
     return Bit.fromValue(gpioIn);
   }
 
-  public Bit getInputLevel(final int gpioNum, final Override override)
-    throws IOException
+  /**
+   * Returns the addresses of the status registers of all GPIO pins,
+   * as read by method getPinStates().
+   */
+  public static int[] getPinStatusAddresses()
   {
-    Constants.checkGpioPin(gpioNum, "GPIO pin number");
+    final int[] addresses = new int[Constants.GPIO_NUM];
+    for (int gpioNum = 0; gpioNum < Constants.GPIO_NUM; gpioNum++) {
+      addresses[gpioNum] =
+        GPIOIOBank0Registers.
+        getGPIOAddress(gpioNum, GPIOIOBank0Registers.Regs.GPIO0_STATUS);
+    }
+    return addresses;
+  }
+
+  private int readStatus(final int gpioNum) throws IOException
+  {
+    if (gpio != null) {
+      return gpio.readLocked((g) -> g.getSTATUS(gpioNum));
+    }
     final int gpioStatusAddress =
       GPIOIOBank0Registers.
       getGPIOAddress(gpioNum, GPIOIOBank0Registers.Regs.GPIO0_STATUS);
-    final int gpioStatusValue = memory.readAddress(gpioStatusAddress);
+    return memory.readAddress(gpioStatusAddress);
+  }
+
+  public Bit getInputLevel(final int gpioNum, final Override override)
+    throws IOException
+  {
+    Constants.checkGpioPin(gpioNum, "GPIO pin number");
+    final int gpioStatusValue = readStatus(gpioNum);
     return getInputLevelFromStatus(gpioStatusValue, override);
   }
 
@@ -131,10 +173,7 @@ public class GPIOSDK implements Constants
   {
     final PinState[] pinStates = new PinState[Constants.GPIO_NUM];
     for (int gpioNum = 0; gpioNum < Constants.GPIO_NUM; gpioNum++) {
-      final int gpioStatusAddress =
-        GPIOIOBank0Registers.
-        getGPIOAddress(gpioNum, GPIOIOBank0Registers.Regs.GPIO0_STATUS);
-      final int gpioStatusValue = memory.readAddress(gpioStatusAddress);
+      final int gpioStatusValue = readStatus(gpioNum);
       final int gpioOeFromPeri =
         (gpioStatusValue & Constants.IO_BANK0_GPIO0_STATUS_OEFROMPERI_BITS) >>>
         Constants.IO_BANK0_GPIO0_STATUS_OEFROMPERI_LSB;
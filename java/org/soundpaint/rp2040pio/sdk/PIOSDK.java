@@ -26,6 +26,12 @@ package org.soundpaint.rp2040pio.sdk;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 import org.soundpaint.rp2040pio.AddressSpace;
 import org.soundpaint.rp2040pio.Bit;
 import org.soundpaint.rp2040pio.Constants;
@@ -34,8 +40,11 @@ import org.soundpaint.rp2040pio.Direction;
 import org.soundpaint.rp2040pio.GPIOIOBank0Registers;
 import org.soundpaint.rp2040pio.Instruction;
 import org.soundpaint.rp2040pio.PinState;
+import org.soundpaint.rp2040pio.PIO;
 import org.soundpaint.rp2040pio.PIOEmuRegisters;
 import org.soundpaint.rp2040pio.PIORegisters;
+import org.soundpaint.rp2040pio.SM;
+import org.soundpaint.rp2040pio.TransactionalAddressSpace;
 
 /**
  * PIO SDK Interface
@@ -44,17 +53,96 @@ public class PIOSDK implements Constants
 {
   private static final Decoder decoder = new Decoder();
 
+  /**
+   * Maximum number of decoded instructions to keep in the decode
+   * cache.  Since entries are keyed by everything that decoding
+   * depends on, entries never become invalid; the limit just bounds
+   * memory consumption.
+   */
+  private static final int DECODE_CACHE_SIZE = 1024;
+
+  /**
+   * Result of decoding an op-code with a specific side-set
+   * configuration, independent of where and when the instruction is
+   * executed.
+   */
+  private static class DecodedInstruction
+  {
+    private final String mnemonic;
+    private final String statement;
+    private final String compactStatement;
+
+    private DecodedInstruction(final String mnemonic,
+                               final String statement)
+    {
+      this.mnemonic = mnemonic;
+      this.statement = statement;
+      compactStatement = compact(statement);
+    }
+  }
+
+  /**
+   * Cache of decoded instructions, such that repeatedly displaying
+   * the same instructions, e.g. in the code view or in the timing
+   * diagram, does not need to run the decoder over and over again.
+   * Access must be synchronized on the class, just like access to
+   * the decoder.
+   */
+  private static final Map<Integer, DecodedInstruction> decodeCache =
+    new LinkedHashMap<Integer, DecodedInstruction>(2 * DECODE_CACHE_SIZE,
+                                                   0.75f, true) {
+      private static final long serialVersionUID = 4469728035476812447L;
+
+      @Override
+      protected boolean
+        removeEldestEntry(final Map.Entry<Integer, DecodedInstruction> eldest)
+      {
+        return size() > DECODE_CACHE_SIZE;
+      }
+    };
+
   private final int pioNum;
-  private final AddressSpace memory;
+  private final TransactionalAddressSpace memory;
   private final GPIOSDK gpioSdk;
 
+  /**
+   * The emulated PIO, if this SDK runs in the same JVM as the
+   * emulator, or null otherwise.  If available, the typed state
+   * machine and FIFO status accessors read directly from the PIO's
+   * state machines rather than resolving register addresses via the
+   * address space.  Writes always go via the address space.
+   */
+  private final PIO pio;
+
   private PIOSDK()
   {
     throw new UnsupportedOperationException("unsupported empty constructor");
   }
 
+  /**
+   * @param memory The address space to access the PIO.  Unless it
+   * already is a TransactionalAddressSpace, it is wrapped into one,
+   * such that transactions of this SDK are applied atomically.
+   */
   public PIOSDK(final int pioNum, final AddressSpace memory,
                 final GPIOSDK gpioSdk)
+  {
+    this(pioNum, asTransactional(memory), gpioSdk, null);
+  }
+
+  public PIOSDK(final int pioNum, final TransactionalAddressSpace memory,
+                final GPIOSDK gpioSdk)
+  {
+    this(pioNum, memory, gpioSdk, null);
+  }
+
+  /**
+   * @param pio The emulated PIO for direct access, if the emulator
+   * runs in the same JVM, or &lt;code&gt;null&lt;/code&gt; for
+   * accessing it only via the address space.
+   */
+  public PIOSDK(final int pioNum, final TransactionalAddressSpace memory,
+                final GPIOSDK gpioSdk, final PIO pio)
   {
     Constants.checkPioNum(pioNum, "PIO index number");
     if (memory == null) {
@@ -63,9 +151,46 @@ public class PIOSDK implements Constants
     if (gpioSdk == null) {
       throw new NullPointerException("gpio sdk");
     }
+    if ((pio != null) && (pio.getIndex() != pioNum)) {
+      throw new IllegalArgumentException("pio index mismatch: " +
+                                         pio.getIndex() + " != " + pioNum);
+    }
     this.pioNum = pioNum;
     this.memory = memory;
     this.gpioSdk = gpioSdk;
+    this.pio = pio;
+  }
+
+  private static TransactionalAddressSpace
+    asTransactional(final AddressSpace memory)
+  {
+    if (memory == null) {
+      throw new NullPointerException("memory");
+    }
+    return
+      memory instanceof TransactionalAddressSpace ?
+      (TransactionalAddressSpace)memory :
+      new TransactionalAddressSpace(memory);
+  }
+
+  /**
+   * Reads a value directly from the specified state machine, using
+   * the same monitor as register access to the state machine does.
+   * Only to be called if direct access is available.
+   */
+  private int readSm(final int smNum, final ToIntFunction<SM> getter)
+  {
+    return pio.getSM(smNum).readLocked(getter);
+  }
+
+  /**
+   * Reads a FIFO status directly from the specified state machine,
+   * using the same monitor as access to register FSTAT does.  Only
+   * to be called if direct access is available.
+   */
+  private boolean readFifoStatus(final int smNum, final Predicate<SM> getter)
+  {
+    return pio.testLocked((p) -> getter.test(p.getSM(smNum)));
   }
 
   /**
@@ -168,27 +293,78 @@ public class PIOSDK implements Constants
       throws IOException
   {
     Constants.checkSmNum(smNum);
-    final int smPinCtrlSidesetCountAddress =
-      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_PINCTRL);
-    final int pinCtrlSidesetCount =
-      (memory.readAddress(smPinCtrlSidesetCountAddress) &
-       SM0_PINCTRL_SIDESET_COUNT_BITS) >>> SM0_PINCTRL_SIDESET_COUNT_LSB;
-
-    final int smExecCtrlSideEnAddress =
-      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_EXECCTRL);
-    final boolean execCtrlSideEn =
-      (memory.readAddress(smExecCtrlSideEnAddress) &
-       SM0_EXECCTRL_SIDE_EN_BITS) != 0x0;
-    return getInstructionFromOpCode(pinCtrlSidesetCount, execCtrlSideEn,
+    final int[] values = memory.readAddresses(getSideSetConfigAddresses(smNum));
+    return getInstructionFromOpCode(getSidesetCount(values[0]),
+                                    getSideEn(values[1]),
                                     origin, addressLabel, opCode,
                                     format, isDelayCycle, delay);
   }
 
+  /**
+   * Returns the addresses of the PINCTRL and EXECCTRL registers of
+   * the specified state machine, which hold the side-set
+   * configuration that decoding instructions depends on.
+   */
+  private int[] getSideSetConfigAddresses(final int smNum)
+  {
+    return new int[] {
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_PINCTRL),
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_EXECCTRL)
+    };
+  }
+
+  private static int getSidesetCount(final int pinCtrl)
+  {
+    return
+      (pinCtrl & SM0_PINCTRL_SIDESET_COUNT_BITS) >>>
+      SM0_PINCTRL_SIDESET_COUNT_LSB;
+  }
+
+  private static boolean getSideEn(final int execCtrl)
+  {
+    return (execCtrl & SM0_EXECCTRL_SIDE_EN_BITS) != 0x0;
+  }
+
+  private static String compact(final String statement)
+  {
+    return
+      statement.indexOf("  ") >= 0 ?
+      statement.replaceAll("\\s{2,}", " ") : statement;
+  }
+
+  private static DecodedInstruction decode(final int opCode,
+                                           final int pinCtrlSidesetCount,
+                                           final boolean execCtrlSideEn)
+  {
+    final int key =
+      (opCode & 0xffff) | (pinCtrlSidesetCount << 16) |
+      (execCtrlSideEn ? 0x1 << 19 : 0x0);
+    final DecodedInstruction cached = decodeCache.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    /*final*/ Instruction instruction;
+    try {
+      instruction =
+        decoder.decode((short)opCode, pinCtrlSidesetCount, execCtrlSideEn);
+    } catch (final Decoder.DecodeException e) {
+      instruction = null;
+    }
+    final DecodedInstruction decoded =
+      instruction != null ?
+      new DecodedInstruction(instruction.getMnemonic(),
+                             instruction.toString()) :
+      new DecodedInstruction("???", "???");
+    decodeCache.put(key, decoded);
+    return decoded;
+  }
+
   /**
    * Note: This method is synchronized since we have only a single
    * instance of a decoder, with a single instance of each
    * instruction.  Therefore, use of this decoder and access to
-   * instances of Instruction objects must be serialized.
+   * instances of Instruction objects must be serialized.  The same
+   * holds for the cache of decoded instructions.
    */
   public static synchronized InstructionInfo
     getInstructionFromOpCode(final int pinCtrlSidesetCount,
@@ -198,27 +374,17 @@ public class PIOSDK implements Constants
                              final boolean format,
                              final boolean isDelayCycle, final int delay)
   {
-    /*final*/ Instruction instruction;
-    try {
-      instruction =
-        decoder.decode((short)opCode, pinCtrlSidesetCount, execCtrlSideEn);
-    } catch (final Decoder.DecodeException e) {
-      instruction = null;
-    }
-    final String mnemonic;
-    final String fullStatement;
-    if (instruction != null) {
-      mnemonic = instruction.getMnemonic();
-      fullStatement = addressLabel + instruction.toString();
-    } else {
-      mnemonic = "???";
-      fullStatement = addressLabel + "???";
-    }
+    final DecodedInstruction decoded =
+      decode(opCode, pinCtrlSidesetCount, execCtrlSideEn);
+    // Since statements start with the mnemonic, compacting label and
+    // statement separately yields the same result as compacting the
+    // concatenation.
     final String formattedFullStatement =
-      format ? fullStatement : fullStatement.replaceAll("\\s{2,}", " ");
-
-    return new InstructionInfo(origin, mnemonic, formattedFullStatement,
-                               isDelayCycle, delay);
+      format ?
+      addressLabel + decoded.statement :
+      compact(addressLabel) + decoded.compactStatement;
+    return new InstructionInfo(origin, decoded.mnemonic,
+                               formattedFullStatement, isDelayCycle, delay);
   }
 
   public static int decodeInstrOrigin(final int encoded)
@@ -230,15 +396,6 @@ public class PIOSDK implements Constants
       ~((~originMode) & 0x3);
   }
 
-  private int getInstrOrigin(final int smNum) throws IOException
-  {
-    final int instrOriginAddress =
-      PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                   PIOEmuRegisters.Regs.SM0_INSTR_ORIGIN);
-    final int instrOrigin = memory.readAddress(instrOriginAddress);
-    return decodeInstrOrigin(instrOrigin);
-  }
-
   public static String renderOrigin(final int origin)
   {
     if (origin >= 0) {
@@ -262,24 +419,27 @@ public class PIOSDK implements Constants
     throws IOException
   {
     Constants.checkSmNum(smNum);
-    final int smInstrAddress =
-      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_INSTR);
-    final int opCode = memory.readAddress(smInstrAddress) & 0xffff;
-    final int origin = getInstrOrigin(smNum);
-    final String addressLabel =
-      showOrigin ? renderOrigin(origin) + ": " : "";
-
-    final int smDelayCycleAddress =
+    final int[] addresses = {
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_PINCTRL),
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_EXECCTRL),
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_INSTR),
       PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                   PIOEmuRegisters.Regs.SM0_DELAY_CYCLE);
-    final boolean isDelayCycle = memory.readAddress(smDelayCycleAddress) != 0x0;
-
-    final int smDelayAddress =
+                                   PIOEmuRegisters.Regs.SM0_INSTR_ORIGIN),
       PIOEmuRegisters.getSMAddress(pioNum, smNum,
-                                   PIOEmuRegisters.Regs.SM0_DELAY);
-    final int delay = memory.readAddress(smDelayAddress);
-
-    return getInstructionFromOpCode(smNum, origin, addressLabel, opCode, format,
+                                   PIOEmuRegisters.Regs.SM0_DELAY_CYCLE),
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_DELAY)
+    };
+    final int[] values = memory.readAddresses(addresses);
+    final int opCode = values[2] & 0xffff;
+    final int origin = decodeInstrOrigin(values[3]);
+    final String addressLabel =
+      showOrigin ? renderOrigin(origin) + ": " : "";
+    final boolean isDelayCycle = values[4] != 0x0;
+    final int delay = values[5];
+    return getInstructionFromOpCode(getSidesetCount(values[0]),
+                                    getSideEn(values[1]),
+                                    origin, addressLabel, opCode, format,
                                     isDelayCycle, delay);
   }
 
@@ -298,15 +458,71 @@ public class PIOSDK implements Constants
   {
     Constants.checkSmNum(smNum);
     Constants.checkSmMemAddr(address, "memory address");
-    final int instrAddress = PIOEmuRegisters.getMemoryAddress(pioNum, address);
-    final int opCode = memory.readAddress(instrAddress) & 0xffff;
+    final int[] addresses = {
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_PINCTRL),
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_EXECCTRL),
+      PIOEmuRegisters.getMemoryAddress(pioNum, address)
+    };
+    final int[] values = memory.readAddresses(addresses);
+    return createMemoryInstructionInfo(address, values[2],
+                                       getSidesetCount(values[0]),
+                                       getSideEn(values[1]),
+                                       showAddress, format);
+  }
+
+  /**
+   * Like method getMemoryInstruction(), but returns the instructions
+   * at all memory addresses at once.  All of the instruction memory
+   * and the side-set configuration is read in a single access, which
+   * is considerably faster than calling getMemoryInstruction() for
+   * each memory address, especially when accessing the emulator
+   * remotely.
+   * @return An array of size MEMORY_SIZE, indexed by memory address.
+   */
+  public InstructionInfo[] getMemoryInstructions(final int smNum,
+                                                 final boolean showAddress,
+                                                 final boolean format)
+    throws IOException
+  {
+    Constants.checkSmNum(smNum);
+    final int[] addresses = new int[MEMORY_SIZE + 2];
+    addresses[0] =
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_PINCTRL);
+    addresses[1] =
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_EXECCTRL);
+    for (int address = 0; address < MEMORY_SIZE; address++) {
+      addresses[address + 2] =
+        PIOEmuRegisters.getMemoryAddress(pioNum, address);
+    }
+    final int[] values = memory.readAddresses(addresses);
+    final int pinCtrlSidesetCount = getSidesetCount(values[0]);
+    final boolean execCtrlSideEn = getSideEn(values[1]);
+    final InstructionInfo[] instructionInfos = new InstructionInfo[MEMORY_SIZE];
+    for (int address = 0; address < MEMORY_SIZE; address++) {
+      instructionInfos[address] =
+        createMemoryInstructionInfo(address, values[address + 2],
+                                    pinCtrlSidesetCount, execCtrlSideEn,
+                                    showAddress, format);
+    }
+    return instructionInfos;
+  }
+
+  private static InstructionInfo
+    createMemoryInstructionInfo(final int address, final int value,
+                                final int pinCtrlSidesetCount,
+                                final boolean execCtrlSideEn,
+                                final boolean showAddress,
+                                final boolean format)
+  {
+    final int opCode = value & 0xffff;
     final String formattedOpCode = String.format("%04x ", opCode);
     final String addressLabel =
       (showAddress ? String.format("%02x: ", address) : "") + formattedOpCode;
     final boolean isDelayCycle = false;
     final int delay = 0;
     return
-      getInstructionFromOpCode(smNum, address, addressLabel, opCode, format,
+      getInstructionFromOpCode(pinCtrlSidesetCount, execCtrlSideEn,
+                               address, addressLabel, opCode, format,
                                isDelayCycle, delay);
   }
 
@@ -380,9 +596,51 @@ public class PIOSDK implements Constants
   /**
    * Tracking allocation of instruction memory is not a feature of the
    * RP2040 itself, but a feature of the SDK.  This is, why we do not
-   * put this stuff into the memory class.
+   * put this stuff into the memory class.  Access must be
+   * synchronized on the list of loaded programs.
    */
-  private Integer memoryAllocation = 0x0;
+  private int memoryAllocation;
+
+  /**
+   * A program that has been loaded into instruction memory.  The
+   * handle is the offset that has been reported to the caller upon
+   * loading the program.  The offset is where the program currently
+   * resides, which differs from the handle after the program has
+   * been relocated.
+   */
+  private static class LoadedProgram
+  {
+    private final Program program;
+    private final int handle;
+    private int offset;
+
+    private LoadedProgram(final Program program, final int offset)
+    {
+      this.program = program;
+      this.handle = offset;
+      this.offset = offset;
+    }
+
+    private int getAllocationMask()
+    {
+      return PIOSDK.getAllocationMask(program, offset);
+    }
+
+    private boolean contains(final int address)
+    {
+      return ((getAllocationMask() >>> (address & 0x1f)) & 0x1) != 0x0;
+    }
+  }
+
+  private final List<LoadedProgram> loadedPrograms =
+    new ArrayList<LoadedProgram>();
+
+  /**
+   * If true, relocatable programs that are already loaded may be
+   * moved to other addresses in order to make room for another
+   * program.
+   */
+  private boolean relocationEnabled;
 
   /**
    * Tracking claim of state machines is not a feature of the RP2040
@@ -393,7 +651,10 @@ public class PIOSDK implements Constants
 
   public void reset()
   {
-    memoryAllocation = 0;
+    synchronized(loadedPrograms) {
+      memoryAllocation = 0;
+      loadedPrograms.clear();
+    }
     stateMachineClaimed = 0;
   }
 
@@ -404,22 +665,22 @@ public class PIOSDK implements Constants
     if (smConfig == null) {
       throw new NullPointerException("smConfig");
     }
-    synchronized(memory) {
-      final int smClkDivAddr =
-        PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_CLKDIV);
-      memory.writeAddress(smClkDivAddr, smConfig.getClkDiv());
-      final int smExecCtrlAddr =
-        PIORegisters.getSMAddress(pioNum, smNum,
-                                  PIORegisters.Regs.SM0_EXECCTRL);
-      memory.writeAddress(smExecCtrlAddr, smConfig.getExecCtrl());
-      final int smShiftCtrlAddr =
-        PIORegisters.getSMAddress(pioNum, smNum,
-                                  PIORegisters.Regs.SM0_SHIFTCTRL);
-      memory.writeAddress(smShiftCtrlAddr, smConfig.getShiftCtrl());
-      final int smPinCtrlAddr =
-        PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_PINCTRL);
-      memory.writeAddress(smPinCtrlAddr, smConfig.getPinCtrl());
-    }
+    final int smClkDivAddr =
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_CLKDIV);
+    final int smExecCtrlAddr =
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_EXECCTRL);
+    final int smShiftCtrlAddr =
+      PIORegisters.getSMAddress(pioNum, smNum,
+                                PIORegisters.Regs.SM0_SHIFTCTRL);
+    final int smPinCtrlAddr =
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_PINCTRL);
+    // single round trip, never observed half-applied
+    memory.runTransaction(() -> {
+        memory.writeAddress(smClkDivAddr, smConfig.getClkDiv());
+        memory.writeAddress(smExecCtrlAddr, smConfig.getExecCtrl());
+        memory.writeAddress(smShiftCtrlAddr, smConfig.getShiftCtrl());
+        memory.writeAddress(smPinCtrlAddr, smConfig.getPinCtrl());
+      });
   }
 
   public int getIndex()
@@ -432,7 +693,7 @@ public class PIOSDK implements Constants
     Constants.checkGpioPin(pin, "GPIO pin number");
     final GPIO_Function function =
       getIndex() == 0 ? GPIO_Function.PIO0 : GPIO_Function.PIO1;
-    gpioSdk.setFunction(pin, function);
+    memory.runTransaction(() -> gpioSdk.setFunction(pin, function));
   }
 
   /**
@@ -448,60 +709,498 @@ public class PIOSDK implements Constants
   }
 
   /**
-   * Tries to allocate memory for the specified allocation mask and
-   * origin.  Returns address (0…31) where the allocation is
-   * performed.
+   * Returns the allocation mask of the specified program when loaded
+   * at the specified offset.  For a relocatable program and an
+   * offset of -1, the 0-based allocation mask is returned.
+   */
+  private static int getAllocationMask(final Program program,
+                                       final int offset)
+  {
+    final int allocationMask = program.getAllocationMask();
+    if ((program.getOrigin() >= 0) || (offset < 0)) return allocationMask;
+    return Integer.rotateLeft(allocationMask, offset);
+  }
+
+  /**
+   * Rates how badly the free instruction memory is fragmented for
+   * the specified allocation.  The fewer gaps of free memory, the
+   * better, and for the same number of gaps, the larger the largest
+   * gap, the better.  Lower values mean less fragmentation.
+   */
+  private static int getFragmentation(final int allocation)
+  {
+    final int free = ~allocation;
+    if (free == 0xffffffff) {
+      // single gap that spans all of memory
+      return 1;
+    }
+    final int gaps = Integer.bitCount(free & ~Integer.rotateLeft(free, 1));
+    int largestGap = 0;
+    int gap = 0;
+    for (int address = 0; address < 2 * MEMORY_SIZE; address++) {
+      if (((free >>> (address & 0x1f)) & 0x1) != 0x0) {
+        gap++;
+        if (gap > largestGap) largestGap = gap;
+      } else {
+        gap = 0;
+      }
+    }
+    return gaps * (MEMORY_SIZE + 1) - largestGap;
+  }
+
+  /**
+   * Returns the offset where to put the specified 0-based allocation
+   * mask into the specified allocation with least resulting
+   * fragmentation, or -1, if there is no sufficient free memory.  On
+   * equal fragmentation, the lowest offset wins, such that the first
+   * program loaded into empty memory still goes to address 0.
+   */
+  private static int findBestFit(final int allocation,
+                                 final int allocationMask)
+  {
+    int bestOffset = -1;
+    int bestFragmentation = Integer.MAX_VALUE;
+    for (int offset = 0; offset < MEMORY_SIZE; offset++) {
+      final int allocationMaskForOffset =
+        Integer.rotateLeft(allocationMask, offset);
+      if ((allocation & allocationMaskForOffset) != 0x0) continue;
+      final int fragmentation =
+        getFragmentation(allocation | allocationMaskForOffset);
+      if (fragmentation < bestFragmentation) {
+        bestOffset = offset;
+        bestFragmentation = fragmentation;
+      }
+    }
+    return bestOffset;
+  }
+
+  /**
+   * Returns the address (0…31) where memory for the specified
+   * allocation mask and origin can be allocated without moving any
+   * other program, or -1, if there is no sufficient free memory.
    * @param allocationMask Bit mask of instruction addresses (0…31) to
    * allocate.
    * @param origin Address where to allocate, or -1, if any address is
-   * acceptable.
-   * @param checkOnly If true, allocation is only checked for, but not
-   * performed.  Also, if allocation is not possible, -1 is returned
-   * rather than throwing an exception.
+   * acceptable.  In the latter case, the address is chosen such that
+   * fragmentation of the remaining free memory is minimized.
    */
-  private int allocateMemory(final int allocationMask, final int origin,
-                             final boolean checkOnly)
+  private int findAllocation(final int allocationMask, final int origin)
   {
-    synchronized(memoryAllocation) {
+    synchronized(loadedPrograms) {
       if (origin >= 0) {
-        if ((memoryAllocation & allocationMask) == 0x0) {
-          if (!checkOnly) memoryAllocation |= allocationMask;
-          return origin;
-        }
-        if (checkOnly) return -1;
-        final String message =
-          String.format("allocation at %02x failed", origin);
-        throw new Panic(message);
+        return (memoryAllocation & allocationMask) == 0x0 ? origin : -1;
       }
-      for (int offset = 0; offset < MEMORY_SIZE; offset++) {
-        final int allocationMaskForOffset =
-          (allocationMask << offset) |
-          (allocationMask << (offset - MEMORY_SIZE));
-        if ((memoryAllocation & allocationMaskForOffset) == 0x0) {
-          if (!checkOnly) memoryAllocation |= allocationMaskForOffset;
-          return offset;
+      return findBestFit(memoryAllocation, allocationMask);
+    }
+  }
+
+  private static String renderAllocationOrigin(final int origin)
+  {
+    return origin >= 0 ? String.format("%02x", origin) : "any address";
+  }
+
+  public int getMemoryAllocation()
+  {
+    synchronized(loadedPrograms) {
+      return memoryAllocation;
+    }
+  }
+
+  /**
+   * Enables or disables relocation of loaded programs.  If enabled,
+   * and a program does not fit into instruction memory, relocatable
+   * programs (i.e. those with origin -1) that are already loaded are
+   * moved to other addresses, if that makes the program fit.  Only
+   * programs that are not in use by any enabled state machine are
+   * moved.  A program is considered in use by a state machine, if
+   * the state machine's program counter or any of its wrap addresses
+   * points into the program.  For disabled state machines that use a
+   * moved program, wrap addresses and program counter are adjusted
+   * accordingly.  Use method <code>getProgramOffset()</code> for
+   * finding out where a relocated program currently resides.
+   *
+   * Relocation is disabled by default, since it changes the addresses
+   * of programs that the caller may still refer to.
+   */
+  public void setRelocationEnabled(final boolean enabled)
+  {
+    synchronized(loadedPrograms) {
+      relocationEnabled = enabled;
+    }
+  }
+
+  public boolean isRelocationEnabled()
+  {
+    synchronized(loadedPrograms) {
+      return relocationEnabled;
+    }
+  }
+
+  private static boolean isSameProgram(final Program program,
+                                       final Program other)
+  {
+    if (program == other) return true;
+    if ((program.getOrigin() != other.getOrigin()) ||
+        (program.getLength() != other.getLength())) {
+      return false;
+    }
+    for (int index = 0; index < program.getLength(); index++) {
+      if (program.getInstruction(index) != other.getInstruction(index)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Looks up the specified program, preferably by its current
+   * offset, and otherwise by the offset that has been reported upon
+   * loading it.  Returns null, if the program has not been loaded
+   * via this SDK.
+   */
+  private LoadedProgram findLoadedProgram(final Program program,
+                                          final int loadedOffset)
+  {
+    for (final LoadedProgram loaded : loadedPrograms) {
+      if ((loaded.offset == loadedOffset) &&
+          isSameProgram(loaded.program, program)) {
+        return loaded;
+      }
+    }
+    for (final LoadedProgram loaded : loadedPrograms) {
+      if ((loaded.handle == loadedOffset) &&
+          isSameProgram(loaded.program, program)) {
+        return loaded;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the address where the specified program, that has been
+   * reported to be loaded at the specified offset, currently resides.
+   * Unless the program has been relocated, this is the same offset.
+   */
+  public int getProgramOffset(final Program program, final int loadedOffset)
+  {
+    if (program == null) {
+      throw new NullPointerException("program");
+    }
+    Constants.checkSmMemAddr(loadedOffset, "loaded offset");
+    synchronized(loadedPrograms) {
+      final LoadedProgram loaded = findLoadedProgram(program, loadedOffset);
+      return loaded != null ? loaded.offset : loadedOffset;
+    }
+  }
+
+  /**
+   * Reads CTRL register, followed by ADDR and EXECCTRL register of
+   * each state machine, all in a single round trip.
+   */
+  private int[] readSmState() throws IOException
+  {
+    final int[] addresses = new int[1 + 2 * SM_COUNT];
+    addresses[0] = PIORegisters.getAddress(pioNum, PIORegisters.Regs.CTRL);
+    for (int smNum = 0; smNum < SM_COUNT; smNum++) {
+      addresses[1 + 2 * smNum] =
+        PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_ADDR);
+      addresses[2 + 2 * smNum] =
+        PIORegisters.getSMAddress(pioNum, smNum,
+                                  PIORegisters.Regs.SM0_EXECCTRL);
+    }
+    return memory.readAddresses(addresses);
+  }
+
+  private static int getWrapTop(final int execCtrl)
+  {
+    return
+      (execCtrl & SM0_EXECCTRL_WRAP_TOP_BITS) >>> SM0_EXECCTRL_WRAP_TOP_LSB;
+  }
+
+  private static int getWrapBottom(final int execCtrl)
+  {
+    return
+      (execCtrl & SM0_EXECCTRL_WRAP_BOTTOM_BITS) >>>
+      SM0_EXECCTRL_WRAP_BOTTOM_LSB;
+  }
+
+  private static boolean isInUse(final LoadedProgram loaded,
+                                 final int[] smState)
+  {
+    for (int smNum = 0; smNum < SM_COUNT; smNum++) {
+      if (((smState[0] >>> smNum) & 0x1) == 0x0) continue;
+      final int pc = smState[1 + 2 * smNum];
+      final int execCtrl = smState[2 + 2 * smNum];
+      if (loaded.contains(pc) ||
+          loaded.contains(getWrapTop(execCtrl)) ||
+          loaded.contains(getWrapBottom(execCtrl))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Plans new offsets for the specified movable programs such that
+   * the specified allocation fits in.  If keepInPlace is true,
+   * movable programs stay where they are unless they collide with
+   * the new allocation, such that as few programs as possible are
+   * moved.  Otherwise, all movable programs are packed anew, larger
+   * programs first.  Returns the new offsets of the movable programs,
+   * followed by the address of the new allocation and the resulting
+   * overall allocation, or null, if the programs do not fit.
+   */
+  private static int[] planRelocation(final int pinned,
+                                      final List<LoadedProgram> movable,
+                                      final int allocationMask,
+                                      final int origin,
+                                      final boolean keepInPlace)
+  {
+    final int count = movable.size();
+    final int length = Integer.bitCount(allocationMask);
+    final int[] plan = new int[count + 2];
+    int allocation = pinned;
+    int address = -1;
+    if (origin >= 0) {
+      if ((allocation & allocationMask) != 0x0) return null;
+      allocation |= allocationMask;
+      address = origin;
+    } else if (keepInPlace) {
+      address = findBestFit(allocation, allocationMask);
+      if (address < 0) return null;
+      allocation |= Integer.rotateLeft(allocationMask, address);
+    }
+    for (int index = 0; index < count; index++) {
+      final LoadedProgram loaded = movable.get(index);
+      final int programMask = loaded.program.getAllocationMask();
+      if ((address < 0) && (loaded.program.getLength() < length)) {
+        address = findBestFit(allocation, allocationMask);
+        if (address < 0) return null;
+        allocation |= Integer.rotateLeft(allocationMask, address);
+      }
+      final int offset =
+        keepInPlace && ((allocation & loaded.getAllocationMask()) == 0x0) ?
+        loaded.offset : findBestFit(allocation, programMask);
+      if (offset < 0) return null;
+      allocation |= Integer.rotateLeft(programMask, offset);
+      plan[index] = offset;
+    }
+    if (address < 0) {
+      address = findBestFit(allocation, allocationMask);
+      if (address < 0) return null;
+      allocation |= Integer.rotateLeft(allocationMask, address);
+    }
+    plan[count] = address;
+    plan[count + 1] = allocation;
+    return plan;
+  }
+
+  private static int relocateAddress(final int address,
+                                     final List<LoadedProgram> movable,
+                                     final int[] plan)
+  {
+    for (int index = 0; index < movable.size(); index++) {
+      final LoadedProgram loaded = movable.get(index);
+      if (loaded.contains(address)) {
+        return (address + plan[index] - loaded.offset) & 0x1f;
+      }
+    }
+    return address;
+  }
+
+  /**
+   * Relocation of programs as planned by method prepareRelocation().
+   */
+  private static class Relocation
+  {
+    private final List<LoadedProgram> movable;
+    private final int[] plan;
+    private final int[] smState;
+
+    private Relocation(final List<LoadedProgram> movable, final int[] plan,
+                       final int[] smState)
+    {
+      this.movable = movable;
+      this.plan = plan;
+      this.smState = smState;
+    }
+
+    /**
+     * Returns the address (0…31) of the allocation that the
+     * relocation makes room for.
+     */
+    private int getAddress()
+    {
+      return plan[movable.size()];
+    }
+
+    /**
+     * Returns the overall memory allocation after relocation.
+     */
+    private int getAllocation()
+    {
+      return plan[movable.size() + 1];
+    }
+
+    /**
+     * Updates the bookkeeping of the moved programs.  To be called
+     * only after the relocation has been written.
+     */
+    private void commit()
+    {
+      for (int index = 0; index < movable.size(); index++) {
+        movable.get(index).offset = plan[index];
+      }
+    }
+  }
+
+  /**
+   * Writes the specified relocation, i.e. moves programs as planned
+   * and adjusts program counter and wrap addresses of disabled state
+   * machines that use any of the moved programs, all within a single
+   * transaction.  The state machines to adjust have been determined
+   * from a snapshot of their state that has been read before.  Since
+   * another client may enable any of these state machines in the
+   * meantime, they are explicitly disabled within the same
+   * transaction, such that none of them ever executes a moved program
+   * from stale addresses.
+   */
+  private void writeRelocation(final Relocation relocation)
+    throws IOException
+  {
+    final List<LoadedProgram> movable = relocation.movable;
+    final int[] plan = relocation.plan;
+    final int[] smState = relocation.smState;
+    final int count = movable.size();
+    int vacated = 0x0;
+    for (int index = 0; index < count; index++) {
+      final LoadedProgram loaded = movable.get(index);
+      if (plan[index] != loaded.offset) {
+        vacated |= loaded.getAllocationMask();
+      }
+    }
+    final int cleared = vacated & ~relocation.getAllocation();
+    memory.runTransaction(() -> {
+        for (int memoryAddress = 0; memoryAddress < MEMORY_SIZE;
+             memoryAddress++) {
+          if (((cleared >>> memoryAddress) & 0x1) == 0x0) continue;
+          memory.writeAddress(PIORegisters.
+                              getMemoryAddress(pioNum, memoryAddress), 0);
+        }
+        for (int index = 0; index < count; index++) {
+          final LoadedProgram loaded = movable.get(index);
+          if (plan[index] != loaded.offset) {
+            writeProgram(loaded.program, plan[index]);
+          }
+        }
+        int adjusted = 0x0;
+        for (int smNum = 0; smNum < SM_COUNT; smNum++) {
+          if (((smState[0] >>> smNum) & 0x1) != 0x0) continue;
+          final int pc = smState[1 + 2 * smNum];
+          final int execCtrl = smState[2 + 2 * smNum];
+          final int wrapTop = getWrapTop(execCtrl);
+          final int wrapBottom = getWrapBottom(execCtrl);
+          final int newWrapTop = relocateAddress(wrapTop, movable, plan);
+          final int newWrapBottom =
+            relocateAddress(wrapBottom, movable, plan);
+          if ((newWrapTop != wrapTop) || (newWrapBottom != wrapBottom)) {
+            smSetWrap(smNum, newWrapBottom, newWrapTop);
+            adjusted |= 0x1 << smNum;
+          }
+          final int newPC = relocateAddress(pc, movable, plan);
+          if (newPC != pc) {
+            // no sideset/delay => all other bits are 0
+            smExec(smNum, (short)newPC);
+            adjusted |= 0x1 << smNum;
+          }
+        }
+        if (adjusted != 0x0) {
+          setSmMaskEnabled(adjusted, false);
         }
+      });
+  }
+
+  /**
+   * Plans how to make room for the specified allocation by moving
+   * relocatable programs that are not in use by any enabled state
+   * machine.  First, it is tried to move as few programs as
+   * possible.  If that fails, all movable programs are packed anew.
+   * Nothing is written and no bookkeeping is changed.
+   * @return The planned relocation, or &lt;code&gt;null&lt;/code&gt;,
+   * if the allocation does not fit even with relocation.
+   */
+  private Relocation prepareRelocation(final int allocationMask,
+                                       final int origin)
+    throws IOException
+  {
+    final int[] smState = readSmState();
+    final List<LoadedProgram> movable = new ArrayList<LoadedProgram>();
+    int pinned = memoryAllocation;
+    for (final LoadedProgram loaded : loadedPrograms) {
+      if ((loaded.program.getOrigin() < 0) && !isInUse(loaded, smState)) {
+        movable.add(loaded);
+        pinned &= ~loaded.getAllocationMask();
       }
     }
-    if (checkOnly) return -1;
-    final String message =
-      String.format("allocation at %02x failed", origin);
-    throw new Panic(message);
+    movable.sort((a, b) -> b.program.getLength() - a.program.getLength());
+    int[] plan =
+      planRelocation(pinned, movable, allocationMask, origin, true);
+    if (plan == null) {
+      plan = planRelocation(pinned, movable, allocationMask, origin, false);
+    }
+    return plan != null ? new Relocation(movable, plan, smState) : null;
   }
 
-  public int getMemoryAllocation() { return memoryAllocation; }
+  private boolean canAllocate(final int allocationMask, final int origin,
+                              final boolean allowRelocation)
+  {
+    synchronized(loadedPrograms) {
+      if (findAllocation(allocationMask, origin) >= 0) return true;
+      if (!relocationEnabled && !allowRelocation) return false;
+      try {
+        return prepareRelocation(allocationMask, origin) != null;
+      } catch (final IOException e) {
+        return false;
+      }
+    }
+  }
 
   public boolean canAddProgram(final Program program)
+  {
+    return canAddProgram(program, false);
+  }
+
+  /**
+   * @param allowRelocation If true, already loaded programs may be
+   * relocated for making room for this program, even if relocation
+   * is not enabled in general, just like with method addProgram().
+   * @see #setRelocationEnabled(boolean)
+   */
+  public boolean canAddProgram(final Program program,
+                               final boolean allowRelocation)
   {
     if (program == null) {
       throw new NullPointerException("program");
     }
     final int allocationMask = program.getAllocationMask();
     final int origin = program.getOrigin();
-    return allocateMemory(allocationMask, origin, true) >= 0;
+    return canAllocate(allocationMask, origin, allowRelocation);
   }
 
   public boolean canAddProgramAtOffset(final Program program, final int offset)
+  {
+    return canAddProgramAtOffset(program, offset, false);
+  }
+
+  /**
+   * @param allowRelocation If true, already loaded programs may be
+   * relocated for making room for this program, even if relocation
+   * is not enabled in general, just like with method
+   * addProgramAtOffset().
+   * @see #setRelocationEnabled(boolean)
+   */
+  public boolean canAddProgramAtOffset(final Program program, final int offset,
+                                       final boolean allowRelocation)
   {
     if (program == null) {
       throw new NullPointerException("program");
@@ -512,12 +1211,24 @@ public class PIOSDK implements Constants
       // do not allocate program with fixed origin at different offset
       if (origin != offset) return false;
     }
-    final int allocationMask = program.getAllocationMask();
-    final int allocationMaskForOffset =
-      origin >= 0 ?
-      allocationMask :
-      (allocationMask << offset) | (allocationMask << (offset - MEMORY_SIZE));
-    return allocateMemory(allocationMaskForOffset, offset, true) >= 0;
+    final int allocationMaskForOffset = getAllocationMask(program, offset);
+    return canAllocate(allocationMaskForOffset, offset, allowRelocation);
+  }
+
+  /**
+   * Relocates the specified instruction of a program that is loaded
+   * at the specified offset.  Just like with the Pico SDK, JMP
+   * targets are relative to the start of the program and thus need
+   * to be adjusted by the offset.
+   */
+  private static short relocateInstruction(final short instruction,
+                                           final int offset)
+  {
+    if ((instruction & 0xe000) != 0x0000) {
+      // not a JMP instruction
+      return instruction;
+    }
+    return (short)((instruction & ~0x001f) | ((instruction + offset) & 0x001f));
   }
 
   private void writeProgram(final Program program, final int addressOffset)
@@ -528,47 +1239,156 @@ public class PIOSDK implements Constants
     }
     Constants.checkSmMemAddr(addressOffset, "address offset");
     final int length = program.getLength();
-    synchronized(memory) {
-      for (int index = 0; index < length; index++) {
-        final short instruction = program.getInstruction(index);
-        final int memoryAddress = (addressOffset + index) & 0x1f;
-        // TODO: FIXME: Code relocation: When (addressOffset != 0),
-        // JMP commands need their absolute target address to be
-        // adjusted according to the offset.
-        memory.writeAddress(PIORegisters.
-                            getMemoryAddress(pioNum, memoryAddress),
-                            instruction);
+    memory.runTransaction(() -> {
+        for (int index = 0; index < length; index++) {
+          final short instruction =
+            relocateInstruction(program.getInstruction(index),
+                                addressOffset);
+          final int memoryAddress = (addressOffset + index) & 0x1f;
+          memory.writeAddress(PIORegisters.
+                              getMemoryAddress(pioNum, memoryAddress),
+                              instruction);
+        }
+      });
+  }
+
+  /**
+   * Allocates memory for the specified allocation mask and origin,
+   * if necessary and enabled by relocating other programs, writes
+   * the program and registers it as loaded.  Moving other programs
+   * and writing the program are performed as a single transaction.
+   * Bookkeeping of memory allocation and loaded programs is updated
+   * only after the transaction's writes have been applied.
+   * @param allowRelocation If true, other programs may be relocated
+   * for this allocation, even if relocation is not enabled in
+   * general.
+   */
+  private int loadProgram(final Program program, final int allocationMask,
+                          final int origin, final boolean allowRelocation)
+    throws IOException
+  {
+    synchronized(loadedPrograms) {
+      final int freeAddress = findAllocation(allocationMask, origin);
+      final Relocation relocation;
+      final int address;
+      if (freeAddress >= 0) {
+        relocation = null;
+        address = freeAddress;
+      } else if (relocationEnabled || allowRelocation) {
+        relocation = prepareRelocation(allocationMask, origin);
+        if (relocation == null) {
+          final String message =
+            String.format("allocation at %s failed, even with relocation",
+                          renderAllocationOrigin(origin));
+          throw new Panic(message);
+        }
+        address = relocation.getAddress();
+      } else {
+        final String message =
+          String.format("allocation at %s failed",
+                        renderAllocationOrigin(origin));
+        throw new Panic(message);
       }
+      final int allocated =
+        origin >= 0 ?
+        allocationMask : Integer.rotateLeft(allocationMask, address);
+      memory.runTransaction(() -> {
+          if (relocation != null) writeRelocation(relocation);
+          writeProgram(program, address);
+          memory.runAfterCommit(() -> {
+              synchronized(loadedPrograms) {
+                if (relocation != null) {
+                  relocation.commit();
+                  memoryAllocation = relocation.getAllocation();
+                } else {
+                  memoryAllocation |= allocated;
+                }
+                loadedPrograms.add(new LoadedProgram(program, address));
+              }
+            });
+        });
+      return address;
     }
   }
 
   public int addProgram(final String resourceId, final BufferedReader reader)
     throws IOException
   {
-    return addProgram(ProgramParser.parse(resourceId, reader));
+    return addProgram(resourceId, reader, false);
+  }
+
+  /**
+   * @param allowRelocation If true, already loaded programs may be
+   * relocated for making room for this program, even if relocation
+   * is not enabled in general.
+   * @see #setRelocationEnabled(boolean)
+   */
+  public int addProgram(final String resourceId, final BufferedReader reader,
+                        final boolean allowRelocation)
+    throws IOException
+  {
+    return addProgram(ProgramCache.get(resourceId, reader), allowRelocation);
   }
 
   public int addProgram(final Program program) throws IOException
+  {
+    return addProgram(program, false);
+  }
+
+  /**
+   * @param allowRelocation If true, already loaded programs may be
+   * relocated for making room for this program, even if relocation
+   * is not enabled in general.
+   * @see #setRelocationEnabled(boolean)
+   */
+  public int addProgram(final Program program, final boolean allowRelocation)
+    throws IOException
   {
     if (program == null) {
       throw new NullPointerException("program");
     }
     final int allocationMask = program.getAllocationMask();
     final int origin = program.getOrigin();
-    final int address = allocateMemory(allocationMask, origin, false);
-    writeProgram(program, address);
-    return address;
+    return loadProgram(program, allocationMask, origin, allowRelocation);
   }
 
   public int addProgramAtOffset(final String resourceId,
                                 final BufferedReader reader, final int offset)
     throws IOException
   {
-    return addProgramAtOffset(ProgramParser.parse(resourceId, reader), offset);
+    return addProgramAtOffset(resourceId, reader, offset, false);
+  }
+
+  /**
+   * @param allowRelocation If true, already loaded programs may be
+   * relocated for making room for this program, even if relocation
+   * is not enabled in general.
+   * @see #setRelocationEnabled(boolean)
+   */
+  public int addProgramAtOffset(final String resourceId,
+                                final BufferedReader reader, final int offset,
+                                final boolean allowRelocation)
+    throws IOException
+  {
+    return addProgramAtOffset(ProgramCache.get(resourceId, reader), offset,
+                              allowRelocation);
   }
 
   public int addProgramAtOffset(final Program program, final int offset)
     throws IOException
+  {
+    return addProgramAtOffset(program, offset, false);
+  }
+
+  /**
+   * @param allowRelocation If true, already loaded programs may be
+   * relocated for making room for this program, even if relocation
+   * is not enabled in general.
+   * @see #setRelocationEnabled(boolean)
+   */
+  public int addProgramAtOffset(final Program program, final int offset,
+                                final boolean allowRelocation)
+    throws IOException
   {
     if (program == null) {
       throw new NullPointerException("program");
@@ -585,24 +1405,23 @@ public class PIOSDK implements Constants
         throw new Panic(message);
       }
     }
-    final int allocationMask = program.getAllocationMask();
-    final int allocationMaskForOffset =
-      origin >= 0 ?
-      allocationMask :
-      (allocationMask << offset) |
-      (allocationMask << (offset - MEMORY_SIZE));
-    final int address = allocateMemory(allocationMaskForOffset, offset, false);
-    writeProgram(program, address);
-    return address;
+    final int allocationMaskForOffset = getAllocationMask(program, offset);
+    return loadProgram(program, allocationMaskForOffset, offset,
+                       allowRelocation);
   }
 
   public void removeProgram(final String resourceId,
                             final BufferedReader reader, final int loadedOffset)
     throws IOException
   {
-    removeProgram(ProgramParser.parse(resourceId, reader), loadedOffset);
+    removeProgram(ProgramCache.get(resourceId, reader), loadedOffset);
   }
 
+  /**
+   * Removes the specified program.  If the program has been relocated
+   * since it has been loaded, it may be specified either by its
+   * current address or by the offset reported upon loading it.
+   */
   public void removeProgram(final Program program, final int loadedOffset)
     throws IOException
   {
@@ -621,13 +1440,10 @@ public class PIOSDK implements Constants
         throw new Panic(message);
       }
     }
-    final int allocationMask = program.getAllocationMask();
-    final int allocationMaskForOffset =
-      origin >= 0 ?
-      allocationMask :
-      (allocationMask << loadedOffset) |
-      (allocationMask << (loadedOffset - MEMORY_SIZE));
-    synchronized(memoryAllocation) {
+    synchronized(loadedPrograms) {
+      final LoadedProgram loaded = findLoadedProgram(program, loadedOffset);
+      final int offset = loaded != null ? loaded.offset : loadedOffset;
+      final int allocationMaskForOffset = getAllocationMask(program, offset);
       if ((memoryAllocation & allocationMaskForOffset) !=
           allocationMaskForOffset) {
         final String message =
@@ -637,9 +1453,12 @@ public class PIOSDK implements Constants
         throw new Panic(message);
       }
       memoryAllocation &= ~allocationMaskForOffset;
+      if (loaded != null) {
+        loadedPrograms.remove(loaded);
+      }
       synchronized(memory) {
         for (int index = 0; index < program.getLength(); index++) {
-          final int memoryAddress = (loadedOffset + index) & 0x1f;
+          final int memoryAddress = (offset + index) & 0x1f;
           memory.writeAddress(PIORegisters.getMemoryAddress(pioNum,
                                                             memoryAddress),
                               0);
@@ -650,8 +1469,9 @@ public class PIOSDK implements Constants
 
   public void clearInstructionMemory() throws IOException
   {
-    synchronized(memoryAllocation) {
+    synchronized(loadedPrograms) {
       memoryAllocation = 0;
+      loadedPrograms.clear();
       synchronized(memory) {
         for (int memoryAddress = 0; memoryAddress < MEMORY_SIZE;
              memoryAddress++) {
@@ -668,30 +1488,38 @@ public class PIOSDK implements Constants
     throws IOException
   {
     Constants.checkSmNum(smNum);
-    smSetEnabled(smNum, false);
-    smSetConfig(smNum, config != null ? config : getDefaultSmConfig());
-    smClearFIFOs(smNum);
     final int fDebug =
       ((0x1 << FDEBUG_TXSTALL_LSB) |
        (0x1 << FDEBUG_TXOVER_LSB) |
        (0x1 << FDEBUG_RXUNDER_LSB) |
        (0x1 << FDEBUG_RXSTALL_LSB)) << smNum;
-    memory.writeAddress(PIORegisters.getAddress(pioNum,
-                                                PIORegisters.Regs.FDEBUG),
-                        fDebug);
-    smRestart(smNum);
-    smClkDivRestart(smNum);
     final int jmpInstruction =
       initialPC & 0x001f; // no sideset/delay => all other bits are 0
-    smExec(smNum, (short)jmpInstruction);
+    memory.runTransaction(() -> {
+        smSetEnabled(smNum, false);
+        smSetConfig(smNum, config != null ? config : getDefaultSmConfig());
+        smClearFIFOs(smNum);
+        memory.writeAddress(PIORegisters.getAddress(pioNum,
+                                                    PIORegisters.Regs.FDEBUG),
+                            fDebug);
+        smRestart(smNum);
+        smClkDivRestart(smNum);
+        smExec(smNum, (short)jmpInstruction);
+      });
   }
 
   public boolean smGetEnabled(final int smNum)
     throws IOException
   {
     Constants.checkSmNum(smNum);
-    final int address = PIORegisters.getAddress(pioNum, PIORegisters.Regs.CTRL);
-    final int ctrl = memory.readAddress(address);
+    final int ctrl;
+    if (pio != null) {
+      ctrl = pio.readLocked(PIO::getCtrl);
+    } else {
+      final int address =
+        PIORegisters.getAddress(pioNum, PIORegisters.Regs.CTRL);
+      ctrl = memory.readAddress(address);
+    }
     return (ctrl & (0x1 << smNum)) != 0x0;
   }
 
@@ -768,25 +1596,165 @@ public class PIOSDK implements Constants
                          CTRL_CLKDIV_RESTART_BITS | CTRL_SM_ENABLE_BITS);
   }
 
+  /**
+   * Returns a snapshot of the complete state of the specified state
+   * machine, taken within a single clock phase.
+   */
+  public SMSnapshot smGetSnapshot(final int smNum) throws IOException
+  {
+    Constants.checkSmNum(smNum);
+    return getSmMaskSnapshots(0x1 << smNum)[0];
+  }
+
+  /**
+   * Returns snapshots of all of the state machines selected by the
+   * specified mask, in ascending order of SM number.  All snapshots
+   * are taken together within the same clock phase, using a single
+   * read access to the address space.
+   */
+  public SMSnapshot[] getSmMaskSnapshots(final int mask) throws IOException
+  {
+    if ((mask & ~0xf) != 0x0) {
+      throw new IllegalArgumentException("invalid SM mask: " +
+                                         String.format("%08x", mask));
+    }
+    final int count = Integer.bitCount(mask);
+    final int[] addresses = new int[count * SMSnapshot.ADDRESS_COUNT];
+    int offset = 0;
+    for (int smNum = 0; smNum < SM_COUNT; smNum++) {
+      if (((mask >>> smNum) & 0x1) == 0x0) continue;
+      System.arraycopy(SMSnapshot.getAddresses(pioNum, smNum), 0,
+                       addresses, offset, SMSnapshot.ADDRESS_COUNT);
+      offset += SMSnapshot.ADDRESS_COUNT;
+    }
+    final int[] values = memory.readAddresses(addresses);
+    final SMSnapshot[] snapshots = new SMSnapshot[count];
+    offset = 0;
+    int index = 0;
+    for (int smNum = 0; smNum < SM_COUNT; smNum++) {
+      if (((mask >>> smNum) & 0x1) == 0x0) continue;
+      snapshots[index++] = new SMSnapshot(pioNum, smNum, values, offset);
+      offset += SMSnapshot.ADDRESS_COUNT;
+    }
+    return snapshots;
+  }
+
   public int smGetPC(final int smNum) throws IOException
   {
     Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readSm(smNum, SM::getPC);
+    }
     final int address =
       PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_ADDR);
     return memory.readAddress(address);
   }
 
+  private int readSmEmuRegister(final int smNum,
+                                final PIOEmuRegisters.Regs register)
+    throws IOException
+  {
+    return
+      memory.readAddress(PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                                      register));
+  }
+
+  /**
+   * Returns the value of the specified state machine's scratch
+   * register X.  This is not a feature of the RP2040, but of the
+   * emulator.
+   */
+  public int smGetX(final int smNum) throws IOException
+  {
+    Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readSm(smNum, SM::getX);
+    }
+    return readSmEmuRegister(smNum, PIOEmuRegisters.Regs.SM0_REGX);
+  }
+
+  /**
+   * Returns the value of the specified state machine's scratch
+   * register Y.  This is not a feature of the RP2040, but of the
+   * emulator.
+   */
+  public int smGetY(final int smNum) throws IOException
+  {
+    Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readSm(smNum, SM::getY);
+    }
+    return readSmEmuRegister(smNum, PIOEmuRegisters.Regs.SM0_REGY);
+  }
+
+  /**
+   * Returns the value of the specified state machine's input shift
+   * register.  This is not a feature of the RP2040, but of the
+   * emulator.
+   */
+  public int smGetISR(final int smNum) throws IOException
+  {
+    Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readSm(smNum, SM::getISRValue);
+    }
+    return readSmEmuRegister(smNum, PIOEmuRegisters.Regs.SM0_ISR);
+  }
+
+  /**
+   * Returns the specified state machine's input shift count.  This
+   * is not a feature of the RP2040, but of the emulator.
+   */
+  public int smGetISRShiftCount(final int smNum) throws IOException
+  {
+    Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readSm(smNum, SM::getISRShiftCount);
+    }
+    return readSmEmuRegister(smNum, PIOEmuRegisters.Regs.SM0_ISR_SHIFT_COUNT);
+  }
+
+  /**
+   * Returns the value of the specified state machine's output shift
+   * register.  This is not a feature of the RP2040, but of the
+   * emulator.
+   */
+  public int smGetOSR(final int smNum) throws IOException
+  {
+    Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readSm(smNum, SM::getOSRValue);
+    }
+    return readSmEmuRegister(smNum, PIOEmuRegisters.Regs.SM0_OSR);
+  }
+
+  /**
+   * Returns the specified state machine's output shift count.  This
+   * is not a feature of the RP2040, but of the emulator.
+   */
+  public int smGetOSRShiftCount(final int smNum) throws IOException
+  {
+    Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readSm(smNum, SM::getOSRShiftCount);
+    }
+    return readSmEmuRegister(smNum, PIOEmuRegisters.Regs.SM0_OSR_SHIFT_COUNT);
+  }
+
   public void smExec(final int smNum, final short instr) throws IOException
   {
     Constants.checkSmNum(smNum);
     final int address =
-      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_ADDR);
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_INSTR);
     memory.writeAddress(address, instr & 0xffff);
   }
 
   public boolean smIsExecStalled(final int smNum) throws IOException
   {
     Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readSm(smNum, sm -> sm.isExecStalled() ? 1 : 0) != 0;
+    }
     final int address =
       PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_EXECCTRL);
     final int execCtrl = memory.readAddress(address);
@@ -832,6 +1800,9 @@ public class PIOSDK implements Constants
   public boolean smIsRXFIFOFull(final int smNum) throws IOException
   {
     Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readFifoStatus(smNum, SM::isRXFIFOFull);
+    }
     final int fStat =
       memory.readAddress(PIORegisters.getAddress(pioNum,
                                                  PIORegisters.Regs.FSTAT));
@@ -841,6 +1812,9 @@ public class PIOSDK implements Constants
   public boolean smIsRXFIFOEmpty(final int smNum) throws IOException
   {
     Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readFifoStatus(smNum, SM::isRXFIFOEmpty);
+    }
     final int fStat =
       memory.readAddress(PIORegisters.getAddress(pioNum,
                                                  PIORegisters.Regs.FSTAT));
@@ -850,6 +1824,9 @@ public class PIOSDK implements Constants
   public int smGetRXFIFOLevel(final int smNum) throws IOException
   {
     Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return pio.readLocked((p) -> p.getSM(smNum).getRXFIFOLevel());
+    }
     final int shiftCount =
       FLEVEL_RX0_LSB + smNum * (FLEVEL_RX1_LSB - FLEVEL_RX0_LSB);
     final int mask = FLEVEL_RX0_BITS >> FLEVEL_RX0_LSB;
@@ -862,6 +1839,9 @@ public class PIOSDK implements Constants
   public boolean smIsTXFIFOFull(final int smNum) throws IOException
   {
     Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readFifoStatus(smNum, SM::isTXFIFOFull);
+    }
     final int fStat =
       memory.readAddress(PIORegisters.getAddress(pioNum,
                                                  PIORegisters.Regs.FSTAT));
@@ -871,6 +1851,9 @@ public class PIOSDK implements Constants
   public boolean smIsTXFIFOEmpty(final int smNum) throws IOException
   {
     Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return readFifoStatus(smNum, SM::isTXFIFOEmpty);
+    }
     final int fStat =
       memory.readAddress(PIORegisters.getAddress(pioNum,
                                                  PIORegisters.Regs.FSTAT));
@@ -880,6 +1863,9 @@ public class PIOSDK implements Constants
   public int smGetTXFIFOLevel(final int smNum) throws IOException
   {
     Constants.checkSmNum(smNum);
+    if (pio != null) {
+      return pio.readLocked((p) -> p.getSM(smNum).getTXFIFOLevel());
+    }
     final int shiftCount =
       FLEVEL_TX0_LSB + smNum * (FLEVEL_TX1_LSB - FLEVEL_TX0_LSB);
     final int mask = FLEVEL_TX0_BITS >> FLEVEL_TX0_LSB;
@@ -1156,6 +2142,54 @@ public class PIOSDK implements Constants
     }
   }
 
+  /**
+   * Returns the levels and rising edge counts of this PIO's outgoing
+   * interrupt lines IRQ0 and IRQ1, as provided by emulator register
+   * IRQ_LINES.
+   */
+  public int getIRQLines() throws IOException
+  {
+    return
+      memory.readAddress(PIOEmuRegisters.getAddress(pioNum,
+                                                    PIOEmuRegisters.Regs.
+                                                    IRQ_LINES));
+  }
+
+  public boolean irqLineIsAsserted(final int irqNum) throws IOException
+  {
+    checkIRQLine(irqNum);
+    return (getIRQLines() & (0x1 << irqNum)) != 0x0;
+  }
+
+  /**
+   * Blocks until the specified outgoing interrupt line (0 for IRQ0,
+   * 1 for IRQ1) of this PIO is asserted, thereby emulating the
+   * level-triggered interrupt input of the processor.  Returns true,
+   * if the line is asserted, or false, if the wait has timed out.
+   * @param cyclesTimeout Timeout in cycles, or 0 for no timeout.
+   * @param millisTimeout Timeout in milliseconds, or 0 for no timeout.
+   */
+  public boolean awaitIRQLine(final int irqNum, final long cyclesTimeout,
+                              final long millisTimeout)
+    throws IOException
+  {
+    checkIRQLine(irqNum);
+    final int address =
+      PIOEmuRegisters.getAddress(pioNum, PIOEmuRegisters.Regs.IRQ_LINES);
+    final int mask = 0x1 << irqNum;
+    return
+      (memory.waitAddress(address, mask, mask, cyclesTimeout, millisTimeout)
+       & mask) != 0x0;
+  }
+
+  private static void checkIRQLine(final int irqNum)
+  {
+    if ((irqNum < 0) || (irqNum > 1)) {
+      throw new IllegalArgumentException("IRQ line number neither 0 nor 1: " +
+                                         irqNum);
+    }
+  }
+
   public PinState[] getPinStates() throws IOException
   {
     final PinState[] pinStates = new PinState[Constants.GPIO_NUM];
@@ -121,10 +121,7 @@ public class Program implements Constants
     this.sideSetOpt = sideSetOpt;
     this.sideSetPinDirs = sideSetPinDirs;
     final int mask = (length < 32 ? (0x1 << length) : 0) - 1;
-    allocationMask =
-      origin >= 0 ?
-      mask << origin | (mask << (origin - MEMORY_SIZE)) :
-      mask;
+    allocationMask = origin >= 0 ? Integer.rotateLeft(mask, origin) : mask;
   }
 
   private void checkId(final String id)
@@ -194,8 +191,10 @@ public class Program implements Constants
   public String toString()
   {
     return
-      String.format("Program{origin=%02x,length=%02x}",
-                    origin, instructions.length);
+      String.format("Program{origin=%s,length=%02x}",
+                    origin >= 0 ?
+                    String.format("%02x", origin) : "relocatable",
+                    instructions.length);
   }
 }
 
@@ -0,0 +1,145 @@
+/*
+ * @(#)ProgramCache.java 1.00 21/07/31
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.sdk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.soundpaint.rp2040pio.IOUtils;
+
+/**
+ * Cache of parsed programs, such that loading the same program over
+ * and over again, e.g. when running a series of test scripts,
+ * requires reading its hex dump, but not parsing it again.  Since
+ * programs are immutable, the same program instance is handed out
+ * to all callers.
+ *
+ * Programs are identified by their resource id together with their
+ * content, such that a modified hex dump with the same resource id
+ * is parsed anew rather than served from the cache.  The least
+ * recently used program is evicted as soon as the cache exceeds its
+ * capacity.
+ */
+public class ProgramCache
+{
+  private static final int CAPACITY = 64;
+
+  private static class Key
+  {
+    private final String resourceId;
+    private final String content;
+    private final int hashCode;
+
+    private Key(final String resourceId, final String content)
+    {
+      this.resourceId = resourceId;
+      this.content = content;
+      hashCode = 31 * resourceId.hashCode() + content.hashCode();
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (!(obj instanceof Key)) return false;
+      final Key other = (Key)obj;
+      return
+        (hashCode == other.hashCode) &&
+        resourceId.equals(other.resourceId) &&
+        content.equals(other.content);
+    }
+  }
+
+  private static final Map<Key, Program> programs =
+    new LinkedHashMap<Key, Program>(16, 0.75f, true) {
+      private static final long serialVersionUID = -2880392657340916467L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, Program> e)
+      {
+        return size() > CAPACITY;
+      }
+    };
+
+  private ProgramCache()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  /**
+   * Reads the hex dump from the specified reader and closes it.
+   * Returns the cached program for the hex dump, if any, or parses
+   * and caches it otherwise.
+   */
+  public static Program get(final String resourceId,
+                            final BufferedReader reader)
+    throws IOException
+  {
+    if (resourceId == null) {
+      throw new NullPointerException("resourceId");
+    }
+    if (reader == null) {
+      throw new NullPointerException("reader");
+    }
+    final String content =
+      String.join(String.format("%n"), IOUtils.readLines(reader));
+    final Key key = new Key(resourceId, content);
+    synchronized(programs) {
+      final Program program = programs.get(key);
+      if (program != null) return program;
+    }
+    final Program program =
+      ProgramParser.parse(resourceId,
+                          new BufferedReader(new StringReader(content)));
+    synchronized(programs) {
+      programs.put(key, program);
+    }
+    return program;
+  }
+
+  /**
+   * Discards all cached programs.
+   */
+  public static void clear()
+  {
+    synchronized(programs) {
+      programs.clear();
+    }
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -104,7 +104,7 @@ public class ProgramParser implements Constants
   private int parseDecimalInt(final String decInt) throws ParseException
   {
     try {
-      return Integer.parseInt(decInt);
+      return Integer.parseInt(decInt.trim());
     } catch (final NumberFormatException e) {
       throw parseException("expected decimal integer: " + decInt, e);
     }
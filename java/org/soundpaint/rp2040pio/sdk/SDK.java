@@ -26,15 +26,110 @@ package org.soundpaint.rp2040pio.sdk;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.soundpaint.rp2040pio.AddressSpace;
 import org.soundpaint.rp2040pio.Constants;
 import org.soundpaint.rp2040pio.Emulator;
+import org.soundpaint.rp2040pio.LocalAddressSpace;
+import org.soundpaint.rp2040pio.MasterClock;
 import org.soundpaint.rp2040pio.PicoEmuRegisters;
+import org.soundpaint.rp2040pio.TransactionalAddressSpace;
 
 public class SDK implements Constants
 {
+  /**
+   * Maximum duration of a single blocking access on behalf of an
+   * asynchronous operation.  Between such accesses, asynchronous
+   * operations check for cancellation, and other accesses to the
+   * emulator may take their turn.
+   */
+  private static final long ASYNC_SLICE_MILLIS = 100;
+
+  private static final ExecutorService asyncExecutor =
+    Executors.newCachedThreadPool((runnable) -> {
+        final Thread thread = new Thread(runnable, "SDK async operation");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  @FunctionalInterface
+  public static interface CycleListener
+  {
+    /**
+     * Called after each cycle that method runCyclesAsync() has
+     * executed.
+     * @param cycle The number of the cycle, starting with 0.
+     */
+    void cycleCompleted(final int cycle) throws IOException;
+  }
+
+  @FunctionalInterface
+  private static interface AsyncOperation<T>
+  {
+    /**
+     * Performs the operation.  Implementations should regularly
+     * check if the task has been cancelled, and, if so, return as
+     * soon as possible.
+     */
+    T run(final AsyncTask<T> task) throws IOException;
+  }
+
+  /**
+   * Handle of an operation that runs on a thread of its own.
+   * Cancelling the task only requests the operation to stop.  The
+   * task's result completes not before the operation has actually
+   * terminated, with whatever result the operation has returned,
+   * such that after cancelling, callers can wait for the emulator
+   * to be no longer accessed on behalf of the operation.
+   */
+  public static class AsyncTask<T>
+  {
+    private final CompletableFuture<T> result;
+    private volatile boolean cancelled;
+
+    private AsyncTask()
+    {
+      result = new CompletableFuture<T>();
+      cancelled = false;
+    }
+
+    /**
+     * Requests the operation to stop.
+     * @return &lt;code&gt;true&lt;/code&gt;, if the operation has
+     * not yet terminated.
+     */
+    public boolean cancel()
+    {
+      cancelled = true;
+      return !result.isDone();
+    }
+
+    public boolean isCancelled()
+    {
+      return cancelled;
+    }
+
+    /**
+     * Returns a future that completes upon termination of the
+     * operation, even if the task has been cancelled.
+     */
+    public CompletableFuture<T> getResult()
+    {
+      return result;
+    }
+  }
+
   private final PrintStream console;
-  private final AddressSpace memory;
+  private final TransactionalAddressSpace memory;
+
+  /**
+   * The emulator's master clock, if this SDK runs in the same JVM as
+   * the emulator, or null otherwise.
+   */
+  private final MasterClock masterClock;
 
   /*
    * TODO: There is only a single GPIO, but each of the two PIOs has
@@ -61,10 +156,23 @@ public class SDK implements Constants
     if (memory == null) {
       throw new NullPointerException("memory");
     }
-    this.memory = memory;
-    gpioSdk = new GPIOSDK(memory);
-    pio0Sdk = new PIOSDK(0, memory, gpioSdk);
-    pio1Sdk = new PIOSDK(1, memory, gpioSdk);
+    this.memory = new TransactionalAddressSpace(memory);
+    // in-process fast path: bind typed accessors directly to the
+    // emulator's components, bypassing address decoding
+    final Emulator emulator =
+      memory instanceof LocalAddressSpace ?
+      ((LocalAddressSpace)memory).getEmulator() : null;
+    if (emulator != null) {
+      masterClock = emulator.getMasterClock();
+      gpioSdk = new GPIOSDK(this.memory, emulator.getGPIO());
+      pio0Sdk = new PIOSDK(0, this.memory, gpioSdk, emulator.getPIO0());
+      pio1Sdk = new PIOSDK(1, this.memory, gpioSdk, emulator.getPIO1());
+    } else {
+      masterClock = null;
+      gpioSdk = new GPIOSDK(this.memory);
+      pio0Sdk = new PIOSDK(0, this.memory, gpioSdk);
+      pio1Sdk = new PIOSDK(1, this.memory, gpioSdk);
+    }
   }
 
   public PrintStream getConsole() { return console; }
@@ -72,11 +180,51 @@ public class SDK implements Constants
   public PIOSDK getPIO0SDK() { return pio0Sdk; }
   public PIOSDK getPIO1SDK() { return pio1Sdk; }
 
+  /**
+   * Runs the specified transaction, such that all writes that it
+   * issues via this SDK (including its PIO and GPIO SDKs) from within
+   * the calling thread are queued and finally applied atomically as a
+   * single batch, between the same two clock phases.  Reads within
+   * the transaction do not see any of the queued writes.
+   */
+  public void runTransaction(final TransactionalAddressSpace.
+                             Transaction transaction)
+    throws IOException
+  {
+    memory.runTransaction(transaction);
+  }
+
   public int readAddress(final int address) throws IOException
   {
     return memory.readAddress(address);
   }
 
+  public int[] readAddresses(final int[] addresses) throws IOException
+  {
+    return memory.readAddresses(addresses);
+  }
+
+  public void writeAddressesMasked(final int[] addresses, final int[] bits,
+                                   final int[] masks, final boolean[] xors)
+    throws IOException
+  {
+    memory.writeAddressesMasked(addresses, bits, masks, xors);
+  }
+
+  public int[] waitAddressesChanged(final int[] addresses,
+                                    final int[] values,
+                                    final long millisTimeout)
+    throws IOException
+  {
+    return memory.waitAddressesChanged(addresses, values, millisTimeout);
+  }
+
+  public int[] sampleAddresses(final int[] addresses, final int cycles)
+    throws IOException
+  {
+    return memory.sampleAddresses(addresses, cycles);
+  }
+
   public int readAddress(final int address, final int msb, final int lsb)
     throws IOException
   {
@@ -221,6 +369,9 @@ public class SDK implements Constants
 
   public long getWallClock() throws IOException
   {
+    if (masterClock != null) {
+      return masterClock.getWallClock();
+    }
     final int addressWallClockLsb =
       PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.WALLCLOCK_LSB);
     final int addressWallClockMsb =
@@ -229,6 +380,320 @@ public class SDK implements Constants
     final int wallClockMsb = memory.readAddress(addressWallClockMsb);
     return ((long)wallClockMsb << 32) | wallClockLsb;
   }
+
+  // -------- test bench --------
+
+  /**
+   * Schedules GPIO pad input stimuli or declares expected GPIO pad
+   * levels for the specified ranges of cycles, with a single atomic
+   * batch of writes, such that the test bench's cycle selection of
+   * concurrent clients does not interfere.
+   * @param stimulus If true, the values are scheduled as stimuli.
+   * Otherwise, they are declared as expectations.
+   * @param mask Selects the GPIO pads that the values refer to.
+   * @param startCycles The absolute wall clock cycle of the first
+   * cycle of each range.
+   * @param cycleCounts The number of consecutive cycles of each
+   * range, each at least 1.
+   * @param values The value for each range.
+   */
+  public void addTestBenchPatterns(final boolean stimulus, final int mask,
+                                   final long[] startCycles,
+                                   final int[] cycleCounts,
+                                   final int[] values)
+    throws IOException
+  {
+    if (startCycles == null) {
+      throw new NullPointerException("startCycles");
+    }
+    if (cycleCounts == null) {
+      throw new NullPointerException("cycleCounts");
+    }
+    if (values == null) {
+      throw new NullPointerException("values");
+    }
+    if (cycleCounts.length != startCycles.length) {
+      throw new IllegalArgumentException("cycleCounts.length != " +
+                                         "startCycles.length: " +
+                                         cycleCounts.length + " != " +
+                                         startCycles.length);
+    }
+    if (values.length != startCycles.length) {
+      throw new IllegalArgumentException("values.length != " +
+                                         "startCycles.length: " +
+                                         values.length + " != " +
+                                         startCycles.length);
+    }
+    for (final int cycleCount : cycleCounts) {
+      if (cycleCount < 1) {
+        throw new IllegalArgumentException("cycleCount < 1: " + cycleCount);
+      }
+    }
+    final int maskAddress =
+      PicoEmuRegisters.getAddress(stimulus ?
+                                  PicoEmuRegisters.Regs.
+                                  TESTBENCH_STIMULUS_MASK :
+                                  PicoEmuRegisters.Regs.
+                                  TESTBENCH_EXPECT_MASK);
+    final int valueAddress =
+      PicoEmuRegisters.getAddress(stimulus ?
+                                  PicoEmuRegisters.Regs.TESTBENCH_STIMULUS :
+                                  PicoEmuRegisters.Regs.TESTBENCH_EXPECT);
+    final int cycleLsbAddress =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.TESTBENCH_CYCLE_LSB);
+    final int cycleMsbAddress =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.TESTBENCH_CYCLE_MSB);
+    final int cycleCountAddress =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.
+                                  TESTBENCH_CYCLE_COUNT);
+    final int size = 2 + 4 * values.length;
+    final int[] addresses = new int[size];
+    final int[] bits = new int[size];
+    addresses[0] = maskAddress;
+    bits[0] = mask;
+    for (int index = 0; index < values.length; index++) {
+      addresses[1 + 4 * index] = cycleLsbAddress;
+      bits[1 + 4 * index] = (int)startCycles[index];
+      addresses[2 + 4 * index] = cycleMsbAddress;
+      bits[2 + 4 * index] = (int)(startCycles[index] >>> 32);
+      addresses[3 + 4 * index] = cycleCountAddress;
+      bits[3 + 4 * index] = cycleCounts[index];
+      addresses[4 + 4 * index] = valueAddress;
+      bits[4 + 4 * index] = values[index];
+    }
+    // restore default cycle count for plain register writes
+    addresses[size - 1] = cycleCountAddress;
+    bits[size - 1] = 1;
+    final int[] masks = new int[size];
+    Arrays.fill(masks, 0xffffffff);
+    memory.writeAddressesAtomically(addresses, bits, masks,
+                                    new boolean[size]);
+  }
+
+  /**
+   * Appends the specified values to the queue of values that the
+   * specified state machine is expected to push into its RX FIFO,
+   * with a single atomic batch of writes.
+   */
+  public void addTestBenchRxExpectations(final int pioNum, final int smNum,
+                                         final int[] values)
+    throws IOException
+  {
+    Constants.checkPioNum(pioNum, "PIO index");
+    Constants.checkSmNum(smNum);
+    if (values == null) {
+      throw new NullPointerException("values");
+    }
+    final int smAddress =
+      PicoEmuRegisters.
+      getAddress(PicoEmuRegisters.Regs.TESTBENCH_EXPECT_RX_SM);
+    final int valueAddress =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.TESTBENCH_EXPECT_RX);
+    final int size = 1 + values.length;
+    final int[] addresses = new int[size];
+    final int[] bits = new int[size];
+    addresses[0] = smAddress;
+    bits[0] = (pioNum << 2) | smNum;
+    for (int index = 0; index < values.length; index++) {
+      addresses[1 + index] = valueAddress;
+      bits[1 + index] = values[index];
+    }
+    final int[] masks = new int[size];
+    Arrays.fill(masks, 0xffffffff);
+    memory.writeAddressesAtomically(addresses, bits, masks,
+                                    new boolean[size]);
+  }
+
+  public int getTestBenchStatus() throws IOException
+  {
+    final int address =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.TESTBENCH_STATUS);
+    return memory.readAddress(address);
+  }
+
+  /**
+   * Discards all pending stimuli and expectations of the test bench,
+   * as well as the recorded mismatch, if any.
+   */
+  public void clearTestBench() throws IOException
+  {
+    final int address =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.TESTBENCH_STATUS);
+    memory.writeAddress(address, 0);
+  }
+
+  // -------- snapshots --------
+
+  /**
+   * Saves the complete emulation state into the specified snapshot
+   * slot (0…31) of the emulator.
+   */
+  public void saveSnapshot(final int slot) throws IOException
+  {
+    checkSnapshotSlot(slot);
+    final int address =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.SNAPSHOT_SAVE);
+    memory.writeAddress(address, slot);
+  }
+
+  /**
+   * Restores the complete emulation state from the specified
+   * snapshot slot (0…31) of the emulator with a single register
+   * write.  The master clock must be in single step mode.
+   */
+  public void restoreSnapshot(final int slot) throws IOException
+  {
+    checkSnapshotSlot(slot);
+    final int address =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.SNAPSHOT_RESTORE);
+    memory.writeAddress(address, slot);
+  }
+
+  /**
+   * Returns a bit mask with bit n set if and only if snapshot slot n
+   * holds a snapshot.
+   */
+  public int getSnapshotSlots() throws IOException
+  {
+    final int address =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.SNAPSHOT_SLOTS);
+    return memory.readAddress(address);
+  }
+
+  private static void checkSnapshotSlot(final int slot)
+  {
+    if ((slot < 0) || (slot > 31)) {
+      throw new IllegalArgumentException("snapshot slot out of range: " +
+                                         slot);
+    }
+  }
+
+  // -------- asynchronous operations --------
+
+  /**
+   * Runs the specified operation on a thread of its own.  Cancelling
+   * the returned task does not interrupt that thread, but the
+   * operation is expected to notice the cancellation by itself.
+   */
+  private static <T> AsyncTask<T> runAsync(final AsyncOperation<T> operation)
+  {
+    final AsyncTask<T> task = new AsyncTask<T>();
+    asyncExecutor.execute(() -> {
+        try {
+          task.result.complete(operation.run(task));
+        } catch (final IOException | RuntimeException e) {
+          task.result.completeExceptionally(e);
+        }
+      });
+    return task;
+  }
+
+  /**
+   * Sleeps for the specified time, unless the specified task gets
+   * cancelled in the meantime.
+   * @return &lt;code&gt;true&lt;/code&gt;, if the full time has been
+   * slept.
+   */
+  private static boolean sleep(final AsyncTask<?> task, final long millis)
+  {
+    final long stopTime = System.currentTimeMillis() + millis;
+    while (!task.isCancelled()) {
+      final long remaining = stopTime - System.currentTimeMillis();
+      if (remaining <= 0) return true;
+      try {
+        Thread.sleep(Math.min(remaining, ASYNC_SLICE_MILLIS));
+      } catch (final InterruptedException e) {
+        // ignore here, since check in while condition
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Asynchronous variant of method wait().  Rather than blocking in
+   * the address space for the full timeout, waiting is performed in
+   * slices of ASYNC_SLICE_MILLIS, such that the wait can be
+   * cancelled, and any number of waits and other accesses can share
+   * a single connection to the emulator.
+   * @return A task that completes with the value that method wait()
+   * would have returned.  Cancelling the task stops waiting, and the
+   * task completes with the value last read.
+   */
+  public AsyncTask<Integer> waitAsync(final int address,
+                                              final int expectedValue,
+                                              final int mask,
+                                              final long cyclesTimeout,
+                                              final long millisTimeout)
+  {
+    if (cyclesTimeout < 0) {
+      throw new IllegalArgumentException("cyclesTimeout < 0: " + cyclesTimeout);
+    }
+    if (millisTimeout < 0) {
+      throw new IllegalArgumentException("millisTimeout < 0: " + millisTimeout);
+    }
+    return runAsync((task) -> {
+        final long startTime = System.currentTimeMillis();
+        final long startWallClock = cyclesTimeout != 0 ? getWallClock() : 0;
+        while (true) {
+          final long remainingCycles =
+            cyclesTimeout != 0 ?
+            cyclesTimeout - (getWallClock() - startWallClock) : 0;
+          final long remainingMillis =
+            millisTimeout != 0 ?
+            millisTimeout - (System.currentTimeMillis() - startTime) :
+            ASYNC_SLICE_MILLIS;
+          if ((remainingMillis <= 0) ||
+              ((cyclesTimeout != 0) && (remainingCycles <= 0))) {
+            return memory.readAddress(address) & mask;
+          }
+          final int value =
+            memory.waitAddress(address, expectedValue, mask, remainingCycles,
+                               Math.min(remainingMillis, ASYNC_SLICE_MILLIS));
+          if ((value == expectedValue) || task.isCancelled()) {
+            return value;
+          }
+        }
+      });
+  }
+
+  /**
+   * Asynchronous variant of repeatedly calling methods
+   * triggerCyclePhase0() and triggerCyclePhase1() for executing the
+   * specified number of clock cycles.  Cancelling the returned task
+   * stops execution after completion of the current cycle.
+   * @param millisPerCycle Time to sleep per cycle, split evenly
+   * before each of the two clock phases.
+   * @param listener If not &lt;code&gt;null&lt;/code&gt;, called
+   * after each executed cycle.
+   * @return A task that completes with the number of executed
+   * cycles, also if cancelled.
+   */
+  public AsyncTask<Integer>
+    runCyclesAsync(final int cycles, final long millisPerCycle,
+                   final CycleListener listener)
+  {
+    if (cycles < 0) {
+      throw new IllegalArgumentException("cycles < 0: " + cycles);
+    }
+    if (millisPerCycle < 0) {
+      throw new IllegalArgumentException("millisPerCycle < 0: " +
+                                         millisPerCycle);
+    }
+    return runAsync((task) -> {
+        final long wait0 = millisPerCycle / 2;
+        final long wait1 = millisPerCycle - wait0;
+        int cycle = 0;
+        while ((cycle < cycles) && sleep(task, wait0)) {
+          triggerCyclePhase0(true);
+          // complete the cycle even if cancelled in the meantime
+          sleep(task, wait1);
+          triggerCyclePhase1(true);
+          if (listener != null) listener.cycleCompleted(cycle);
+          cycle++;
+        }
+        return cycle;
+      });
+  }
 }
 
 /*
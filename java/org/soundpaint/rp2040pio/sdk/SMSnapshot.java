@@ -0,0 +1,335 @@
+/*
+ * @(#)SMSnapshot.java 1.00 21/07/29
+ *
+ * Copyright (C) 2021 Jürgen Reuter
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * For updates and more info or contacting the author, visit:
+ * <https://github.com/soundpaint/rp2040pio>
+ *
+ * Author's web site: www.juergen-reuter.de
+ */
+package org.soundpaint.rp2040pio.sdk;
+
+import java.util.Arrays;
+import org.soundpaint.rp2040pio.Constants;
+import org.soundpaint.rp2040pio.PIOEmuRegisters;
+import org.soundpaint.rp2040pio.PIORegisters;
+import org.soundpaint.rp2040pio.PicoEmuRegisters;
+
+/**
+ * Immutable snapshot of the complete state of a single state
+ * machine, including its FIFO, clock divider and the pins of the
+ * PIO it belongs to.  All values of a snapshot are captured in a
+ * single call of AddressSpace#readAddresses(), and hence within the
+ * same clock phase.
+ *
+ * @see PIOSDK#smGetSnapshot
+ */
+public class SMSnapshot implements Constants
+{
+  private static final int FIFO_MEM_SIZE = 2 * FIFO_DEPTH;
+
+  /**
+   * Number of addresses to read for a single snapshot.  Must be kept
+   * consistent with methods getAddresses() and the constructor.
+   */
+  static final int ADDRESS_COUNT = 30 + FIFO_MEM_SIZE;
+
+  private final int pioNum;
+  private final int smNum;
+  private final long wallClock;
+  private final boolean enabled;
+  private final int clkDiv;
+  private final int execCtrl;
+  private final int shiftCtrl;
+  private final int pinCtrl;
+  private final int pc;
+  private final int regX;
+  private final int regY;
+  private final int isr;
+  private final int isrShiftCount;
+  private final int osr;
+  private final int osrShiftCount;
+  private final int[] fifoMem;
+  private final int fifoReadPtr;
+  private final int fifoLevel;
+  private final int fStat;
+  private final int fDebug;
+  private final int instrOrigin;
+  private final int delay;
+  private final boolean delayCycle;
+  private final int pendingDelay;
+  private final int forcedInstr;
+  private final int execdInstr;
+  private final boolean clkEnable;
+  private final boolean nextClkEnable;
+  private final int breakPoints;
+  private final int tracePoints;
+  private final int pins;
+  private final int pinDirs;
+
+  private SMSnapshot()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  /**
+   * Creates a snapshot from values that have been read from the
+   * addresses that method getAddresses() returned, starting at the
+   * specified offset.
+   */
+  SMSnapshot(final int pioNum, final int smNum,
+             final int[] values, final int offset)
+  {
+    Constants.checkPioNum(pioNum, "PIO index number");
+    Constants.checkSmNum(smNum);
+    if (values == null) {
+      throw new NullPointerException("values");
+    }
+    this.pioNum = pioNum;
+    this.smNum = smNum;
+    int index = offset;
+    final int wallClockLsb = values[index++];
+    final int wallClockMsb = values[index++];
+    wallClock = ((long)wallClockMsb << 32) | (wallClockLsb & 0xffffffffL);
+    enabled = ((values[index++] >>> smNum) & 0x1) != 0x0;
+    clkDiv = values[index++];
+    execCtrl = values[index++];
+    shiftCtrl = values[index++];
+    pinCtrl = values[index++];
+    pc = values[index++];
+    regX = values[index++];
+    regY = values[index++];
+    isr = values[index++];
+    isrShiftCount = values[index++];
+    osr = values[index++];
+    osrShiftCount = values[index++];
+    fifoMem = new int[FIFO_MEM_SIZE];
+    for (int entryNum = 0; entryNum < FIFO_MEM_SIZE; entryNum++) {
+      fifoMem[entryNum] = values[index++];
+    }
+    fifoReadPtr = (values[index++] >>> (smNum << 3)) & 0xff;
+    fifoLevel = (values[index++] >>> (smNum << 3)) & 0xff;
+    fStat = values[index++];
+    fDebug = values[index++];
+    instrOrigin = values[index++];
+    delay = values[index++];
+    delayCycle = (values[index++] & 0x1) != 0x0;
+    pendingDelay = values[index++];
+    forcedInstr = values[index++];
+    execdInstr = values[index++];
+    clkEnable = (values[index++] & 0x1) != 0x0;
+    nextClkEnable = (values[index++] & 0x1) != 0x0;
+    breakPoints = values[index++];
+    tracePoints = values[index++];
+    pins = values[index++];
+    pinDirs = values[index++];
+    if (index - offset != ADDRESS_COUNT) {
+      throw new InternalError("inconsistent snapshot address count");
+    }
+  }
+
+  /**
+   * Returns the addresses that a snapshot of the specified state
+   * machine reflects, except for the wall clock, which changes in
+   * every cycle.  Useful for observing when the state machine's
+   * state changes.
+   */
+  public static int[] getStateAddresses(final int pioNum, final int smNum)
+  {
+    Constants.checkPioNum(pioNum, "PIO index number");
+    Constants.checkSmNum(smNum);
+    final int[] addresses = getAddresses(pioNum, smNum);
+    return Arrays.copyOfRange(addresses, 2, addresses.length);
+  }
+
+  /**
+   * Returns the addresses to read for creating a snapshot of the
+   * specified state machine.
+   */
+  static int[] getAddresses(final int pioNum, final int smNum)
+  {
+    final int[] addresses = new int[ADDRESS_COUNT];
+    int index = 0;
+    addresses[index++] =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.WALLCLOCK_LSB);
+    addresses[index++] =
+      PicoEmuRegisters.getAddress(PicoEmuRegisters.Regs.WALLCLOCK_MSB);
+    addresses[index++] =
+      PIORegisters.getAddress(pioNum, PIORegisters.Regs.CTRL);
+    addresses[index++] =
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_CLKDIV);
+    addresses[index++] =
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_EXECCTRL);
+    addresses[index++] =
+      PIORegisters.getSMAddress(pioNum, smNum,
+                                PIORegisters.Regs.SM0_SHIFTCTRL);
+    addresses[index++] =
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_PINCTRL);
+    addresses[index++] =
+      PIORegisters.getSMAddress(pioNum, smNum, PIORegisters.Regs.SM0_ADDR);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_REGX);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_REGY);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_ISR);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_ISR_SHIFT_COUNT);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_OSR);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_OSR_SHIFT_COUNT);
+    for (int entryNum = 0; entryNum < FIFO_MEM_SIZE; entryNum++) {
+      addresses[index++] =
+        PIOEmuRegisters.getFIFOMemAddress(pioNum, smNum, entryNum);
+    }
+    addresses[index++] =
+      PIOEmuRegisters.getAddress(pioNum, PIOEmuRegisters.Regs.FREAD_PTR);
+    addresses[index++] =
+      PIORegisters.getAddress(pioNum, PIORegisters.Regs.FLEVEL);
+    addresses[index++] =
+      PIORegisters.getAddress(pioNum, PIORegisters.Regs.FSTAT);
+    addresses[index++] =
+      PIORegisters.getAddress(pioNum, PIORegisters.Regs.FDEBUG);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_INSTR_ORIGIN);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_DELAY);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_DELAY_CYCLE);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_PENDING_DELAY);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_FORCED_INSTR);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_EXECD_INSTR);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_CLK_ENABLE);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_NEXT_CLK_ENABLE);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_BREAKPOINTS);
+    addresses[index++] =
+      PIOEmuRegisters.getSMAddress(pioNum, smNum,
+                                   PIOEmuRegisters.Regs.SM0_TRACEPOINTS);
+    addresses[index++] =
+      PIOEmuRegisters.getAddress(pioNum, PIOEmuRegisters.Regs.GPIO_PINS);
+    addresses[index++] =
+      PIOEmuRegisters.getAddress(pioNum, PIOEmuRegisters.Regs.GPIO_PINDIRS);
+    return addresses;
+  }
+
+  public int getPioNum() { return pioNum; }
+  public int getSmNum() { return smNum; }
+  public long getWallClock() { return wallClock; }
+  public boolean isEnabled() { return enabled; }
+  public int getClkDiv() { return clkDiv; }
+  public int getExecCtrl() { return execCtrl; }
+  public int getShiftCtrl() { return shiftCtrl; }
+  public int getPinCtrl() { return pinCtrl; }
+  public int getPC() { return pc; }
+  public int getRegX() { return regX; }
+  public int getRegY() { return regY; }
+  public int getISR() { return isr; }
+  public int getISRShiftCount() { return isrShiftCount; }
+  public int getOSR() { return osr; }
+  public int getOSRShiftCount() { return osrShiftCount; }
+
+  /**
+   * Returns the value of the specified FIFO memory word, with
+   * entries 0…3 holding the TX FIFO and entries 4…7 the RX FIFO,
+   * unless the FIFOs are joined.
+   */
+  public int getFIFOMemValue(final int entryNum)
+  {
+    if ((entryNum < 0) || (entryNum >= FIFO_MEM_SIZE)) {
+      throw new IllegalArgumentException("entryNum out of range: " +
+                                         entryNum);
+    }
+    return fifoMem[entryNum];
+  }
+
+  /**
+   * Returns the TX FIFO read pointer in bits 0…3 and the RX FIFO
+   * read pointer in bits 4…7.
+   */
+  public int getFIFOReadPtr() { return fifoReadPtr; }
+
+  /**
+   * Returns the TX FIFO level in bits 0…3 and the RX FIFO level in
+   * bits 4…7.
+   */
+  public int getFIFOLevel() { return fifoLevel; }
+
+  public int getTXFIFOLevel() { return fifoLevel & 0xf; }
+  public int getRXFIFOLevel() { return (fifoLevel >>> 4) & 0xf; }
+
+  /**
+   * Returns the full value of the PIO's FSTAT register, covering all
+   * of the PIO's state machines.
+   */
+  public int getFStat() { return fStat; }
+
+  /**
+   * Returns the full value of the PIO's FDEBUG register, covering
+   * all of the PIO's state machines.
+   */
+  public int getFDebug() { return fDebug; }
+
+  public int getInstrOrigin() { return instrOrigin; }
+  public int getDelay() { return delay; }
+  public boolean isDelayCycle() { return delayCycle; }
+  public int getPendingDelay() { return pendingDelay; }
+  public int getForcedInstr() { return forcedInstr; }
+  public int getExecdInstr() { return execdInstr; }
+  public boolean isClkEnabled() { return clkEnable; }
+  public boolean isNextClkEnabled() { return nextClkEnable; }
+  public int getBreakPoints() { return breakPoints; }
+  public int getTracePoints() { return tracePoints; }
+  public int getPins() { return pins; }
+  public int getPinDirs() { return pinDirs; }
+
+  @Override
+  public String toString()
+  {
+    return String.format("SMSnapshot{pio=%d, sm=%d, wallClock=%d, pc=%02x}",
+                         pioNum, smNum, wallClock, pc);
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */